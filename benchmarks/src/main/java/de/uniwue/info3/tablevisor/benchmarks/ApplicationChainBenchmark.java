@@ -0,0 +1,83 @@
+package de.uniwue.info3.tablevisor.benchmarks;
+
+import de.uniwue.info3.tablevisor.application.ApplicationChain;
+import de.uniwue.info3.tablevisor.application.BaseApplication;
+import de.uniwue.info3.tablevisor.application.IApplication;
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import org.openjdk.jmh.annotations.*;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.TableId;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A FLOW_MOD towards the data plane and a PACKET_IN towards the control plane through a chain of applications
+ * that only forward them, with (compiled) and without the routes of ApplicationChain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplicationChainBenchmark {
+	private static final OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
+
+	@Param({"5"})
+	public int apps;
+
+	@Param({"false", "true"})
+	public boolean compiled;
+
+	private IApplication first;
+	private IApplication last;
+	private TVMessage flowMod;
+	private TVMessage packetIn;
+	private long received;
+
+	@Setup
+	public void setup() {
+		IApplication top = new BaseApplication(null) {
+			@Override
+			public void allToControlPlane(TVMessage tvMessage) {
+				received++;
+			}
+		};
+		IApplication previous = top;
+		for (int i = 0; i < apps; i++) {
+			previous = new BaseApplication(previous);
+			if (i == 0) {
+				first = previous;
+			}
+		}
+		last = previous;
+		new BaseApplication(previous) {
+			@Override
+			public void allToDataPlane(TVMessage tvMessage) {
+				received++;
+			}
+		};
+		if (compiled) {
+			ApplicationChain.compile(top);
+		}
+
+		flowMod = new TVMessage(fac.buildFlowAdd().setTableId(TableId.of(1)).setPriority(100).build(), 1);
+		packetIn = new TVMessage(fac.buildPacketIn().setReason(OFPacketInReason.NO_MATCH).setBufferId(OFBufferId.NO_BUFFER).build(), 1);
+	}
+
+	@Benchmark
+	public long flowModToDataPlane() {
+		first.allToDataPlane(flowMod);
+		return received;
+	}
+
+	@Benchmark
+	public long packetInToControlPlane() {
+		last.allToControlPlane(packetIn);
+		return received;
+	}
+}
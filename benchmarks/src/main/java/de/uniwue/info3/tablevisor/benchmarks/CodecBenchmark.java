@@ -0,0 +1,105 @@
+package de.uniwue.info3.tablevisor.benchmarks;
+
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import de.uniwue.info3.tablevisor.message.TVMsgDecoder;
+import de.uniwue.info3.tablevisor.message.TVMsgEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.projectfloodlight.openflow.protocol.*;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of received frames through TVMsgDecoder and TVMsgEncoder, as done for every forwarded message.
+ * The frames are the FLOW_MODs of example1 and PACKET_INs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+	@Param({"FLOW_MOD", "PACKET_IN"})
+	public String type;
+
+	@Param({"false", "true"})
+	public boolean recycleMessages;
+
+	private final List<byte[]> frames = new ArrayList<>();
+	private EmbeddedChannel in;
+	private EmbeddedChannel out;
+	private int next;
+
+	@Setup
+	public void setup() {
+		OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
+		if (type.equals("FLOW_MOD")) {
+			for (OFFlowMod fm : Examples.rules("example1", 5)) {
+				frames.add(Examples.toFrame(fm));
+			}
+		}
+		else {
+			frames.add(Examples.toFrame(fac.buildPacketIn()
+					.setBufferId(OFBufferId.NO_BUFFER)
+					.setReason(OFPacketInReason.NO_MATCH)
+					.setTableId(TableId.of(0))
+					.setCookie(U64.ZERO)
+					.setMatch(fac.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(1)).build())
+					.setData(new byte[128])
+					.build()));
+		}
+		in = new EmbeddedChannel(new TVMsgDecoder(fac.getReader(), recycleMessages));
+		out = new EmbeddedChannel(new TVMsgEncoder());
+	}
+
+	@TearDown
+	public void tearDown() {
+		in.finishAndReleaseAll();
+		out.finishAndReleaseAll();
+	}
+
+	/**
+	 * The frame is forwarded without being parsed (e.g., by OneTransparentSwitchApplication).
+	 */
+	@Benchmark
+	public int forward() {
+		TVMessage msg = decode();
+		return encode(msg);
+	}
+
+	/**
+	 * The frame is parsed and the message replaced (e.g., by a rewriting application).
+	 */
+	@Benchmark
+	public int parseAndRewrite() {
+		TVMessage msg = decode();
+		OFMessage ofMsg = msg.getOFMessage();
+		msg.setOFMessage(ofMsg.createBuilder().setXid(ofMsg.getXid() + 1).build());
+		return encode(msg);
+	}
+
+	private TVMessage decode() {
+		byte[] frame = frames.get(next);
+		next = (next + 1) % frames.size();
+		in.writeInbound(Unpooled.wrappedBuffer(frame));
+		return in.readInbound();
+	}
+
+	private int encode(TVMessage msg) {
+		out.writeOutbound(msg);
+		ByteBuf buf = out.readOutbound();
+		int n = buf.readableBytes();
+		buf.release();
+		return n;
+	}
+}
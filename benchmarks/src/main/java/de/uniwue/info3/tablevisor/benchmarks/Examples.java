@@ -0,0 +1,86 @@
+package de.uniwue.info3.tablevisor.benchmarks;
+
+import de.uniwue.info3.tablevisor.application.IApplication;
+import de.uniwue.info3.tablevisor.capture.CaptureReplay;
+import de.uniwue.info3.tablevisor.core.TableVisor;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import io.netty.util.internal.logging.Log4J2LoggerFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Workloads derived from the example setups (example1, example2) of the repository.
+ * The repository directory is taken from the system property 'tablevisor.dir' (default: the parent directory).
+ */
+public class Examples {
+	private static CaptureReplay replay;
+	private static String replayExample;
+
+	public static Path exampleDir(String example) {
+		return Paths.get(System.getProperty("tablevisor.dir", "..")).resolve(example).toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Sets up TableVisor with the configuration of the example and sinks instead of network endpoints.
+	 * There is only one TableVisor per JVM, so all benchmarks of a fork must use the same example.
+	 */
+	public static synchronized CaptureReplay replay(String example) {
+		if (replay == null) {
+			InternalLoggerFactory.setDefaultFactory(Log4J2LoggerFactory.INSTANCE);
+			try {
+				replay = new CaptureReplay(exampleDir(example).resolve("TVconfig.yml"));
+				replayExample = example;
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		else if (!replayExample.equals(example)) {
+			throw new IllegalStateException("TableVisor already set up for " + replayExample);
+		}
+		return replay;
+	}
+
+	/**
+	 * @return the first application of the given type in the chain of TableVisor
+	 */
+	public static <T extends IApplication> T findApplication(TableVisor tv, Class<T> type) {
+		for (IApplication app = tv.getTvToControllerLayer(); app != null; app = app.getSuccessingDataPlaneConnector()) {
+			if (type.isInstance(app)) {
+				return type.cast(app);
+			}
+		}
+		throw new IllegalStateException(type.getSimpleName() + " is not enabled");
+	}
+
+	/**
+	 * @return the rules of the example for the emulated switch of TableVisor, repeated up to the given count
+	 */
+	public static List<OFFlowMod> rules(String example, int count) {
+		TableVisor tv = replay(example).getTableVisor();
+		try {
+			List<OFFlowMod> rules = OnosRules.read(exampleDir(example).resolve("onosRules.json"),
+					OnosRules.deviceId(tv.getConfig().getOurDatapathId()));
+			return OnosRules.scale(rules, count);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public static byte[] toFrame(OFMessage msg) {
+		ByteBuf buf = Unpooled.buffer();
+		msg.writeTo(buf);
+		byte[] frame = new byte[buf.readableBytes()];
+		buf.readBytes(frame);
+		return frame;
+	}
+}
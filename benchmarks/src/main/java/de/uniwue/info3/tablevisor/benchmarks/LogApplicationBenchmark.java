@@ -0,0 +1,84 @@
+package de.uniwue.info3.tablevisor.benchmarks;
+
+import de.uniwue.info3.tablevisor.application.ApplicationChain;
+import de.uniwue.info3.tablevisor.application.BaseApplication;
+import de.uniwue.info3.tablevisor.application.IApplication;
+import de.uniwue.info3.tablevisor.application.LogApplication;
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.openjdk.jmh.annotations.*;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.TableId;
+
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-message cost of ControllerLogApplication and SwitchLogApplication with DEBUG disabled: a FLOW_MOD towards
+ * the data plane and a PACKET_IN towards the control plane through a chain of both log apps, with the default and
+ * the asynchronous logging configuration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogApplicationBenchmark {
+	private static final OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
+
+	@Param({"log4j2.xml", "log4j2-async.xml"})
+	public String config;
+
+	private IApplication controllerLog;
+	private IApplication switchLog;
+	private TVMessage flowMod;
+	private TVMessage packetIn;
+	private long received;
+
+	@Setup
+	public void setup() throws URISyntaxException {
+		// each configuration runs in its own fork
+		LoggerContext context = (LoggerContext) LogManager.getContext(false);
+		context.setConfigLocation(getClass().getClassLoader().getResource(config).toURI());
+		if (LogManager.getLogger(LogApplication.class).isDebugEnabled()) {
+			throw new IllegalStateException("DEBUG is enabled by " + config);
+		}
+
+		IApplication top = new BaseApplication(null) {
+			@Override
+			public void allToControlPlane(TVMessage tvMessage) {
+				received++;
+			}
+		};
+		controllerLog = new LogApplication.ControllerLogApplication(top);
+		switchLog = new LogApplication.SwitchLogApplication(controllerLog);
+		new BaseApplication(switchLog) {
+			@Override
+			public void allToDataPlane(TVMessage tvMessage) {
+				received++;
+			}
+		};
+		ApplicationChain.compile(top);
+
+		flowMod = new TVMessage(fac.buildFlowAdd().setTableId(TableId.of(1)).setPriority(100).build(), 1);
+		packetIn = new TVMessage(fac.buildPacketIn().setReason(OFPacketInReason.NO_MATCH).setBufferId(OFBufferId.NO_BUFFER).build(), 1);
+	}
+
+	@Benchmark
+	public long flowModToDataPlane() {
+		controllerLog.allToDataPlane(flowMod);
+		return received;
+	}
+
+	@Benchmark
+	public long packetInToControlPlane() {
+		switchLog.allToControlPlane(packetIn);
+		return received;
+	}
+}
@@ -0,0 +1,105 @@
+package de.uniwue.info3.tablevisor.benchmarks;
+
+import de.uniwue.info3.tablevisor.application.MultiSwitchApplication;
+import de.uniwue.info3.tablevisor.capture.CaptureReplay;
+import de.uniwue.info3.tablevisor.capture.ReplaySwitchSink;
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import org.openjdk.jmh.annotations.*;
+import org.projectfloodlight.openflow.protocol.*;
+import org.projectfloodlight.openflow.types.U64;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Translation of FLOW_MODs towards the switches and aggregation of the switches' flow stats replies
+ * by MultiSwitchApplication, using the rules and configuration of example1.
+ * Each invocation handles the whole rule set; divide by the number of rules for the cost per rule.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiSwitchBenchmark {
+	private static final String EXAMPLE = "example1";
+	private static final OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
+
+	@Param({"5", "1000"})
+	public int rules;
+
+	private CaptureReplay replay;
+	private MultiSwitchApplication app;
+	private List<byte[]> flowMods;
+	private Map<Integer, OFFlowStatsReply> flowStatsReplies;
+
+	@Setup
+	public void setup() {
+		replay = Examples.replay(EXAMPLE);
+		app = Examples.findApplication(replay.getTableVisor(), MultiSwitchApplication.class);
+		flowMods = new ArrayList<>();
+		for (OFFlowMod fm : Examples.rules(EXAMPLE, rules)) {
+			flowMods.add(Examples.toFrame(fm));
+		}
+
+		// The switches report the translated rules
+		Map<Integer, List<OFFlowStatsEntry>> installed = new HashMap<>();
+		for (ReplaySwitchSink sink : replay.getSwitchSinks().values()) {
+			List<OFFlowStatsEntry> entries = new ArrayList<>();
+			installed.put(sink.getDataplanId(), entries);
+			sink.setListener(msg -> {
+				OFFlowMod fm = msg.getOFMessage();
+				entries.add(fac.buildFlowStatsEntry()
+						.setTableId(fm.getTableId())
+						.setPriority(fm.getPriority())
+						.setCookie(fm.getCookie())
+						.setMatch(fm.getMatch())
+						.setInstructions(fm.getInstructions())
+						.setPacketCount(U64.of(1000))
+						.setByteCount(U64.of(100000))
+						.build());
+			});
+		}
+		translateFlowMods();
+		flowStatsReplies = new HashMap<>();
+		for (ReplaySwitchSink sink : replay.getSwitchSinks().values()) {
+			sink.setListener(null);
+			flowStatsReplies.put(sink.getDataplanId(), fac.buildFlowStatsReply()
+					.setXid(42)
+					.setEntries(installed.get(sink.getDataplanId()))
+					.build());
+		}
+	}
+
+	@Benchmark
+	public long flowModToDataPlane() {
+		translateFlowMods();
+		long received = 0;
+		for (ReplaySwitchSink sink : replay.getSwitchSinks().values()) {
+			received += sink.getReceived();
+		}
+		return received;
+	}
+
+	/**
+	 * One flow stats request of the controller: every switch answers with its rules (adaptFlowStatsEntries)
+	 * and the aggregated reply is passed to the controller.
+	 */
+	@Benchmark
+	public long flowStatsAggregation() {
+		for (Map.Entry<Integer, OFFlowStatsReply> e : flowStatsReplies.entrySet()) {
+			app.switchStatsToControlPlane(new TVMessage(e.getValue(), e.getKey()));
+		}
+		return replay.getControllerSink().getReceived();
+	}
+
+	private void translateFlowMods() {
+		for (byte[] frame : flowMods) {
+			app.flowModToDataPlane(new TVMessage(frame, OFType.FLOW_MOD));
+		}
+	}
+}
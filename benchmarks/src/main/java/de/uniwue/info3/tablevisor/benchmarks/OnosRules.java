@@ -0,0 +1,161 @@
+package de.uniwue.info3.tablevisor.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads flow rules in the format of the ONOS REST API (e.g., example1/onosRules.json) into OpenFlow 1.3 FLOW_MODs,
+ * as the controller would send them to TableVisor.
+ */
+public class OnosRules {
+	private static final OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
+
+	/**
+	 * @param deviceId the ONOS device ID of the rules to read (e.g., "of:1111111111111111"); other rules are skipped
+	 */
+	public static List<OFFlowMod> read(Path file, String deviceId) throws IOException {
+		JsonObject root;
+		try (Reader r = Files.newBufferedReader(file)) {
+			root = new JsonParser().parse(r).getAsJsonObject();
+		}
+
+		List<OFFlowMod> rules = new ArrayList<>();
+		for (JsonElement e : root.getAsJsonArray("flows")) {
+			JsonObject flow = e.getAsJsonObject();
+			if (!flow.get("deviceId").getAsString().equals(deviceId)) {
+				continue;
+			}
+			rules.add(fac.buildFlowAdd()
+					.setXid(rules.size() + 1)
+					.setCookie(U64.of(rules.size() + 1))
+					.setTableId(TableId.of(flow.get("tableId").getAsInt()))
+					.setPriority(flow.get("priority").getAsInt())
+					.setMatch(readMatch(flow.getAsJsonObject("selector").getAsJsonArray("criteria")))
+					.setInstructions(readInstructions(flow.getAsJsonObject("treatment").getAsJsonArray("instructions")))
+					.build());
+		}
+		return rules;
+	}
+
+	/**
+	 * Repeats the rules up to the given count; each copy gets its own cookie and priority.
+	 */
+	public static List<OFFlowMod> scale(List<OFFlowMod> rules, int count) {
+		List<OFFlowMod> scaled = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			OFFlowMod rule = rules.get(i % rules.size());
+			scaled.add(rule.createBuilder()
+					.setXid(i + 1)
+					.setCookie(U64.of(i + 1))
+					.setPriority(rule.getPriority() + i / rules.size())
+					.build());
+		}
+		return scaled;
+	}
+
+	/**
+	 * @return the ONOS device ID of a datapath ID, e.g., "of:1111111111111111"
+	 */
+	public static String deviceId(DatapathId dpid) {
+		return String.format("of:%016x", dpid.getLong());
+	}
+
+	private static Match readMatch(JsonArray criteria) {
+		Match.Builder builder = fac.buildMatch();
+		for (JsonElement e : criteria) {
+			JsonObject c = e.getAsJsonObject();
+			String type = c.get("type").getAsString();
+			switch (type) {
+				case "IN_PORT":
+					builder.setExact(MatchField.IN_PORT, OFPort.of(c.get("port").getAsInt()));
+					break;
+				case "ETH_TYPE":
+					builder.setExact(MatchField.ETH_TYPE, EthType.of(Integer.decode(c.get("ethType").getAsString())));
+					break;
+				case "ETH_DST":
+					builder.setExact(MatchField.ETH_DST, MacAddress.of(c.get("mac").getAsString()));
+					break;
+				case "MPLS_LABEL":
+					builder.setExact(MatchField.MPLS_LABEL, U32.of(c.get("label").getAsLong()));
+					break;
+				case "IPV4_DST":
+					IPv4AddressWithMask ip = IPv4AddressWithMask.of(c.get("ip").getAsString());
+					if (ip.getMask().equals(IPv4Address.NO_MASK)) {
+						builder.setExact(MatchField.IPV4_DST, ip.getValue());
+					}
+					else {
+						builder.setMasked(MatchField.IPV4_DST, ip);
+					}
+					break;
+				default:
+					throw new IllegalArgumentException("Unsupported criterion " + type);
+			}
+		}
+		return builder.build();
+	}
+
+	private static List<OFInstruction> readInstructions(JsonArray instructions) {
+		List<OFAction> actions = new ArrayList<>();
+		OFInstruction gotoTable = null;
+		for (JsonElement e : instructions) {
+			JsonObject i = e.getAsJsonObject();
+			String type = i.get("type").getAsString();
+			switch (type) {
+				case "OUTPUT":
+					actions.add(fac.actions().output(OFPort.of(i.get("port").getAsInt()), 0xffff));
+					break;
+				case "TABLE":
+					gotoTable = fac.instructions().gotoTable(TableId.of(i.get("tableId").getAsInt()));
+					break;
+				case "L2MODIFICATION":
+					actions.add(readL2Modification(i));
+					break;
+				default:
+					throw new IllegalArgumentException("Unsupported instruction " + type);
+			}
+		}
+
+		List<OFInstruction> insts = new ArrayList<>();
+		if (!actions.isEmpty()) {
+			insts.add(fac.instructions().applyActions(actions));
+		}
+		if (gotoTable != null) {
+			insts.add(gotoTable);
+		}
+		return insts;
+	}
+
+	private static OFAction readL2Modification(JsonObject i) {
+		String subtype = i.get("subtype").getAsString();
+		switch (subtype) {
+			case "MPLS_PUSH":
+				return fac.actions().pushMpls(EthType.of(Integer.decode(i.get("ethernetType").getAsString())));
+			case "MPLS_POP":
+				return fac.actions().popMpls(EthType.of(Integer.decode(i.get("ethernetType").getAsString())));
+			case "MPLS_LABEL":
+				return fac.actions().setField(fac.oxms().mplsLabel(U32.of(i.get("label").getAsLong())));
+			case "ETH_DST":
+				return fac.actions().setField(fac.oxms().ethDst(MacAddress.of(i.get("mac").getAsString())));
+			default:
+				throw new IllegalArgumentException("Unsupported L2 modification " + subtype);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package de.uniwue.info3.tablevisor.benchmarks;
+
+import de.uniwue.info3.tablevisor.application.P4ControlApplication;
+import de.uniwue.info3.tablevisor.capture.CaptureReplay;
+import de.uniwue.info3.tablevisor.capture.ReplaySwitchSink;
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import org.openjdk.jmh.annotations.*;
+import org.projectfloodlight.openflow.protocol.*;
+import org.projectfloodlight.openflow.types.TableId;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generation of RTECLI commands for FLOW_MODs and parsing of the TableEntry replies to a flow stats request
+ * by P4ControlApplication, using the rules and configuration of example2.
+ * Each invocation handles the whole rule set; divide by the number of rules for the cost per rule.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class P4ControlBenchmark {
+	private static final String EXAMPLE = "example2";
+	private static final OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
+
+	// parameters of the generated commands, e.g. "eth_type": { "value": "0x0800" }
+	private static final Pattern pParam = Pattern.compile("\"([^\"]+)\": \\{ \"value\": \"([^\"]+)\" \\}");
+	private static final Pattern pType = Pattern.compile("\"type\": \"([^\"]+)\"");
+
+	@Param({"4", "1000"})
+	public int rules;
+
+	private P4ControlApplication app;
+	private ReplaySwitchSink sink;
+	private List<byte[]> flowMods;
+	private Map<String, String> tableEntries;
+	private TVMessage flowStatsRequest;
+	private final List<TVMessage> calls = new ArrayList<>();
+
+	@Setup
+	public void setup() {
+		CaptureReplay replay = Examples.replay(EXAMPLE);
+		app = Examples.findApplication(replay.getTableVisor(), P4ControlApplication.class);
+		sink = replay.getSwitchSinks().values().iterator().next();
+		flowMods = new ArrayList<>();
+		for (OFFlowMod fm : Examples.rules(EXAMPLE, rules)) {
+			flowMods.add(Examples.toFrame(fm));
+		}
+
+		// The switch reports the installed rules as RTECLI does
+		Map<String, StringJoiner> entries = new HashMap<>();
+		sink.setListener(call -> {
+			String table = option(call, "--table-name ");
+			entries.computeIfAbsent(table, t -> new StringJoiner(", ", "[", "]")).add(toTableEntry(call));
+		});
+		generateCommands();
+
+		tableEntries = new HashMap<>();
+		for (Map.Entry<String, StringJoiner> e : entries.entrySet()) {
+			tableEntries.put(e.getKey(), e.getValue().toString());
+		}
+		flowStatsRequest = new TVMessage(fac.buildFlowStatsRequest().setXid(42).setTableId(TableId.ALL).build(), sink.getDataplanId());
+		sink.setListener(calls::add);
+	}
+
+	/**
+	 * The FLOW_MODs of the controller and the replies of the switch to the resulting commands.
+	 */
+	@Benchmark
+	public long flowModToDataPlane() {
+		calls.clear();
+		generateCommands();
+		for (TVMessage call : calls) {
+			app.allToControlPlane(new TVMessage("", call.getOriginalRequest(), sink.getDataplanId()));
+		}
+		return sink.getReceived();
+	}
+
+	/**
+	 * One flow stats request of the controller: a list-rules command per table and the parsing of their replies.
+	 */
+	@Benchmark
+	public int tableEntryParsing() {
+		calls.clear();
+		app.switchStatsToDataPlane(flowStatsRequest);
+		for (TVMessage call : calls) {
+			String reply = tableEntries.getOrDefault(option(call, "--table-name "), "[]");
+			app.allToControlPlane(new TVMessage(reply, call.getOriginalRequest(), sink.getDataplanId()));
+		}
+		return calls.size();
+	}
+
+	private void generateCommands() {
+		for (byte[] frame : flowMods) {
+			TVMessage msg = new TVMessage(frame, OFType.FLOW_MOD);
+			msg.setDataplaneId(sink.getDataplanId());
+			app.flowModToDataPlane(msg);
+		}
+	}
+
+	private static String option(TVMessage call, String prefix) {
+		for (String s : call.getCmdLine()) {
+			if (s.startsWith(prefix)) {
+				return s.substring(prefix.length());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Formats an add command as RTECLI lists the rule.
+	 */
+	private static String toTableEntry(TVMessage call) {
+		String action = option(call, "--action ");
+		Matcher mType = pType.matcher(action);
+		if (!mType.find()) {
+			throw new IllegalArgumentException("No action type in " + action);
+		}
+		return "TableEntry(priority=" + option(call, "--priority ")
+				+ ", rule_name='" + option(call, "--rule ")
+				+ "', default_rule=False, actions='{ \"type\" : \"" + mType.group(1) + "\",  \"data\" : { "
+				+ params(action.substring(mType.end()), " : { \"value\" : ")
+				+ " } }', match='{ "
+				+ params(option(call, "--match "), " : {  \"value\" : ")
+				+ " }')";
+	}
+
+	private static String params(String s, String separator) {
+		StringJoiner sj = new StringJoiner(", ");
+		Matcher m = pParam.matcher(s);
+		while (m.find()) {
+			sj.add("\"" + m.group(1) + "\"" + separator + "\"" + m.group(2) + "\" }");
+		}
+		return sj.toString();
+	}
+}
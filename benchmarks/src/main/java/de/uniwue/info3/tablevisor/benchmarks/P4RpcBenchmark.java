@@ -0,0 +1,110 @@
+package de.uniwue.info3.tablevisor.benchmarks;
+
+import de.uniwue.info3.tablevisor.message.P4Operation;
+import de.uniwue.info3.tablevisor.message.P4TableEntry;
+import de.uniwue.info3.tablevisor.p4rpc.P4RpcCodec;
+import de.uniwue.info3.tablevisor.p4rpc.P4RpcMessage;
+import de.uniwue.info3.tablevisor.p4rpc.P4RpcMockServer;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of the P4 RPC protocol against the in-process mock server: a batch of rule additions followed
+ * by a batch of deletions of the same rules (writeBatch), and a read of a table of the given size (readTable).
+ * The entries resemble those of example2 (MPLS table with a match on eth_dst and eth_type).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class P4RpcBenchmark {
+	@Param({"4", "1000"})
+	public int rules;
+
+	private EventLoopGroup group;
+	private Channel channel;
+	private final Map<Integer, CompletableFuture<P4RpcMessage>> pending = new ConcurrentHashMap<>();
+	private int nextRequestId = 1;
+
+	private List<P4TableEntry> entries;
+	private List<P4Operation> adds;
+	private List<P4Operation> deletes;
+
+	@Setup
+	public void setup() throws Exception {
+		group = new DefaultEventLoopGroup(2);
+		LocalAddress address = new LocalAddress("p4rpc-benchmark");
+		new P4RpcMockServer().bind(group, address).sync();
+		channel = new Bootstrap()
+				.group(group)
+				.channel(LocalChannel.class)
+				.handler(new ChannelInitializer<Channel>() {
+					@Override
+					protected void initChannel(Channel ch) {
+						P4RpcCodec.initPipeline(ch.pipeline());
+						ch.pipeline().addLast(new SimpleChannelInboundHandler<P4RpcMessage>() {
+							@Override
+							protected void channelRead0(ChannelHandlerContext ctx, P4RpcMessage msg) {
+								if (!msg.isMore()) {
+									pending.remove(msg.getRequestId()).complete(msg);
+								}
+							}
+						});
+					}
+				})
+				.connect(address).sync().channel();
+
+		entries = new ArrayList<>(rules);
+		for (int i = 0; i < rules; i++) {
+			P4TableEntry e = new P4TableEntry("mpls_tbl")
+					.setRuleName("r" + Integer.toHexString(i + 1))
+					.setPriority(10 + i)
+					.setActionType("mpls_pop_goto_2");
+			e.getMatch().put("ethernet.dstAddr", String.format("00:00:00:%02x:%02x:%02x", (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff));
+			e.getMatch().put("ethernet.etherType", "0x8847");
+			e.getActionData().put("ethertype", "0x800");
+			entries.add(e);
+		}
+		adds = Collections.nCopies(rules, P4Operation.ADD);
+		deletes = Collections.nCopies(rules, P4Operation.DELETE);
+
+		call(P4RpcMessage.writeRequest(nextRequestId++, adds, entries));
+	}
+
+	@TearDown
+	public void tearDown() {
+		channel.close();
+		group.shutdownGracefully();
+	}
+
+	@Benchmark
+	public int writeBatch() throws Exception {
+		call(P4RpcMessage.writeRequest(nextRequestId++, deletes, entries));
+		return call(P4RpcMessage.writeRequest(nextRequestId++, adds, entries)).getStatuses().size();
+	}
+
+	@Benchmark
+	public int readTable() throws Exception {
+		return call(P4RpcMessage.readRequest(nextRequestId++, "mpls_tbl")).getRequestId();
+	}
+
+	private P4RpcMessage call(P4RpcMessage request) throws Exception {
+		CompletableFuture<P4RpcMessage> reply = new CompletableFuture<>();
+		pending.put(request.getRequestId(), reply);
+		channel.writeAndFlush(request);
+		return reply.get(10, TimeUnit.SECONDS);
+	}
+}
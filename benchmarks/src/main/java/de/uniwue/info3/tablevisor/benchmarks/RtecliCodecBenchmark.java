@@ -0,0 +1,146 @@
+package de.uniwue.info3.tablevisor.benchmarks;
+
+import de.uniwue.info3.tablevisor.message.P4Operation;
+import de.uniwue.info3.tablevisor.message.P4TableEntry;
+import de.uniwue.info3.tablevisor.message.RtecliCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parsing of the list-rules output of one table by {@link RtecliCodec} (tokenizer) compared to the regular expressions
+ * that P4ControlApplication used before (regex), and the generation of the add commands for the same entries.
+ * The setup checks both parsers against the output shown in example2/README.md and against each other.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RtecliCodecBenchmark {
+	private static final String TABLE = "ingress::dmac";
+	private static final String CAPTURED = "[TableEntry(priority=15, rule_name='r008500002447597e', default_rule=False, "
+			+ "actions='{  \"type\" : \"set_dst_mac\",  \"data\" : { \"mac\" : { \"value\" : \"00:00:00:00:00:02\" } } }', "
+			+ "match='{ \"eth.etype\" : {  \"value\" : \"0x800\" }, \"ipv4.dstAddr\" : {  \"value\" : \"10.100.100.10\" } }')]";
+
+	private static final Pattern pTableEntry = Pattern.compile("TableEntry\\(priority=(\\d+), rule_name='([^']+)', default_rule=(True|False), actions='\\{ ([^']*) \\}', match='\\{ ([^']*) \\}'");
+	private static final Pattern pMatch = Pattern.compile("\"([^\"]+)\" : \\{  \"value\" : \"([^\"]+)\" \\}");
+	private static final Pattern pAction = Pattern.compile("\"type\" : \"([^\"]+)\",  \"data\" : \\{ (.*) \\}");
+	private static final Pattern pData = Pattern.compile("\"([^\"]+)\" : \\{ \"value\" : \"([^\"]+)\" \\}");
+
+	@Param({"1000", "50000"})
+	public int entries;
+
+	private String output;
+	private List<P4TableEntry> parsed;
+
+	@Setup
+	public void setup() {
+		List<P4TableEntry> captured = RtecliCodec.parseTableEntries(CAPTURED, TABLE);
+		P4TableEntry e = captured.get(0);
+		if (captured.size() != 1 || e.getPriority() != 15 || !e.getRuleName().equals("r008500002447597e") || e.isDefaultRule()
+				|| !e.getActionType().equals("set_dst_mac") || !e.getActionData().get("mac").equals("00:00:00:00:00:02")
+				|| !e.getMatch().get("eth.etype").equals("0x800") || !e.getMatch().get("ipv4.dstAddr").equals("10.100.100.10")) {
+			throw new IllegalStateException("Unexpected entry " + e);
+		}
+		check(captured, regex(CAPTURED, TABLE));
+
+		StringJoiner sj = new StringJoiner(", ", "[", "]");
+		for (int i = 0; i < entries; i++) {
+			sj.add(String.format("TableEntry(priority=%d, rule_name='r%016x', default_rule=False, "
+							+ "actions='{  \"type\" : \"set_dst_mac\",  \"data\" : { \"mac\" : { \"value\" : \"00:00:00:%02x:%02x:%02x\" } } }', "
+							+ "match='{ \"eth.etype\" : {  \"value\" : \"0x800\" }, \"ipv4.dstAddr\" : {  \"value\" : \"10.%d.%d.%d\" } }')",
+					i % 100, 0x85000000000000L + i, (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff, (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff));
+		}
+		output = sj.toString();
+		parsed = RtecliCodec.parseTableEntries(output, TABLE);
+		check(parsed, regex(output, TABLE));
+	}
+
+	@Benchmark
+	public List<P4TableEntry> tokenizer() {
+		return RtecliCodec.parseTableEntries(output, TABLE);
+	}
+
+	@Benchmark
+	public List<P4TableEntry> regex() {
+		return regex(output, TABLE);
+	}
+
+	@Benchmark
+	public int encode() {
+		int length = 0;
+		for (P4TableEntry e : parsed) {
+			length += RtecliCodec.toCmdLine(P4Operation.ADD, e).size();
+		}
+		return length;
+	}
+
+	private static void check(List<P4TableEntry> a, List<P4TableEntry> b) {
+		if (a.size() != b.size()) {
+			throw new IllegalStateException(a.size() + " != " + b.size() + " entries");
+		}
+		for (int i = 0; i < a.size(); i++) {
+			if (!a.get(i).toString().equals(b.get(i).toString())) {
+				throw new IllegalStateException(a.get(i) + " != " + b.get(i));
+			}
+		}
+	}
+
+	/**
+	 * The former parsing of P4ControlApplication.
+	 */
+	private static List<P4TableEntry> regex(String reply, String table) {
+		List<P4TableEntry> ret = new ArrayList<>();
+
+		String replyS = reply.trim();
+		if (replyS.startsWith("[") && replyS.endsWith(")]")) {
+			replyS = replyS.substring(1, replyS.length() - 2);
+		}
+
+		for (String part : replyS.split("\\),")) {
+			part = part.trim();
+			if (part.equals("[]")) continue;
+
+			Matcher mTableEntry = pTableEntry.matcher(part);
+			if (!mTableEntry.matches()) {
+				throw new IllegalArgumentException(part);
+			}
+			P4TableEntry entry = new P4TableEntry(table)
+					.setPriority(Integer.parseInt(mTableEntry.group(1)))
+					.setRuleName(mTableEntry.group(2))
+					.setDefaultRule(mTableEntry.group(3).equals("True"));
+			for (String m : mTableEntry.group(5).split(",")) {
+				m = m.trim();
+				if (m.isEmpty()) continue;
+				Matcher mMatch = pMatch.matcher(m);
+				if (!mMatch.matches()) {
+					throw new IllegalArgumentException(m);
+				}
+				entry.getMatch().put(mMatch.group(1), mMatch.group(2));
+			}
+			Matcher mAction = pAction.matcher(mTableEntry.group(4).trim());
+			if (!mAction.matches()) {
+				throw new IllegalArgumentException(mTableEntry.group(4));
+			}
+			entry.setActionType(mAction.group(1).trim());
+			for (String d : mAction.group(2).trim().split(",")) {
+				d = d.trim();
+				if (d.isEmpty()) continue;
+				Matcher mData = pData.matcher(d);
+				if (!mData.matches()) {
+					throw new IllegalArgumentException(d);
+				}
+				entry.getActionData().put(mData.group(1), mData.group(2));
+			}
+			ret.add(entry);
+		}
+		return ret;
+	}
+}
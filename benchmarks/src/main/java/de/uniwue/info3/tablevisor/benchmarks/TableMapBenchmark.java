@@ -0,0 +1,65 @@
+package de.uniwue.info3.tablevisor.benchmarks;
+
+import de.uniwue.info3.tablevisor.config.IdPair;
+import de.uniwue.info3.tablevisor.config.SwitchConfig;
+import de.uniwue.info3.tablevisor.core.TableVisor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.projectfloodlight.openflow.types.TableId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Table ID translations between the emulated switch and the switches of example1, as done for every FLOW_MOD,
+ * PACKET_IN and stats entry. Each invocation translates all table IDs of the configuration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableMapBenchmark {
+	private TableVisor tv;
+	private TableId[] ourTableIds;
+	private int[] switchDataplaneIds;
+	private TableId[] switchTableIds;
+
+	@Setup
+	public void setup() {
+		tv = Examples.replay("example1").getTableVisor();
+		ourTableIds = new TableId[tv.maxTableId() + 1];
+		for (int i = 0; i < ourTableIds.length; i++) {
+			ourTableIds[i] = TableId.of(i);
+		}
+		List<int[]> pairs = new ArrayList<>();
+		for (SwitchConfig swc : tv.getConfig().getAllSwitches()) {
+			for (int t : swc.tableMap.values()) {
+				pairs.add(new int[]{swc.dataplaneId, t});
+			}
+		}
+		switchDataplaneIds = new int[pairs.size()];
+		switchTableIds = new TableId[pairs.size()];
+		for (int i = 0; i < pairs.size(); i++) {
+			switchDataplaneIds[i] = pairs.get(i)[0];
+			switchTableIds[i] = TableId.of(pairs.get(i)[1]);
+		}
+	}
+
+	@Benchmark
+	public void ourTableIdToSwitchId(Blackhole bh) {
+		for (TableId t : ourTableIds) {
+			IdPair pair = tv.ourTableIdToSwitchId(t);
+			bh.consume(pair);
+		}
+	}
+
+	@Benchmark
+	public void switchIdToOurTableId(Blackhole bh) {
+		for (int i = 0; i < switchTableIds.length; i++) {
+			bh.consume(tv.switchIdToOurTableId(switchDataplaneIds[i], switchTableIds[i]));
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package de.uniwue.info3.tablevisor.benchmarks.load;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.*;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.projectfloodlight.openflow.protocol.*;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.*;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * cbench-like controller that TableVisor's upper-layer endpoint connects to.
+ * It answers each PACKET_IN with a PACKET_OUT carrying the same data, and offers blocking
+ * request/reply operations (barrier, flow stats) for the measurements.
+ */
+class ControllerStandIn extends SimpleChannelInboundHandler<OFMessage> {
+	private static final OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
+
+	private final CompletableFuture<OFFeaturesReply> features = new CompletableFuture<>();
+	private final Map<Long, CompletableFuture<OFMessage>> pending = new ConcurrentHashMap<>();
+	private volatile Channel channel;
+	private long nextXid = 1;
+
+	ChannelFuture bind(EventLoopGroup group, int port) {
+		return new ServerBootstrap()
+				.group(group)
+				.channel(NioServerSocketChannel.class)
+				.option(ChannelOption.SO_REUSEADDR, true)
+				.childOption(ChannelOption.TCP_NODELAY, true)
+				.childHandler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) {
+						OFCodec.initPipeline(ch, ControllerStandIn.this);
+					}
+				})
+				.bind(port);
+	}
+
+	/**
+	 * Waits until TableVisor has connected and answered the FEATURES_REQUEST.
+	 */
+	OFFeaturesReply awaitFeatures(long timeout, TimeUnit unit) throws Exception {
+		return features.get(timeout, unit);
+	}
+
+	/**
+	 * Sends the FLOW_MODs followed by a BARRIER_REQUEST and waits for the barrier reply.
+	 * Writes are flushed in batches and wait for the channel when it is not writable.
+	 */
+	void installAndBarrier(Iterable<OFFlowMod> flowMods, long timeout, TimeUnit unit) throws Exception {
+		int n = 0;
+		for (OFFlowMod fm : flowMods) {
+			ChannelFuture f = channel.write(fm);
+			if (++n % 256 == 0) {
+				channel.flush();
+				if (!channel.isWritable()) {
+					f.sync();
+				}
+			}
+		}
+		request(fac.buildBarrierRequest(), timeout, unit);
+	}
+
+	/**
+	 * Requests the flow stats of all tables and waits for the last fragment of the reply.
+	 */
+	void flowStats(long timeout, TimeUnit unit) throws Exception {
+		request(fac.buildFlowStatsRequest().setTableId(TableId.ALL), timeout, unit);
+	}
+
+	private synchronized OFMessage request(OFMessage.Builder builder, long timeout, TimeUnit unit) throws Exception {
+		long xid = nextXid++;
+		CompletableFuture<OFMessage> reply = new CompletableFuture<>();
+		pending.put(xid, reply);
+		channel.writeAndFlush(builder.setXid(xid).build());
+		try {
+			return reply.get(timeout, unit);
+		}
+		finally {
+			pending.remove(xid);
+		}
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, OFMessage msg) {
+		switch (msg.getType()) {
+			case HELLO:
+				channel = ctx.channel();
+				ctx.write(fac.buildHello().build());
+				ctx.writeAndFlush(fac.buildFeaturesRequest().build());
+				break;
+			case ECHO_REQUEST:
+				ctx.writeAndFlush(fac.buildEchoReply().setXid(msg.getXid()).setData(((OFEchoRequest) msg).getData()).build());
+				break;
+			case FEATURES_REPLY:
+				features.complete((OFFeaturesReply) msg);
+				break;
+			case PACKET_IN:
+				OFPacketIn pi = (OFPacketIn) msg;
+				ctx.writeAndFlush(fac.buildPacketOut()
+						.setBufferId(OFBufferId.NO_BUFFER)
+						.setInPort(pi.getMatch().get(MatchField.IN_PORT))
+						.setActions(Collections.singletonList(fac.actions().output(OFPort.of(2), 0xffff)))
+						.setData(pi.getData())
+						.build(), ctx.voidPromise());
+				break;
+			case BARRIER_REPLY:
+				complete(msg);
+				break;
+			case STATS_REPLY:
+				if (!((OFStatsReply) msg).getFlags().contains(OFStatsReplyFlags.REPLY_MORE)) {
+					complete(msg);
+				}
+				break;
+			case ERROR:
+				System.err.println("Controller received " + msg);
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void complete(OFMessage msg) {
+		CompletableFuture<OFMessage> f = pending.get(msg.getXid());
+		if (f != null) {
+			f.complete(msg);
+		}
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+		System.err.println("Controller: " + cause);
+	}
+}
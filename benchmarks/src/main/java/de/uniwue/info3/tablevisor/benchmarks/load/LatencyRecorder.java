@@ -0,0 +1,42 @@
+package de.uniwue.info3.tablevisor.benchmarks.load;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects a fixed number of latency samples (in nanoseconds) from any thread and reports percentiles.
+ */
+class LatencyRecorder {
+	private final long[] samples;
+	private final AtomicInteger count = new AtomicInteger();
+
+	LatencyRecorder(int capacity) {
+		samples = new long[capacity];
+	}
+
+	void record(long nanos) {
+		int i = count.getAndIncrement();
+		if (i < samples.length) {
+			samples[i] = nanos;
+		}
+	}
+
+	int getCount() {
+		return Math.min(count.get(), samples.length);
+	}
+
+	/**
+	 * @param p percentile between 0 and 100
+	 * @return the latency in microseconds, or NaN without samples
+	 */
+	double percentile(double p) {
+		int n = getCount();
+		if (n == 0) {
+			return Double.NaN;
+		}
+		long[] sorted = Arrays.copyOf(samples, n);
+		Arrays.sort(sorted);
+		int i = (int) Math.ceil(p / 100.0 * n) - 1;
+		return sorted[Math.max(0, Math.min(n - 1, i))] / 1000.0;
+	}
+}
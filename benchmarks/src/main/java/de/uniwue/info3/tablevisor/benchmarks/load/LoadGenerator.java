@@ -0,0 +1,358 @@
+package de.uniwue.info3.tablevisor.benchmarks.load;
+
+import de.uniwue.info3.tablevisor.core.TableVisor;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import io.netty.util.internal.logging.Log4J2LoggerFactory;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end load test of TableVisor (MultiSwitchApplication) on localhost.
+ * TableVisor is started with a generated configuration of N switches with T tables each (a linear chain),
+ * N simulated switches connect to its lower-layer endpoint, and a controller stand-in accepts its upper-layer connection.
+ * <p>
+ * Measured are the FLOW_MOD install rate (until the aggregated barrier reply), the round-trip latency of
+ * PACKET_IN (switch) to PACKET_OUT (controller) to the switch, and the latency of aggregated flow stats requests.
+ * <p>
+ * Usage: LoadGenerator [--switches 1,2,4] [--tables 2,8] [--flows 10000] [--packet-ins 20000] [--window 1] [--stats 20] [--workers 0] [--verbose]
+ * <br>
+ * With several switch or table counts, every combination runs in its own JVM, as there is only one TableVisor per JVM.
+ * With {@code --workers} greater than 0, the applications are run by that many pipeline workers.
+ */
+public class LoadGenerator {
+	private static final OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
+	private static final long TIMEOUT = 60;
+
+	private final int switches;
+	private final int tables;
+	private final int flows;
+	private final int packetIns;
+	private final int window;
+	private final int stats;
+	private final int workers;
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> opts = parseOptions(args);
+		List<Integer> switchCounts = parseList(opts.getOrDefault("switches", "1,2,4"));
+		List<Integer> tableCounts = parseList(opts.getOrDefault("tables", "2,8"));
+
+		if (switchCounts.size() == 1 && tableCounts.size() == 1) {
+			InternalLoggerFactory.setDefaultFactory(Log4J2LoggerFactory.INSTANCE);
+			LoadGenerator gen = new LoadGenerator(switchCounts.get(0), tableCounts.get(0), opts);
+			System.out.println(gen.run());
+			System.exit(0);
+		}
+
+		System.out.println(String.format("%8s %6s %8s %12s %10s %10s %10s %10s %10s",
+				"switches", "tables", "flows", "flowMods/s", "pktIn p50", "p99", "p99.9", "stats p50", "p99"));
+		System.out.println(String.format("%8s %6s %8s %12s %10s %10s %10s %10s %10s",
+				"", "", "", "", "[us]", "[us]", "[us]", "[ms]", "[ms]"));
+		for (int s : switchCounts) {
+			for (int t : tableCounts) {
+				Map<String, String> childOpts = parseOptions(args);
+				childOpts.put("switches", String.valueOf(s));
+				childOpts.put("tables", String.valueOf(t));
+				Map<String, String> r = runInChildJvm(LoadGenerator.class, childOpts, opts.containsKey("verbose"));
+				if (r == null) {
+					System.out.println(String.format("%8d %6d  failed", s, t));
+					continue;
+				}
+				System.out.println(String.format("%8d %6d %8s %12s %10s %10s %10s %10s %10s",
+						s, t, r.get("flows"), r.get("flowModRate"), r.get("pktInP50"), r.get("pktInP99"), r.get("pktInP999"),
+						r.get("statsP50"), r.get("statsP99")));
+			}
+		}
+	}
+
+	LoadGenerator(int switches, int tables, Map<String, String> opts) {
+		this.switches = switches;
+		this.tables = tables;
+		this.flows = Integer.parseInt(opts.getOrDefault("flows", "10000"));
+		this.packetIns = Integer.parseInt(opts.getOrDefault("packet-ins", "20000"));
+		this.window = Integer.parseInt(opts.getOrDefault("window", "1"));
+		this.stats = Integer.parseInt(opts.getOrDefault("stats", "20"));
+		this.workers = Integer.parseInt(opts.getOrDefault("workers", "0"));
+	}
+
+	/**
+	 * Runs all measurements and returns them as a line "RESULT key=value ...".
+	 */
+	String run() throws Exception {
+		int controllerPort = freePort();
+		int switchPort = freePort();
+		Path config = writeConfig(controllerPort, switchPort);
+
+		EventLoopGroup controllerGroup = new NioEventLoopGroup(1);
+		EventLoopGroup switchGroup = new NioEventLoopGroup(Math.min(switches, Runtime.getRuntime().availableProcessors()));
+		ControllerStandIn controller = new ControllerStandIn();
+		controller.bind(controllerGroup, controllerPort).sync();
+
+		TableVisor tv = new TableVisor(config);
+		Thread tvThread = new Thread(tv::start, "TableVisor");
+		tvThread.setDaemon(true);
+		tvThread.start();
+
+		// PACKET_OUTs are sent to the switch of table 0, whichever switch sent the PACKET_IN
+		List<SimulatedSwitch> sims = new ArrayList<>();
+		PacketInLoop packetInLoop = new PacketInLoop(sims);
+		for (int i = 1; i <= switches; i++) {
+			SimulatedSwitch sim = new SimulatedSwitch(i, DatapathId.of(i), tables, packetInLoop::packetOut);
+			sims.add(sim);
+			connectWithRetry(sim, switchGroup, switchPort);
+		}
+		controller.awaitFeatures(TIMEOUT, TimeUnit.SECONDS);
+
+		int maxTableId = tv.maxTableId();
+		int warmup = Math.min(1000, flows);
+		controller.installAndBarrier(generateFlows(0, warmup, maxTableId), TIMEOUT, TimeUnit.SECONDS);
+		long start = System.nanoTime();
+		controller.installAndBarrier(generateFlows(warmup, flows, maxTableId), TIMEOUT, TimeUnit.SECONDS);
+		double flowModRate = flows / ((System.nanoTime() - start) / 1e9);
+		long installed = sims.stream().mapToLong(SimulatedSwitch::getFlowMods).sum();
+		if (installed != warmup + flows) {
+			System.err.println("Switches received " + installed + " FLOW_MODs, expected " + (warmup + flows));
+		}
+
+		LatencyRecorder pktIn = packetInLoop.run(packetIns, window);
+
+		LatencyRecorder statsLatency = new LatencyRecorder(stats);
+		controller.flowStats(TIMEOUT, TimeUnit.SECONDS);
+		for (int i = 0; i < stats; i++) {
+			long t = System.nanoTime();
+			controller.flowStats(TIMEOUT, TimeUnit.SECONDS);
+			statsLatency.record(System.nanoTime() - t);
+		}
+
+		switchGroup.shutdownGracefully();
+		controllerGroup.shutdownGracefully();
+		return String.format(Locale.ROOT, "RESULT switches=%d tables=%d flows=%d flowModRate=%.0f pktInP50=%.1f pktInP99=%.1f pktInP999=%.1f statsP50=%.2f statsP99=%.2f",
+				switches, tables, flows, flowModRate,
+				pktIn.percentile(50), pktIn.percentile(99), pktIn.percentile(99.9),
+				statsLatency.percentile(50) / 1000, statsLatency.percentile(99) / 1000);
+	}
+
+	/**
+	 * Keeps a window of PACKET_INs per switch in flight; each PACKET_OUT triggers the next PACKET_IN of its origin.
+	 */
+	private static class PacketInLoop {
+		private final List<SimulatedSwitch> sims;
+		private volatile LatencyRecorder recorder;
+		private volatile CountDownLatch done;
+		private final AtomicInteger remaining = new AtomicInteger();
+		private int skip;
+		private final AtomicInteger received = new AtomicInteger();
+
+		PacketInLoop(List<SimulatedSwitch> sims) {
+			this.sims = sims;
+		}
+
+		LatencyRecorder run(int count, int window) throws InterruptedException {
+			// the first tenth warms up the path and is not recorded
+			skip = count / 10;
+			recorder = new LatencyRecorder(count - skip);
+			received.set(0);
+			done = new CountDownLatch(count);
+			remaining.set(count);
+			for (SimulatedSwitch sim : sims) {
+				for (int i = 0; i < window && remaining.getAndDecrement() > 0; i++) {
+					sim.sendPacketIn(0);
+				}
+			}
+			if (!done.await(TIMEOUT, TimeUnit.SECONDS)) {
+				System.err.println("PACKET_OUTs missing: " + done.getCount());
+			}
+			return recorder;
+		}
+
+		void packetOut(ByteBuffer data) {
+			if (data.remaining() < 12 || done == null) {
+				return;
+			}
+			long latency = System.nanoTime() - data.getLong();
+			int origin = data.getInt();
+			if (received.getAndIncrement() >= skip) {
+				recorder.record(latency);
+			}
+			done.countDown();
+			if (remaining.getAndDecrement() > 0) {
+				sims.get(origin - 1).sendPacketIn(0);
+			}
+		}
+	}
+
+	/**
+	 * Rules that chain all tables: each table forwards to the next one, the last table outputs to port 1.
+	 */
+	private static List<OFFlowMod> generateFlows(int from, int count, int maxTableId) {
+		List<OFFlowMod> flowMods = new ArrayList<>(count);
+		for (int i = from; i < from + count; i++) {
+			int table = i % (maxTableId + 1);
+			OFInstruction inst = (table < maxTableId
+					? fac.instructions().gotoTable(TableId.of(table + 1))
+					: fac.instructions().applyActions(Collections.singletonList(fac.actions().output(OFPort.of(1), 0xffff))));
+			flowMods.add(fac.buildFlowAdd()
+					.setXid(0x10000000L + i)
+					.setCookie(U64.of(i + 1))
+					.setTableId(TableId.of(table))
+					.setPriority(100)
+					.setMatch(fac.buildMatch()
+							.setExact(MatchField.ETH_TYPE, EthType.IPv4)
+							.setExact(MatchField.IPV4_DST, IPv4Address.of(0x0a000000 + i))
+							.build())
+					.setInstructions(Collections.singletonList(inst))
+					.build());
+		}
+		return flowMods;
+	}
+
+	/**
+	 * Writes a configuration of a linear chain of switches: switch k holds the tables (k-1)*T ... k*T-1,
+	 * and (as in example1) the last table returns to the first switch.
+	 */
+	private Path writeConfig(int controllerPort, int switchPort) throws IOException {
+		Path config = Files.createTempFile("tablevisor-load", ".yml");
+		config.toFile().deleteOnExit();
+		try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(config))) {
+			w.println("ourDatapathId: 00:00:00:00:00:00:11:11");
+			w.println("logSummaryInterval: 0");
+			if (workers > 0) {
+				w.println("pipeline:");
+				w.println("  workers: " + workers);
+			}
+			w.println("upperLayerEndpoints:");
+			w.println("  - name: ControllerStandIn");
+			w.println("    type: OPENFLOW");
+			w.println("    ip: 127.0.0.1");
+			w.println("    port: " + controllerPort);
+			w.println("    reconnectInterval: 1000");
+			w.println("lowerLayerEndpoints:");
+			w.println("  - name: SimulatedSwitches");
+			w.println("    type: OPENFLOW");
+			w.println("    port: " + switchPort);
+			w.println("    switches:");
+			for (int k = 1; k <= switches; k++) {
+				StringJoiner tableMap = new StringJoiner(", ", "{", "}");
+				for (int j = 0; j < tables; j++) {
+					tableMap.add(((k - 1) * tables + j) + ": " + j);
+				}
+				if (k == 1 && switches > 1) {
+					tableMap.add((switches * tables) + ": 0");
+				}
+				StringJoiner portMap = new StringJoiner(", ", "{", "}");
+				if (k < switches) {
+					portMap.add("101: " + (k + 1)).add("102: " + (k + 1));
+				}
+				if (k > 1) {
+					portMap.add("201: " + (k - 1)).add("202: " + (k - 1));
+				}
+				w.println("      - dataplaneId: " + k);
+				w.println("        datapathId: " + DatapathId.of(k));
+				w.println("        tableMap: " + tableMap);
+				w.println("        portMap: " + portMap);
+			}
+			w.println("applications:");
+			w.println("  - ControllerLogApplication");
+			w.println("  - SwitchLogApplication");
+			w.println("  - MultiSwitchApplication");
+		}
+		return config;
+	}
+
+	private static void connectWithRetry(SimulatedSwitch sim, EventLoopGroup group, int port) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+		while (!sim.connect(group, "127.0.0.1", port).await().isSuccess()) {
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException("TableVisor does not accept connections on port " + port);
+			}
+			Thread.sleep(100);
+		}
+	}
+
+	static int freePort() throws IOException {
+		try (ServerSocket s = new ServerSocket(0)) {
+			return s.getLocalPort();
+		}
+	}
+
+	/**
+	 * Runs the main class with the options in a new JVM and returns the values of its RESULT line, or null if there is none.
+	 */
+	static Map<String, String> runInChildJvm(Class<?> mainClass, Map<String, String> opts, boolean verbose) throws IOException, InterruptedException {
+		List<String> cmd = new ArrayList<>();
+		cmd.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		cmd.add(mainClass.getName());
+		opts.remove("verbose");
+		for (Map.Entry<String, String> e : opts.entrySet()) {
+			cmd.add("--" + e.getKey());
+			cmd.add(e.getValue());
+		}
+
+		Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+		Map<String, String> result = null;
+		try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+			String line;
+			while ((line = r.readLine()) != null) {
+				if (line.startsWith("RESULT ")) {
+					result = new HashMap<>();
+					for (String kv : line.substring(7).split(" ")) {
+						String[] parts = kv.split("=", 2);
+						result.put(parts[0], parts[1]);
+					}
+				}
+				else if (verbose) {
+					System.out.println(line);
+				}
+			}
+		}
+		p.waitFor();
+		return result;
+	}
+
+	static Map<String, String> parseOptions(String[] args) {
+		Map<String, String> opts = new LinkedHashMap<>();
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("--")) {
+				throw new IllegalArgumentException("Unexpected argument " + args[i]);
+			}
+			String key = args[i].substring(2);
+			if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+				opts.put(key, args[++i]);
+			}
+			else {
+				opts.put(key, "");
+			}
+		}
+		return opts;
+	}
+
+	static List<Integer> parseList(String s) {
+		List<Integer> list = new ArrayList<>();
+		for (String part : s.split(",")) {
+			list.add(Integer.parseInt(part.trim()));
+		}
+		return list;
+	}
+}
@@ -0,0 +1,50 @@
+package de.uniwue.info3.tablevisor.benchmarks.load;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.MessageToByteEncoder;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFMessageReader;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+
+/**
+ * Plain OpenFlow 1.3 codec for the simulated peers, independent of TableVisor's own codec.
+ */
+class OFCodec {
+	private static final OFMessageReader<OFMessage> reader = OFFactories.getFactory(OFVersion.OF_13).getReader();
+
+	static void initPipeline(Channel ch, ChannelHandler handler) {
+		ch.pipeline().addLast(new Encoder(), new Decoder(), handler);
+	}
+
+	private static class Decoder extends LengthFieldBasedFrameDecoder {
+		Decoder() {
+			super(0xffff, 2, 2, -4, 0);
+		}
+
+		@Override
+		protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+			ByteBuf frame = (ByteBuf) super.decode(ctx, in);
+			if (frame == null) {
+				return null;
+			}
+			try {
+				return reader.readFrom(frame);
+			}
+			finally {
+				frame.release();
+			}
+		}
+	}
+
+	private static class Encoder extends MessageToByteEncoder<OFMessage> {
+		@Override
+		protected void encode(ChannelHandlerContext ctx, OFMessage msg, ByteBuf out) {
+			msg.writeTo(out);
+		}
+	}
+}
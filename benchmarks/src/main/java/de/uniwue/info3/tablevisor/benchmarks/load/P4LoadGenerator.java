@@ -0,0 +1,249 @@
+package de.uniwue.info3.tablevisor.benchmarks.load;
+
+import de.uniwue.info3.tablevisor.benchmarks.Examples;
+import de.uniwue.info3.tablevisor.core.TableVisor;
+import de.uniwue.info3.tablevisor.lowerlayer.ILowerLayerMessageHandler;
+import de.uniwue.info3.tablevisor.lowerlayer.LowerP4MessageHandler;
+import de.uniwue.info3.tablevisor.lowerlayer.RtecliSimulator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import io.netty.util.internal.logging.Log4J2LoggerFactory;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test of the P4 path of TableVisor (P4ControlApplication, LowerP4MessageHandler) without SmartNICs.
+ * TableVisor is started with a generated configuration of N P4 switches with the tables of example2, chained by the
+ * MultiSwitchApplication, and a controller stand-in accepts its upper-layer connection. The RTECLI calls are executed
+ * by an in-process {@link RtecliSimulator} per switch with the given latency, jitter (in microseconds) and failure rate,
+ * or by the given rtecli (e.g. tools/rtecli-sim).
+ * <p>
+ * Measured are the FLOW_MOD install rate (until the aggregated barrier reply) and the latency of aggregated flow stats requests.
+ * <p>
+ * Usage: P4LoadGenerator [--nics 1,2,4] [--flows 2000] [--stats 20] [--latency 0] [--jitter 0] [--failure-rate 0] [--rtecli path] [--verbose]
+ * <br>
+ * With several NIC counts, every count runs in its own JVM, as there is only one TableVisor per JVM.
+ */
+public class P4LoadGenerator {
+	private static final OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
+	private static final long TIMEOUT = 120;
+	// tables of example2 per NIC
+	private static final int TABLES = 4;
+
+	private final int nics;
+	private final int flows;
+	private final int stats;
+	private final long latency;
+	private final long jitter;
+	private final double failureRate;
+	private final String rtecli;
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> opts = LoadGenerator.parseOptions(args);
+		List<Integer> nicCounts = LoadGenerator.parseList(opts.getOrDefault("nics", "1,2,4"));
+
+		if (nicCounts.size() == 1) {
+			InternalLoggerFactory.setDefaultFactory(Log4J2LoggerFactory.INSTANCE);
+			P4LoadGenerator gen = new P4LoadGenerator(nicCounts.get(0), opts);
+			System.out.println(gen.run());
+			System.exit(0);
+		}
+
+		System.out.println(String.format("%6s %8s %12s %10s %10s %10s", "nics", "flows", "flowMods/s", "failed", "stats p50", "p99"));
+		System.out.println(String.format("%6s %8s %12s %10s %10s %10s", "", "", "", "", "[ms]", "[ms]"));
+		for (int n : nicCounts) {
+			Map<String, String> childOpts = LoadGenerator.parseOptions(args);
+			childOpts.put("nics", String.valueOf(n));
+			Map<String, String> r = LoadGenerator.runInChildJvm(P4LoadGenerator.class, childOpts, opts.containsKey("verbose"));
+			if (r == null) {
+				System.out.println(String.format("%6d  failed", n));
+				continue;
+			}
+			System.out.println(String.format("%6d %8s %12s %10s %10s %10s",
+					n, r.get("flows"), r.get("flowModRate"), r.get("failed"), r.get("statsP50"), r.get("statsP99")));
+		}
+	}
+
+	P4LoadGenerator(int nics, Map<String, String> opts) {
+		this.nics = nics;
+		this.flows = Integer.parseInt(opts.getOrDefault("flows", "2000"));
+		this.stats = Integer.parseInt(opts.getOrDefault("stats", "20"));
+		this.latency = Long.parseLong(opts.getOrDefault("latency", "0"));
+		this.jitter = Long.parseLong(opts.getOrDefault("jitter", "0"));
+		this.failureRate = Double.parseDouble(opts.getOrDefault("failure-rate", "0"));
+		this.rtecli = opts.get("rtecli");
+	}
+
+	/**
+	 * Runs all measurements and returns them as a line "RESULT key=value ...".
+	 */
+	String run() throws Exception {
+		int controllerPort = LoadGenerator.freePort();
+		Path config = writeConfig(controllerPort);
+
+		EventLoopGroup controllerGroup = new NioEventLoopGroup(1);
+		ControllerStandIn controller = new ControllerStandIn();
+		controller.bind(controllerGroup, controllerPort).sync();
+
+		TableVisor tv = new TableVisor(config);
+		Thread tvThread = new Thread(tv::start, "TableVisor");
+		tvThread.setDaemon(true);
+		tvThread.start();
+		controller.awaitFeatures(TIMEOUT, TimeUnit.SECONDS);
+
+		int warmup = Math.min(1000, flows);
+		controller.installAndBarrier(generateFlows(0, warmup), TIMEOUT, TimeUnit.SECONDS);
+		long start = System.nanoTime();
+		controller.installAndBarrier(generateFlows(warmup, flows), TIMEOUT, TimeUnit.SECONDS);
+		double flowModRate = flows / ((System.nanoTime() - start) / 1e9);
+
+		// rules lost by injected failures; unknown if rtecli is executed
+		String failed = "-";
+		if (rtecli == null) {
+			long installed = 0;
+			for (ILowerLayerMessageHandler h : tv.getLowerEndpointManager().getSockets().values()) {
+				installed += ((LowerP4MessageHandler) h).getSimulator().getEntryCount();
+			}
+			failed = String.valueOf(warmup + flows - installed);
+		}
+
+		LatencyRecorder statsLatency = new LatencyRecorder(stats);
+		controller.flowStats(TIMEOUT, TimeUnit.SECONDS);
+		for (int i = 0; i < stats; i++) {
+			long t = System.nanoTime();
+			controller.flowStats(TIMEOUT, TimeUnit.SECONDS);
+			statsLatency.record(System.nanoTime() - t);
+		}
+
+		controllerGroup.shutdownGracefully();
+		return String.format(Locale.ROOT, "RESULT nics=%d flows=%d flowModRate=%.0f failed=%s statsP50=%.2f statsP99=%.2f",
+				nics, flows, flowModRate, failed, statsLatency.percentile(50) / 1000, statsLatency.percentile(99) / 1000);
+	}
+
+	/**
+	 * Rules for the tables of example2 on all NICs: ACL, MPLS, routing and switching table, each continuing
+	 * in the next table; the switching tables forward to the next NIC, the last one to port 1.
+	 */
+	private List<OFFlowMod> generateFlows(int from, int count) {
+		List<OFFlowMod> flowMods = new ArrayList<>(count);
+		for (int i = from; i < from + count; i++) {
+			int table = i % (nics * TABLES);
+			MacAddress mac = MacAddress.of(0x020000000000L + i);
+			OFInstruction next = fac.instructions().gotoTable(TableId.of(table + 1));
+			List<OFAction> actions = new ArrayList<>();
+			List<OFInstruction> insts = new ArrayList<>();
+			OFFlowMod.Builder fm = fac.buildFlowAdd();
+			switch (table % TABLES) {
+				case 0:
+					fm.setMatch(fac.buildMatch().setExact(MatchField.ETH_TYPE, EthType.IPv4).setExact(MatchField.ETH_DST, mac).build());
+					insts.add(next);
+					break;
+				case 1:
+					fm.setMatch(fac.buildMatch().setExact(MatchField.ETH_TYPE, EthType.MPLS_UNICAST).setExact(MatchField.ETH_DST, mac).build());
+					actions.add(fac.actions().popMpls(EthType.IPv4));
+					insts.add(next);
+					break;
+				case 2:
+					fm.setMatch(fac.buildMatch().setExact(MatchField.ETH_TYPE, EthType.IPv4).setExact(MatchField.IPV4_DST, IPv4Address.of(0x0a000000 + i)).build());
+					actions.add(fac.actions().setField(fac.oxms().ethDst(mac)));
+					insts.add(next);
+					break;
+				default:
+					fm.setMatch(fac.buildMatch().setExact(MatchField.ETH_DST, mac).build());
+					if (table + 1 < nics * TABLES) {
+						insts.add(next);
+					}
+					else {
+						actions.add(fac.actions().output(OFPort.of(1), 0xffff));
+					}
+					break;
+			}
+			if (!actions.isEmpty()) {
+				insts.add(fac.instructions().applyActions(actions));
+			}
+			flowMods.add(fm.setXid(0x10000000L + i)
+					.setCookie(U64.of(i + 1))
+					.setTableId(TableId.of(table))
+					.setPriority(100)
+					.setInstructions(insts)
+					.build());
+		}
+		return flowMods;
+	}
+
+	/**
+	 * Writes a configuration of a linear chain of P4 switches: switch k holds the tables (k-1)*4 ... k*4-1,
+	 * and (as in example1) the last table returns to the first switch.
+	 */
+	private Path writeConfig(int controllerPort) throws IOException {
+		Path config = Files.createTempFile("tablevisor-p4load", ".yml");
+		config.toFile().deleteOnExit();
+		Path tableSpec = Examples.exampleDir("example2").resolve("mplsProgram.p4");
+		try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(config))) {
+			w.println("ourDatapathId: 00:00:00:00:00:00:11:11");
+			w.println("logSummaryInterval: 0");
+			w.println("upperLayerEndpoints:");
+			w.println("  - name: ControllerStandIn");
+			w.println("    type: OPENFLOW");
+			w.println("    ip: 127.0.0.1");
+			w.println("    port: " + controllerPort);
+			w.println("    reconnectInterval: 1000");
+			w.println("lowerLayerEndpoints:");
+			w.println("  - name: SimulatedNics");
+			w.println("    type: P4_NETRONOME");
+			if (rtecli != null) {
+				w.println("    rtecliPath: " + rtecli);
+			}
+			else {
+				w.println("    rtecliSimulator: true");
+				w.println("    rtecliSimLatency: " + latency);
+				w.println("    rtecliSimJitter: " + jitter);
+				w.println("    rtecliSimFailureRate: " + failureRate);
+			}
+			w.println("    switches:");
+			for (int k = 1; k <= nics; k++) {
+				StringJoiner tableMap = new StringJoiner(", ", "{", "}");
+				for (int j = 0; j < TABLES; j++) {
+					tableMap.add(((k - 1) * TABLES + j) + ": " + j);
+				}
+				if (k == 1) {
+					tableMap.add((nics * TABLES) + ": 0");
+				}
+				StringJoiner portMap = new StringJoiner(", ", "{", "}");
+				if (k < nics) {
+					portMap.add("101: " + (k + 1));
+				}
+				if (k > 1) {
+					portMap.add("201: " + (k - 1));
+				}
+				w.println("      - dataplaneId: " + k);
+				w.println("        rteIp: 127.0.0.1");
+				w.println("        rtePort: " + (20205 + k));
+				w.println("        numberOfPorts: 8");
+				w.println("        tableSpecs: [\"" + tableSpec + "\"]");
+				w.println("        tableMap: " + tableMap);
+				w.println("        portMap: " + portMap);
+			}
+			w.println("applications:");
+			w.println("  - ControllerLogApplication");
+			w.println("  - SwitchLogApplication");
+			w.println("  - P4ControlApplication");
+			w.println("  - MultiSwitchApplication");
+		}
+		return config;
+	}
+}
@@ -0,0 +1,205 @@
+package de.uniwue.info3.tablevisor.benchmarks.load;
+
+import de.uniwue.info3.tablevisor.application.MultipartReplyStreamer;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.projectfloodlight.openflow.protocol.*;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.*;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Minimal OpenFlow 1.3 switch that connects to TableVisor's lower-layer endpoint.
+ * It answers the handshake, echo, barrier and stats requests, keeps the added flows for flow stats,
+ * and sends PACKET_INs that carry their send time (see {@link #sendPacketIn(int)}).
+ */
+// added to the pipeline of every connection attempt, but only connected once
+@ChannelHandler.Sharable
+class SimulatedSwitch extends SimpleChannelInboundHandler<OFMessage> {
+	private static final OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
+	static final int PACKET_IN_LENGTH = 64;
+
+	private final int index;
+	private final DatapathId datapathId;
+	private final int nTables;
+	private final Consumer<ByteBuffer> packetOutListener;
+
+	private final List<OFFlowStatsEntry> flows = new ArrayList<>();
+	private final AtomicLong flowMods = new AtomicLong();
+	private final AtomicLong packetOuts = new AtomicLong();
+	private volatile Channel channel;
+
+	/**
+	 * @param packetOutListener receives the data of each PACKET_OUT
+	 */
+	SimulatedSwitch(int index, DatapathId datapathId, int nTables, Consumer<ByteBuffer> packetOutListener) {
+		this.index = index;
+		this.datapathId = datapathId;
+		this.nTables = nTables;
+		this.packetOutListener = packetOutListener;
+	}
+
+	ChannelFuture connect(EventLoopGroup group, String host, int port) {
+		return new Bootstrap()
+				.group(group)
+				.channel(NioSocketChannel.class)
+				.option(ChannelOption.TCP_NODELAY, true)
+				.handler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) {
+						OFCodec.initPipeline(ch, SimulatedSwitch.this);
+					}
+				})
+				.connect(host, port);
+	}
+
+	/**
+	 * Sends a PACKET_IN whose data starts with the current time (System.nanoTime) and the given tag.
+	 */
+	void sendPacketIn(int tag) {
+		byte[] data = new byte[PACKET_IN_LENGTH];
+		ByteBuffer.wrap(data).putLong(System.nanoTime()).putInt(index).putInt(tag);
+		channel.writeAndFlush(fac.buildPacketIn()
+				.setBufferId(OFBufferId.NO_BUFFER)
+				.setTotalLen(data.length)
+				.setReason(OFPacketInReason.NO_MATCH)
+				.setTableId(TableId.of(0))
+				.setCookie(U64.ZERO)
+				.setMatch(fac.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(1)).build())
+				.setData(data)
+				.build(), channel.voidPromise());
+	}
+
+	int getIndex() {
+		return index;
+	}
+
+	long getFlowMods() {
+		return flowMods.get();
+	}
+
+	long getPacketOuts() {
+		return packetOuts.get();
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) {
+		channel = ctx.channel();
+		ctx.writeAndFlush(fac.buildHello().build());
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, OFMessage msg) {
+		switch (msg.getType()) {
+			case FEATURES_REQUEST:
+				ctx.writeAndFlush(fac.buildFeaturesReply()
+						.setXid(msg.getXid())
+						.setDatapathId(datapathId)
+						.setNBuffers(256)
+						.setNTables((short) nTables)
+						.setCapabilities(EnumSet.of(OFCapabilities.FLOW_STATS, OFCapabilities.TABLE_STATS, OFCapabilities.PORT_STATS))
+						.build());
+				break;
+			case ECHO_REQUEST:
+				ctx.writeAndFlush(fac.buildEchoReply().setXid(msg.getXid()).setData(((OFEchoRequest) msg).getData()).build());
+				break;
+			case BARRIER_REQUEST:
+				ctx.writeAndFlush(fac.buildBarrierReply().setXid(msg.getXid()).build());
+				break;
+			case GET_CONFIG_REQUEST:
+				ctx.writeAndFlush(fac.buildGetConfigReply().setXid(msg.getXid()).setMissSendLen(0xffff).build());
+				break;
+			case ROLE_REQUEST:
+				ctx.writeAndFlush(fac.buildRoleReply().setXid(msg.getXid()).setRole(((OFRoleRequest) msg).getRole()).build());
+				break;
+			case FLOW_MOD:
+				flowMods.incrementAndGet();
+				handleFlowMod((OFFlowMod) msg);
+				break;
+			case PACKET_OUT:
+				packetOuts.incrementAndGet();
+				packetOutListener.accept(ByteBuffer.wrap(((OFPacketOut) msg).getData()));
+				break;
+			case STATS_REQUEST:
+				handleStatsRequest(ctx, (OFStatsRequest<?>) msg);
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void handleFlowMod(OFFlowMod fm) {
+		synchronized (flows) {
+			switch (fm.getCommand()) {
+				case ADD:
+					flows.add(fac.buildFlowStatsEntry()
+							.setTableId(fm.getTableId())
+							.setPriority(fm.getPriority())
+							.setCookie(fm.getCookie())
+							.setMatch(fm.getMatch())
+							.setInstructions(fm.getInstructions())
+							.build());
+					break;
+				case DELETE:
+					if (fm.getTableId().equals(TableId.ALL)) {
+						flows.clear();
+					}
+					else {
+						flows.removeIf(e -> e.getTableId().equals(fm.getTableId()));
+					}
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	private void handleStatsRequest(ChannelHandlerContext ctx, OFStatsRequest<?> req) {
+		switch (req.getStatsType()) {
+			case FLOW:
+				TableId table = ((OFFlowStatsRequest) req).getTableId();
+				MultipartReplyStreamer<OFFlowStatsEntry> streamer = new MultipartReplyStreamer<>(
+						(entries, flags) -> fac.buildFlowStatsReply().setXid(req.getXid()).setFlags(flags).setEntries(entries).build(),
+						ctx::write
+				);
+				synchronized (flows) {
+					for (OFFlowStatsEntry e : flows) {
+						if (table.equals(TableId.ALL) || table.equals(e.getTableId())) {
+							streamer.add(e);
+						}
+					}
+				}
+				streamer.finish();
+				ctx.flush();
+				break;
+			case DESC:
+				ctx.writeAndFlush(fac.buildDescStatsReply().setXid(req.getXid())
+						.setMfrDesc("TableVisor").setHwDesc("Simulated switch").setSwDesc("LoadGenerator")
+						.setSerialNum(String.valueOf(index)).setDpDesc(datapathId.toString()).build());
+				break;
+			case TABLE:
+				List<OFTableStatsEntry> tables = new ArrayList<>();
+				for (int t = 0; t < nTables; t++) {
+					tables.add(fac.buildTableStatsEntry().setTableId(TableId.of(t)).build());
+				}
+				ctx.writeAndFlush(fac.buildTableStatsReply().setXid(req.getXid()).setEntries(tables).build());
+				break;
+			case PORT_DESC:
+				ctx.writeAndFlush(fac.buildPortDescStatsReply().setXid(req.getXid()).setEntries(Collections.emptyList()).build());
+				break;
+			default:
+				break;
+		}
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+		System.err.println("Switch " + index + ": " + cause);
+	}
+}
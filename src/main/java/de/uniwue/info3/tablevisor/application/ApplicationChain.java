@@ -0,0 +1,204 @@
+package de.uniwue.info3.tablevisor.application;
+
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.projectfloodlight.openflow.protocol.OFType;
+
+import java.util.*;
+
+/**
+ * Builds the chain of applications between TVtoControllerLayer and TVtoDataLayer and compiles its routes.
+ * <p>
+ * A route leads from an application to the next one in a direction that handles a kind of message, i.e., that
+ * overrides the handler of the message in {@link BaseApplication} or the dispatch ({@code allToControlPlane},
+ * {@code allToDataPlane}) itself. Applications in between would only forward the message and are skipped.
+ * The dispatch of {@link BaseOFApplication} and {@link BaseP4Application} does not count, as it forwards
+ * the messages it does not dispatch.
+ */
+public class ApplicationChain {
+	private static final Logger logger = LogManager.getLogger();
+	private static final OFType[] TYPES = OFType.values();
+
+	// route keys besides the OpenFlow types
+	static final int ERROR = TYPES.length;
+	static final int P4 = TYPES.length + 1;
+	static final int UNKNOWN = TYPES.length + 2;
+	static final int KEYS = TYPES.length + 3;
+
+	private static final Set<Class<?>> DISPATCH_ONLY = new HashSet<>(Arrays.asList(
+			BaseApplication.class, BaseOFApplication.class, BaseP4Application.class));
+
+	private ApplicationChain() {
+	}
+
+	/**
+	 * Creates the applications of the given names from the providers of {@link java.util.ServiceLoader}
+	 * below {@code top}, ordered by their order. Unknown names are logged and skipped.
+	 *
+	 * @return the application next to the data plane
+	 */
+	public static IApplication build(IApplication top, Collection<String> names) {
+		Map<String, ApplicationProvider> providers = new HashMap<>();
+		for (ApplicationProvider p : ServiceLoader.load(ApplicationProvider.class)) {
+			for (String name : p.getNames()) {
+				ApplicationProvider previous = providers.putIfAbsent(name, p);
+				if (previous != null && previous.getClass() != p.getClass()) {
+					logger.warn("Application {} of {} ignored, already provided by {}", name, p.getClass().getName(), previous.getClass().getName());
+				}
+			}
+		}
+
+		List<String> enabled = new ArrayList<>();
+		for (String name : names) {
+			if (providers.containsKey(name)) {
+				enabled.add(name);
+			}
+			else {
+				logger.error("Unknown application {}", name);
+			}
+		}
+		enabled.sort(Comparator.comparingInt(n -> providers.get(n).getOrder(n)));
+
+		IApplication previous = top;
+		for (String name : enabled) {
+			logger.info("Initializing {}...", name);
+			try {
+				previous = providers.get(name).create(name, previous);
+			}
+			catch (ReflectiveOperationException | RuntimeException e) {
+				logger.error("Could not initialize {}", name, e);
+			}
+		}
+		return previous;
+	}
+
+	/**
+	 * Compiles the routes of all applications of the chain below {@code top}.
+	 * Must be called again if the chain is changed afterwards.
+	 */
+	public static void compile(IApplication top) {
+		List<IApplication> chain = new ArrayList<>();
+		for (IApplication app = top; app != null; app = app.getSuccessingDataPlaneConnector()) {
+			chain.add(app);
+		}
+
+		int skipped = 0;
+		for (int i = 0; i < chain.size(); i++) {
+			if (!(chain.get(i) instanceof BaseApplication)) {
+				continue;
+			}
+			IApplication[] toControl = new IApplication[KEYS];
+			IApplication[] toData = new IApplication[KEYS];
+			for (int key = 0; key < UNKNOWN; key++) {
+				for (int j = i - 1; j >= 0; j--) {
+					if (handles(chain.get(j), true, key)) {
+						toControl[key] = chain.get(j);
+						skipped += i - 1 - j;
+						break;
+					}
+				}
+				for (int j = i + 1; j < chain.size(); j++) {
+					if (handles(chain.get(j), false, key)) {
+						toData[key] = chain.get(j);
+						skipped += j - i - 1;
+						break;
+					}
+				}
+			}
+			((BaseApplication) chain.get(i)).setRoutes(toControl, toData);
+		}
+		logger.debug("Application chain of {} compiled, {} forwarding hops skipped", chain.size(), skipped);
+	}
+
+	/**
+	 * @return the route key of the message: its OpenFlow type, {@link #ERROR}, {@link #P4} or {@link #UNKNOWN}
+	 */
+	static int routeKey(TVMessage tvMessage) {
+		OFType type = tvMessage.getThisMsgType();
+		if (type != null) {
+			return type.ordinal();
+		}
+		if (tvMessage.isError()) {
+			return ERROR;
+		}
+		return tvMessage.isP4() ? P4 : UNKNOWN;
+	}
+
+	private static boolean handles(IApplication app, boolean toControlPlane, int key) {
+		if (!(app instanceof BaseApplication)) {
+			return true;
+		}
+		String dispatch = (toControlPlane ? "allToControlPlane" : "allToDataPlane");
+		return !DISPATCH_ONLY.contains(declaringClass(app, dispatch))
+				|| declaringClass(app, handlerName(toControlPlane, key)) != BaseApplication.class;
+	}
+
+	private static Class<?> declaringClass(IApplication app, String method) {
+		try {
+			return app.getClass().getMethod(method, TVMessage.class).getDeclaringClass();
+		}
+		catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the handler of {@link BaseApplication} for the route key
+	 */
+	private static String handlerName(boolean toControlPlane, int key) {
+		String direction = (toControlPlane ? "ToControlPlane" : "ToDataPlane");
+		if (key == ERROR) return "error" + direction;
+		if (key == P4) return "p4" + direction;
+		switch (TYPES[key]) {
+			case FLOW_MOD:
+				return "flowMod" + direction;
+			case SET_CONFIG:
+				return "setConfig" + direction;
+			case METER_MOD:
+				return "meterMod" + direction;
+			case TABLE_MOD:
+				return "tableMod" + direction;
+			case GROUP_MOD:
+				return "groupMod" + direction;
+			case PORT_MOD:
+				return "portMod" + direction;
+		}
+		if (toControlPlane) {
+			switch (TYPES[key]) {
+				case PACKET_IN:
+					return "packetInToControlPlane";
+				case FLOW_REMOVED:
+					return "flowModToControlPlane";
+				case STATS_REPLY:
+					return "switchStatsToControlPlane";
+				case GET_CONFIG_REPLY:
+					return "switchGetConfigToControlPlane";
+				case ROLE_REPLY:
+					return "roleToControlPlane";
+				case FEATURES_REPLY:
+					return "switchFeaturesToControlPlane";
+				case BARRIER_REPLY:
+					return "barrierToControlPlane";
+				default:
+					return "miscToControlPlane";
+			}
+		}
+		switch (TYPES[key]) {
+			case PACKET_OUT:
+				return "packetOutToDataPlane";
+			case STATS_REQUEST:
+				return "switchStatsToDataPlane";
+			case GET_CONFIG_REQUEST:
+				return "switchGetConfigToDataPlane";
+			case ROLE_REQUEST:
+				return "roleToDataPlane";
+			case FEATURES_REQUEST:
+				return "switchFeaturesToDataPlane";
+			case BARRIER_REQUEST:
+				return "barrierToDataPlane";
+			default:
+				return "miscToDataPlane";
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package de.uniwue.info3.tablevisor.application;
+
+import java.util.Set;
+
+/**
+ * Source of applications, loaded with {@link java.util.ServiceLoader} from
+ * META-INF/services/de.uniwue.info3.tablevisor.application.ApplicationProvider.
+ * <p>
+ * An application is enabled by listing its name under {@code applications} in the configuration.
+ * The enabled applications are chained by their order, the lowest next to the controller;
+ * the orders of the built-in applications are those of {@link de.uniwue.info3.tablevisor.config.ApplicationType}.
+ */
+public interface ApplicationProvider {
+	/**
+	 * @return the names of the applications of this provider
+	 */
+	Set<String> getNames();
+
+	/**
+	 * @return the position of the application in the chain
+	 */
+	int getOrder(String name);
+
+	/**
+	 * Creates the application below the given connector towards the control plane.
+	 */
+	IApplication create(String name, IApplication controlPlaneConnector) throws ReflectiveOperationException;
+}
@@ -1,12 +1,21 @@
 package de.uniwue.info3.tablevisor.application;
 
+import de.uniwue.info3.tablevisor.core.TableVisor;
+import de.uniwue.info3.tablevisor.core.TransactionManager;
 import de.uniwue.info3.tablevisor.message.TVMessage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class BaseApplication implements IApplication {
 	private IApplication controlPlaneConnector;
 	private IApplication dataPlaneConnector;
+	// next application per route key that handles the message, see ApplicationChain; null until compiled
+	private IApplication[] controlPlaneRoute;
+	private IApplication[] dataPlaneRoute;
 
 	private static Logger logger = LogManager.getLogger();
 
@@ -139,9 +148,43 @@ public class BaseApplication implements IApplication {
 		}
 	}
 
+	/**
+	 * Passes the message on to the next application towards the control plane that handles it.
+	 */
+	protected void toControlPlane(TVMessage tvMessage) {
+		IApplication[] route = controlPlaneRoute;
+		IApplication next = (route != null ? route[ApplicationChain.routeKey(tvMessage)] : null);
+		(next != null ? next : getSuccessingControlPlaneConnector()).allToControlPlane(tvMessage);
+	}
+
+	/**
+	 * Passes the message on to the next application towards the data plane that handles it.
+	 */
+	protected void toDataPlane(TVMessage tvMessage) {
+		IApplication[] route = dataPlaneRoute;
+		IApplication next = (route != null ? route[ApplicationChain.routeKey(tvMessage)] : null);
+		(next != null ? next : getSuccessingDataPlaneConnector()).allToDataPlane(tvMessage);
+	}
+
+	/**
+	 * Sends a request of this application through the applications towards the data plane to a switch.
+	 * Its replies are not passed to any application, see {@link TransactionManager#request(int, OFMessage, java.util.function.Consumer)}.
+	 *
+	 * @return the replies of the switch
+	 */
+	protected CompletableFuture<List<OFMessage>> request(int dataplaneId, OFMessage msg) {
+		return TableVisor.getInstance().getTransactionManager().request(dataplaneId, msg, this::toDataPlane);
+	}
+
+	void setRoutes(IApplication[] controlPlaneRoute, IApplication[] dataPlaneRoute) {
+		this.controlPlaneRoute = controlPlaneRoute;
+		this.dataPlaneRoute = dataPlaneRoute;
+	}
+
 	@Override
 	public void setSuccessingControlPlaneConnector(IApplication controlPlaneConnector) {
 		this.controlPlaneConnector = controlPlaneConnector;
+		this.controlPlaneRoute = null;
 		if (controlPlaneConnector != null && controlPlaneConnector.getSuccessingDataPlaneConnector() != this) {
 			controlPlaneConnector.setSuccessingDataPlaneConnector(this);
 		}
@@ -155,6 +198,7 @@ public class BaseApplication implements IApplication {
 	@Override
 	public void setSuccessingDataPlaneConnector(IApplication dataPlaneConnector) {
 		this.dataPlaneConnector = dataPlaneConnector;
+		this.dataPlaneRoute = null;
 		if (dataPlaneConnector != null && dataPlaneConnector.getSuccessingControlPlaneConnector() != this) {
 			dataPlaneConnector.setSuccessingControlPlaneConnector(this);
 		}
@@ -167,161 +211,161 @@ public class BaseApplication implements IApplication {
 
 	@Override
 	public void p4ToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void p4ToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void switchFeaturesToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void switchFeaturesToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void setConfigToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void setConfigToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void switchGetConfigToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void switchGetConfigToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void switchStatsToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void switchStatsToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void tableModToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void tableModToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void flowModToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void flowModToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void groupModToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void groupModToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void portModToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void portModToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void meterModToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void meterModToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void roleToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void roleToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void barrierToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void barrierToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void packetInToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void packetInToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void packetOutToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void packetOutToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void miscToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void miscToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 
 	@Override
 	public void errorToControlPlane(TVMessage tvMessage) {
-		getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+		toControlPlane(tvMessage);
 	}
 
 	@Override
 	public void errorToDataPlane(TVMessage tvMessage) {
-		getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+		toDataPlane(tvMessage);
 	}
 }
\ No newline at end of file
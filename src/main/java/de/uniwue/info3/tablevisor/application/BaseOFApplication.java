@@ -18,7 +18,7 @@ public class BaseOFApplication extends BaseApplication {
 			super.allToControlPlane(tvMessage);
 		}
 		else {
-			getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+			toControlPlane(tvMessage);
 		}
 	}
 
@@ -28,7 +28,7 @@ public class BaseOFApplication extends BaseApplication {
 			super.allToDataPlane(tvMessage);
 		}
 		else {
-			getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+			toDataPlane(tvMessage);
 		}
 	}
 }
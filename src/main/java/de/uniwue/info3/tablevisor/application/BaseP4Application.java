@@ -1,11 +1,15 @@
 package de.uniwue.info3.tablevisor.application;
 
 import de.uniwue.info3.tablevisor.core.TableVisor;
+import de.uniwue.info3.tablevisor.core.TransactionManager;
 import de.uniwue.info3.tablevisor.lowerlayer.LowerLayerType;
 import de.uniwue.info3.tablevisor.message.TVMessage;
 
 /**
  * Such Apps that change the DataplaneID of Messages should probably inherit from BaseApplication instead!
+ * <p>
+ * The OpenFlow messages of P4 switches end here, so their transaction IDs are assigned and mapped back here,
+ * see {@link TransactionManager}.
  */
 public class BaseP4Application extends BaseApplication {
 	public BaseP4Application(IApplication controlPlaneConnector) {
@@ -14,21 +18,39 @@ public class BaseP4Application extends BaseApplication {
 
 	@Override
 	public void allToControlPlane(TVMessage tvMessage) {
-		if (TableVisor.getInstance().getLowerEndpointTypeById(tvMessage.getDataplaneId()) == LowerLayerType.P4_NETRONOME) {
+		if (isP4(tvMessage.getDataplaneId())) {
 			super.allToControlPlane(tvMessage);
 		}
 		else {
-			getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
+			toControlPlane(tvMessage);
 		}
 	}
 
 	@Override
 	public void allToDataPlane(TVMessage tvMessage) {
-		if (TableVisor.getInstance().getLowerEndpointTypeById(tvMessage.getDataplaneId()) == LowerLayerType.P4_NETRONOME || tvMessage.getDataplaneId() ==  -1) {
+		if (isP4(tvMessage.getDataplaneId()) || tvMessage.getDataplaneId() ==  -1) {
+			TransactionManager transactions = TableVisor.getInstance().getTransactionManager();
+			if (transactions != null && tvMessage.isOpenFlow() && tvMessage.getDataplaneId() != -1) {
+				transactions.toSwitch(tvMessage);
+			}
 			super.allToDataPlane(tvMessage);
 		}
 		else {
-			getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+			toDataPlane(tvMessage);
 		}
 	}
+
+	@Override
+	protected void toControlPlane(TVMessage tvMessage) {
+		TransactionManager transactions = TableVisor.getInstance().getTransactionManager();
+		if (transactions != null && tvMessage.isOpenFlow() && isP4(tvMessage.getDataplaneId()) && !transactions.fromSwitch(tvMessage)) {
+			return;
+		}
+		super.toControlPlane(tvMessage);
+	}
+
+	private static boolean isP4(int dataplaneId) {
+		LowerLayerType type = TableVisor.getInstance().getLowerEndpointTypeById(dataplaneId);
+		return type != null && type.isP4();
+	}
 }
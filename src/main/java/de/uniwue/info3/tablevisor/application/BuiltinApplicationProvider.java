@@ -0,0 +1,32 @@
+package de.uniwue.info3.tablevisor.application;
+
+import de.uniwue.info3.tablevisor.config.ApplicationType;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Provides the applications of {@link ApplicationType}.
+ */
+public class BuiltinApplicationProvider implements ApplicationProvider {
+	@Override
+	public Set<String> getNames() {
+		Set<String> names = new LinkedHashSet<>();
+		for (ApplicationType t : ApplicationType.values()) {
+			names.add(t.name());
+		}
+		return names;
+	}
+
+	@Override
+	public int getOrder(String name) {
+		return ApplicationType.valueOf(name).order;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public IApplication create(String name, IApplication controlPlaneConnector) throws ReflectiveOperationException {
+		Class<? extends IApplication> c = ApplicationType.valueOf(name).c;
+		return c.getConstructor(IApplication.class).newInstance(controlPlaneConnector);
+	}
+}
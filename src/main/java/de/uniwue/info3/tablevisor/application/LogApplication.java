@@ -1,27 +1,42 @@
 package de.uniwue.info3.tablevisor.application;
 
+import de.uniwue.info3.tablevisor.core.TableVisor;
 import de.uniwue.info3.tablevisor.message.TVMessage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.projectfloodlight.openflow.protocol.*;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
 public class LogApplication {
 	private static final Logger logger = LogManager.getLogger();
 
 	public static class ControllerLogApplication extends BaseApplication {
+		private final MessageCounter toControl = new MessageCounter("[... -> Control]");
+		private final MessageCounter fromControl = new MessageCounter("[Control -> ...]");
+		private final SummaryTimer summary = new SummaryTimer(toControl, fromControl);
+
 		public ControllerLogApplication(IApplication controlPlaneConnector) {
 			super(controlPlaneConnector);
 		}
 
 		public final void allToControlPlane(TVMessage tvMessage) {
-			String additional = getStatsType(tvMessage);
-			logger.info("[... -> Control]:     {}{}", tvMessage.getTypeAsString(), additional);
+			if (logger.isDebugEnabled()) {
+				logger.debug("[... -> Control]:     {}{}", tvMessage.getTypeAsString(), getStatsType(tvMessage));
+			}
+			toControl.count(tvMessage);
+			summary.maybeLog();
 			super.allToControlPlane(tvMessage);
 		}
 
 		public final void allToDataPlane(TVMessage tvMessage) {
-			String additional = getStatsType(tvMessage);
-			logger.info("[Control -> ...]: {}{}", tvMessage.getTypeAsString(), additional);
+			if (logger.isDebugEnabled()) {
+				logger.debug("[Control -> ...]: {}{}", tvMessage.getTypeAsString(), getStatsType(tvMessage));
+			}
+			fromControl.count(tvMessage);
+			summary.maybeLog();
 			super.allToDataPlane(tvMessage);
 		}
 
@@ -38,19 +53,29 @@ public class LogApplication {
 	}
 
 	public static class SwitchLogApplication extends BaseApplication {
+		private final MessageCounter fromData = new MessageCounter("[Data -> ...]");
+		private final MessageCounter toData = new MessageCounter("[... -> Data]");
+		private final SummaryTimer summary = new SummaryTimer(fromData, toData);
+
 		public SwitchLogApplication(IApplication controlPlaneConnector) {
 			super(controlPlaneConnector);
 		}
 
 		public final void allToControlPlane(TVMessage tvMessage) {
-			String additional = getStatsType(tvMessage);
-			logger.info("[Data("+tvMessage.getDataplaneId()+") -> ...]: {}{}", tvMessage.getTypeAsString(), additional);
+			if (logger.isDebugEnabled()) {
+				logger.debug("[Data({}) -> ...]: {}{}", tvMessage.getDataplaneId(), tvMessage.getTypeAsString(), getStatsType(tvMessage));
+			}
+			fromData.count(tvMessage);
+			summary.maybeLog();
 			super.allToControlPlane(tvMessage);
 		}
 
 		public final void allToDataPlane(TVMessage tvMessage) {
-			String additional = getStatsType(tvMessage);
-			logger.info("[... -> Data("+tvMessage.getDataplaneId()+")]:     {}{}", tvMessage.getTypeAsString(), additional);
+			if (logger.isDebugEnabled()) {
+				logger.debug("[... -> Data({})]:     {}{}", tvMessage.getDataplaneId(), tvMessage.getTypeAsString(), getStatsType(tvMessage));
+			}
+			toData.count(tvMessage);
+			summary.maybeLog();
 			super.allToDataPlane(tvMessage);
 		}
 
@@ -66,9 +91,103 @@ public class LogApplication {
 		}
 	}
 
+	/**
+	 * Counts messages per OpenFlow type without allocating; non-OpenFlow messages are counted by protocol.
+	 */
+	private static class MessageCounter {
+		private static final OFType[] TYPES = OFType.values();
+
+		private final String direction;
+		private final LongAdder[] ofTypes = new LongAdder[TYPES.length];
+		private final LongAdder p4 = new LongAdder();
+		private final LongAdder other = new LongAdder();
+
+		private MessageCounter(String direction) {
+			this.direction = direction;
+			for (int i = 0; i < ofTypes.length; i++) {
+				ofTypes[i] = new LongAdder();
+			}
+		}
+
+		private void count(TVMessage tvMessage) {
+			OFType type = tvMessage.getThisMsgType();
+			if (tvMessage.isOpenFlow() && type != null) {
+				ofTypes[type.ordinal()].increment();
+			}
+			else if (tvMessage.isP4()) {
+				p4.increment();
+			}
+			else {
+				other.increment();
+			}
+		}
+
+		/**
+		 * @return the counts since the last call, or null if there were no messages
+		 */
+		private String drainSummary() {
+			StringBuilder sb = new StringBuilder();
+			long total = 0;
+			for (int i = 0; i < ofTypes.length; i++) {
+				total += append(sb, TYPES[i].toString(), ofTypes[i].sumThenReset());
+			}
+			total += append(sb, "P4_NETRONOME", p4.sumThenReset());
+			total += append(sb, "OTHER", other.sumThenReset());
+			if (total == 0) {
+				return null;
+			}
+			return direction + ": " + total + " messages (" + sb + ")";
+		}
+
+		private static long append(StringBuilder sb, String name, long n) {
+			if (n > 0) {
+				if (sb.length() > 0) {
+					sb.append(", ");
+				}
+				sb.append(name).append(": ").append(n);
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * Logs the message counts at INFO, at most once per logSummaryInterval (0 disables the summaries).
+	 */
+	private static class SummaryTimer {
+		private final MessageCounter[] counters;
+		private final long interval;
+		private final AtomicLong nextSummary;
+
+		private SummaryTimer(MessageCounter... counters) {
+			this.counters = counters;
+			TableVisor tv = TableVisor.getInstance();
+			this.interval = TimeUnit.MILLISECONDS.toNanos(tv != null && tv.getConfig() != null ? tv.getConfig().logSummaryInterval : 0);
+			this.nextSummary = new AtomicLong(System.nanoTime() + interval);
+		}
+
+		private void maybeLog() {
+			if (interval <= 0) {
+				return;
+			}
+			long now = System.nanoTime();
+			long next = nextSummary.get();
+			if (now - next < 0 || !nextSummary.compareAndSet(next, now + interval)) {
+				return;
+			}
+			for (MessageCounter c : counters) {
+				String s = c.drainSummary();
+				if (s != null) {
+					logger.info(s);
+				}
+			}
+		}
+	}
+
 	private static String getStatsType(TVMessage tvMessage) {
 		String add = "";
-		if (tvMessage.isOpenFlow()) {
+		OFType type = tvMessage.getThisMsgType();
+		// Only parse the message if the additional information is present
+		if (tvMessage.isOpenFlow() && (type == OFType.STATS_REQUEST || type == OFType.STATS_REPLY || type == OFType.FLOW_MOD)) {
 			OFMessage msg = tvMessage.getOFMessage();
 			if (msg instanceof OFStatsRequest) {
 				add += ((OFStatsRequest) msg).getStatsType();
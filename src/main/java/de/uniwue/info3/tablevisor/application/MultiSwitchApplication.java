@@ -4,6 +4,9 @@ import com.google.common.collect.ImmutableSet;
 import de.uniwue.info3.tablevisor.config.IdPair;
 import de.uniwue.info3.tablevisor.core.TableVisor;
 import de.uniwue.info3.tablevisor.message.TVMessage;
+import de.uniwue.info3.tablevisor.message.TVMsgRewriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.projectfloodlight.openflow.protocol.*;
@@ -16,296 +19,118 @@ import org.projectfloodlight.openflow.protocol.match.Match;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.projectfloodlight.openflow.protocol.match.MatchFields;
 import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFErrorCauseData;
 import org.projectfloodlight.openflow.types.OFPort;
 import org.projectfloodlight.openflow.types.TableId;
 import org.projectfloodlight.openflow.types.U64;
 
 import java.util.*;
+import java.util.function.Function;
 
 public class MultiSwitchApplication extends BaseApplication {
     private static final Logger logger = LogManager.getLogger();
+    private static final Set<OFStatsType> AGGREGATED_STATS = EnumSet.of(
+            OFStatsType.PORT_DESC, OFStatsType.PORT, OFStatsType.GROUP, OFStatsType.GROUP_DESC, OFStatsType.GROUP_FEATURES,
+            OFStatsType.DESC, OFStatsType.TABLE, OFStatsType.METER, OFStatsType.METER_FEATURES, OFStatsType.FLOW);
     private final TableVisor TV = TableVisor.getInstance();
 
-    // Count number of switches that replied to the requests
-    private Set<Integer> switchConfigCounter = new HashSet<>();
-    private Set<Integer> featuresCounter = new HashSet<>();
-    private Set<Integer> portStatsCounter = new HashSet<>();
-    private Set<Integer> flowStatsCounter = new HashSet<>();
-    private Set<Integer> meterStatsCounter = new HashSet<>();
-    private Set<Integer> meterFeaturesCounter = new HashSet<>();
-    private Set<Integer> portDesccounter = new HashSet<>();
-    private Set<Integer> tableCounter = new HashSet<>();
-    private Set<Integer> roleCounter = new HashSet<>();
-    private Set<Integer> barrierCounter = new HashSet<>();
-    private Set<Integer> groupCounter = new HashSet<>();
-    private Set<Integer> groupDescCounter = new HashSet<>();
-    private Set<Integer> groupFeaturesCounter = new HashSet<>();
-    // Keep track of replied content
-    private List<OFPortStatsEntry> portStats = new ArrayList<>();
-    private List<OFTableStatsEntry> tableEntries = new ArrayList<>();
-    private List<OFFlowStatsEntry> flowStats = new ArrayList<>();
-    private List<OFPortDesc> portDesc = new ArrayList<>();
-    private List<OFMeterStats> meterStats = new ArrayList<>();
-    private List<OFMeterFeaturesStatsReply> meterFeaturesReplies = new ArrayList<>();
-    private List<OFFeaturesReply> featuresReplies = new ArrayList<>();
-    private Set<OFCapabilities> fearturesCapas = new HashSet<>();
-    private Set<OFConfigFlags> configFlags = new HashSet<>();
-    private List<OFGroupStatsEntry> groupStats = new ArrayList<>();
-    private List<OFGroupDescStatsEntry> groupDescStats = new ArrayList<>();
-    private Set<OFStatsReplyFlags> groupFlags = new HashSet<>();
-    private Set<OFStatsReplyFlags> groupDescFlags = new HashSet<>();
-    private List<OFGroupFeaturesStatsReply> groupFeaturesReplies = new ArrayList<>();
+    // Replies of the switches per request of the controller
+    private final ReplyAggregations aggregations = new ReplyAggregations(
+            () -> TV.getLowerEndpointManager().getSockets().keySet(),
+            type -> TV.getConfig().getReplyTimeout(type),
+            this::replyDeadlinePassed
+    );
 
     public MultiSwitchApplication(IApplication controlPlaneConnector) {
         super(controlPlaneConnector);
     }
 
-    @Override
-    public synchronized void switchFeaturesToControlPlane(TVMessage tvMessage) {
-        OFFactory factory = OFFactories.getFactory(tvMessage.getOFMessage().getVersion());
-        OFFeaturesReply reply = tvMessage.getOFMessage();
+    /**
+     * @return the number of requests per dataplane ID that the switch did not answer before their deadline
+     */
+    public Map<Integer, Long> getLateReplies() {
+        return aggregations.getLateReplies();
+    }
 
-        if (featuresCounter.add(tvMessage.getDataplaneId())) {
-            fearturesCapas.addAll(reply.getCapabilities());
-            featuresReplies.add(reply);
+    @Override
+    public void switchFeaturesToControlPlane(TVMessage tvMessage) {
+        ReplyAggregations.Aggregation agg = aggregations.get(tvMessage);
+        if (agg.add(tvMessage)) {
+            toControlPlane(aggregateFeatures(agg));
         }
+    }
 
-        if (allAnswered(featuresCounter)) {
-            long minBuffer = featuresReplies.stream()
-                    .mapToLong(r -> r.getNBuffers())
-                    .filter(l -> l != 0)
-                    .min().orElse(0);
-            short nTables = (short) TV.getConfig().getTotalNumberOfTables();
-
-            OFFeaturesReply featuresReply = factory.buildFeaturesReply()
-                    .setCapabilities(new HashSet<>(fearturesCapas))
-                    .setNBuffers(minBuffer)
-                    .setNTables(nTables)
-                    .setDatapathId(TV.getConfig().getOurDatapathId())
-                    .build();
-            TVMessage newMsg = new TVMessage(featuresReply, tvMessage.getDataplaneId());
-            getSuccessingControlPlaneConnector().allToControlPlane(newMsg);
-
-            fearturesCapas.clear();
-            featuresReplies.clear();
-            featuresCounter.clear();
+    private TVMessage aggregateFeatures(ReplyAggregations.Aggregation agg) {
+        OFFeaturesReply reply = agg.getFirst().getOFMessage();
+        OFFactory factory = OFFactories.getFactory(reply.getVersion());
+        Set<OFCapabilities> capabilities = new HashSet<>();
+        long minBuffer = 0;
+        for (TVMessage m : agg.getReplies()) {
+            OFFeaturesReply r = m.getOFMessage();
+            capabilities.addAll(r.getCapabilities());
+            if (r.getNBuffers() != 0) {
+                minBuffer = (minBuffer == 0 ? r.getNBuffers() : Math.min(minBuffer, r.getNBuffers()));
+            }
         }
+        short nTables = (short) TV.getConfig().getTotalNumberOfTables();
+
+        OFFeaturesReply featuresReply = factory.buildFeaturesReply()
+                .setXid(reply.getXid())
+                .setCapabilities(capabilities)
+                .setNBuffers(minBuffer)
+                .setNTables(nTables)
+                .setDatapathId(TV.getConfig().getOurDatapathId())
+                .build();
+        return new TVMessage(featuresReply, agg.getFirst().getDataplaneId());
     }
 
     @Override
-    public synchronized void switchGetConfigToControlPlane(TVMessage tvMessage) {
-        OFFactory factory = OFFactories.getFactory(tvMessage.getOFMessage().getVersion());
-        OFGetConfigReply reply = tvMessage.getOFMessage();
-
-        if (switchConfigCounter.add(tvMessage.getDataplaneId())) {
-            configFlags.addAll(reply.getFlags());
+    public void switchGetConfigToControlPlane(TVMessage tvMessage) {
+        ReplyAggregations.Aggregation agg = aggregations.get(tvMessage);
+        if (agg.add(tvMessage)) {
+            toControlPlane(aggregateConfig(agg));
         }
+    }
 
-        if (allAnswered(switchConfigCounter)) {
-            OFGetConfigReply confReply = factory.buildGetConfigReply()
-                    .setXid(reply.getXid())
-                    .setFlags(new HashSet<>(configFlags))
-                    .setMissSendLen(reply.getMissSendLen())
-                    .build();
-            TVMessage newMsg = new TVMessage(confReply, tvMessage.getDataplaneId());
-            getSuccessingControlPlaneConnector().allToControlPlane(newMsg);
-
-            switchConfigCounter.clear();
-            configFlags.clear();
+    private TVMessage aggregateConfig(ReplyAggregations.Aggregation agg) {
+        OFGetConfigReply reply = agg.getFirst().getOFMessage();
+        OFFactory factory = OFFactories.getFactory(reply.getVersion());
+        Set<OFConfigFlags> configFlags = new HashSet<>();
+        for (TVMessage m : agg.getReplies()) {
+            configFlags.addAll(((OFGetConfigReply) m.getOFMessage()).getFlags());
         }
+        OFGetConfigReply confReply = factory.buildGetConfigReply()
+                .setXid(reply.getXid())
+                .setFlags(configFlags)
+                .setMissSendLen(reply.getMissSendLen())
+                .build();
+        return new TVMessage(confReply, agg.getFirst().getDataplaneId());
     }
 
     @Override
-    public synchronized void switchStatsToControlPlane(TVMessage tvMessage) {
+    public void switchStatsToControlPlane(TVMessage tvMessage) {
         OFFactory factory = OFFactories.getFactory(tvMessage.getOFMessage().getVersion());
         OFStatsReply switchReply = tvMessage.getOFMessage();
-        OFStatsReply ourReply = null;
 
-        switch (switchReply.getStatsType()) {
-            case PORT_DESC:
-                if (portDesccounter.add(tvMessage.getDataplaneId())) {
-                    portDesc.addAll(((OFPortDescStatsReply) switchReply).getEntries());
-                }
-                if (allAnswered(portDesccounter)) {
-                    ourReply = factory.buildPortDescStatsReply()
-                            .setXid(switchReply.getXid())
-                            .setEntries(new ArrayList<>(portDesc))
-                            .build();
-                    portDesccounter.clear();
-                    portDesc.clear();
-                }
-                break;
+        if (!AGGREGATED_STATS.contains(switchReply.getStatsType())) {
+            logger.warn("Unrecognized SwitchStatsReply type '{}'", switchReply.getStatsType());
+            return;
+        }
+        ReplyAggregations.Aggregation agg = aggregations.get(tvMessage);
 
+        switch (switchReply.getStatsType()) {
             case PORT:
-                if (portStatsCounter.add(tvMessage.getDataplaneId())) {
-                    portStats.addAll(((OFPortStatsReply) switchReply).getEntries());
-                }
-                if (allAnswered(portStatsCounter)) {
-                    ourReply = factory.buildPortStatsReply()
-                            .setXid(switchReply.getXid())
-                            .setEntries(new ArrayList<>(portStats))
-                            .build();
-                    portStatsCounter.clear();
-                    portStats.clear();
-                }
-                break;
-
-            case GROUP:
-                if (groupCounter.add(tvMessage.getDataplaneId())) {
-                    groupStats.addAll(((OFGroupStatsReply) switchReply).getEntries());
-                    groupFlags.addAll(((OFGroupStatsReply) switchReply).getFlags());
-                }
-                if (allAnswered(groupCounter)) {
-                    ourReply = factory.buildGroupStatsReply()
-                            .setXid(switchReply.getXid())
-                            .setEntries(new ArrayList<>(groupStats))
-                            .setFlags(new HashSet<>(groupFlags))
-                            .build();
-                    groupCounter.clear();
-                    groupStats.clear();
-                    groupFlags.clear();
-                }
-                break;
-
-            case GROUP_DESC:
-                if (groupDescCounter.add(tvMessage.getDataplaneId())) {
-                    groupDescStats.addAll(((OFGroupDescStatsReply) switchReply).getEntries());
-                    groupDescFlags.addAll(((OFGroupDescStatsReply) switchReply).getFlags());
-                }
-                if (allAnswered(groupDescCounter)) {
-                    ourReply = factory.buildGroupDescStatsReply()
-                            .setXid(switchReply.getXid())
-                            .setEntries(new ArrayList<>(groupDescStats))
-                            .setFlags(new HashSet<>(groupDescFlags))
-                            .build();
-                    groupDescCounter.clear();
-                    groupDescStats.clear();
-                    groupDescFlags.clear();
-                }
-                break;
-
-            case GROUP_FEATURES:
-                if (groupFeaturesCounter.add(tvMessage.getDataplaneId())) {
-                    groupFeaturesReplies.add((OFGroupFeaturesStatsReply) switchReply);
-                }
-                if (allAnswered(groupFeaturesCounter)) {
-                    long actionsAll = 0;
-                    long actionsFf = 0;
-                    long actionsIndircet = 0;
-                    long actionsSelect = 0;
-                    long maxGroupsAll = 0;
-                    long maxGroupsFf = 0;
-                    long maxGroupsIndirect = 0;
-                    long maxGroupsSelect = 0;
-                    long types = 0;
-                    Set<OFStatsReplyFlags> flags = new HashSet<>();
-                    Set<OFGroupCapabilities> capabilities = new HashSet<>();
-
-
-                    for (OFGroupFeaturesStatsReply rep : groupFeaturesReplies) {
-                        flags.addAll(rep.getFlags());
-                        capabilities.addAll(capabilities);
-                        actionsAll = (actionsAll == -1 ? rep.getActionsAll() : Math.min(actionsAll, rep.getActionsAll()));
-                        actionsFf = (actionsFf == -1 ? rep.getActionsFf() : Math.min(actionsFf, rep.getActionsFf()));
-                        actionsIndircet = (actionsIndircet == -1 ? rep.getActionsIndirect() : Math.min(actionsIndircet, rep.getActionsIndirect()));
-                        actionsSelect = (actionsSelect == -1 ? rep.getActionsSelect() : Math.min(actionsSelect, rep.getActionsSelect()));
-                        maxGroupsAll = (maxGroupsAll == -1 ? rep.getMaxGroupsAll() : Math.min(maxGroupsAll, rep.getMaxGroupsAll()));
-                        maxGroupsFf = (maxGroupsFf == -1 ? rep.getMaxGroupsFf() : Math.min(maxGroupsFf, rep.getMaxGroupsFf()));
-                        maxGroupsIndirect = (maxGroupsIndirect == -1 ? rep.getMaxGroupsIndirect() : Math.min(maxGroupsIndirect, rep.getMaxGroupsIndirect()));
-                        maxGroupsSelect = (maxGroupsSelect == -1 ? rep.getMaxGroupsSelect() : Math.min(maxGroupsSelect, rep.getMaxGroupsSelect()));
-                        types = (types == -1 ? rep.getTypes() : Math.min(types, rep.getTypes()));
-                    }
-                    ourReply = factory.buildGroupFeaturesStatsReply()
-                            .setXid(switchReply.getXid())
-                            .setFlags(flags)
-                            .setActionsAll(actionsAll)
-                            .setActionsFf(actionsFf)
-                            .setActionsIndirect(actionsIndircet)
-                            .setActionsSelect(actionsSelect)
-                            .setMaxGroupsAll(maxGroupsAll)
-                            .setMaxGroupsFf(maxGroupsFf)
-                            .setMaxGroupsIndirect(maxGroupsIndirect)
-                            .setMaxGroupsSelect(maxGroupsSelect)
-                            .setTypes(types)
-                            .setCapabilities(capabilities)
-                            .build();
-                    groupFeaturesCounter.clear();
-                    groupFeaturesReplies.clear();
-                }
-                break;
-
-            case DESC:
-                ourReply = factory.buildDescStatsReply()
-                        .setXid(switchReply.getXid())
-                        .setHwDesc("Emulated MultiSwitch")
-                        .setSwDesc(TableVisor.VERSION)
-                        .setMfrDesc("TableVisor")
-                        .build();
-                initializePipeline(tvMessage,factory);
-                break;
-
-            case TABLE:
-                if (tableCounter.add(tvMessage.getDataplaneId())) {
-                    tableEntries.addAll(
-                            adaptTableStatsEntries(((OFTableStatsReply) switchReply).getEntries(), tvMessage.getDataplaneId())
-                    );
-                }
-                if (allAnswered(tableCounter)) {
-                    ourReply = factory.buildTableStatsReply()
-                            .setXid(switchReply.getXid())
-                            .setEntries(new ArrayList<>(tableEntries))
-                            .build();
-                    tableCounter.clear();
-                    tableEntries.clear();
-                }
-                break;
-
-            case METER:
-                if (meterStatsCounter.add(tvMessage.getDataplaneId())) {
-                    meterStats.addAll(((OFMeterStatsReply) switchReply).getEntries());
-                }
-                if (allAnswered(meterStatsCounter)) {
-                    ourReply = factory.buildMeterStatsReply()
-                            .setXid(switchReply.getXid())
-                            .setEntries(new ArrayList<>(meterStats))
-                            .build();
-                    meterStatsCounter.clear();
-                    meterStats.clear();
-                }
-                break;
-
-            case METER_FEATURES:
-                if (meterFeaturesCounter.add(tvMessage.getDataplaneId())) {
-                    meterFeaturesReplies.add((OFMeterFeaturesStatsReply) switchReply);
-                }
-                if (allAnswered(meterFeaturesCounter)) {
-                    long capabilities = 0;
-                    long bandTypes = 0;
-                    int maxBands = -1;
-                    int maxColors = -1;
-                    long maxMeter = -1;
-                    for (OFMeterFeaturesStatsReply rep : meterFeaturesReplies) {
-                        capabilities = capabilities | rep.getFeatures().getCapabilities();
-                        bandTypes = bandTypes | rep.getFeatures().getBandTypes();
-                        maxBands = (maxBands == -1 ? rep.getFeatures().getMaxBands() : Math.min(maxBands, rep.getFeatures().getMaxBands()));
-                        maxColors = (maxColors == -1 ? rep.getFeatures().getMaxBands() : Math.min(maxColors, rep.getFeatures().getMaxBands()));
-                        maxMeter = (maxMeter == -1 ? rep.getFeatures().getMaxBands() : Math.min(maxMeter, rep.getFeatures().getMaxBands()));
-                    }
-
-                    OFMeterFeatures feat = factory.buildMeterFeatures()
-                            .setCapabilities(capabilities)
-                            .setBandTypes(bandTypes)
-                            .setMaxBands((short) maxBands)
-                            .setMaxColor((short) maxColors)
-                            .setMaxMeter(maxMeter)
-                            .build();
-                    ourReply = factory.buildMeterFeaturesStatsReply()
-                            .setXid(switchReply.getXid())
-                            .setFeatures(feat)
-                            .build();
-                    meterFeaturesCounter.clear();
-                    meterFeaturesReplies.clear();
+                if (agg.hasAnswered(tvMessage.getDataplaneId())) {
+                    logger.warn("Port Stats Replies of Data Plane Devices out of sync (duplicate reply from {})", tvMessage.getDataplaneId());
+                    break;
                 }
+                streamToControlPlane(agg, tvMessage, ((OFPortStatsReply) switchReply).getEntries(),
+                        (entries, flags) -> factory.buildPortStatsReply()
+                                .setXid(switchReply.getXid())
+                                .setFlags(flags)
+                                .setEntries(entries)
+                                .build()
+                );
                 break;
 
 //            case FLOW:
@@ -352,62 +177,329 @@ public class MultiSwitchApplication extends BaseApplication {
 //                break;
 
             case FLOW:
-                if (flowStatsCounter.add(tvMessage.getDataplaneId())) {
-                    ArrayList<OFFlowStatsEntry> lastTableEntries = new ArrayList<>();
-                    ArrayList<OFFlowStatsEntry> firstTableEntries = new ArrayList<>();
-
-                    if (tvMessage.getDataplaneId() == TV.getConfig().smallestDataplaneId()) {
-                        for (OFFlowStatsEntry entry : ((OFFlowStatsReply) switchReply).getEntries()) {
-                            if (matchContainsInPortFromHigherDevice(entry, tvMessage.getDataplaneId())) {
-                                entry = entry.createBuilder().setMatch(
-                                        removeInPortFromMatch(entry.getMatch())
-                                ).build();
-                                lastTableEntries.add(entry);
-                            }
-                            else {
-                                firstTableEntries.add(entry);
-                            }
+                if (agg.hasAnswered(tvMessage.getDataplaneId())) {
+                    logger.warn("Flow Stats Replies of Data Plane Devices out of sync (duplicate reply from {})", tvMessage.getDataplaneId());
+                    break;
+                }
+                ArrayList<OFFlowStatsEntry> lastTableEntries = new ArrayList<>();
+                ArrayList<OFFlowStatsEntry> firstTableEntries = new ArrayList<>();
+
+                if (tvMessage.getDataplaneId() == TV.getConfig().smallestDataplaneId()) {
+                    for (OFFlowStatsEntry entry : ((OFFlowStatsReply) switchReply).getEntries()) {
+                        if (matchContainsInPortFromHigherDevice(entry, tvMessage.getDataplaneId())) {
+                            entry = entry.createBuilder().setMatch(
+                                    removeInPortFromMatch(entry.getMatch())
+                            ).build();
+                            lastTableEntries.add(entry);
+                        }
+                        else {
+                            firstTableEntries.add(entry);
                         }
                     }
-                    else {
-                        firstTableEntries.addAll(((OFFlowStatsReply) switchReply).getEntries());
-                    }
+                }
+                else {
+                    firstTableEntries.addAll(((OFFlowStatsReply) switchReply).getEntries());
+                }
 
-                    flowStats.addAll(
-                            adaptFlowStatsEntries(lastTableEntries, tvMessage.getDataplaneId(), true)
-                    );
-                    flowStats.addAll(
-                            adaptFlowStatsEntries(firstTableEntries, tvMessage.getDataplaneId(), false)
-                    );
+                List<OFFlowStatsEntry> flowStats = adaptFlowStatsEntries(lastTableEntries, tvMessage.getDataplaneId(), true);
+                flowStats.addAll(adaptFlowStatsEntries(firstTableEntries, tvMessage.getDataplaneId(), false));
+                streamToControlPlane(agg, tvMessage, flowStats,
+                        (entries, flags) -> factory.buildFlowStatsReply()
+                                .setXid(switchReply.getXid())
+                                .setFlags(flags)
+                                .setEntries(entries)
+                                .build()
+                );
+                break;
 
-                    Set<OFStatsReplyFlags> ourFlags = new HashSet<>(switchReply.getFlags());
-                    if (!allAnswered(flowStatsCounter)) {
-                        ourFlags.add(OFStatsReplyFlags.REPLY_MORE);
-                    }
-                    else {
-                        flowStatsCounter.clear();
-                    }
-                    ourReply = factory.buildFlowStatsReply()
-                            .setXid(switchReply.getXid())
-                            .setFlags(ourFlags)
-                            .setEntries(new ArrayList<>(flowStats))
-                            .build();
-                    flowStats.clear();
+            case DESC:
+                initializePipeline(tvMessage,factory);
+                if (agg.add(tvMessage)) {
+                    toControlPlane(aggregateStats(agg));
                 }
-                else {
-                    logger.warn("Flow Stats Replies of Data Plane Devices out of sync (duplicate reply from {})", tvMessage.getDataplaneId());
+                break;
+
+            default:
+                if (agg.add(tvMessage)) {
+                    toControlPlane(aggregateStats(agg));
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return the reply to a stats request aggregated from the replies of an aggregation; for PORT and FLOW stats,
+     * whose entries are passed on as they arrive, the final fragment without entries
+     */
+    private TVMessage aggregateStats(ReplyAggregations.Aggregation agg) {
+        OFStatsReply switchReply = agg.getFirst().getOFMessage();
+        OFFactory factory = OFFactories.getFactory(switchReply.getVersion());
+        OFStatsReply ourReply;
+
+        switch (switchReply.getStatsType()) {
+            case PORT_DESC:
+                ourReply = factory.buildPortDescStatsReply()
+                        .setXid(switchReply.getXid())
+                        .setEntries(allEntries(agg, OFPortDescStatsReply::getEntries))
+                        .build();
+                break;
+
+            case PORT:
+                ourReply = factory.buildPortStatsReply()
+                        .setXid(switchReply.getXid())
+                        .build();
+                break;
+
+            case GROUP:
+                ourReply = factory.buildGroupStatsReply()
+                        .setXid(switchReply.getXid())
+                        .setEntries(allEntries(agg, OFGroupStatsReply::getEntries))
+                        .setFlags(allFlags(agg))
+                        .build();
+                break;
+
+            case GROUP_DESC:
+                ourReply = factory.buildGroupDescStatsReply()
+                        .setXid(switchReply.getXid())
+                        .setEntries(allEntries(agg, OFGroupDescStatsReply::getEntries))
+                        .setFlags(allFlags(agg))
+                        .build();
+                break;
+
+            case GROUP_FEATURES: {
+                long actionsAll = 0;
+                long actionsFf = 0;
+                long actionsIndircet = 0;
+                long actionsSelect = 0;
+                long maxGroupsAll = 0;
+                long maxGroupsFf = 0;
+                long maxGroupsIndirect = 0;
+                long maxGroupsSelect = 0;
+                long types = 0;
+                Set<OFStatsReplyFlags> flags = new HashSet<>();
+                Set<OFGroupCapabilities> capabilities = new HashSet<>();
+
+
+                for (TVMessage m : agg.getReplies()) {
+                    OFGroupFeaturesStatsReply rep = m.getOFMessage();
+                    flags.addAll(rep.getFlags());
+                    capabilities.addAll(capabilities);
+                    actionsAll = (actionsAll == -1 ? rep.getActionsAll() : Math.min(actionsAll, rep.getActionsAll()));
+                    actionsFf = (actionsFf == -1 ? rep.getActionsFf() : Math.min(actionsFf, rep.getActionsFf()));
+                    actionsIndircet = (actionsIndircet == -1 ? rep.getActionsIndirect() : Math.min(actionsIndircet, rep.getActionsIndirect()));
+                    actionsSelect = (actionsSelect == -1 ? rep.getActionsSelect() : Math.min(actionsSelect, rep.getActionsSelect()));
+                    maxGroupsAll = (maxGroupsAll == -1 ? rep.getMaxGroupsAll() : Math.min(maxGroupsAll, rep.getMaxGroupsAll()));
+                    maxGroupsFf = (maxGroupsFf == -1 ? rep.getMaxGroupsFf() : Math.min(maxGroupsFf, rep.getMaxGroupsFf()));
+                    maxGroupsIndirect = (maxGroupsIndirect == -1 ? rep.getMaxGroupsIndirect() : Math.min(maxGroupsIndirect, rep.getMaxGroupsIndirect()));
+                    maxGroupsSelect = (maxGroupsSelect == -1 ? rep.getMaxGroupsSelect() : Math.min(maxGroupsSelect, rep.getMaxGroupsSelect()));
+                    types = (types == -1 ? rep.getTypes() : Math.min(types, rep.getTypes()));
                 }
+                ourReply = factory.buildGroupFeaturesStatsReply()
+                        .setXid(switchReply.getXid())
+                        .setFlags(flags)
+                        .setActionsAll(actionsAll)
+                        .setActionsFf(actionsFf)
+                        .setActionsIndirect(actionsIndircet)
+                        .setActionsSelect(actionsSelect)
+                        .setMaxGroupsAll(maxGroupsAll)
+                        .setMaxGroupsFf(maxGroupsFf)
+                        .setMaxGroupsIndirect(maxGroupsIndirect)
+                        .setMaxGroupsSelect(maxGroupsSelect)
+                        .setTypes(types)
+                        .setCapabilities(capabilities)
+                        .build();
+                break;
+            }
+
+            case DESC:
+                ourReply = factory.buildDescStatsReply()
+                        .setXid(switchReply.getXid())
+                        .setHwDesc("Emulated MultiSwitch")
+                        .setSwDesc(TableVisor.VERSION)
+                        .setMfrDesc("TableVisor")
+                        .build();
+                break;
+
+            case TABLE:
+                List<OFTableStatsEntry> tableEntries = new ArrayList<>();
+                for (TVMessage m : agg.getReplies()) {
+                    tableEntries.addAll(
+                            adaptTableStatsEntries(((OFTableStatsReply) m.getOFMessage()).getEntries(), m.getDataplaneId())
+                    );
+                }
+                ourReply = factory.buildTableStatsReply()
+                        .setXid(switchReply.getXid())
+                        .setEntries(tableEntries)
+                        .build();
+                break;
+
+            case METER:
+                ourReply = factory.buildMeterStatsReply()
+                        .setXid(switchReply.getXid())
+                        .setEntries(allEntries(agg, OFMeterStatsReply::getEntries))
+                        .build();
+                break;
+
+            case METER_FEATURES: {
+                long capabilities = 0;
+                long bandTypes = 0;
+                int maxBands = -1;
+                int maxColors = -1;
+                long maxMeter = -1;
+                for (TVMessage m : agg.getReplies()) {
+                    OFMeterFeaturesStatsReply rep = m.getOFMessage();
+                    capabilities = capabilities | rep.getFeatures().getCapabilities();
+                    bandTypes = bandTypes | rep.getFeatures().getBandTypes();
+                    maxBands = (maxBands == -1 ? rep.getFeatures().getMaxBands() : Math.min(maxBands, rep.getFeatures().getMaxBands()));
+                    maxColors = (maxColors == -1 ? rep.getFeatures().getMaxBands() : Math.min(maxColors, rep.getFeatures().getMaxBands()));
+                    maxMeter = (maxMeter == -1 ? rep.getFeatures().getMaxBands() : Math.min(maxMeter, rep.getFeatures().getMaxBands()));
+                }
+
+                OFMeterFeatures feat = factory.buildMeterFeatures()
+                        .setCapabilities(capabilities)
+                        .setBandTypes(bandTypes)
+                        .setMaxBands((short) maxBands)
+                        .setMaxColor((short) maxColors)
+                        .setMaxMeter(maxMeter)
+                        .build();
+                ourReply = factory.buildMeterFeaturesStatsReply()
+                        .setXid(switchReply.getXid())
+                        .setFeatures(feat)
+                        .build();
+                break;
+            }
+
+            case FLOW:
+                ourReply = factory.buildFlowStatsReply()
+                        .setXid(switchReply.getXid())
+                        .build();
                 break;
 
             default:
-                logger.warn("Unrecognized SwitchStatsReply type '{}'", switchReply.getStatsType());
+                throw new IllegalArgumentException("Stats type " + switchReply.getStatsType() + " is not aggregated");
+        }
+        return new TVMessage(ourReply, agg.getFirst().getDataplaneId());
+    }
+
+    private void statsFragmentToControlPlane(OFStatsReply reply, int dataplaneId) {
+        toControlPlane(new TVMessage(reply, dataplaneId));
+    }
+
+    /**
+     * Passes the entries of a switch reply on in fragments with REPLY_MORE, which are sent before the switch is marked
+     * as answered. Thus, the final fragment, sent by whichever reply completes the request (or by the expiry once
+     * the reply has been handled), is the last one.
+     */
+    private <E extends OFObject> void streamToControlPlane(ReplyAggregations.Aggregation agg, TVMessage tvMessage, List<E> entries,
+                                                           MultipartReplyStreamer.FragmentBuilder<E> builder) {
+        OFStatsReply switchReply = tvMessage.getOFMessage();
+        int dataplaneId = tvMessage.getDataplaneId();
+        // A switch has answered with its last fragment
+        boolean last = !switchReply.getFlags().contains(OFStatsReplyFlags.REPLY_MORE);
+        if (!agg.enter()) {
+            logger.debug("Late stats reply of dataplane {} dropped", dataplaneId);
+            if (last) {
+                agg.answer(dataplaneId);
+            }
+            return;
+        }
+        try {
+            MultipartReplyStreamer<E> streamer = new MultipartReplyStreamer<>(builder, reply -> statsFragmentToControlPlane(reply, dataplaneId));
+            streamer.addAll(entries);
+            if (last && agg.getRemaining() == 1 && agg.answer(dataplaneId)) {
+                // all other switches have answered, so their fragments have been sent
+                streamer.finish();
+                return;
+            }
+            streamer.flush();
+            if (last && agg.answer(dataplaneId)) {
+                streamer.finish();
+            }
+        }
+        finally {
+            agg.leave();
+        }
+    }
+
+    /**
+     * Answers a request whose deadline has passed with the replies received so far. A barrier, or a request that no
+     * switch has answered, is answered with an error instead, as the commands on the missing switches may not have
+     * been completed.
+     */
+    private void replyDeadlinePassed(ReplyAggregations.Aggregation agg) {
+        TVMessage first = agg.getFirst();
+        if (first == null) {
+            logger.warn("No {} (xid {}) of any dataplane within {} ms, answering with an error",
+                    agg.getReplyType(), agg.getXid(), agg.getDeadline());
+            toControlPlane(deadlineError(agg));
+            return;
+        }
+        logger.warn("No {} (xid {}) of dataplane(s) {} within {} ms, answering with the replies of the others",
+                agg.getReplyType(), agg.getXid(), agg.getMissing(), agg.getDeadline());
+
+        switch (agg.getReplyType()) {
+            case FEATURES_REPLY:
+                toControlPlane(aggregateFeatures(agg));
+                break;
+            case GET_CONFIG_REPLY:
+                toControlPlane(aggregateConfig(agg));
+                break;
+            case STATS_REPLY:
+                toControlPlane(aggregateStats(agg));
+                break;
+            case ROLE_REPLY:
+                toControlPlane(first);
                 break;
+            case BARRIER_REPLY:
+                toControlPlane(deadlineError(agg));
+                break;
+            default:
+                logger.warn("Cannot answer {} after its deadline", first.getTypeAsString());
+                break;
+        }
+    }
+
+    /**
+     * @return the BAD_REQUEST error answering a request whose deadline has passed
+     */
+    private static TVMessage deadlineError(ReplyAggregations.Aggregation agg) {
+        OFMessage request = agg.getRequest();
+        if (request == null) {
+            // only barriers are answered with an error if a switch has answered
+            OFMessage reply = agg.getFirst().getOFMessage();
+            request = OFFactories.getFactory(reply.getVersion()).buildBarrierRequest().setXid(reply.getXid()).build();
         }
+        OFFactory factory = OFFactories.getFactory(request.getVersion());
+        ByteBuf buf = Unpooled.buffer();
+        request.writeTo(buf);
+        byte[] data = new byte[buf.readableBytes()];
+        buf.readBytes(data);
+        // OpenFlow has no error code for timeouts
+        OFErrorMsg error = factory.errorMsgs().buildBadRequestErrorMsg()
+                .setXid(agg.getXid())
+                .setCode(OFBadRequestCode.EPERM)
+                .setData(OFErrorCauseData.of(data, request.getVersion()))
+                .build();
+        return new TVMessage(error);
+    }
+
+    /**
+     * @return the entries of all replies of the aggregation
+     */
+    private static <R extends OFStatsReply, E> List<E> allEntries(ReplyAggregations.Aggregation agg, Function<R, List<E>> entries) {
+        List<E> all = new ArrayList<>();
+        for (TVMessage m : agg.getReplies()) {
+            all.addAll(entries.apply(m.getOFMessage()));
+        }
+        return all;
+    }
 
-        if (ourReply != null) {
-            TVMessage newMsg = new TVMessage(ourReply, tvMessage.getDataplaneId());
-            getSuccessingControlPlaneConnector().allToControlPlane(newMsg);
+    private static Set<OFStatsReplyFlags> allFlags(ReplyAggregations.Aggregation agg) {
+        Set<OFStatsReplyFlags> flags = new HashSet<>();
+        for (TVMessage m : agg.getReplies()) {
+            flags.addAll(((OFStatsReply) m.getOFMessage()).getFlags());
         }
+        return flags;
     }
 
     private Match removeInPortFromMatch(Match oldMatch) {
@@ -445,25 +537,35 @@ public class MultiSwitchApplication extends BaseApplication {
 
     @Override
     public void tableModToDataPlane(TVMessage tvMessage) {
+        IdPair dest = TV.ourTableIdToSwitchId(TVMsgRewriter.getTableId(tvMessage));
+        if (TVMsgRewriter.setTableId(tvMessage, dest.tableIdObj)) {
+            tvMessage.setDataplaneId(dest.dataplaneId);
+            toDataPlane(tvMessage);
+            return;
+        }
         OFTableMod tableMod = tvMessage.getOFMessage();
-        IdPair dest = TV.ourTableIdToSwitchId(tableMod.getTableId());
         TVMessage newMsg = new TVMessage(
                 tableMod.createBuilder().setTableId(dest.tableIdObj).build(),
                 dest.dataplaneId
         );
-        getSuccessingDataPlaneConnector().allToDataPlane(newMsg);
+        toDataPlane(newMsg);
     }
 
     @Override
     public void flowModToControlPlane(TVMessage tvMessage) {
+        TableId ourTableId = TableId.of(
+                TV.switchIdToOurTableId(tvMessage.getDataplaneId(), TVMsgRewriter.getTableId(tvMessage))[0]
+        );
+        if (TVMsgRewriter.setTableId(tvMessage, ourTableId)) {
+            toControlPlane(tvMessage);
+            return;
+        }
         OFFlowRemoved rmv = tvMessage.getOFMessage();
         TVMessage newMsg = new TVMessage(
-                rmv.createBuilder().setTableId(TableId.of(
-                        TV.switchIdToOurTableId(tvMessage.getDataplaneId(), rmv.getTableId())[0]
-                )).build(),
+                rmv.createBuilder().setTableId(ourTableId).build(),
                 tvMessage.getDataplaneId()
         );
-        getSuccessingControlPlaneConnector().allToControlPlane(newMsg);
+        toControlPlane(newMsg);
     }
 
     @Override
@@ -553,45 +655,45 @@ public class MultiSwitchApplication extends BaseApplication {
                 dest.dataplaneId
         );
 
-        getSuccessingDataPlaneConnector().allToDataPlane(newMsg);
+        toDataPlane(newMsg);
     }
 
     @Override
     public void packetInToControlPlane(TVMessage tvMessage) {
+        TableId ourTableId = TableId.of(
+                TV.switchIdToOurTableId(tvMessage.getDataplaneId(), TVMsgRewriter.getTableId(tvMessage))[0]
+        );
+        // Patch the table ID in the received frame, the payload is not copied
+        if (TVMsgRewriter.setTableId(tvMessage, ourTableId)) {
+            toControlPlane(tvMessage);
+            return;
+        }
         OFPacketIn packInSwitch = tvMessage.getOFMessage();
         TVMessage packInOurs = new TVMessage(
-                packInSwitch.createBuilder().setTableId(TableId.of(
-                        TV.switchIdToOurTableId(tvMessage.getDataplaneId(), packInSwitch.getTableId())[0]
-                )).build(),
+                packInSwitch.createBuilder().setTableId(ourTableId).build(),
                 tvMessage.getDataplaneId()
         );
-        getSuccessingControlPlaneConnector().allToControlPlane(packInOurs);
+        toControlPlane(packInOurs);
     }
 
     @Override
     public void packetOutToDataPlane(TVMessage tvMessage) {
         IdPair pair = TV.ourTableIdToSwitchId(0);
         tvMessage.setDataplaneId(pair.dataplaneId);
-        getSuccessingDataPlaneConnector().allToDataPlane(tvMessage);
+        toDataPlane(tvMessage);
     }
 
     @Override
-    public synchronized void roleToControlPlane(TVMessage tvMessage) {
-        roleCounter.add(tvMessage.getDataplaneId());
-
-        if (allAnswered(roleCounter)) {
-            getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
-            roleCounter.clear();
+    public void roleToControlPlane(TVMessage tvMessage) {
+        if (aggregations.get(tvMessage).add(tvMessage)) {
+            toControlPlane(tvMessage);
         }
     }
 
     @Override
-    public synchronized void barrierToControlPlane(TVMessage tvMessage) {
-        barrierCounter.add(tvMessage.getDataplaneId());
-
-        if (allAnswered(barrierCounter)) {
-            getSuccessingControlPlaneConnector().allToControlPlane(tvMessage);
-            barrierCounter.clear();
+    public void barrierToControlPlane(TVMessage tvMessage) {
+        if (aggregations.get(tvMessage).add(tvMessage)) {
+            toControlPlane(tvMessage);
         }
     }
 
@@ -652,7 +754,17 @@ public class MultiSwitchApplication extends BaseApplication {
 
     @Override
     public void errorToControlPlane(TVMessage tvMessage) {
-        // Do nothing. Eat errors.
+        // A switch that cannot execute a barrier answers it with an error, which is passed on right away.
+        // Eat other errors.
+        OFErrorMsg error = tvMessage.getOFMessage();
+        OFMessage request = error.getData().getParsedMessage().orNull();
+        if (request != null && request.getType() == OFType.BARRIER_REQUEST) {
+            ReplyAggregations.Aggregation agg = aggregations.find(OFType.BARRIER_REPLY, error.getXid());
+            if (agg != null && agg.fail(tvMessage.getDataplaneId())) {
+                logger.warn("BARRIER_REQUEST (xid {}) failed on dataplane {}", error.getXid(), tvMessage.getDataplaneId());
+                toControlPlane(tvMessage);
+            }
+        }
     }
 
     @Override
@@ -661,15 +773,16 @@ public class MultiSwitchApplication extends BaseApplication {
     }
 
     private void sendToAllSwitches(TVMessage tvMessage) {
-        for (int i : TV.getLowerEndpointManager().getSockets().keySet()) {
-            getSuccessingDataPlaneConnector().allToDataPlane(tvMessage.copyWithDpId(i));
+        Set<Integer> switches = new HashSet<>(TV.getLowerEndpointManager().getSockets().keySet());
+        // before the first reply can arrive
+        aggregations.register(tvMessage, switches);
+        // serialize once, the copies only differ in their dataplane ID
+        tvMessage.encodeRawFrame();
+        for (int i : switches) {
+            toDataPlane(tvMessage.copyWithDpId(i));
         }
     }
 
-    private boolean allAnswered(Collection seen) {
-        return seen.size() == TV.getLowerEndpointManager().getSockets().size();
-    }
-
     private List<OFTableStatsEntry> adaptTableStatsEntries(List<OFTableStatsEntry> entries, int dataplaneId) {
         ArrayList<OFTableStatsEntry> filteredStats = new ArrayList<>();
         for (OFTableStatsEntry e : entries) {
@@ -807,8 +920,7 @@ public class MultiSwitchApplication extends BaseApplication {
             ).build();
             hiddenInsts.add(outInst);
             OFFlowAdd.Builder builder = factory.buildFlowAdd();
-            builder.setXid(0x12345678)
-                    .setCookie(U64.parseHex("FEDCBA98765432"))
+            builder.setCookie(U64.parseHex("FEDCBA98765432"))
                     .setCookieMask(U64.parseHex("0000000000000000"))
                     .setTableId(TableId.of(0))
                     .setIdleTimeout(0)
@@ -825,9 +937,15 @@ public class MultiSwitchApplication extends BaseApplication {
                             )).build())
                     .setInstructions(hiddenInsts);
 
-            OFFlowAdd flowMod = builder.build();
-            TVMessage newMsg = new TVMessage(flowMod, tvMessage.getDataplaneId());
-            getSuccessingDataPlaneConnector().allToDataPlane(newMsg);
+            int dataplaneId = tvMessage.getDataplaneId();
+            request(dataplaneId, builder.build()).whenComplete((replies, e) -> {
+                if (e != null) {
+                    logger.warn("Hidden pipeline rule on dataplane {} not confirmed: {}", dataplaneId, e.getMessage());
+                }
+                else if (!replies.isEmpty()) {
+                    logger.warn("Hidden pipeline rule rejected by dataplane {}: {}", dataplaneId, replies.get(0));
+                }
+            });
         }
     }
 }
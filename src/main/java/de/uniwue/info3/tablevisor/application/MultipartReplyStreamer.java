@@ -0,0 +1,102 @@
+package de.uniwue.info3.tablevisor.application;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.projectfloodlight.openflow.protocol.OFObject;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsReplyFlags;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Splits the entries of a multipart reply into fragments that fit into a single OpenFlow message.
+ * Entries are passed on as soon as a fragment is full, so that only the entries of one fragment are held in memory.
+ * All fragments but the last one carry the REPLY_MORE flag.
+ */
+public class MultipartReplyStreamer<E extends OFObject> {
+	// OpenFlow message length is a 16 bit field; the multipart reply header takes 16 bytes
+	private static final int MAX_MESSAGE_LENGTH = 0xFFFF;
+	private static final int MULTIPART_HEADER_LENGTH = 16;
+
+	@FunctionalInterface
+	public interface FragmentBuilder<E> {
+		OFStatsReply build(List<E> entries, Set<OFStatsReplyFlags> flags);
+	}
+
+	private final FragmentBuilder<E> builder;
+	private final Consumer<OFStatsReply> sink;
+	private final int maxEntriesLength;
+	private final ByteBuf scratch = Unpooled.buffer();
+
+	private List<E> entries = new ArrayList<>();
+	private int entriesLength = 0;
+	private int fragments = 0;
+
+	public MultipartReplyStreamer(FragmentBuilder<E> builder, Consumer<OFStatsReply> sink) {
+		this(builder, sink, MAX_MESSAGE_LENGTH);
+	}
+
+	public MultipartReplyStreamer(FragmentBuilder<E> builder, Consumer<OFStatsReply> sink, int maxMessageLength) {
+		this.builder = builder;
+		this.sink = sink;
+		this.maxEntriesLength = maxMessageLength - MULTIPART_HEADER_LENGTH;
+	}
+
+	public void add(E entry) {
+		int length = lengthOf(entry);
+		if (!entries.isEmpty() && entriesLength + length > maxEntriesLength) {
+			emit(true);
+		}
+		entries.add(entry);
+		entriesLength += length;
+	}
+
+	public void addAll(Iterable<? extends E> entries) {
+		for (E e : entries) {
+			add(e);
+		}
+	}
+
+	/**
+	 * Emits the entries added so far as a fragment with REPLY_MORE, if there are any.
+	 */
+	public void flush() {
+		if (!entries.isEmpty()) {
+			emit(true);
+		}
+	}
+
+	/**
+	 * Emits the remaining entries as the final fragment (possibly without any entries).
+	 */
+	public void finish() {
+		emit(false);
+	}
+
+	/**
+	 * @return the number of fragments emitted so far
+	 */
+	public int getFragments() {
+		return fragments;
+	}
+
+	private void emit(boolean more) {
+		Set<OFStatsReplyFlags> flags = (more ? EnumSet.of(OFStatsReplyFlags.REPLY_MORE) : Collections.emptySet());
+		OFStatsReply reply = builder.build(entries, flags);
+		entries = new ArrayList<>();
+		entriesLength = 0;
+		fragments++;
+		sink.accept(reply);
+	}
+
+	private int lengthOf(E entry) {
+		scratch.clear();
+		entry.writeTo(scratch);
+		return scratch.readableBytes();
+	}
+}
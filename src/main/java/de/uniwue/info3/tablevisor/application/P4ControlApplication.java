@@ -3,7 +3,13 @@ package de.uniwue.info3.tablevisor.application;
 import de.uniwue.info3.tablevisor.config.P4Dict;
 import de.uniwue.info3.tablevisor.config.SwitchConfig;
 import de.uniwue.info3.tablevisor.core.TableVisor;
+import de.uniwue.info3.tablevisor.message.P4Operation;
+import de.uniwue.info3.tablevisor.message.P4TableEntry;
+import de.uniwue.info3.tablevisor.message.RtecliCodec;
 import de.uniwue.info3.tablevisor.message.TVMessage;
+import de.uniwue.info3.tablevisor.message.TVMsgRewriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.projectfloodlight.openflow.protocol.*;
@@ -20,21 +26,92 @@ import org.projectfloodlight.openflow.protocol.oxm.OFOxm;
 import org.projectfloodlight.openflow.types.*;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class P4ControlApplication extends BaseP4Application {
 	private static final OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
 	private static final TableVisor TV = TableVisor.getInstance();
 	private static final Logger logger = LogManager.getLogger();
 
-	private static final Pattern pTableEntry = Pattern.compile("TableEntry\\(priority=(\\d+), rule_name='([^']+)', default_rule=(True|False), actions='\\{ ([^']*) \\}', match='\\{ ([^']*) \\}'");
-	private static final Pattern pMatch = Pattern.compile("\"([^\"]+)\" : \\{  \"value\" : \"([^\"]+)\" \\}");
-	private static final Pattern pAction = Pattern.compile("\"type\" : \"([^\"]+)\",  \"data\" : \\{ (.*) \\}");
-	private static final Pattern pData = Pattern.compile("\"([^\"]+)\" : \\{ \"value\" : \"([^\"]+)\" \\}");
+	// flow stats requests waiting for the entries of their tables, by dataplane ID and xid
+	private final Map<Long, FlowStatsAggregation> flowStatsAggregations = new ConcurrentHashMap<>();
+	// rules installed by TableVisor, by dataplane ID
+	private final Map<Integer, P4RuleIndex> ruleIndexes = new ConcurrentHashMap<>();
+	// index updates of the rule commands that the switches have not answered yet, by command
+	private final Map<TVMessage, IndexUpdate> pendingIndexUpdates = new ConcurrentHashMap<>();
+
+	/**
+	 * The update of the rule index by a command, which is reverted if the switch does not execute the command.
+	 */
+	private static class IndexUpdate {
+		private final P4RuleIndex index;
+		private final int tableId;
+		private final String ruleName;
+		private final P4RuleIndex.Rule rule;
+		private final P4RuleIndex.Rule previous;
+
+		/**
+		 * @param rule     the rule put, or null for a remove
+		 * @param previous the rule replaced or removed, or null
+		 */
+		private IndexUpdate(P4RuleIndex index, int tableId, String ruleName, P4RuleIndex.Rule rule, P4RuleIndex.Rule previous) {
+			this.index = index;
+			this.tableId = tableId;
+			this.ruleName = ruleName;
+			this.rule = rule;
+			this.previous = previous;
+		}
+
+		private static IndexUpdate put(P4RuleIndex index, P4RuleIndex.Rule rule) {
+			return new IndexUpdate(index, rule.getTableId(), rule.getEntry().getRuleName(), rule, index.put(rule));
+		}
+
+		private static IndexUpdate remove(P4RuleIndex index, int tableId, String ruleName) {
+			return new IndexUpdate(index, tableId, ruleName, null, index.remove(tableId, ruleName));
+		}
 
-	private HashMap<Integer, LinkedList<TVMessage>> cachedStatsReplies = new HashMap<>();
+		private void revert() {
+			index.revert(tableId, ruleName, rule, previous);
+		}
+	}
+
+	/**
+	 * Collects the replies to the list-rules calls of one flow stats request.
+	 * The entries of each table are passed on as REPLY_MORE fragments as soon as the table has been read.
+	 */
+	private class FlowStatsAggregation {
+		private final MultipartReplyStreamer<OFFlowStatsEntry> streamer;
+		private int remainingTables;
+
+		private FlowStatsAggregation(long xid, int dataplaneId, int tables) {
+			this.remainingTables = tables;
+			this.streamer = new MultipartReplyStreamer<>(
+					(fragment, flags) -> fac.buildFlowStatsReply()
+							.setXid(xid)
+							.setFlags(flags)
+							.setEntries(fragment)
+							.build(),
+					rep -> P4ControlApplication.super.switchStatsToControlPlane(new TVMessage(rep, dataplaneId))
+			);
+		}
+
+		/**
+		 * @return true once all tables have been read
+		 */
+		private synchronized boolean add(List<OFFlowStatsEntry> entries) {
+			streamer.addAll(entries);
+			if (--remainingTables > 0) {
+				streamer.flush();
+				return false;
+			}
+			streamer.finish();
+			return true;
+		}
+	}
+
+	private static long aggregationKey(int dataplaneId, long xid) {
+		return ((long) dataplaneId << 32) | (xid & 0xffffffffL);
+	}
 
 	public P4ControlApplication(IApplication controlPlaneConnector) {
 		super(controlPlaneConnector);
@@ -42,12 +119,30 @@ public class P4ControlApplication extends BaseP4Application {
 
 	@Override
 	public void p4ToControlPlane(TVMessage tvMessage) {
+		IndexUpdate update = (tvMessage.getOriginalRequest() != null ? pendingIndexUpdates.remove(tvMessage.getOriginalRequest()) : null);
+		if (update != null) {
+			if (tvMessage.isFailed()) {
+				logger.warn("{} of rule {} not executed by dataplane {} ({}), rule index reverted",
+						tvMessage.getOriginalRequest().getP4Operation(), update.ruleName, tvMessage.getDataplaneId(), tvMessage.getReply());
+				update.revert();
+			}
+			return;
+		}
 		if (tvMessage.getOriginalRequest() != null) {
 			OFType replyType = null;
 			switch (tvMessage.getOriginalRequest().getThisMsgType()) {
 				case STATS_REQUEST:
+					// a failed list-rules call completes its table as well, see toFlowStatsEntries()
 					replyType = OFType.STATS_REPLY;
 					break;
+				case BARRIER_REQUEST:
+					if (tvMessage.isFailed()) {
+						logger.warn("{} - Barrier not executed by dataplane {} ({}), answered with an error", getClass().getSimpleName(), tvMessage.getDataplaneId(), tvMessage.getReply());
+						toControlPlane(barrierError(tvMessage.getOriginalRequest(), tvMessage.getDataplaneId()));
+						return;
+					}
+					replyType = OFType.BARRIER_REPLY;
+					break;
 				default:
 					logger.warn("{} - No reply type specified for original request '{}'", getClass().getSimpleName(), tvMessage.getOriginalRequest().getThisMsgType());
 					break;
@@ -69,10 +164,10 @@ public class P4ControlApplication extends BaseP4Application {
 				.setAuxiliaryId(OFAuxId.MAIN)
 				.setCapabilities(Collections.emptySet())
 				.setReserved(0)
-				.setXid(tvMessage.getOFMessage().getXid())
+				.setXid(TVMsgRewriter.getXid(tvMessage))
 				.build();
 		TVMessage msg = new TVMessage(rep, tvMessage.getDataplaneId());
-		getSuccessingControlPlaneConnector().allToControlPlane(msg);
+		toControlPlane(msg);
 	}
 
 	@Override
@@ -100,7 +195,7 @@ public class P4ControlApplication extends BaseP4Application {
 				}
 				resp = fac.buildPortDescStatsReply()
 						.setEntries(ports)
-						.setXid(tvMessage.getOFMessage().getXid())
+						.setXid(TVMsgRewriter.getXid(tvMessage))
 						.build();
 				break;
 
@@ -109,7 +204,7 @@ public class P4ControlApplication extends BaseP4Application {
 						.build();
 				resp = fac.buildMeterFeaturesStatsReply()
 						.setFeatures(meterFeatures)
-						.setXid(tvMessage.getOFMessage().getXid())
+						.setXid(TVMsgRewriter.getXid(tvMessage))
 						.build();
 				break;
 
@@ -118,7 +213,7 @@ public class P4ControlApplication extends BaseP4Application {
 						.setHwDesc("P4_Netronome")
 						.setMfrDesc("TableVisor")
 						.setSwDesc(TableVisor.VERSION)
-						.setXid(tvMessage.getOFMessage().getXid())
+						.setXid(TVMsgRewriter.getXid(tvMessage))
 						.build();
 				break;
 
@@ -132,21 +227,19 @@ public class P4ControlApplication extends BaseP4Application {
 					tableIds = new int[]{(int) flowStatsReq.getTableId().getValue()};
 				}
 
-				LinkedList<TVMessage> cache = cachedStatsReplies.get(swc.dataplaneId);
-				if (cache != null && !cache.isEmpty()) {
-					logger.warn("Cached Flow Stats replies cleared by subsequent FlowStats-Request");
+				long xid = TVMsgRewriter.getXid(tvMessage);
+				FlowStatsAggregation previous = flowStatsAggregations.put(aggregationKey(swc.dataplaneId, xid),
+						new FlowStatsAggregation(xid, tvMessage.getDataplaneId(), tableIds.length));
+				if (previous != null) {
+					logger.warn("Flow stats request with xid {} replaced by a subsequent request with the same xid", xid);
 				}
-				cachedStatsReplies.put(swc.dataplaneId, new LinkedList<>());
 
 				for (int t : tableIds) {
 					TVMessage tvCopy = tvMessage.copy();
 					tvCopy.setOFMessage(flowStatsReq.createBuilder().setTableId(TableId.of(t)).build());
 
-					LinkedList<String> cliParams = new LinkedList<>();
-					cliParams.add("tables");
-					cliParams.add("--table-name " + swc.getP4Dict().tableIdToP4Name(t));
-					cliParams.add("list-rules");
-					TVMessage call = new TVMessage(cliParams, tvMessage.getDataplaneId(), tvCopy);
+					P4TableEntry table = new P4TableEntry(swc.getP4Dict().tableIdToP4Name(t));
+					TVMessage call = new TVMessage(P4Operation.LIST, table, tvMessage.getDataplaneId(), tvCopy);
 					super.allToDataPlane(call);
 				}
 				return;
@@ -154,7 +247,7 @@ public class P4ControlApplication extends BaseP4Application {
 
 		if (resp != null) {
 			TVMessage msg = new TVMessage(resp, tvMessage.getDataplaneId());
-			getSuccessingControlPlaneConnector().allToControlPlane(msg);
+			toControlPlane(msg);
 		}
 		else {
 			logger.warn("No reply constructed for STATS_REQUEST '{}'", req.getStatsType());
@@ -171,98 +264,84 @@ public class P4ControlApplication extends BaseP4Application {
 			return;
 		}
 		OFStatsRequest origReq = (OFStatsRequest) orig;
-		TVMessage newMsg;
 		switch (origReq.getStatsType()) {
 			case FLOW:
-				LinkedList<TVMessage> cache = cachedStatsReplies.get(swc.dataplaneId);
-				cache.add(tvMessage);
-				if (cache.size() < swc.tableMap.size()) {
-					logger.trace("Cached {} of {} flow stats replies.", cache.size(), swc.tableMap.size());
+				long xid = TVMsgRewriter.getXid(tvMessage.getOriginalRequest());
+				long key = aggregationKey(swc.dataplaneId, xid);
+				FlowStatsAggregation aggregation = flowStatsAggregations.get(key);
+				if (aggregation == null) {
+					logger.warn("{} - No flow stats request with xid {} pending", getClass().getSimpleName(), xid);
 					return;
 				}
-				cachedStatsReplies.remove(swc.dataplaneId);
-				List<OFFlowStatsEntry> entries = new LinkedList<>();
-				for (TVMessage msg : cache) {
-
-					OFFlowStatsRequest origFlowReq = msg.getOriginalRequest().getOFMessage();
-					int tableId = (int) origFlowReq.getTableId().getValue();
-
-					String replyS = msg.getReply().trim();
-					if (replyS.startsWith("[") && replyS.endsWith(")]")) {
-						replyS = replyS.substring(1, replyS.length() - 2);
-					}
-
-					String[] replyParts = replyS.split("\\),");
-					for (String part : replyParts) {
-						part = part.trim();
-						if (part.equals("[]")) continue;
-
-						Matcher mTableEntry = pTableEntry.matcher(part);
-						if (!mTableEntry.matches()) {
-							logger.error("{} - The given TableEntry does not match the required pattern: {}", getClass().getSimpleName(), part);
-							return;
-						}
-						int priority = Integer.parseInt(mTableEntry.group(1));
-						String ruleName = mTableEntry.group(2);
-						if (ruleName.startsWith("r")) ruleName = ruleName.substring(1);
-						//String defaultRule = mTableEntry.group(3);
-						String actions = mTableEntry.group(4);
-						String match = mTableEntry.group(5);
-
-						Match m = parseMatch(match, swc.getP4Dict());
-						if (m == null) {
-							logger.error("{} - Error parsing match: {}", getClass().getSimpleName(), match);
-							return;
-						}
-
-						List<OFInstruction> insts = parseActions(actions, swc.getP4Dict());
-						if (insts == null) {
-							logger.error("{} - Error parsing action: {}", getClass().getSimpleName(), actions);
-							return;
-						}
-
-						U64 cookie = U64.ZERO;
-						try {
-							cookie = U64.parseHex(ruleName);
-						}
-						catch (NumberFormatException e) {
-							// Ignore. Use zero-cookie.
-						}
-						OFFlowStatsEntry entry = fac.buildFlowStatsEntry()
-								.setTableId(TableId.of(tableId))
-								.setPriority(priority)
-								.setMatch(m)
-								.setInstructions(insts)
-								.setCookie(cookie)
-								.build();
-						entries.add(entry);
-					}
+				if (aggregation.add(toFlowStatsEntries(tvMessage, swc))) {
+					flowStatsAggregations.remove(key, aggregation);
 				}
-				OFFlowStatsReply rep = fac.buildFlowStatsReply()
-						.setXid(orig.getXid())
-						.setEntries(entries)
-						.build();
-				newMsg = new TVMessage(rep, tvMessage.getDataplaneId());
 				break;
 
 			default:
 				logger.error("{} - Unsupported flow stats request type '{}'", getClass().getSimpleName(), origReq.getStatsType());
 				return;
 		}
-		super.switchStatsToControlPlane(newMsg);
 	}
 
-	private List<OFInstruction> parseActions(String actions, P4Dict dict) {
-		actions = actions.trim();
-		Matcher mAction = pAction.matcher(actions);
-		if (!mAction.matches()) {
-			return null;
+	/**
+	 * @return the entries of the list-rules reply for one table; none if the call failed or the reply cannot be translated
+	 */
+	private List<OFFlowStatsEntry> toFlowStatsEntries(TVMessage msg, SwitchConfig swc) {
+		OFFlowStatsRequest origFlowReq = msg.getOriginalRequest().getOFMessage();
+		int tableId = (int) origFlowReq.getTableId().getValue();
+
+		if (msg.isFailed()) {
+			logger.warn("{} - Table {} of dataplane {} not read ({}), reported as empty", getClass().getSimpleName(), tableId, msg.getDataplaneId(), msg.getReply());
+			return Collections.emptyList();
+		}
+		List<P4TableEntry> tableEntries = msg.getP4Entries();
+		if (tableEntries == null) {
+			try {
+				tableEntries = RtecliCodec.parseTableEntries(msg.getReply(), swc.getP4Dict().tableIdToP4Name(tableId));
+			}
+			catch (IllegalArgumentException e) {
+				logger.error("{} - Error parsing TableEntry output of table {}: {}", getClass().getSimpleName(), tableId, e.getMessage());
+				return Collections.emptyList();
+			}
+		}
+
+		List<OFFlowStatsEntry> entries = new ArrayList<>(tableEntries.size());
+		for (P4TableEntry te : tableEntries) {
+			Match m = parseMatch(te.getMatch(), swc.getP4Dict());
+
+			List<OFInstruction> insts = parseActions(te.getActionType(), te.getActionData(), swc.getP4Dict());
+			if (insts == null) {
+				logger.error("{} - Error parsing action: {} {}", getClass().getSimpleName(), te.getActionType(), te.getActionData());
+				return Collections.emptyList();
+			}
+
+			String ruleName = te.getRuleName();
+			if (ruleName.startsWith("r")) ruleName = ruleName.substring(1);
+			int priority = te.getPriority();
+
+			U64 cookie = U64.ZERO;
+			try {
+				cookie = U64.parseHex(ruleName);
+			}
+			catch (NumberFormatException e) {
+				// Ignore. Use zero-cookie.
+			}
+			OFFlowStatsEntry entry = fac.buildFlowStatsEntry()
+					.setTableId(TableId.of(tableId))
+					.setPriority(priority)
+					.setMatch(m)
+					.setInstructions(insts)
+					.setCookie(cookie)
+					.build();
+			entries.add(entry);
 		}
+		return entries;
+	}
 
-		String type = mAction.group(1).trim();
-		String data = mAction.group(2).trim();
-		HashSet<String> ofInsts = dict.p4ActionToOfAction(type);
-		if (ofInsts == null) {
+	private List<OFInstruction> parseActions(String type, Map<String, String> data, P4Dict dict) {
+		long ofInsts = dict.p4ActionToOfActions(type);
+		if (ofInsts == 0) {
 			return null;
 		}
 
@@ -270,25 +349,16 @@ public class P4ControlApplication extends BaseP4Application {
 		LinkedList<OFInstruction> retInsts = new LinkedList<>();
 
 		HashMap<String, String> dataMap = new HashMap<>();
-		String[] dataParts = data.split(",");
-		for (String d : dataParts) {
-			d = d.trim();
-			if (d.isEmpty()) {
-				continue;
-			}
-
-			Matcher mData = pData.matcher(d);
-			if (!mData.matches()) {
+		for (Map.Entry<String, String> d : data.entrySet()) {
+			String name = dict.p4ParamToOfParam(d.getKey());
+			if (name == null) {
 				return null;
 			}
-
-			String name = dict.p4ParamToOfParam(mData.group(1));
-			String val = mData.group(2);
-			dataMap.put(name.toLowerCase(), val);
+			dataMap.put(name, d.getValue());
 		}
 
-		for (String inst : ofInsts) {
-			inst = inst.toUpperCase();
+		for (long bits = ofInsts; bits != 0; bits &= bits - 1) {
+			String inst = dict.ofActionName(Long.numberOfTrailingZeros(bits));
 
 			if (inst.startsWith("SET_FIELD_")) {
 				String field = inst.substring(10);
@@ -313,7 +383,7 @@ public class P4ControlApplication extends BaseP4Application {
 			}
 			else switch (inst) {
 					case "DROP":
-						if (ofInsts.size() != 1) {
+						if (Long.bitCount(ofInsts) != 1) {
 							logger.warn("DROP action specified together with other actions");
 						}
 						break;
@@ -388,29 +458,21 @@ public class P4ControlApplication extends BaseP4Application {
 		return retInsts;
 	}
 
-	private Match parseMatch(String full, P4Dict dict) {
+	private Match parseMatch(Map<String, String> match, P4Dict dict) {
 		Match.Builder builder = fac.buildMatch();
-		for (String part : full.split(",")) {
-			part = part.trim();
-			if (part.isEmpty()) {
-				continue;
-			}
-
-			Matcher mMatch = pMatch.matcher(part);
-			if (!mMatch.matches()) {
-				return null;
-			}
-
-			String field = mMatch.group(1);
-			String val = mMatch.group(2);
-			getOfMatchFromP4String(builder, field, val, dict);
+		for (Map.Entry<String, String> e : match.entrySet()) {
+			getOfMatchFromP4String(builder, e.getKey(), e.getValue(), dict);
 		}
 		return builder.build();
 	}
 
 	// Only exact matches supported for now
 	private void getOfMatchFromP4String(Match.Builder builder, String sField, String sVal, P4Dict dict) {
-		String ofField = dict.p4FieldToOfField(sField).toUpperCase();
+		String ofField = dict.p4FieldToOfField(sField);
+		if (ofField == null) {
+			logger.warn("Unknown P4-Field '{}'", sField);
+			return;
+		}
 
 		switch (ofField) {
 			case "ETH_DST":
@@ -434,9 +496,9 @@ public class P4ControlApplication extends BaseP4Application {
 	public void switchGetConfigToDataPlane(TVMessage tvMessage) {
 		OFMessage resp = fac.buildGetConfigReply()
 				.setMissSendLen(128)
-				.setXid(tvMessage.getOFMessage().getXid())
+				.setXid(TVMsgRewriter.getXid(tvMessage))
 				.build();
-		getSuccessingControlPlaneConnector().allToControlPlane(new TVMessage(resp, tvMessage.getDataplaneId()));
+		toControlPlane(new TVMessage(resp, tvMessage.getDataplaneId()));
 	}
 
 	@Override
@@ -448,16 +510,53 @@ public class P4ControlApplication extends BaseP4Application {
 	public void roleToDataPlane(TVMessage tvMessage) {
 		OFMessage resp = fac.buildRoleReply()
 				.setRole(OFControllerRole.ROLE_MASTER)
-				.setXid(tvMessage.getOFMessage().getXid())
+				.setXid(TVMsgRewriter.getXid(tvMessage))
 				.build();
-		getSuccessingControlPlaneConnector().allToControlPlane(new TVMessage(resp, tvMessage.getDataplaneId()));
+		toControlPlane(new TVMessage(resp, tvMessage.getDataplaneId()));
 	}
 
 	@Override
 	public void flowModToDataPlane(TVMessage tvMessage) {
 		SwitchConfig swc = TV.getConfig().getSwitchConfigById(tvMessage.getDataplaneId());
-		String actionString, matchString;
 		OFFlowMod flowmod = tvMessage.getOFMessage();
+		P4Dict dict = swc.getP4Dict();
+		P4RuleIndex index = ruleIndexes.computeIfAbsent(tvMessage.getDataplaneId(), id -> new P4RuleIndex());
+
+		switch (flowmod.getCommand()) {
+			case DELETE:
+			case MODIFY:
+				// Non-strict: applies to all installed rules covered by the match, cookie and out port
+				List<P4RuleIndex.Rule> rules = index.find(flowmod.getTableId(), flowmod.getMatch(),
+						flowmod.getCookie(), flowmod.getCookieMask(),
+						flowmod.getCommand() == OFFlowModCommand.DELETE ? flowmod.getOutPort() : OFPort.ANY);
+				logger.debug("Non-strict {} applies to {} rules", flowmod.getCommand(), rules.size());
+				if (flowmod.getCommand() == OFFlowModCommand.DELETE) {
+					for (P4RuleIndex.Rule rule : rules) {
+						IndexUpdate update = IndexUpdate.remove(index, rule.getTableId(), rule.getEntry().getRuleName());
+						sendRuleCommand(P4Operation.DELETE, rule.getEntry(), tvMessage.getDataplaneId(), update);
+					}
+					return;
+				}
+				// The actions are translated once, so that the FLOW_MOD is rejected before any rule is modified
+				P4TableEntry actions = new P4TableEntry(null);
+				if (!setActions(flowmod, dict, actions)) {
+					toControlPlane(actionError(tvMessage));
+					return;
+				}
+				Set<OFPort> ports = outPorts(flowmod);
+				for (P4RuleIndex.Rule rule : rules) {
+					P4TableEntry entry = new P4TableEntry(rule.getEntry().getTable())
+							.setRuleName(rule.getEntry().getRuleName())
+							.setPriority(rule.getEntry().getPriority())
+							.setDefaultRule(rule.getEntry().isDefaultRule())
+							.setActionType(actions.getActionType());
+					entry.getMatch().putAll(rule.getEntry().getMatch());
+					entry.getActionData().putAll(actions.getActionData());
+					IndexUpdate update = IndexUpdate.put(index, new P4RuleIndex.Rule(rule.getTableId(), entry, rule.getMatch(), rule.getCookie(), ports));
+					sendRuleCommand(P4Operation.EDIT, entry, tvMessage.getDataplaneId(), update);
+				}
+				return;
+		}
 
 		// The table ID to store the rule in
 		short tableID = flowmod.getTableId().getValue();
@@ -468,9 +567,78 @@ public class P4ControlApplication extends BaseP4Application {
 		// OFCommand (ADD, MODIFY, DELETE)
 		String command = flowmod.getCommand().toString();
 
-		// Create action string
-		LinkedList<String> actionData = new LinkedList<>();
-		HashSet<String> commands = new HashSet<>();
+		String tblString = dict.tableIdToP4Name(tableID);
+		if (tblString == null) {
+			logger.error("Invalid table id {}. FLOW_MOD discarded.", tableID);
+			return;
+		}
+		P4TableEntry entry = new P4TableEntry(tblString);
+
+		// Create action; the actions of a DELETE_STRICT do not matter
+		if (!setActions(flowmod, dict, entry) && flowmod.getCommand() != OFFlowModCommand.DELETE_STRICT) {
+			toControlPlane(actionError(tvMessage));
+			return;
+		}
+
+		// Create match
+		Match match = flowmod.getMatch();
+		for(MatchField mField : match.getMatchFields()) {
+			String p4Field = dict.ofFieldToP4Field(mField.getName());
+			if (p4Field == null) {
+				logger.warn("Unknown match {}", mField.getName());
+			}
+			else {
+				entry.getMatch().put(p4Field, match.get(mField).toString());
+			}
+		}
+
+		entry.setRuleName(P4RuleIndex.ruleName(flowmod.getCookie()))
+				.setPriority(priority)
+				.setDefaultRule(entry.getMatch().isEmpty());
+
+		// ADD, DELETE, MODIFY
+		P4Operation operation;
+		IndexUpdate update;
+		switch (command) {
+			case "ADD":
+			case "MODIFY_STRICT":
+				operation = (command.equals("ADD") ? P4Operation.ADD : P4Operation.EDIT);
+				update = IndexUpdate.put(index, new P4RuleIndex.Rule(tableID, entry, match, flowmod.getCookie(), outPorts(flowmod)));
+				break;
+			case "DELETE_STRICT":
+				operation = P4Operation.DELETE;
+				update = IndexUpdate.remove(index, tableID, entry.getRuleName());
+				break;
+
+			default:
+				logger.warn("Unknown FlowMod command '{}'", command);
+				return;
+		}
+
+		sendRuleCommand(operation, entry, tvMessage.getDataplaneId(), update);
+	}
+
+	/**
+	 * Sends a rule command whose index update has been applied already. The replies of the switch refer to the
+	 * command itself, so that the update is reverted if the switch does not execute the command.
+	 */
+	private void sendRuleCommand(P4Operation operation, P4TableEntry entry, int dataplaneId, IndexUpdate update) {
+		TVMessage command = new TVMessage(operation, entry, dataplaneId, null);
+		command.setOriginalRequest(command);
+		pendingIndexUpdates.put(command, update);
+		super.allToDataPlane(command);
+	}
+
+	/**
+	 * Sets the P4 action of the entry to the instructions of the FLOW_MOD.
+	 *
+	 * @return false if the FLOW_MOD has to be discarded, as the P4 program has no action for its instructions
+	 */
+	private boolean setActions(OFFlowMod flowmod, P4Dict dict, P4TableEntry entry) {
+		Map<String, String> actionData = entry.getActionData();
+		// OF actions as bits of the P4Dict; an action without bit cannot be translated
+		long commands = 0;
+		boolean unknownCommand = false;
 
 		for (OFInstruction inst : flowmod.getInstructions()) {
 			switch (inst.getType()) {
@@ -482,34 +650,41 @@ public class P4ControlApplication extends BaseP4Application {
 								// We can't pass a packet to the controller. --> Use P4 with proactive forwarding.
 								if (outAction.getPort() == OFPort.CONTROLLER) {
 									logger.warn("FLOW_MOD discarded. OFPort.CONTROLLER is not possible.");
-									return;
+									return false;
 								}
 
-								String portName = swc.getP4Dict().ofParamToP4Param("OUT_PORT");
+								String portName = dict.ofParamToP4Param("OUT_PORT");
 								String portVal = "" + outAction.getPort().getShortPortNumber();
-								actionData.add(f("'%s': { 'value': 'p%s' }", portName, portVal));
-								commands.add(ofAction.getType().toString());
+								actionData.put(portName, "p" + portVal);
+								long output = dict.ofActionBit("OUTPUT");
+								commands |= output;
+								unknownCommand |= output == 0;
 								break;
 
 							case POP_MPLS:
 								OFActionPopMpls mplsPopAction = (OFActionPopMpls) ofAction;
-								String ethertypeName = swc.getP4Dict().ofParamToP4Param("POP_ETHERTYPE");
+								String ethertypeName = dict.ofParamToP4Param("POP_ETHERTYPE");
 								String ethertypeVal = mplsPopAction.getEthertype().toString();
-								actionData.add(f("'%s': { 'value': '%s' }", ethertypeName, ethertypeVal));
-								commands.add("MPLS_POP");
+								actionData.put(ethertypeName, ethertypeVal);
+								long mplsPop = dict.ofActionBit("MPLS_POP");
+								commands |= mplsPop;
+								unknownCommand |= mplsPop == 0;
 								break;
 
 							case SET_FIELD:
 								OFActionSetField setFieldAction = (OFActionSetField) ofAction;
 								OFOxm<?> field = setFieldAction.getField();
-								String name = swc.getP4Dict().ofParamToP4Param(field.getMatchField().getName());
+								String name = dict.ofParamToP4Param(field.getMatchField().getName());
 								String value = field.getValue().toString();
 								if (name == null) {
 									logger.warn("Unknown parameter {}", field.getMatchField().getName());
+									unknownCommand = true;
 									break;
 								}
-								actionData.add(f("'%s': { 'value': '%s' }", name, value));
-								commands.add(ofAction.getType().toString() + "_" + field.getMatchField().getName());
+								actionData.put(name, value);
+								long setField = dict.setFieldBit(field.getMatchField().getName());
+								commands |= setField;
+								unknownCommand |= setField == 0;
 								break;
 
 							default:
@@ -521,7 +696,9 @@ public class P4ControlApplication extends BaseP4Application {
 
 				case GOTO_TABLE:
 					OFInstructionGotoTable gotoInst = (OFInstructionGotoTable) inst;
-					commands.add("GOTO_TABLE_" + gotoInst.getTableId().getValue());
+					long gotoTable = dict.gotoTableBit(gotoInst.getTableId().getValue());
+					commands |= gotoTable;
+					unknownCommand |= gotoTable == 0;
 					break;
 
 				default:
@@ -530,78 +707,83 @@ public class P4ControlApplication extends BaseP4Application {
 			}
 		}
 
-		if (commands.isEmpty()) {
-			commands.add("DROP");
+		if (commands == 0 && !unknownCommand) {
+			commands = dict.ofActionBit("DROP");
 		}
-		String actionType = swc.getP4Dict().ofActionToP4Action(commands);
-		actionString = f("{ 'type': '%s', 'data': { %s } }", actionType, actionData.stream().collect(Collectors.joining(", ")));
-
-		// Create match string
-		Match match = flowmod.getMatch();
-		List<String> matchList = new LinkedList<>();
-		for(MatchField mField : match.getMatchFields()) {
-			String p4Field = swc.getP4Dict().ofFieldToP4Field(mField.getName());
-			if (p4Field == null) {
-				logger.warn("Unknown match {}", mField.getName());
-			}
-			else {
-				String value = match.get(mField).toString();
-				matchList.add(f("'%s': { 'value': '%s' }", p4Field, value));
-			}
+		String actionType = (unknownCommand ? null : dict.ofActionsToP4Action(commands));
+		if (actionType == null) {
+			logger.warn("FLOW_MOD discarded. OF actions of {} not defined in the P4 program.", flowmod);
+			return false;
 		}
+		entry.setActionType(actionType);
+		return true;
+	}
 
-		matchString = "{ " + matchList.stream().collect(Collectors.joining(", ")) + " }";
-		String ruleName = "r" + flowmod.getCookie().toString().substring(2);
-
-		LinkedList<String> cliParams = new LinkedList<>();
-		cliParams.add("tables");
-
-		String tblString = swc.getP4Dict().tableIdToP4Name((int) tableID);
-		if (tblString == null) {
-			logger.error("Invalid table id {}. FLOW_MOD discarded.", tableID);
-			return;
+	/**
+	 * @return the ports of the output actions of the FLOW_MOD
+	 */
+	private static Set<OFPort> outPorts(OFFlowMod flowmod) {
+		Set<OFPort> ports = new HashSet<>();
+		for (OFInstruction inst : flowmod.getInstructions()) {
+			if (inst.getType() == OFInstructionType.APPLY_ACTIONS) {
+				for (OFAction ofAction : ((OFInstructionApplyActions) inst).getActions()) {
+					if (ofAction.getType() == OFActionType.OUTPUT) {
+						ports.add(((OFActionOutput) ofAction).getPort());
+					}
+				}
+			}
 		}
+		return ports;
+	}
 
-		cliParams.add("--table-name " + tblString);
-
-		// ADD, DELETE, MODIFY
-		switch (command) {
-			case "ADD":
-				cliParams.add("add");
-				break;
-			case "DELETE_STRICT":
-				cliParams.add("delete");
-				break;
-			case "MODIFY_STRICT":
-				cliParams.add("edit");
-				break;
-
-			default:
-				logger.warn("Unknown FlowMod command '{}'", command);
-				return;
-		}
-		cliParams.add("--rule " + ruleName);
-		cliParams.add("--match " + matchString);
-		cliParams.add("--action " + actionString);
-		cliParams.add("--priority " + priority);
+	@Override
+	public void barrierToDataPlane(TVMessage tvMessage) {
+		// Answered by the lower layer once all previous commands for the switch have completed
+		TVMessage barrier = new TVMessage(P4Operation.BARRIER, null, tvMessage.getDataplaneId(), tvMessage);
+		super.allToDataPlane(barrier);
+	}
 
-		if (matchList.isEmpty())
-			cliParams.add("--default");
+	/**
+	 * @return the BAD_REQUEST error answering a barrier of the controller that the switch could not execute
+	 */
+	private static TVMessage barrierError(TVMessage barrier, int dataplaneId) {
+		OFMessage request = barrier.getOFMessage();
+		OFErrorMsg error = OFFactories.getFactory(request.getVersion()).errorMsgs().buildBadRequestErrorMsg()
+				.setXid(TVMsgRewriter.getXid(barrier))
+				.setCode(OFBadRequestCode.EPERM)
+				.setData(errorData(request))
+				.build();
+		return new TVMessage(error, dataplaneId);
+	}
 
-		TVMessage translated = new TVMessage(cliParams, tvMessage.getDataplaneId(), null);
-		super.allToDataPlane(translated);
+	/**
+	 * @return the BAD_ACTION error answering a FLOW_MOD whose actions the P4 program cannot execute
+	 */
+	private static TVMessage actionError(TVMessage flowMod) {
+		OFMessage request = flowMod.getOFMessage();
+		OFErrorMsg error = OFFactories.getFactory(request.getVersion()).errorMsgs().buildBadActionErrorMsg()
+				.setXid(TVMsgRewriter.getXid(flowMod))
+				.setCode(OFBadActionCode.BAD_TYPE)
+				.setData(errorData(request))
+				.build();
+		return new TVMessage(error, flowMod.getDataplaneId());
 	}
 
-	private String f(String format, String... params) {
-		return String.format(format, (Object[]) params).replaceAll("'", "\"");
+	private static OFErrorCauseData errorData(OFMessage request) {
+		ByteBuf buf = Unpooled.buffer();
+		request.writeTo(buf);
+		byte[] data = new byte[buf.readableBytes()];
+		buf.readBytes(data);
+		return OFErrorCauseData.of(data, request.getVersion());
 	}
 
 	@Override
-	public void barrierToDataPlane(TVMessage tvMessage) {
-		// logger.warn("BARRIER_REQUEST discarded.");
-
-		OFBarrierReply rep = fac.buildBarrierReply().setXid(tvMessage.getOFMessage().getXid()).build();
-		TVMessage repMsg = new TVMessage(rep, tvMessage.getDataplaneId());
-		super.allToControlPlane(repMsg);
+	public void barrierToControlPlane(TVMessage tvMessage) {
+		if (!tvMessage.isP4()) {
+			super.barrierToControlPlane(tvMessage);
+			return;
+		}
+		OFBarrierReply rep = fac.buildBarrierReply().setXid(TVMsgRewriter.getXid(tvMessage.getOriginalRequest())).build();
+		super.barrierToControlPlane(new TVMessage(rep, tvMessage.getDataplaneId()));
 	}
 }
@@ -0,0 +1,234 @@
+package de.uniwue.info3.tablevisor.application;
+
+import de.uniwue.info3.tablevisor.message.P4TableEntry;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.*;
+
+import java.util.*;
+
+/**
+ * The rules that TableVisor has installed on one P4 switch, by table and rule name.
+ * Used to expand non-strict FLOW_MODs (DELETE, MODIFY) into commands for the single rules they cover,
+ * without reading the tables of the switch. Rules installed by others or before a restart of TableVisor are not known.
+ */
+public class P4RuleIndex {
+	public static class Rule {
+		private final int tableId;
+		private final P4TableEntry entry;
+		private final Match match;
+		private final U64 cookie;
+		private final Set<OFPort> outPorts;
+
+		/**
+		 * @param tableId  table ID of the switch
+		 * @param outPorts ports of the output actions
+		 */
+		public Rule(int tableId, P4TableEntry entry, Match match, U64 cookie, Set<OFPort> outPorts) {
+			this.tableId = tableId;
+			this.entry = entry;
+			this.match = match;
+			this.cookie = cookie;
+			this.outPorts = outPorts;
+		}
+
+		public int getTableId() {
+			return tableId;
+		}
+
+		public P4TableEntry getEntry() {
+			return entry;
+		}
+
+		public Match getMatch() {
+			return match;
+		}
+
+		public U64 getCookie() {
+			return cookie;
+		}
+
+		public Set<OFPort> getOutPorts() {
+			return outPorts;
+		}
+	}
+
+	private static class Table {
+		private final Map<String, Rule> rules = new LinkedHashMap<>();
+		// exactly matched field -> value -> names of the rules
+		private final Map<MatchField<?>, Map<Object, Set<String>>> byExactField = new HashMap<>();
+	}
+
+	private final Map<Integer, Table> tables = new HashMap<>();
+
+	/**
+	 * Adds the rule, replacing the rule with the same name in its table.
+	 *
+	 * @return the replaced rule, or null
+	 */
+	public synchronized Rule put(Rule rule) {
+		Table table = tables.computeIfAbsent(rule.tableId, t -> new Table());
+		Rule previous = table.rules.put(rule.entry.getRuleName(), rule);
+		if (previous != null) {
+			unindex(table, previous);
+		}
+		for (MatchField<?> f : rule.match.getMatchFields()) {
+			if (rule.match.isExact(f)) {
+				table.byExactField.computeIfAbsent(f, x -> new HashMap<>())
+						.computeIfAbsent(rule.match.get(f), x -> new HashSet<>())
+						.add(rule.entry.getRuleName());
+			}
+		}
+		return previous;
+	}
+
+	/**
+	 * @return the removed rule, or null if unknown
+	 */
+	public synchronized Rule remove(int tableId, String ruleName) {
+		Table table = tables.get(tableId);
+		Rule rule = (table != null ? table.rules.remove(ruleName) : null);
+		if (rule != null) {
+			unindex(table, rule);
+		}
+		return rule;
+	}
+
+	/**
+	 * Undoes a {@link #put(Rule)} or {@link #remove(int, String)} whose command the switch has not executed, unless
+	 * the rule has been replaced or removed since.
+	 *
+	 * @param rule     the rule put, or null for a remove
+	 * @param previous the rule replaced or removed, or null
+	 */
+	public synchronized void revert(int tableId, String ruleName, Rule rule, Rule previous) {
+		Table table = tables.get(tableId);
+		Rule current = (table != null ? table.rules.get(ruleName) : null);
+		if (current != rule) {
+			return;
+		}
+		if (previous != null) {
+			put(previous);
+		}
+		else if (current != null) {
+			remove(tableId, ruleName);
+		}
+	}
+
+	private static void unindex(Table table, Rule rule) {
+		for (MatchField<?> f : rule.match.getMatchFields()) {
+			if (rule.match.isExact(f)) {
+				Map<Object, Set<String>> values = table.byExactField.get(f);
+				Set<String> names = values.get(rule.match.get(f));
+				names.remove(rule.entry.getRuleName());
+				if (names.isEmpty()) {
+					values.remove(rule.match.get(f));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the rules that a non-strict FLOW_MOD applies to.
+	 *
+	 * @param tableId    table ID of the switch, or {@link TableId#ALL}
+	 * @param filter     the rules must match at least the packets of this match, i.e. each field of the filter must be
+	 *                   matched by the rule with the same or a more specific value
+	 * @param cookieMask bits of the cookie to compare (0 to ignore the cookie)
+	 * @param outPort    port of an output action of the rules, or {@link OFPort#ANY}
+	 */
+	public synchronized List<Rule> find(TableId tableId, Match filter, U64 cookie, U64 cookieMask, OFPort outPort) {
+		List<Rule> ret = new ArrayList<>();
+		if (tableId.equals(TableId.ALL)) {
+			for (Table table : tables.values()) {
+				find(table, filter, cookie, cookieMask, outPort, ret);
+			}
+		}
+		else {
+			Table table = tables.get((int) tableId.getValue());
+			if (table != null) {
+				find(table, filter, cookie, cookieMask, outPort, ret);
+			}
+		}
+		return ret;
+	}
+
+	private static void find(Table table, Match filter, U64 cookie, U64 cookieMask, OFPort outPort, List<Rule> ret) {
+		Collection<String> candidates = null;
+		if (cookieMask.equals(U64.NO_MASK)) {
+			// rule names are derived from the cookie
+			candidates = Collections.singleton(ruleName(cookie));
+		}
+		else {
+			// the rules with the value of an exactly matched field of the filter, if any
+			for (MatchField<?> f : filter.getMatchFields()) {
+				if (filter.isExact(f)) {
+					Map<Object, Set<String>> values = table.byExactField.get(f);
+					candidates = (values != null ? values.getOrDefault(filter.get(f), Collections.emptySet()) : Collections.emptySet());
+					break;
+				}
+			}
+		}
+
+		Collection<Rule> rules = table.rules.values();
+		if (candidates != null) {
+			List<Rule> selected = new ArrayList<>(candidates.size());
+			for (String name : candidates) {
+				Rule r = table.rules.get(name);
+				if (r != null) selected.add(r);
+			}
+			rules = selected;
+		}
+		for (Rule r : rules) {
+			if (r.cookie.and(cookieMask).equals(cookie.and(cookieMask))
+					&& (outPort.equals(OFPort.ANY) || r.outPorts.contains(outPort))
+					&& covers(filter, r.match)) {
+				ret.add(r);
+			}
+		}
+	}
+
+	/**
+	 * @return the rule name of a cookie, as used by P4ControlApplication
+	 */
+	public static String ruleName(U64 cookie) {
+		return "r" + cookie.toString().substring(2);
+	}
+
+	public synchronized int size() {
+		int n = 0;
+		for (Table t : tables.values()) {
+			n += t.rules.size();
+		}
+		return n;
+	}
+
+	/**
+	 * @return whether every field of the filter is matched by the rule with the same or a more specific value
+	 */
+	public static boolean covers(Match filter, Match rule) {
+		for (MatchField<?> f : filter.getMatchFields()) {
+			if (!covers(filter, rule, f)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static <F extends OFValueType<F>> boolean covers(Match filter, Match rule, MatchField<F> f) {
+		if (!rule.supports(f) || rule.isFullyWildcarded(f)) {
+			return false;
+		}
+		if (filter.isExact(f)) {
+			return rule.isExact(f) && rule.get(f).equals(filter.get(f));
+		}
+		Masked<F> masked = filter.getMasked(f);
+		if (rule.isExact(f)) {
+			return masked.matches(rule.get(f));
+		}
+		Masked<F> ruleMasked = rule.getMasked(f);
+		// the rule must compare at least the bits of the filter
+		return masked.getMask().applyMask(ruleMasked.getMask()).equals(masked.getMask())
+				&& masked.matches(ruleMasked.getValue());
+	}
+}
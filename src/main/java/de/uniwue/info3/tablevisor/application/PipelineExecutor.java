@@ -0,0 +1,285 @@
+package de.uniwue.info3.tablevisor.application;
+
+import de.uniwue.info3.tablevisor.config.PipelineConfig;
+import de.uniwue.info3.tablevisor.core.TableVisor;
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import de.uniwue.info3.tablevisor.message.TVMsgRewriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.types.TableId;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the application chain on a pool of workers instead of the IO threads that received the messages.
+ * The IO threads hand the messages over to a ring buffer per worker; the workers are partitioned by dataplane ID.
+ * <p>
+ * Messages of a switch are handled by the worker of that switch in their order. Messages of the controller that
+ * address one table (FLOW_MOD, TABLE_MOD) are handled by the worker of the switch of that table, PACKET_OUTs by the
+ * worker of the switch of table 0. All other messages of the controller (e.g., BARRIER_REQUEST, STATS_REQUEST) are
+ * fences: they are handled after all previous messages of the controller, on all workers, and before all later ones.
+ * Thus, the order of the controller messages holds per switch and across barriers, as required by OpenFlow.
+ * <p>
+ * Messages raised by a worker itself are handled inline. If the ring of a worker is full, the IO thread waits.
+ */
+public class PipelineExecutor {
+	private static final Logger logger = LogManager.getLogger();
+	private static final long FULL_WAIT = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final TVtoControllerLayer controllerLayer;
+	private final TVtoDataLayer dataLayer;
+	private final Worker[] workers;
+	private final Map<Integer, Worker> workerOfDataplane = new HashMap<>();
+	private final long summaryInterval;
+	private final AtomicLong nextSummary;
+
+	public PipelineExecutor(PipelineConfig config, TVtoControllerLayer controllerLayer, TVtoDataLayer dataLayer,
+							Collection<Integer> dataplaneIds, long summaryInterval) {
+		if (config.workers < 1) {
+			throw new IllegalArgumentException("A pipeline needs at least one worker");
+		}
+		this.controllerLayer = controllerLayer;
+		this.dataLayer = dataLayer;
+		int capacity = Integer.highestOneBit(Math.max(2, config.queueSize) * 2 - 1);
+		this.workers = new Worker[config.workers];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(i, capacity);
+		}
+		List<Integer> sorted = new ArrayList<>(dataplaneIds);
+		Collections.sort(sorted);
+		for (int i = 0; i < sorted.size(); i++) {
+			workerOfDataplane.put(sorted.get(i), workers[i % workers.length]);
+		}
+		this.summaryInterval = TimeUnit.MILLISECONDS.toNanos(summaryInterval);
+		this.nextSummary = new AtomicLong(System.nanoTime() + this.summaryInterval);
+	}
+
+	public void start() {
+		for (Worker w : workers) {
+			w.start();
+		}
+		logger.info("Application pipeline started with {} workers", workers.length);
+	}
+
+	/**
+	 * Hands a message over to the worker of its switch, or of its table if it comes from the controller.
+	 *
+	 * @return false if the calling thread is a worker and has to handle the message itself
+	 */
+	boolean handOff(TVMessage tvMessage, boolean toDataPlane) {
+		if (Thread.currentThread() instanceof Worker) {
+			return false;
+		}
+		if (!toDataPlane) {
+			workerOf(tvMessage.getDataplaneId()).publish(tvMessage, false);
+			return true;
+		}
+		int dataplaneId = controllerDataplaneId(tvMessage);
+		if (dataplaneId >= 0 || workers.length == 1) {
+			workerOf(dataplaneId).publish(tvMessage, true);
+		}
+		else {
+			fence(tvMessage);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of messages queued per worker
+	 */
+	public int[] getQueueDepths() {
+		int[] depths = new int[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			depths[i] = workers[i].depth();
+		}
+		return depths;
+	}
+
+	/**
+	 * @return the highest number of messages queued per worker since the last call
+	 */
+	public int[] drainMaxQueueDepths() {
+		int[] depths = new int[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			depths[i] = workers[i].maxDepth.getAndSet(0);
+		}
+		return depths;
+	}
+
+	/**
+	 * @return the switch whose worker handles a message of the controller, or -1 for a fence
+	 */
+	private int controllerDataplaneId(TVMessage tvMessage) {
+		OFType type = tvMessage.getThisMsgType();
+		if (type == OFType.PACKET_OUT) {
+			return TableVisor.getInstance().ourTableIdToSwitchId(0).dataplaneId;
+		}
+		if (type == OFType.FLOW_MOD || type == OFType.TABLE_MOD) {
+			TableId tableId = TVMsgRewriter.getTableId(tvMessage);
+			if (!tableId.equals(TableId.ALL)) {
+				return TableVisor.getInstance().ourTableIdToSwitchId(tableId).dataplaneId;
+			}
+		}
+		return -1;
+	}
+
+	private Worker workerOf(int dataplaneId) {
+		Worker w = workerOfDataplane.get(dataplaneId);
+		return (w != null ? w : workers[Math.floorMod(dataplaneId, workers.length)]);
+	}
+
+	/**
+	 * Publishes a fence to all workers in the same order, so that fences of several controller connections
+	 * cannot wait for each other.
+	 */
+	private synchronized void fence(TVMessage tvMessage) {
+		Fence fence = new Fence(tvMessage, workers.length);
+		for (Worker w : workers) {
+			w.publish(fence, true);
+		}
+	}
+
+	private void execute(TVMessage tvMessage, boolean toDataPlane) {
+		try {
+			if (toDataPlane) {
+				controllerLayer.allToDataPlane(tvMessage);
+			}
+			else {
+				dataLayer.allToControlPlane(tvMessage);
+			}
+		}
+		catch (RuntimeException e) {
+			logger.error("Could not handle {} of dataplane {}", tvMessage.getTypeAsString(), tvMessage.getDataplaneId(), e);
+		}
+	}
+
+	/**
+	 * Logs the queue depths at INFO, at most once per logSummaryInterval (0 disables the summaries).
+	 */
+	private void maybeLogSummary() {
+		if (summaryInterval <= 0) {
+			return;
+		}
+		long now = System.nanoTime();
+		long next = nextSummary.get();
+		if (now - next < 0 || !nextSummary.compareAndSet(next, now + summaryInterval)) {
+			return;
+		}
+		logger.info("[Pipeline] queue depths {}, max {}", Arrays.toString(getQueueDepths()), Arrays.toString(drainMaxQueueDepths()));
+	}
+
+	private static class Fence {
+		private final TVMessage tvMessage;
+		private final AtomicInteger arriving;
+		private volatile boolean passed = false;
+
+		private Fence(TVMessage tvMessage, int workers) {
+			this.tvMessage = tvMessage;
+			this.arriving = new AtomicInteger(workers);
+		}
+	}
+
+	/**
+	 * A worker with a bounded multi-producer, single-consumer ring of messages and fences.
+	 */
+	private class Worker extends Thread {
+		private final AtomicReferenceArray<Object> slots;
+		// direction of the message in the slot, published by the write of the slot
+		private final boolean[] toDataPlane;
+		private final int mask;
+		private final AtomicLong tail = new AtomicLong();
+		private final AtomicLong head = new AtomicLong();
+		private final AtomicInteger maxDepth = new AtomicInteger();
+		private volatile boolean sleeping = false;
+
+		private Worker(int index, int capacity) {
+			super("pipeline-" + index);
+			setDaemon(true);
+			this.slots = new AtomicReferenceArray<>(capacity);
+			this.toDataPlane = new boolean[capacity];
+			this.mask = capacity - 1;
+		}
+
+		private int depth() {
+			return (int) (tail.get() - head.get());
+		}
+
+		private void publish(Object task, boolean toData) {
+			long seq;
+			while (true) {
+				seq = tail.get();
+				if (seq - head.get() > mask) {
+					LockSupport.parkNanos(FULL_WAIT);
+				}
+				else if (tail.compareAndSet(seq, seq + 1)) {
+					break;
+				}
+			}
+			int depth = (int) (seq + 1 - head.get());
+			int max = maxDepth.get();
+			if (depth > max) {
+				maxDepth.compareAndSet(max, depth);
+			}
+			int i = (int) seq & mask;
+			toDataPlane[i] = toData;
+			slots.set(i, task);
+			if (sleeping) {
+				LockSupport.unpark(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			long seq = head.get();
+			while (true) {
+				int i = (int) seq & mask;
+				Object task = slots.get(i);
+				if (task == null) {
+					maybeLogSummary();
+					sleeping = true;
+					if (slots.get(i) == null) {
+						LockSupport.park(this);
+					}
+					sleeping = false;
+					continue;
+				}
+				boolean toData = toDataPlane[i];
+				slots.set(i, null);
+				head.lazySet(++seq);
+
+				if (task instanceof Fence) {
+					pass((Fence) task);
+				}
+				else {
+					execute((TVMessage) task, toData);
+				}
+				if ((seq & 1023) == 0) {
+					maybeLogSummary();
+				}
+			}
+		}
+
+		/**
+		 * The last worker to arrive at the fence handles its message, the others wait until then.
+		 */
+		private void pass(Fence fence) {
+			if (fence.arriving.decrementAndGet() == 0) {
+				execute(fence.tvMessage, true);
+				fence.passed = true;
+				for (Worker w : workers) {
+					LockSupport.unpark(w);
+				}
+				return;
+			}
+			while (!fence.passed) {
+				LockSupport.park(fence);
+			}
+		}
+	}
+}
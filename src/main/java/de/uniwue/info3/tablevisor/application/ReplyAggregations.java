@@ -0,0 +1,343 @@
+package de.uniwue.info3.tablevisor.application;
+
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import de.uniwue.info3.tablevisor.message.TVMsgRewriter;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * The replies of the switches to requests of the controller that were sent to all switches, aggregated per request.
+ * Aggregations are keyed by the type (and stats type) and the transaction ID of the reply, so that several requests
+ * of the same type can be in flight at the same time. An aggregation is registered when its request is sent, see
+ * {@link #register(TVMessage, Set)}, so that its deadline also passes if no switch answers at all.
+ * <p>
+ * Replies are collected without locks. The reply of the last switch completes its aggregation and removes it.
+ * If not all switches have answered when the deadline of the reply type has passed since the request was sent, the
+ * aggregation expires: it is completed by the expiry handler with the replies received so far (possibly none), and
+ * the switches that did not answer are
+ * counted as late. Expired aggregations are kept until the late switches have answered or another deadline (at
+ * least a second) has passed, so that late replies are dropped instead of starting a new aggregation.
+ */
+public class ReplyAggregations {
+	private static final int STATS_TYPES = OFType.values().length;
+	// expired aggregations are kept at least this long, see Aggregation#expire()
+	private static final long TOMBSTONE_MILLIS = 1000;
+	private static final Timer TIMER = new HashedWheelTimer(new DefaultThreadFactory("reply-deadlines", true), 10, TimeUnit.MILLISECONDS);
+	private static final Map<OFType, OFType> REPLY_TYPES = new EnumMap<>(OFType.class);
+	static {
+		REPLY_TYPES.put(OFType.FEATURES_REQUEST, OFType.FEATURES_REPLY);
+		REPLY_TYPES.put(OFType.GET_CONFIG_REQUEST, OFType.GET_CONFIG_REPLY);
+		REPLY_TYPES.put(OFType.STATS_REQUEST, OFType.STATS_REPLY);
+		REPLY_TYPES.put(OFType.BARRIER_REQUEST, OFType.BARRIER_REPLY);
+		REPLY_TYPES.put(OFType.ROLE_REQUEST, OFType.ROLE_REPLY);
+	}
+
+	private final Map<Long, Aggregation> aggregations = new ConcurrentHashMap<>();
+	private final Map<Integer, LongAdder> late = new ConcurrentHashMap<>();
+	private final Supplier<Set<Integer>> switches;
+	private final ToLongFunction<OFType> deadline;
+	private final Consumer<Aggregation> expiryHandler;
+
+	/**
+	 * @param switches      the switches that answer a request that was not registered, read when its first reply arrives
+	 * @param deadline      the deadline of a reply type in milliseconds after the request was sent; 0 waits forever
+	 * @param expiryHandler completes an expired aggregation
+	 */
+	public ReplyAggregations(Supplier<Set<Integer>> switches, ToLongFunction<OFType> deadline, Consumer<Aggregation> expiryHandler) {
+		this.switches = switches;
+		this.deadline = deadline;
+		this.expiryHandler = expiryHandler;
+	}
+
+	/**
+	 * Starts the aggregation of the replies to a request of the controller before it is sent to the switches. Other
+	 * messages than the requests answered by an aggregate are ignored.
+	 *
+	 * @param switches the switches the request is sent to
+	 */
+	public void register(TVMessage request, Set<Integer> switches) {
+		OFType replyType = REPLY_TYPES.get(request.getThisMsgType());
+		if (replyType == null) {
+			return;
+		}
+		OFMessage msg = request.getOFMessage();
+		int type = replyType.ordinal();
+		if (msg instanceof OFStatsRequest) {
+			type = STATS_TYPES + ((OFStatsRequest<?>) msg).getStatsType().ordinal();
+		}
+		long key = ((long) type << 32) | TVMsgRewriter.getXid(request);
+		Aggregation agg = new Aggregation(key, replyType, msg, switches);
+		Aggregation previous = aggregations.put(key, agg);
+		if (previous != null) {
+			previous.expire();
+		}
+		agg.start();
+	}
+
+	/**
+	 * @return the aggregation of the request answered by the reply; if the request was not registered, it is
+	 * created with its first reply
+	 */
+	public Aggregation get(TVMessage reply) {
+		OFMessage msg = reply.getOFMessage();
+		long key = key(msg);
+		Aggregation agg = aggregations.get(key);
+		if (agg == null) {
+			agg = aggregations.computeIfAbsent(key, k -> {
+				Aggregation created = new Aggregation(k, msg.getType(), null, switches.get());
+				created.start();
+				return created;
+			});
+		}
+		agg.first.compareAndSet(null, reply);
+		return agg;
+	}
+
+	/**
+	 * @return the aggregation of the replies of the type (other than stats replies) with the transaction ID, or null
+	 */
+	public Aggregation find(OFType replyType, long xid) {
+		return aggregations.get(((long) replyType.ordinal() << 32) | (xid & 0xffffffffL));
+	}
+
+	/**
+	 * @return the number of requests waiting for replies
+	 */
+	public int size() {
+		return aggregations.size();
+	}
+
+	/**
+	 * @return the number of requests per dataplane ID that the switch did not answer before the deadline
+	 */
+	public Map<Integer, Long> getLateReplies() {
+		Map<Integer, Long> counts = new TreeMap<>();
+		late.forEach((id, n) -> counts.put(id, n.sum()));
+		return counts;
+	}
+
+	private static long key(OFMessage msg) {
+		int type = msg.getType().ordinal();
+		if (msg instanceof OFStatsReply) {
+			type = STATS_TYPES + ((OFStatsReply) msg).getStatsType().ordinal();
+		}
+		return ((long) type << 32) | msg.getXid();
+	}
+
+	public class Aggregation {
+		private final long key;
+		private final OFType replyType;
+		private final OFMessage request;
+		private final AtomicReference<TVMessage> first = new AtomicReference<>();
+		private final Set<Integer> expected;
+		private final Set<Integer> answered = ConcurrentHashMap.newKeySet();
+		private final AtomicInteger remaining;
+		private final Queue<TVMessage> replies = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean completed = new AtomicBoolean();
+		// replies in progress, see enter()
+		private final AtomicInteger active = new AtomicInteger();
+		private final long deadlineMillis;
+		private volatile Timeout timeout;
+		private volatile boolean expired = false;
+
+		private Aggregation(long key, OFType replyType, OFMessage request, Set<Integer> switches) {
+			this.key = key;
+			this.replyType = replyType;
+			this.request = request;
+			this.expected = new HashSet<>(switches);
+			this.remaining = new AtomicInteger(expected.size());
+			this.deadlineMillis = deadline.applyAsLong(replyType);
+		}
+
+		private void start() {
+			if (expected.isEmpty()) {
+				// no switch will answer
+				expire();
+			}
+			else if (deadlineMillis > 0) {
+				timeout = TIMER.newTimeout(t -> expire(), deadlineMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		/**
+		 * @return true if the switch has sent its last reply already
+		 */
+		public boolean hasAnswered(int dataplaneId) {
+			return answered.contains(dataplaneId);
+		}
+
+		/**
+		 * Keeps the last reply of a switch and marks it as answered, see {@link #answer(int)}.
+		 */
+		public boolean add(TVMessage reply) {
+			if (hasAnswered(reply.getDataplaneId())) {
+				return false;
+			}
+			if (expired) {
+				answer(reply.getDataplaneId());
+				return false;
+			}
+			replies.add(reply);
+			return answer(reply.getDataplaneId());
+		}
+
+		/**
+		 * Marks the switch as answered. Everything done for its replies before is visible to the caller that completes
+		 * the aggregation.
+		 *
+		 * @return true if it was the last switch to answer and the aggregation has not expired; it is removed then
+		 */
+		public boolean answer(int dataplaneId) {
+			if (!answered.add(dataplaneId) || remaining.decrementAndGet() != 0) {
+				return false;
+			}
+			if (!completed.compareAndSet(false, true)) {
+				// the last late switch of an expired aggregation
+				aggregations.remove(key, this);
+				return false;
+			}
+			Timeout t = timeout;
+			if (t != null) {
+				t.cancel();
+			}
+			aggregations.remove(key, this);
+			return true;
+		}
+
+		/**
+		 * Completes the aggregation with the error of a switch instead of the aggregated replies. The replies of the
+		 * other switches are dropped afterwards, as for an expired aggregation.
+		 *
+		 * @return false if the aggregation has been completed or has expired already
+		 */
+		public boolean fail(int dataplaneId) {
+			if (expired || !completed.compareAndSet(false, true)) {
+				return false;
+			}
+			expired = true;
+			Timeout t = timeout;
+			if (t != null) {
+				t.cancel();
+			}
+			if (answered.add(dataplaneId) && remaining.decrementAndGet() == 0) {
+				aggregations.remove(key, this);
+			}
+			else {
+				TIMER.newTimeout(x -> aggregations.remove(key, this), Math.max(deadlineMillis, TOMBSTONE_MILLIS), TimeUnit.MILLISECONDS);
+			}
+			return true;
+		}
+
+		/**
+		 * Announces a reply whose handling must not overlap with the expiry, e.g., as it sends fragments of a multipart
+		 * reply that must precede the final fragment. An expiry meanwhile is handled by {@link #leave()}.
+		 *
+		 * @return false if the aggregation has expired; {@link #leave()} must not be called then
+		 */
+		public boolean enter() {
+			active.incrementAndGet();
+			if (expired) {
+				leave();
+				return false;
+			}
+			return true;
+		}
+
+		public void leave() {
+			if (active.decrementAndGet() == 0 && expired) {
+				completeExpired();
+			}
+		}
+
+		public boolean isExpired() {
+			return expired;
+		}
+
+		/**
+		 * @return the first reply, or null if no switch has answered
+		 */
+		public TVMessage getFirst() {
+			return first.get();
+		}
+
+		/**
+		 * @return the request of the controller, or null if it was not registered
+		 */
+		public OFMessage getRequest() {
+			return request;
+		}
+
+		public OFType getReplyType() {
+			return replyType;
+		}
+
+		/**
+		 * @return the transaction ID of the request and its replies
+		 */
+		public long getXid() {
+			return key & 0xffffffffL;
+		}
+
+		/**
+		 * @return the replies kept by {@link #add(TVMessage)}
+		 */
+		public Collection<TVMessage> getReplies() {
+			return replies;
+		}
+
+		/**
+		 * @return the switches that have not sent their last reply yet
+		 */
+		public Set<Integer> getMissing() {
+			Set<Integer> missing = new TreeSet<>(expected);
+			missing.removeAll(answered);
+			return missing;
+		}
+
+		public int getRemaining() {
+			return remaining.get();
+		}
+
+		public long getDeadline() {
+			return deadlineMillis;
+		}
+
+		private void expire() {
+			if (completed.get() || expired) {
+				return;
+			}
+			expired = true;
+			for (int id : getMissing()) {
+				late.computeIfAbsent(id, k -> new LongAdder()).increment();
+			}
+			if (active.get() == 0) {
+				completeExpired();
+			}
+			TIMER.newTimeout(t -> aggregations.remove(key, this), Math.max(deadlineMillis, TOMBSTONE_MILLIS), TimeUnit.MILLISECONDS);
+		}
+
+		private void completeExpired() {
+			if (completed.compareAndSet(false, true)) {
+				expiryHandler.accept(this);
+			}
+		}
+	}
+}
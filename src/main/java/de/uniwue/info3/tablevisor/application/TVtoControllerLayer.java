@@ -10,16 +10,38 @@ import java.util.Collection;
 
 public class TVtoControllerLayer extends BaseApplication {
 	private static Logger logger = LogManager.getLogger();
+	private PipelineExecutor pipeline;
 
 	public TVtoControllerLayer() {
 		super(null);
 	}
 
+	public void setPipeline(PipelineExecutor pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	@Override
+	public void allToDataPlane(TVMessage tvMessage) {
+		if (pipeline == null || !pipeline.handOff(tvMessage, true)) {
+			try {
+				super.allToDataPlane(tvMessage);
+			}
+			catch (IllegalStateException e) {
+				TVMessage error = tvMessage.parseError(e);
+				if (error == null) {
+					throw e;
+				}
+				logger.warn("Error reading OFMessage of the controller: '{}'", e.getCause().getMessage());
+				super.allToDataPlane(error);
+			}
+		}
+	}
+
 	@Override
 	public void allToControlPlane(TVMessage tvMessage) {
 		Collection<IUpperLayerEndpoint> endpoints = TableVisor.getInstance().getUpperEndpointManager().getEndpoints();
 		if (endpoints.isEmpty()) {
-			logger.warn("No UpperLayerEndpoint available, cannot forward {} to control plane", tvMessage.getOFMessage().getType());
+			logger.warn("No UpperLayerEndpoint available, cannot forward {} to control plane", tvMessage.getTypeAsString());
 		}
 		else {
 			IUpperLayerEndpoint endp = endpoints.iterator().next();
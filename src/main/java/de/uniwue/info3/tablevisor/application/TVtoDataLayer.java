@@ -1,6 +1,7 @@
 package de.uniwue.info3.tablevisor.application;
 
 import de.uniwue.info3.tablevisor.core.TableVisor;
+import de.uniwue.info3.tablevisor.core.TransactionManager;
 import de.uniwue.info3.tablevisor.lowerlayer.ILowerLayerMessageHandler;
 import de.uniwue.info3.tablevisor.message.TVMessage;
 import org.apache.logging.log4j.LogManager;
@@ -8,6 +9,7 @@ import org.apache.logging.log4j.Logger;
 
 public class TVtoDataLayer extends BaseApplication {
 	private static Logger logger = LogManager.getLogger();
+	private PipelineExecutor pipeline;
 
 	public TVtoDataLayer(IApplication controlPlaneConnector) {
 		super(controlPlaneConnector);
@@ -16,10 +18,46 @@ public class TVtoDataLayer extends BaseApplication {
 	private void sendToDataPlane(TVMessage tvMessage) {
 		ILowerLayerMessageHandler socket = TableVisor.getInstance().getLowerEndpointManager().getSockets().get(tvMessage.getDataplaneId());
 		if (socket != null) {
+			TransactionManager transactions = TableVisor.getInstance().getTransactionManager();
+			if (transactions != null && tvMessage.isOpenFlow()) {
+				transactions.toSwitch(tvMessage);
+			}
 			socket.send(tvMessage);
 		}
 		else {
-			logger.warn("Try to send message {} to unknown dataplane {}. Message discarded", tvMessage.getOFMessage().getType(), tvMessage.getDataplaneId());
+			logger.warn("Try to send message {} to unknown dataplane {}. Message discarded", tvMessage.getTypeAsString(), tvMessage.getDataplaneId());
+			TransactionManager transactions = TableVisor.getInstance().getTransactionManager();
+			if (transactions != null && tvMessage.isOpenFlow()) {
+				transactions.dropped(tvMessage);
+			}
+			TVMessage failed = (tvMessage.isP4() ? tvMessage.failedReply("unknown dataplane") : null);
+			if (failed != null) {
+				allToControlPlane(failed);
+			}
+		}
+	}
+
+	public void setPipeline(PipelineExecutor pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	@Override
+	public void allToControlPlane(TVMessage tvMessage) {
+		if (pipeline == null || !pipeline.handOff(tvMessage, false)) {
+			try {
+				TransactionManager transactions = TableVisor.getInstance().getTransactionManager();
+				if (transactions == null || !tvMessage.isOpenFlow() || transactions.fromSwitch(tvMessage)) {
+					super.allToControlPlane(tvMessage);
+				}
+			}
+			catch (IllegalStateException e) {
+				TVMessage error = tvMessage.parseError(e);
+				if (error == null) {
+					throw e;
+				}
+				logger.warn("Error reading OFMessage of dataplane {}: '{}'", tvMessage.getDataplaneId(), e.getCause().getMessage());
+				super.allToControlPlane(error);
+			}
 		}
 	}
 
@@ -0,0 +1,18 @@
+package de.uniwue.info3.tablevisor.capture;
+
+public enum CaptureDirection {
+	FROM_CONTROLLER,
+	TO_CONTROLLER,
+	FROM_SWITCH,
+	TO_SWITCH;
+
+	private static final CaptureDirection[] VALUES = values();
+
+	public boolean isInbound() {
+		return this == FROM_CONTROLLER || this == FROM_SWITCH;
+	}
+
+	static CaptureDirection of(int ordinal) {
+		return VALUES[ordinal];
+	}
+}
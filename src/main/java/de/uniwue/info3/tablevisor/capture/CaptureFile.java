@@ -0,0 +1,183 @@
+package de.uniwue.info3.tablevisor.capture;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Ring file of captured frames, mapped into memory.
+ * Once the file is full, the oldest records are overwritten.
+ * <pre>
+ * header: magic (8) | version (4) | reserved (4) | head (8) | tail (8) | count (8) | appended (8) | evicted (8) | reserved (8)
+ * record: length (4) | timestamp (8) | direction (1) | dataplane ID (4) | frame (length)
+ * </pre>
+ * A record that does not fit into the remainder of the file is written to its beginning,
+ * and the remainder is marked with a wrap marker (if there is room for it).
+ */
+public class CaptureFile implements AutoCloseable {
+	private static final long MAGIC = 0x5456434150545552L; // "TVCAPTUR"
+	private static final int VERSION = 1;
+	private static final int OFFSET_HEAD = 16;
+	private static final int OFFSET_TAIL = 24;
+	private static final int OFFSET_COUNT = 32;
+	private static final int OFFSET_APPENDED = 40;
+	private static final int OFFSET_EVICTED = 48;
+	private static final int DATA_START = 64;
+	private static final int RECORD_HEADER = 17;
+	private static final int WRAP_MARKER = -1;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buf;
+	private final int end;
+
+	private int head;
+	private int tail;
+	private long count;
+
+	private CaptureFile(FileChannel channel, MappedByteBuffer buf) {
+		this.channel = channel;
+		this.buf = buf;
+		this.end = buf.capacity();
+	}
+
+	/**
+	 * Creates (or truncates) a capture file of the given size.
+	 */
+	public static CaptureFile create(Path path, long size) throws IOException {
+		if (size <= DATA_START + RECORD_HEADER || size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid capture file size " + size);
+		}
+		FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		CaptureFile f = new CaptureFile(ch, ch.map(FileChannel.MapMode.READ_WRITE, 0, size));
+		f.buf.putLong(0, MAGIC);
+		f.buf.putInt(8, VERSION);
+		f.head = DATA_START;
+		f.tail = DATA_START;
+		f.count = 0;
+		f.writeHeader();
+		f.buf.putLong(OFFSET_APPENDED, 0);
+		f.buf.putLong(OFFSET_EVICTED, 0);
+		return f;
+	}
+
+	/**
+	 * Opens an existing capture file for reading.
+	 */
+	public static CaptureFile open(Path path) throws IOException {
+		FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+		CaptureFile f = new CaptureFile(ch, ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		if (f.buf.getLong(0) != MAGIC || f.buf.getInt(8) != VERSION) {
+			ch.close();
+			throw new IOException("Not a capture file: " + path);
+		}
+		f.head = (int) f.buf.getLong(OFFSET_HEAD);
+		f.tail = (int) f.buf.getLong(OFFSET_TAIL);
+		f.count = f.buf.getLong(OFFSET_COUNT);
+		return f;
+	}
+
+	/**
+	 * Appends a record; the oldest records are evicted if necessary.
+	 *
+	 * @return false if the record is larger than the whole file
+	 */
+	public boolean append(CaptureRecord record) {
+		int n = RECORD_HEADER + record.frame.length;
+		if (n > end - DATA_START) {
+			return false;
+		}
+
+		if (tail + n > end) {
+			// the records between tail and end are overwritten by the wrap
+			while (count > 0 && head >= tail) {
+				evictOldest();
+			}
+			if (tail + 4 <= end) {
+				buf.putInt(tail, WRAP_MARKER);
+			}
+			tail = DATA_START;
+		}
+		while (count > 0 && head >= tail && head < tail + n) {
+			evictOldest();
+		}
+		if (count == 0) {
+			head = tail;
+		}
+
+		buf.putInt(tail, record.frame.length);
+		buf.putLong(tail + 4, record.timestamp);
+		buf.put(tail + 12, (byte) record.direction.ordinal());
+		buf.putInt(tail + 13, record.dataplaneId);
+		ByteBuffer dst = buf.duplicate();
+		((Buffer) dst).position(tail + RECORD_HEADER);
+		dst.put(record.frame);
+		tail += n;
+		count++;
+		buf.putLong(OFFSET_APPENDED, buf.getLong(OFFSET_APPENDED) + 1);
+		writeHeader();
+		return true;
+	}
+
+	/**
+	 * Passes all records to the consumer, from the oldest to the newest.
+	 */
+	public void forEach(Consumer<CaptureRecord> consumer) {
+		int pos = head;
+		for (long i = 0; i < count; i++) {
+			pos = normalize(pos);
+			byte[] frame = new byte[buf.getInt(pos)];
+			ByteBuffer src = buf.duplicate();
+			((Buffer) src).position(pos + RECORD_HEADER);
+			src.get(frame);
+			consumer.accept(new CaptureRecord(
+					buf.getLong(pos + 4),
+					CaptureDirection.of(buf.get(pos + 12)),
+					buf.getInt(pos + 13),
+					frame
+			));
+			pos += RECORD_HEADER + frame.length;
+		}
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getEvicted() {
+		return buf.getLong(OFFSET_EVICTED);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!buf.isReadOnly()) {
+			buf.force();
+		}
+		channel.close();
+	}
+
+	// head always points to the oldest record, never to a wrap marker
+	private void evictOldest() {
+		head += RECORD_HEADER + buf.getInt(head);
+		count--;
+		head = (count == 0 ? tail : normalize(head));
+		buf.putLong(OFFSET_EVICTED, buf.getLong(OFFSET_EVICTED) + 1);
+	}
+
+	private int normalize(int pos) {
+		if (pos + RECORD_HEADER > end || buf.getInt(pos) == WRAP_MARKER) {
+			return DATA_START;
+		}
+		return pos;
+	}
+
+	private void writeHeader() {
+		buf.putLong(OFFSET_HEAD, head);
+		buf.putLong(OFFSET_TAIL, tail);
+		buf.putLong(OFFSET_COUNT, count);
+	}
+}
@@ -0,0 +1,51 @@
+package de.uniwue.info3.tablevisor.capture;
+
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Captures the OpenFlow frames of a channel. Must be placed between the decoder and the message handler.
+ * Received frames are shared with the capture instead of being copied; locally created messages
+ * are serialized here once and the encoder writes the same frame.
+ */
+public class CaptureHandler extends ChannelDuplexHandler {
+	private final CaptureWriter writer;
+	private final CaptureDirection inbound;
+	private final CaptureDirection outbound;
+	private final IntSupplier dataplaneId;
+
+	public CaptureHandler(CaptureWriter writer, CaptureDirection inbound, CaptureDirection outbound, IntSupplier dataplaneId) {
+		this.writer = writer;
+		this.inbound = inbound;
+		this.outbound = outbound;
+		this.dataplaneId = dataplaneId;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		capture(inbound, msg);
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		capture(outbound, msg);
+		ctx.write(msg, promise);
+	}
+
+	private void capture(CaptureDirection direction, Object msg) {
+		if (!(msg instanceof TVMessage)) {
+			return;
+		}
+		TVMessage tvMessage = (TVMessage) msg;
+		if (!tvMessage.isOpenFlow()) {
+			return;
+		}
+		tvMessage.encodeRawFrame();
+		writer.capture(direction, dataplaneId.getAsInt(), tvMessage.shareRawFrame());
+	}
+}
@@ -0,0 +1,16 @@
+package de.uniwue.info3.tablevisor.capture;
+
+public class CaptureRecord {
+	// nanoseconds since the epoch
+	public final long timestamp;
+	public final CaptureDirection direction;
+	public final int dataplaneId;
+	public final byte[] frame;
+
+	public CaptureRecord(long timestamp, CaptureDirection direction, int dataplaneId, byte[] frame) {
+		this.timestamp = timestamp;
+		this.direction = direction;
+		this.dataplaneId = dataplaneId;
+		this.frame = frame;
+	}
+}
@@ -0,0 +1,196 @@
+package de.uniwue.info3.tablevisor.capture;
+
+import de.uniwue.info3.tablevisor.config.LowerLayerEndpointConfig;
+import de.uniwue.info3.tablevisor.config.SwitchConfig;
+import de.uniwue.info3.tablevisor.core.TableVisor;
+import de.uniwue.info3.tablevisor.lowerlayer.LowerLayerEndpointManager;
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import de.uniwue.info3.tablevisor.upperlayer.UpperLayerEndpointManager;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+import io.netty.util.internal.logging.Log4J2LoggerFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.projectfloodlight.openflow.exceptions.OFParseError;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.ver13.OFTypeSerializerVer13;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds the received frames of a capture back into the application chain of TableVisor.
+ * The network endpoints are replaced by sinks, so neither a controller nor switches are required.
+ * <p>
+ * Usage: CaptureReplay &lt;config file&gt; &lt;capture file&gt; [speed]
+ * (speed 1 = original timing, 0 = as fast as possible)
+ */
+public class CaptureReplay {
+	private static final Logger logger = LogManager.getLogger();
+
+	private final TableVisor tv;
+	private final ReplayControllerSink controllerSink = new ReplayControllerSink();
+	private final Map<Integer, ReplaySwitchSink> switchSinks = new HashMap<>();
+
+	public static void main(String[] args) {
+		InternalLoggerFactory.setDefaultFactory(Log4J2LoggerFactory.INSTANCE);
+		if (args.length < 2) {
+			System.err.println("Usage: CaptureReplay <config file> <capture file> [speed]");
+			System.exit(1);
+		}
+		double speed = (args.length > 2 ? Double.parseDouble(args[2]) : 1.0);
+
+		try (CaptureFile file = CaptureFile.open(Paths.get(args[1]))) {
+			CaptureReplay replay = new CaptureReplay(Paths.get(args[0]));
+			logger.info("Replaying {} captured frames ({} evicted) at speed {}", file.getCount(), file.getEvicted(), speed);
+
+			long start = System.nanoTime();
+			long replayed = replay.replay(file, speed);
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			logger.info("Replayed {} frames in {} s ({} frames/s)", replayed, String.format("%.3f", seconds), String.format("%.0f", replayed / seconds));
+			logger.info("Messages towards controller: {}", replay.getControllerSink().getReceived());
+			for (ReplaySwitchSink sink : replay.getSwitchSinks().values()) {
+				logger.info("Messages towards switch {}: {}", sink.getDataplanId(), sink.getReceived());
+			}
+		}
+		catch (IOException e) {
+			logger.error("Could not replay capture", e);
+		}
+	}
+
+	/**
+	 * Sets up TableVisor with the applications of the given configuration and sinks instead of network endpoints.
+	 */
+	public CaptureReplay(Path configFile) throws IOException {
+		tv = new TableVisor(configFile);
+		tv.initializeApplications();
+
+		LowerLayerEndpointManager lower = new LowerLayerEndpointManager();
+		for (LowerLayerEndpointConfig lec : tv.getConfig().lowerLayerEndpoints) {
+			ReplayEndpoint endpoint = new ReplayEndpoint();
+			endpoint.initialize(lower, lec);
+			lower.getAllEndpoints().add(endpoint);
+		}
+		for (SwitchConfig swc : tv.getConfig().getAllSwitches()) {
+			ReplaySwitchSink sink = new ReplaySwitchSink(swc.dataplaneId);
+			switchSinks.put(swc.dataplaneId, sink);
+			lower.getSockets().put(swc.dataplaneId, sink);
+			if (swc.datapathId != null) {
+				lower.getDataplaneToDatapathId().put(swc.dataplaneId, swc.datapathId);
+				lower.getDatapathToDataplaneId().put(swc.datapathId, swc.dataplaneId);
+			}
+		}
+		UpperLayerEndpointManager upper = new UpperLayerEndpointManager();
+		upper.addEndpoint(controllerSink);
+		tv.initializeEndpointManagers(lower, upper);
+	}
+
+	/**
+	 * Replays all received frames of the capture.
+	 *
+	 * @param speed factor of the original timing; 0 replays as fast as possible
+	 * @return the number of frames passed to the application chain
+	 */
+	public long replay(CaptureFile file, double speed) {
+		long[] replayed = {0};
+		long[] first = {-1};
+		long start = System.nanoTime();
+		file.forEach(record -> {
+			if (!record.direction.isInbound()) {
+				return;
+			}
+			if (speed > 0) {
+				if (first[0] < 0) {
+					first[0] = record.timestamp;
+				}
+				long due = start + (long) ((record.timestamp - first[0]) / speed);
+				long wait;
+				while ((wait = due - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+			try {
+				if (inject(record.direction, record.dataplaneId, record.frame)) {
+					replayed[0]++;
+				}
+			}
+			catch (RuntimeException e) {
+				// the channel pipeline would catch these as well
+				logger.error("Error replaying frame from {} (dataplane ID {})", record.direction, record.dataplaneId, e);
+			}
+		});
+		return replayed[0];
+	}
+
+	/**
+	 * Passes a received frame to the application chain, as the message handler of the respective endpoint would.
+	 *
+	 * @return false if the frame is not passed to the applications (e.g., HELLO, ECHO or unknown switch)
+	 */
+	public boolean inject(CaptureDirection direction, int dataplaneId, byte[] frame) {
+		TVMessage tvMessage = toMessage(frame);
+		if (tvMessage == null) {
+			return false;
+		}
+		OFType type = tvMessage.getThisMsgType();
+		if (type == OFType.HELLO || type == OFType.ECHO_REQUEST || type == OFType.ECHO_REPLY) {
+			return false;
+		}
+
+		if (direction == CaptureDirection.FROM_CONTROLLER) {
+			tv.getTvToControllerLayer().allToDataPlane(tvMessage);
+			return true;
+		}
+		if (direction == CaptureDirection.FROM_SWITCH && switchSinks.containsKey(dataplaneId)) {
+			tvMessage.setDataplaneId(dataplaneId);
+			tv.getTvToDataLayer().allToControlPlane(tvMessage);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Creates a message for a frame as the decoder does; OF 1.3 frames are parsed lazily.
+	 *
+	 * @return null if the frame cannot be read
+	 */
+	public static TVMessage toMessage(byte[] frame) {
+		if (frame.length >= 8 && (frame[0] & 0xff) == OFVersion.OF_13.getWireVersion()) {
+			try {
+				return new TVMessage(frame, OFTypeSerializerVer13.ofWireValue(frame[1]));
+			}
+			catch (IllegalArgumentException e) {
+				// unknown type, try to parse below
+			}
+		}
+		try {
+			OFMessage ofMsg = OFFactories.getGenericReader().readFrom(Unpooled.wrappedBuffer(frame));
+			return (ofMsg != null ? new TVMessage(ofMsg) : null);
+		}
+		catch (OFParseError e) {
+			logger.warn("Skipping unreadable frame: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	public TableVisor getTableVisor() {
+		return tv;
+	}
+
+	public ReplayControllerSink getControllerSink() {
+		return controllerSink;
+	}
+
+	public Map<Integer, ReplaySwitchSink> getSwitchSinks() {
+		return Collections.unmodifiableMap(switchSinks);
+	}
+}
@@ -0,0 +1,104 @@
+package de.uniwue.info3.tablevisor.capture;
+
+import de.uniwue.info3.tablevisor.config.CaptureConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends captured frames to a {@link CaptureFile} from a dedicated thread.
+ * IO threads only enqueue records; if the queue is full, records are dropped instead of blocking.
+ */
+public class CaptureWriter {
+	private static final Logger logger = LogManager.getLogger();
+	private static final long DROP_WARN_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+	private final CaptureFile file;
+	private final BlockingQueue<CaptureRecord> queue;
+	private final AtomicLong dropped = new AtomicLong();
+	private final long epochOffset = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+	private final Thread thread;
+	private volatile long lastDropWarning = System.nanoTime() - DROP_WARN_INTERVAL;
+	private volatile boolean closed = false;
+
+	public CaptureWriter(CaptureConfig config) throws IOException {
+		this.file = CaptureFile.create(Paths.get(config.file), config.size);
+		this.queue = new ArrayBlockingQueue<>(config.queueSize);
+		this.thread = new Thread(this::run, "capture-writer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+		logger.info("Capturing OpenFlow traffic to {} ({} bytes)", config.file, config.size);
+	}
+
+	/**
+	 * Enqueues a frame; never blocks.
+	 */
+	public void capture(CaptureDirection direction, int dataplaneId, byte[] frame) {
+		if (closed) {
+			return;
+		}
+		CaptureRecord record = new CaptureRecord(System.nanoTime() + epochOffset, direction, dataplaneId, frame);
+		if (!queue.offer(record)) {
+			long n = dropped.incrementAndGet();
+			long now = System.nanoTime();
+			if (now - lastDropWarning >= DROP_WARN_INTERVAL) {
+				lastDropWarning = now;
+				logger.warn("Capture queue full, {} frames dropped so far", n);
+			}
+		}
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public void close() {
+		closed = true;
+		thread.interrupt();
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			// Nothing.
+		}
+	}
+
+	private void run() {
+		try {
+			while (!closed) {
+				CaptureRecord record;
+				try {
+					record = queue.take();
+				}
+				catch (InterruptedException e) {
+					continue;
+				}
+				append(record);
+			}
+			CaptureRecord record;
+			while ((record = queue.poll()) != null) {
+				append(record);
+			}
+		}
+		finally {
+			try {
+				file.close();
+			}
+			catch (IOException e) {
+				logger.error("Could not close capture file", e);
+			}
+		}
+	}
+
+	private void append(CaptureRecord record) {
+		if (!file.append(record)) {
+			logger.warn("Captured frame of {} bytes does not fit into the capture file", record.frame.length);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package de.uniwue.info3.tablevisor.capture;
+
+import de.uniwue.info3.tablevisor.config.UpperLayerEndpointConfig;
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import de.uniwue.info3.tablevisor.upperlayer.IUpperLayerEndpoint;
+import de.uniwue.info3.tablevisor.upperlayer.UpperLayerEndpointManager;
+import de.uniwue.info3.tablevisor.upperlayer.UpperLayerType;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Stands in for the controller connection during replays; messages towards the controller are counted and discarded.
+ */
+public class ReplayControllerSink implements IUpperLayerEndpoint {
+	private final AtomicLong received = new AtomicLong();
+	private volatile Consumer<TVMessage> listener;
+	private UpperLayerEndpointManager manager;
+	private UpperLayerEndpointConfig cfg;
+
+	public ReplayControllerSink() {
+		cfg = new UpperLayerEndpointConfig();
+		cfg.name = "ReplayControllerSink";
+		cfg.type = UpperLayerType.OPENFLOW;
+	}
+
+	public void setListener(Consumer<TVMessage> listener) {
+		this.listener = listener;
+	}
+
+	public long getReceived() {
+		return received.get();
+	}
+
+	@Override
+	public void initialize(UpperLayerEndpointManager endpointManager, UpperLayerEndpointConfig endpointConfig) {
+		this.manager = endpointManager;
+		this.cfg = endpointConfig;
+	}
+
+	@Override
+	public void send(TVMessage msg) {
+		received.incrementAndGet();
+		Consumer<TVMessage> l = listener;
+		if (l != null) {
+			l.accept(msg);
+		}
+	}
+
+	@Override
+	public void setAutoRead(boolean autoRead) {
+		// replays are not throttled
+	}
+
+	@Override
+	public UpperLayerEndpointManager getUpperLayerEndpointManager() {
+		return manager;
+	}
+
+	@Override
+	public UpperLayerEndpointConfig getUpperLayerEndpointConfig() {
+		return cfg;
+	}
+}
@@ -0,0 +1,30 @@
+package de.uniwue.info3.tablevisor.capture;
+
+import de.uniwue.info3.tablevisor.config.LowerLayerEndpointConfig;
+import de.uniwue.info3.tablevisor.lowerlayer.ILowerLayerEndpoint;
+import de.uniwue.info3.tablevisor.lowerlayer.LowerLayerEndpointManager;
+
+/**
+ * Stands in for a lower-layer endpoint during replays, so that applications can look up the type of a switch's endpoint.
+ * It does not open any connection.
+ */
+public class ReplayEndpoint implements ILowerLayerEndpoint {
+	private LowerLayerEndpointManager endpointManager;
+	private LowerLayerEndpointConfig endpointConfig;
+
+	@Override
+	public void initialize(LowerLayerEndpointManager endpointManager, LowerLayerEndpointConfig endpointConfig) {
+		this.endpointManager = endpointManager;
+		this.endpointConfig = endpointConfig;
+	}
+
+	@Override
+	public LowerLayerEndpointManager getLowerLayerEndpointManager() {
+		return endpointManager;
+	}
+
+	@Override
+	public LowerLayerEndpointConfig getLowerLayerEndpointConfig() {
+		return endpointConfig;
+	}
+}
@@ -0,0 +1,47 @@
+package de.uniwue.info3.tablevisor.capture;
+
+import de.uniwue.info3.tablevisor.lowerlayer.ILowerLayerMessageHandler;
+import de.uniwue.info3.tablevisor.message.TVMessage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Stands in for a connected switch during replays; messages towards the switch are counted and discarded.
+ */
+public class ReplaySwitchSink implements ILowerLayerMessageHandler {
+	private final int dataplaneId;
+	private final AtomicLong received = new AtomicLong();
+	private volatile Consumer<TVMessage> listener;
+
+	public ReplaySwitchSink(int dataplaneId) {
+		this.dataplaneId = dataplaneId;
+	}
+
+	public void setListener(Consumer<TVMessage> listener) {
+		this.listener = listener;
+	}
+
+	public long getReceived() {
+		return received.get();
+	}
+
+	@Override
+	public int getDataplanId() {
+		return dataplaneId;
+	}
+
+	@Override
+	public void send(TVMessage tvMessage) {
+		received.incrementAndGet();
+		Consumer<TVMessage> l = listener;
+		if (l != null) {
+			l.accept(tvMessage);
+		}
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return true;
+	}
+}
@@ -5,23 +5,28 @@ import de.uniwue.info3.tablevisor.application.MultiSwitchApplication;
 import de.uniwue.info3.tablevisor.application.OneTransparentSwitchApplication;
 import de.uniwue.info3.tablevisor.application.P4ControlApplication;
 
+/**
+ * The built-in applications. Applications of other jars are added through an ApplicationProvider.
+ */
 public enum ApplicationType {
-	// Note: the order of this Enum decides the order in which the Apps are called.
+	// Note: the order decides the order in which the Apps are called (lowest first).
 	// TOP: TVtoControllerLayer
-	ControllerLogApplication(LogApplication.ControllerLogApplication.class),
+	ControllerLogApplication(LogApplication.ControllerLogApplication.class, 0),
 
-	OneTransparentSwitchApplication(OneTransparentSwitchApplication.class),
-	MultiSwitchApplication(MultiSwitchApplication.class),
-	P4ControlApplication(P4ControlApplication.class),
+	OneTransparentSwitchApplication(OneTransparentSwitchApplication.class, 100),
+	MultiSwitchApplication(MultiSwitchApplication.class, 200),
+	P4ControlApplication(P4ControlApplication.class, 300),
 
-	SwitchLogApplication(LogApplication.SwitchLogApplication.class);
+	SwitchLogApplication(LogApplication.SwitchLogApplication.class, 1000);
 	// BOTTOM: TVtoDataLayer
 
 	// ---
 
 	public final Class c;
+	public final int order;
 
-	ApplicationType(Class c) {
+	ApplicationType(Class c, int order) {
 		this.c = c;
+		this.order = order;
 	}
 }
@@ -0,0 +1,7 @@
+package de.uniwue.info3.tablevisor.config;
+
+public class CaptureConfig {
+	public String file;
+	public long size = 268435456L;
+	public int queueSize = 65536;
+}
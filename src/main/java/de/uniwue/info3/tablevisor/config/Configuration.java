@@ -1,5 +1,6 @@
 package de.uniwue.info3.tablevisor.config;
 
+import org.projectfloodlight.openflow.protocol.OFType;
 import org.projectfloodlight.openflow.types.DatapathId;
 
 import java.util.*;
@@ -8,7 +9,25 @@ public class Configuration {
 	public String ourDatapathId;
 	public List<UpperLayerEndpointConfig> upperLayerEndpoints;
 	public List<LowerLayerEndpointConfig> lowerLayerEndpoints;
-	public Set<ApplicationType> applications;
+	/**
+	 * Names of the enabled applications, see ApplicationType and ApplicationProvider
+	 */
+	public Set<String> applications;
+	public CaptureConfig capture;
+	/**
+	 * Workers that run the applications instead of the IO threads (null or 0 workers: IO threads)
+	 */
+	public PipelineConfig pipeline;
+	public long logSummaryInterval = 10000L;
+	/**
+	 * Milliseconds to wait for the replies of all switches to a request, per reply type (e.g., STATS_REPLY) or "default";
+	 * 0 waits forever. Unset types: see {@link #getReplyTimeout(OFType)}
+	 */
+	public Map<String, Integer> replyTimeouts = new HashMap<>();
+	/**
+	 * Directory for the snapshots of the parsed P4 table specs, relative to the configuration file (null: no snapshots)
+	 */
+	public String p4SpecCache;
 
 	private int totalNumberOfSwitches = -1;
 	private short totalNumberOfTables = -1;
@@ -32,6 +51,21 @@ public class Configuration {
 		return totalNumberOfTables;
 	}
 
+	/**
+	 * @return the deadline of a reply type in milliseconds: as configured, else the configured default,
+	 * else 30 s for BARRIER_REPLY (which waits for the commands before it) and 10 s for all others
+	 */
+	public long getReplyTimeout(OFType replyType) {
+		Integer timeout = replyTimeouts.get(replyType.name());
+		if (timeout == null) {
+			timeout = replyTimeouts.get("default");
+		}
+		if (timeout == null) {
+			return (replyType == OFType.BARRIER_REPLY ? 30000L : 10000L);
+		}
+		return timeout;
+	}
+
 	public DatapathId getOurDatapathId() {
 		return DatapathId.of(ourDatapathId);
 	}
@@ -9,5 +9,21 @@ public class LowerLayerEndpointConfig {
 	public int port;
 	public LowerLayerType type;
 	public String rtecliPath;
+	public String rtecliSession;
+	public String rtecliPython = "python";
+	public int rtecliSessions = 1;
+	public int rtecliBatchSize = 64;
+	public boolean rtecliSimulator = false;
+	public long rtecliSimLatency = 0L;
+	public long rtecliSimJitter = 0L;
+	public double rtecliSimFailureRate = 0.0;
+	public int p4Concurrency = 4;
+	public int p4QueueSize = 1024;
+	public int p4ReadConcurrency = 4;
+	public boolean p4RpcMock = false;
+	public int p4RpcBatchSize = 256;
 	public List<SwitchConfig> switches;
+	public int maxFlushBytes = 65536;
+	public long maxFlushDelay = 0L;
+	public boolean recycleMessages = false;
 }
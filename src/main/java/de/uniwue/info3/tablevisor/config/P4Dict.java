@@ -4,14 +4,27 @@ import de.uniwue.info3.tablevisor.core.TableVisor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.LineNumberReader;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Translation between the names of a P4 program and OpenFlow, taken from the @TV annotations of the table specs.
+ * The annotations are compiled once into an immutable form: names are looked up as written, in lower case or in upper case
+ * without converting them, table IDs index arrays, and each OF action name is assigned a bit so that a combination of OF
+ * actions is a long bitmask.
+ * <p>
+ * Dictionaries are shared by all switches with the same table specs (same resolved paths, sizes and modification times).
+ * If {@link Configuration#p4SpecCache} is set, the parsed annotations are also stored there, so that restarts do not parse
+ * the specs again.
+ */
 public class P4Dict {
 	private static final Pattern pTable1 = Pattern.compile("// *@TV *table *(\\d+)");
 	private static final Pattern pTable2 = Pattern.compile("table *([^ ]+) *\\{");
@@ -21,23 +34,168 @@ public class P4Dict {
 	private static final Pattern pAction2 = Pattern.compile("action *([^ ()]+) *\\(([^()]*)\\) *\\{");
 	private static final Pattern pMisc = Pattern.compile("// *@TV .*");
 
-	private HashMap<String, Integer> p4TablesToIds = new HashMap<>();
-	private HashMap<Integer, String> tableIdsToP4Names = new HashMap<>();
-	private HashMap<String, String> p4FieldToOfField = new HashMap<>();
-	private HashMap<String, String> ofFieldToP4Field = new HashMap<>();
-	private HashMap<String, HashSet<String>> p4ActionToOfAction = new HashMap<>();
-	private HashMap<HashSet<String>, String> ofActionToP4Action = new HashMap<>();
-	private HashMap<String, String> p4ParamToOfParam = new HashMap<>();
-	private HashMap<String, String> ofParamToP4Param = new HashMap<>();
+	private static final String GOTO_TABLE = "GOTO_TABLE_";
+	private static final String SET_FIELD = "SET_FIELD_";
+
+	/**
+	 * Table specs (path, size and modification time per file) -> dictionary
+	 */
+	private static final Map<String, P4Dict> cache = new ConcurrentHashMap<>();
+
+	private final Map<String, Integer> p4TablesToIds = new HashMap<>();
+	private final String[] tableIdsToP4Names;
+	private final Map<String, String> p4FieldToOfField = new HashMap<>();
+	private final Map<String, String> ofFieldToP4Field = new HashMap<>();
+	private final Map<String, String> p4ParamToOfParam = new HashMap<>();
+	private final Map<String, String> ofParamToP4Param = new HashMap<>();
+
+	/**
+	 * OF action names (upper case) by bit
+	 */
+	private final String[] ofActionNames;
+	private final Map<String, Long> ofActionBits = new HashMap<>();
+	private final long[] gotoTableBits;
+	private final Map<String, Long> setFieldBits = new HashMap<>();
+	private final Map<String, Long> p4ActionToOfActions = new HashMap<>();
+	/**
+	 * Sorted OF action combinations and their P4 actions
+	 */
+	private final long[] ofActionKeys;
+	private final String[] ofActionsToP4Action;
 
 	private static final Logger logger = LogManager.getLogger();
 
-	public void parseP4File(String path) {
-		try {
-			LineNumberReader lnr = new LineNumberReader(new FileReader(
-					TableVisor.getInstance().getConfigFile().getParent().resolve(path).toAbsolutePath().toString()
-			));
+	/**
+	 * The annotations as parsed, before compilation.
+	 */
+	private static class Annotations {
+		private final Map<Integer, String> tables = new TreeMap<>();
+		private final Map<String, String> p4FieldToOfField = new LinkedHashMap<>();
+		private final Map<String, String> ofParamToP4Param = new LinkedHashMap<>();
+		private final Map<String, List<String>> p4ActionToOfActions = new LinkedHashMap<>();
+
+		/**
+		 * Writes the snapshot: the key, then one tab-separated line per table, field, parameter and action.
+		 */
+		private void write(Path snapshot, String key) throws IOException {
+			Files.createDirectories(snapshot.getParent());
+			Path tmp = Files.createTempFile(snapshot.getParent(), snapshot.getFileName().toString(), ".tmp");
+			try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				for (String spec : key.split("\n")) {
+					w.write("spec\t" + spec + "\n");
+				}
+				for (Map.Entry<Integer, String> e : tables.entrySet()) {
+					w.write("table\t" + e.getKey() + "\t" + e.getValue() + "\n");
+				}
+				for (Map.Entry<String, String> e : p4FieldToOfField.entrySet()) {
+					w.write("field\t" + e.getKey() + "\t" + e.getValue() + "\n");
+				}
+				for (Map.Entry<String, String> e : ofParamToP4Param.entrySet()) {
+					w.write("param\t" + e.getKey() + "\t" + e.getValue() + "\n");
+				}
+				for (Map.Entry<String, List<String>> e : p4ActionToOfActions.entrySet()) {
+					w.write("action\t" + e.getKey() + "\t" + String.join("\t", e.getValue()) + "\n");
+				}
+			}
+			Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		/**
+		 * @return the annotations of the snapshot, or null if it was written for other specs
+		 */
+		private static Annotations read(Path snapshot, String key) throws IOException {
+			Annotations a = new Annotations();
+			StringBuilder specs = new StringBuilder();
+			for (String line : Files.readAllLines(snapshot, StandardCharsets.UTF_8)) {
+				String[] f = line.split("\t");
+				switch (f[0]) {
+					case "spec":
+						specs.append(line, f[0].length() + 1, line.length()).append('\n');
+						break;
+					case "table":
+						a.tables.put(Integer.parseInt(f[1]), f[2]);
+						break;
+					case "field":
+						a.p4FieldToOfField.put(f[1], f[2]);
+						break;
+					case "param":
+						a.ofParamToP4Param.put(f[1], f[2]);
+						break;
+					case "action":
+						a.p4ActionToOfActions.put(f[1], new ArrayList<>(Arrays.asList(f).subList(2, f.length)));
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown record " + f[0]);
+				}
+			}
+			return specs.toString().equals(key) ? a : null;
+		}
+	}
 
+	/**
+	 * @return the dictionary of the table specs (relative to the configuration file), parsed and compiled on first use
+	 */
+	public static P4Dict compile(String... paths) {
+		Path base = TableVisor.getInstance().getConfigFile().toAbsolutePath().getParent();
+		List<Path> files = new ArrayList<>(paths.length);
+		StringBuilder key = new StringBuilder();
+		for (String path : paths) {
+			Path file = base.resolve(path).normalize();
+			try {
+				BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+				key.append(file).append('\t').append(attrs.size()).append('\t').append(attrs.lastModifiedTime().toMillis()).append('\n');
+			}
+			catch (IOException e) {
+				throw new IllegalArgumentException(e);
+			}
+			files.add(file);
+		}
+		return cache.computeIfAbsent(key.toString(), k -> new P4Dict(load(files, k)));
+	}
+
+	/**
+	 * Reads the annotations from the snapshot of the specs, or parses the specs and writes the snapshot.
+	 * The snapshot is named after the paths and replaced when the sizes or modification times differ.
+	 */
+	private static Annotations load(List<Path> files, String key) {
+		String dir = TableVisor.getInstance().getConfig().p4SpecCache;
+		Path snapshot = null;
+		if (dir != null) {
+			snapshot = TableVisor.getInstance().getConfigFile().toAbsolutePath().getParent().resolve(dir)
+					.resolve("p4dict-" + UUID.nameUUIDFromBytes(files.toString().getBytes(StandardCharsets.UTF_8)) + ".tsv");
+			if (Files.exists(snapshot)) {
+				try {
+					Annotations a = Annotations.read(snapshot, key);
+					if (a != null) {
+						logger.debug("P4 table specs {} loaded from {}", files, snapshot);
+						return a;
+					}
+				}
+				catch (IOException | RuntimeException e) {
+					logger.warn("Cannot read P4 spec snapshot {}: {}", snapshot, e.toString());
+				}
+			}
+		}
+
+		Annotations a = new Annotations();
+		for (Path file : files) {
+			parseP4File(a, file);
+		}
+		logger.debug("P4 table specs {} parsed", files);
+
+		if (snapshot != null) {
+			try {
+				a.write(snapshot, key);
+			}
+			catch (IOException e) {
+				logger.warn("Cannot write P4 spec snapshot {}: {}", snapshot, e.toString());
+			}
+		}
+		return a;
+	}
+
+	private static void parseP4File(Annotations a, Path file) {
+		try (LineNumberReader lnr = new LineNumberReader(new FileReader(file.toString()))) {
 			String line;
 			int lineNr = 0;
 			while ((line = lnr.readLine()) != null) {
@@ -55,8 +213,7 @@ public class P4Dict {
 					if (!mTable2.matches()) {
 						throw new IllegalArgumentException("table definition expected in line " + lineNr);
 					}
-					p4TablesToIds.put(mTable2.group(1).toLowerCase(), Integer.parseInt(mTable1.group(1)));
-					tableIdsToP4Names.put(Integer.parseInt(mTable1.group(1)), mTable2.group(1));
+					a.tables.put(Integer.parseInt(mTable1.group(1)), mTable2.group(1));
 				}
 
 				else if (mField1.matches()) {
@@ -65,14 +222,13 @@ public class P4Dict {
 					if (!mField2.matches()) {
 						throw new IllegalArgumentException("field definition expected in line " + lineNr);
 					}
-					p4FieldToOfField.put(mField2.group(1).toLowerCase(), mField1.group(1));
-					ofFieldToP4Field.put(mField1.group(1).toLowerCase(), mField2.group(1));
+					a.p4FieldToOfField.put(mField2.group(1), mField1.group(1));
 				}
 
 				else if (mAction1.matches()) {
-					HashSet<String> commands = new HashSet<>();
+					List<String> commands = new ArrayList<>();
 					do {
-						commands.add(mAction1.group(1).toLowerCase());
+						commands.add(mAction1.group(1).toUpperCase());
 
 						String params = mAction1.group(2);
 						if (params != null && !params.isEmpty()) {
@@ -81,8 +237,7 @@ public class P4Dict {
 								if (param.isEmpty()) continue;
 
 								String[] p = param.split("=");
-								p4ParamToOfParam.put(p[1].toLowerCase(), p[0]);
-								ofParamToP4Param.put(p[0].toLowerCase(), p[1]);
+								a.ofParamToP4Param.put(p[0], p[1]);
 							}
 						}
 
@@ -94,9 +249,7 @@ public class P4Dict {
 					if (!mAction2.matches()) {
 						throw new IllegalArgumentException("action definition expected in line " + lineNr);
 					}
-
-					p4ActionToOfAction.put(mAction2.group(1).toLowerCase(), commands);
-					ofActionToP4Action.put(commands, mAction2.group(1));
+					a.p4ActionToOfActions.put(mAction2.group(1), commands);
 				}
 
 				else if (mMisc.matches()) {
@@ -109,24 +262,104 @@ public class P4Dict {
 		}
 	}
 
+	private P4Dict(Annotations a) {
+		int maxTableId = a.tables.isEmpty() ? -1 : Collections.max(a.tables.keySet());
+		tableIdsToP4Names = new String[maxTableId + 1];
+		for (Map.Entry<Integer, String> e : a.tables.entrySet()) {
+			tableIdsToP4Names[e.getKey()] = e.getValue();
+			putNormalized(p4TablesToIds, e.getValue(), e.getKey());
+		}
+
+		for (Map.Entry<String, String> e : a.p4FieldToOfField.entrySet()) {
+			putNormalized(p4FieldToOfField, e.getKey(), e.getValue().toUpperCase());
+			putNormalized(ofFieldToP4Field, e.getValue(), e.getKey());
+		}
+		for (Map.Entry<String, String> e : a.ofParamToP4Param.entrySet()) {
+			putNormalized(p4ParamToOfParam, e.getValue(), e.getKey().toLowerCase());
+			putNormalized(ofParamToP4Param, e.getKey(), e.getValue());
+		}
+
+		// One bit per OF action name, in the order of the annotations
+		List<String> names = new ArrayList<>();
+		int maxGotoTable = -1;
+		for (List<String> commands : a.p4ActionToOfActions.values()) {
+			for (String c : commands) {
+				if (ofActionBits.containsKey(c)) {
+					continue;
+				}
+				if (names.size() == Long.SIZE) {
+					throw new IllegalArgumentException("More than " + Long.SIZE + " different OF actions");
+				}
+				long bit = 1L << names.size();
+				names.add(c);
+				ofActionBits.put(c, bit);
+				if (c.startsWith(GOTO_TABLE) && c.substring(GOTO_TABLE.length()).matches("\\d+")) {
+					maxGotoTable = Math.max(maxGotoTable, Integer.parseInt(c.substring(GOTO_TABLE.length())));
+				}
+				else if (c.startsWith(SET_FIELD)) {
+					putNormalized(setFieldBits, c.substring(SET_FIELD.length()), bit);
+				}
+			}
+		}
+		ofActionNames = names.toArray(new String[0]);
+		gotoTableBits = new long[maxGotoTable + 1];
+		for (int t = 0; t < gotoTableBits.length; t++) {
+			gotoTableBits[t] = ofActionBits.getOrDefault(GOTO_TABLE + t, 0L);
+		}
+
+		TreeMap<Long, String> combinations = new TreeMap<>();
+		for (Map.Entry<String, List<String>> e : a.p4ActionToOfActions.entrySet()) {
+			long mask = 0;
+			for (String c : e.getValue()) {
+				mask |= ofActionBits.get(c);
+			}
+			putNormalized(p4ActionToOfActions, e.getKey(), mask);
+			combinations.put(mask, e.getKey());
+		}
+		ofActionKeys = new long[combinations.size()];
+		ofActionsToP4Action = new String[combinations.size()];
+		int i = 0;
+		for (Map.Entry<Long, String> e : combinations.entrySet()) {
+			ofActionKeys[i] = e.getKey();
+			ofActionsToP4Action[i++] = e.getValue();
+		}
+	}
+
+	/**
+	 * Adds the key as written, in lower case and in upper case, so that lookups only convert unusual spellings.
+	 */
+	private static <V> void putNormalized(Map<String, V> map, String key, V value) {
+		map.put(key, value);
+		map.put(key.toLowerCase(), value);
+		map.put(key.toUpperCase(), value);
+	}
+
+	private static <V> V getNormalized(Map<String, V> map, String key) {
+		V ret = map.get(key);
+		return ret != null ? ret : map.get(key.toLowerCase());
+	}
+
 	public Integer p4TableToId(String p4TableName) {
-		Integer ret = p4TablesToIds.get(p4TableName.toLowerCase());
+		Integer ret = getNormalized(p4TablesToIds, p4TableName);
 		if (ret == null) {
 			logger.debug("p4TableToId missing translation for {}", p4TableName);
 		}
 		return ret;
 	}
 
-	public String tableIdToP4Name(Integer tableId) {
-		String ret = tableIdsToP4Names.get(tableId);
+	public String tableIdToP4Name(int tableId) {
+		String ret = tableId >= 0 && tableId < tableIdsToP4Names.length ? tableIdsToP4Names[tableId] : null;
 		if (ret == null) {
 			logger.debug("tableIdToP4Name missing translation for {}", tableId);
 		}
 		return ret;
 	}
 
+	/**
+	 * @return the OF field name in upper case, e.g. ETH_TYPE
+	 */
 	public String p4FieldToOfField(String p4Field) {
-		String ret = p4FieldToOfField.get(p4Field.toLowerCase());
+		String ret = getNormalized(p4FieldToOfField, p4Field);
 		if (ret == null) {
 			logger.debug("p4FieldToOfField missing translation for {}", p4Field);
 		}
@@ -134,33 +367,80 @@ public class P4Dict {
 	}
 
 	public String ofFieldToP4Field(String ofField) {
-		String ret = ofFieldToP4Field.get(ofField.toLowerCase());
+		String ret = getNormalized(ofFieldToP4Field, ofField);
 		if (ret == null) {
 			logger.debug("ofFieldToP4Field missing translation for {}", ofField);
 		}
 		return ret;
 	}
 
-	public HashSet<String> p4ActionToOfAction(String p4Action) {
-		HashSet<String> ret = p4ActionToOfAction.get(p4Action.toLowerCase());
+	/**
+	 * @return the OF actions of the P4 action as bits (see {@link #ofActionName(int)}), or 0 if unknown
+	 */
+	public long p4ActionToOfActions(String p4Action) {
+		Long ret = getNormalized(p4ActionToOfActions, p4Action);
 		if (ret == null) {
 			logger.debug("p4ActionToOfAction missing translation for {}", p4Action);
+			return 0;
 		}
-		return new HashSet<>(ret);
+		return ret;
 	}
 
-	public String ofActionToP4Action(HashSet<String> ofAction) {
-		HashSet<String> copy = new HashSet<>();
-		for (String s : ofAction) copy.add(s.toLowerCase());
-		String ret = ofActionToP4Action.get(copy);
-		if (ret == null) {
-			logger.debug("ofActionToP4Action missing translation for {}", ofAction);
+	/**
+	 * @return the P4 action for a combination of OF actions, or null if unknown
+	 */
+	public String ofActionsToP4Action(long ofActions) {
+		int i = Arrays.binarySearch(ofActionKeys, ofActions);
+		if (i < 0) {
+			logger.debug("ofActionToP4Action missing translation for {}", () -> ofActionNames(ofActions));
+			return null;
+		}
+		return ofActionsToP4Action[i];
+	}
+
+	/**
+	 * @return the upper-case name of the OF action of the bit, e.g. GOTO_TABLE_1
+	 */
+	public String ofActionName(int bit) {
+		return ofActionNames[bit];
+	}
+
+	/**
+	 * @return the bit of the OF action (e.g. OUTPUT, MPLS_POP), or 0 if no P4 action contains it
+	 */
+	public long ofActionBit(String ofAction) {
+		Long ret = getNormalized(ofActionBits, ofAction);
+		return ret != null ? ret : 0;
+	}
+
+	/**
+	 * @return the bit of GOTO_TABLE_&lt;tableId&gt;, or 0 if no P4 action contains it
+	 */
+	public long gotoTableBit(int tableId) {
+		return tableId >= 0 && tableId < gotoTableBits.length ? gotoTableBits[tableId] : 0;
+	}
+
+	/**
+	 * @return the bit of SET_FIELD_&lt;ofField&gt;, or 0 if no P4 action contains it
+	 */
+	public long setFieldBit(String ofField) {
+		Long ret = getNormalized(setFieldBits, ofField);
+		return ret != null ? ret : 0;
+	}
+
+	private List<String> ofActionNames(long ofActions) {
+		List<String> ret = new ArrayList<>();
+		for (long m = ofActions; m != 0; m &= m - 1) {
+			ret.add(ofActionNames[Long.numberOfTrailingZeros(m)]);
 		}
 		return ret;
 	}
 
+	/**
+	 * @return the OF parameter name in lower case, e.g. out_port
+	 */
 	public String p4ParamToOfParam(String p4Param) {
-		String ret = p4ParamToOfParam.get(p4Param.toLowerCase());
+		String ret = getNormalized(p4ParamToOfParam, p4Param);
 		if (ret == null) {
 			logger.debug("p4ParamToOfParam missing translation for {}", p4Param);
 		}
@@ -168,7 +448,7 @@ public class P4Dict {
 	}
 
 	public String ofParamToP4Param(String ofParam) {
-		String ret = ofParamToP4Param.get(ofParam.toLowerCase());
+		String ret = getNormalized(ofParamToP4Param, ofParam);
 		if (ret == null) {
 			logger.debug("ofParamToP4Param missing translation for {}", ofParam);
 		}
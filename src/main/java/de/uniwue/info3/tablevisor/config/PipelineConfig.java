@@ -0,0 +1,6 @@
+package de.uniwue.info3.tablevisor.config;
+
+public class PipelineConfig {
+	public int workers = 0;
+	public int queueSize = 4096;
+}
@@ -26,10 +26,7 @@ public class SwitchConfig {
 
 	public P4Dict getP4Dict() {
 		if (p4Dict == null) {
-			p4Dict = new P4Dict();
-			for (String path : tableSpecs) {
-				p4Dict.parseP4File(path);
-			}
+			p4Dict = P4Dict.compile(tableSpecs);
 		}
 		return p4Dict;
 	}
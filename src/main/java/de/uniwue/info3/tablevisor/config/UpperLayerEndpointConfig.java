@@ -8,4 +8,7 @@ public class UpperLayerEndpointConfig {
 	public String ip;
 	public int port;
 	public long reconnectInterval = 10000L;
+	public int maxFlushBytes = 65536;
+	public long maxFlushDelay = 0L;
+	public boolean recycleMessages = false;
 }
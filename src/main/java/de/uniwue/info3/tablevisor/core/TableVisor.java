@@ -1,8 +1,11 @@
 package de.uniwue.info3.tablevisor.core;
 
+import de.uniwue.info3.tablevisor.application.ApplicationChain;
 import de.uniwue.info3.tablevisor.application.IApplication;
+import de.uniwue.info3.tablevisor.application.PipelineExecutor;
 import de.uniwue.info3.tablevisor.application.TVtoControllerLayer;
 import de.uniwue.info3.tablevisor.application.TVtoDataLayer;
+import de.uniwue.info3.tablevisor.capture.CaptureWriter;
 import de.uniwue.info3.tablevisor.config.*;
 import de.uniwue.info3.tablevisor.lowerlayer.ILowerLayerEndpoint;
 import de.uniwue.info3.tablevisor.lowerlayer.LowerLayerEndpointManager;
@@ -13,12 +16,8 @@ import org.apache.logging.log4j.Logger;
 import org.projectfloodlight.openflow.types.TableId;
 
 import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 public class TableVisor {
 	public static final String VERSION = "3.0.1";
@@ -31,6 +30,9 @@ public class TableVisor {
 	private LowerLayerEndpointManager lowerEndpointManager;
 	private TVtoControllerLayer tvToControllerLayer;
 	private TVtoDataLayer tvToDataLayer;
+	private PipelineExecutor pipelineExecutor;
+	private TransactionManager transactionManager;
+	private CaptureWriter captureWriter;
 
 	private HashMap<Integer, IdPair> ourTableIdsToSwitchIds;
 	private HashMap<IdPair, Integer[]> switchIdsToOurTableIds;
@@ -69,31 +71,19 @@ public class TableVisor {
 			return;
 		}
 
-		tvToControllerLayer = new TVtoControllerLayer();
-		tvToDataLayer = new TVtoDataLayer(tvToControllerLayer);
+		initializeApplications();
 
-		if (config.applications == null || config.applications.isEmpty()) {
-			logger.warn("No applications enabled, only core modules instantiated");
-		}
-		else {
-			IApplication previous = tvToControllerLayer;
-			for (ApplicationType t : ApplicationType.values()) {
-				if (config.applications.contains(t)) {
-					logger.info("Initializing {}...", t);
-
-					try {
-						Constructor<IApplication> constr = t.c.getConstructor(IApplication.class);
-						previous = constr.newInstance(previous);
-					}
-					catch (NoSuchMethodException | IllegalAccessException | InstantiationException | InvocationTargetException e) {
-						logger.error("Could not initialize {}", t, e);
-					}
-				}
+		if (config.capture != null && config.capture.file != null) {
+			try {
+				captureWriter = new CaptureWriter(config.capture);
+				Runtime.getRuntime().addShutdownHook(new Thread(captureWriter::close));
+			}
+			catch (IOException e) {
+				logger.error("Could not open capture file {}; capturing disabled", config.capture.file, e);
 			}
 		}
 
-		lowerEndpointManager = new LowerLayerEndpointManager();
-		upperEndpointManager = new UpperLayerEndpointManager();
+		initializeEndpointManagers(new LowerLayerEndpointManager(), new UpperLayerEndpointManager());
 
 		logger.info("Waiting for all ({}) switches to connect...", config.getTotalNumberOfSwitches());
 		lowerEndpointManager.initialize(config.lowerLayerEndpoints);
@@ -124,6 +114,46 @@ public class TableVisor {
 		logger.info("Exiting TableVisor");
 	}
 
+	/**
+	 * Builds the application chain between TVtoControllerLayer and TVtoDataLayer and compiles its routes.
+	 * If pipeline workers are configured, the chain is run by a PipelineExecutor.
+	 */
+	public void initializeApplications() {
+		transactionManager = new TransactionManager(config::getReplyTimeout, config.logSummaryInterval);
+		tvToControllerLayer = new TVtoControllerLayer();
+		tvToDataLayer = new TVtoDataLayer(tvToControllerLayer);
+
+		if (config.applications == null || config.applications.isEmpty()) {
+			logger.warn("No applications enabled, only core modules instantiated");
+		}
+		else {
+			IApplication bottom = ApplicationChain.build(tvToControllerLayer, config.applications);
+			if (bottom.getSuccessingDataPlaneConnector() != tvToDataLayer) {
+				throw new IllegalStateException("Applications must be created below their control plane connector");
+			}
+		}
+		ApplicationChain.compile(tvToControllerLayer);
+
+		if (config.pipeline != null && config.pipeline.workers > 0) {
+			List<Integer> dataplaneIds = new ArrayList<>();
+			for (SwitchConfig sw : config.getAllSwitches()) {
+				dataplaneIds.add(sw.dataplaneId);
+			}
+			pipelineExecutor = new PipelineExecutor(config.pipeline, tvToControllerLayer, tvToDataLayer, dataplaneIds, config.logSummaryInterval);
+			tvToControllerLayer.setPipeline(pipelineExecutor);
+			tvToDataLayer.setPipeline(pipelineExecutor);
+			pipelineExecutor.start();
+		}
+	}
+
+	/**
+	 * Sets the endpoint managers without initializing them, so that endpoints can also be added manually (e.g., for replays).
+	 */
+	public void initializeEndpointManagers(LowerLayerEndpointManager lowerEndpointManager, UpperLayerEndpointManager upperEndpointManager) {
+		this.lowerEndpointManager = lowerEndpointManager;
+		this.upperEndpointManager = upperEndpointManager;
+	}
+
 	public UpperLayerEndpointManager getUpperEndpointManager() {
 		return upperEndpointManager;
 	}
@@ -132,6 +162,10 @@ public class TableVisor {
 		return lowerEndpointManager;
 	}
 
+	public CaptureWriter getCaptureWriter() {
+		return captureWriter;
+	}
+
 	public TVtoControllerLayer getTvToControllerLayer() {
 		return tvToControllerLayer;
 	}
@@ -140,6 +174,17 @@ public class TableVisor {
 		return tvToDataLayer;
 	}
 
+	public TransactionManager getTransactionManager() {
+		return transactionManager;
+	}
+
+	/**
+	 * @return the executor of the application chain, or null if it runs on the IO threads
+	 */
+	public PipelineExecutor getPipelineExecutor() {
+		return pipelineExecutor;
+	}
+
 	public Configuration getConfig() {
 		return config;
 	}
@@ -199,7 +244,7 @@ public class TableVisor {
 
 		for (LowerLayerEndpointConfig lec : config.lowerLayerEndpoints) {
 			for (SwitchConfig swc : lec.switches) {
-				if (lec.type == LowerLayerType.P4_NETRONOME) {
+				if (lec.type.isP4()) {
 					swc.getP4Dict();
 				}
 
@@ -0,0 +1,408 @@
+package de.uniwue.info3.tablevisor.core;
+
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import de.uniwue.info3.tablevisor.message.TVMsgRewriter;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFType;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Assigns the transaction IDs of the OpenFlow messages towards the switches and maps the replies back.
+ * <p>
+ * Every message towards a switch gets the next xid of that switch, counted from 1, so that replies to different
+ * requests (of the controller or of TableVisor itself) cannot collide; a replay of a capture reproduces them.
+ * Requests that are answered (e.g., STATS_REQUEST, BARRIER_REQUEST) are tracked as transactions until their last
+ * reply or their timeout, see {@link de.uniwue.info3.tablevisor.config.Configuration#getReplyTimeout(OFType)};
+ * without a timeout, they are forgotten after {@value #MAX_RETENTION_MILLIS} ms.
+ * Commands (e.g., FLOW_MOD) are only answered by errors; their xids are kept in a window of the last
+ * {@value #COMMAND_WINDOW} messages per switch.
+ * <p>
+ * Replies to requests of the controller get its xid back. Replies to requests of TableVisor complete the future
+ * returned by {@link #request(int, OFMessage, Consumer)} and are not passed on. Replies of unknown xids (e.g., of a
+ * capture recorded before) are passed on unchanged.
+ * <p>
+ * Messages of OpenFlow switches are handled by TVtoDataLayer, those of P4 switches by BaseP4Application,
+ * i.e., where they are translated.
+ */
+public class TransactionManager {
+	private static final Logger logger = LogManager.getLogger();
+	private static final Timer TIMER = new HashedWheelTimer(new DefaultThreadFactory("transaction-timeouts", true), 10, TimeUnit.MILLISECONDS);
+	private static final int COMMAND_WINDOW = 1 << 16;
+	private static final long MAX_RETENTION_MILLIS = 10 * 60 * 1000;
+	// expired requests of the controller are kept at least this long, see Transaction#expire(long)
+	private static final long TOMBSTONE_MILLIS = 1000;
+	private static final Map<OFType, OFType> REPLY_TYPES = new EnumMap<>(OFType.class);
+	static {
+		REPLY_TYPES.put(OFType.ECHO_REQUEST, OFType.ECHO_REPLY);
+		REPLY_TYPES.put(OFType.FEATURES_REQUEST, OFType.FEATURES_REPLY);
+		REPLY_TYPES.put(OFType.GET_CONFIG_REQUEST, OFType.GET_CONFIG_REPLY);
+		REPLY_TYPES.put(OFType.STATS_REQUEST, OFType.STATS_REPLY);
+		REPLY_TYPES.put(OFType.BARRIER_REQUEST, OFType.BARRIER_REPLY);
+		REPLY_TYPES.put(OFType.QUEUE_GET_CONFIG_REQUEST, OFType.QUEUE_GET_CONFIG_REPLY);
+		REPLY_TYPES.put(OFType.ROLE_REQUEST, OFType.ROLE_REPLY);
+		REPLY_TYPES.put(OFType.GET_ASYNC_REQUEST, OFType.GET_ASYNC_REPLY);
+	}
+	private static final Set<OFType> REPLIES = EnumSet.of(OFType.ERROR);
+	static {
+		REPLIES.addAll(REPLY_TYPES.values());
+	}
+
+	private final Map<Long, Transaction> transactions = new ConcurrentHashMap<>();
+	private final Map<Integer, SwitchXids> switches = new ConcurrentHashMap<>();
+	// requests of TableVisor on their way to the switch, which already have their xid
+	private final Map<TVMessage, Transaction> unsent = new ConcurrentHashMap<>();
+	private final Map<OFType, Latency> latencies = new ConcurrentHashMap<>();
+	private final ToLongFunction<OFType> timeouts;
+	private final long summaryInterval;
+	private final AtomicLong nextSummary;
+
+	/**
+	 * @param timeouts        the timeout of a reply type in milliseconds after its request was sent; 0 waits up to
+	 *                        {@value #MAX_RETENTION_MILLIS} ms
+	 * @param summaryInterval milliseconds between the summaries at INFO (0 disables them)
+	 */
+	public TransactionManager(ToLongFunction<OFType> timeouts, long summaryInterval) {
+		this.timeouts = timeouts;
+		this.summaryInterval = TimeUnit.MILLISECONDS.toNanos(summaryInterval);
+		this.nextSummary = new AtomicLong(System.nanoTime() + this.summaryInterval);
+	}
+
+	/**
+	 * Sends a message of TableVisor itself to a switch. A command is followed by a BARRIER_REQUEST, so that its
+	 * future completes once the switch has executed it; it times out after the timeout of BARRIER_REPLY. The timeout
+	 * starts here, so that a message discarded on its way to the switch fails as well.
+	 *
+	 * @param send passes the message on towards the switch, e.g., to the next application
+	 * @return the replies of the switch: all fragments of a multipart reply, or the ERROR the request or command
+	 * was rejected with; an empty list for an executed command. Completed on the thread that received the reply,
+	 * or exceptionally with a TimeoutException
+	 */
+	public CompletableFuture<List<OFMessage>> request(int dataplaneId, OFMessage msg, Consumer<TVMessage> send) {
+		SwitchXids xids = xidsOf(dataplaneId);
+		Transaction t = new Transaction(dataplaneId, xids.next(), -1, msg.getType(), new CompletableFuture<>());
+		send(t, msg, send);
+		if (!REPLY_TYPES.containsKey(msg.getType())) {
+			Transaction barrier = new Transaction(dataplaneId, xids.next(), -1, OFType.BARRIER_REQUEST, null);
+			barrier.command = t;
+			send(barrier, OFFactories.getFactory(msg.getVersion()).buildBarrierRequest().build(), send);
+		}
+		return t.future;
+	}
+
+	private void send(Transaction t, OFMessage msg, Consumer<TVMessage> send) {
+		TVMessage tvMessage = new TVMessage(msg, t.dataplaneId);
+		TVMsgRewriter.setXid(tvMessage, t.xid);
+		t.message = tvMessage;
+		transactions.put(key(t.dataplaneId, t.xid), t);
+		unsent.put(tvMessage, t);
+		t.start();
+		send.accept(tvMessage);
+	}
+
+	/**
+	 * Gives an OpenFlow message the next xid of its switch, just before it is sent to the switch.
+	 */
+	public void toSwitch(TVMessage tvMessage) {
+		Transaction own = unsent.remove(tvMessage);
+		if (own != null) {
+			own.sent = System.nanoTime();
+			return;
+		}
+		int dataplaneId = tvMessage.getDataplaneId();
+		SwitchXids xids = xidsOf(dataplaneId);
+		long xid = xids.next();
+		long controllerXid = TVMsgRewriter.getXid(tvMessage);
+		OFType type = tvMessage.getThisMsgType();
+		if (REPLY_TYPES.containsKey(type)) {
+			Transaction t = new Transaction(dataplaneId, xid, controllerXid, type, null);
+			transactions.put(key(dataplaneId, xid), t);
+			t.start();
+		}
+		else {
+			xids.commands.lazySet((int) xid & (COMMAND_WINDOW - 1), (xid << 32) | controllerXid);
+		}
+		TVMsgRewriter.setXid(tvMessage, xid);
+	}
+
+	/**
+	 * Fails the request of TableVisor a message belongs to, if the message cannot be sent to its switch.
+	 */
+	public void dropped(TVMessage tvMessage) {
+		Transaction own = unsent.remove(tvMessage);
+		if (own != null) {
+			own.fail(new IllegalStateException("Dataplane " + own.dataplaneId + " is not connected"));
+		}
+	}
+
+	/**
+	 * Maps a message of a switch back to its request, just after it was received from the switch.
+	 *
+	 * @return false if the message answers a request of TableVisor and must not be passed on
+	 */
+	public boolean fromSwitch(TVMessage tvMessage) {
+		if (!REPLIES.contains(tvMessage.getThisMsgType())) {
+			return true;
+		}
+		maybeLogSummary();
+		int dataplaneId = tvMessage.getDataplaneId();
+		long xid = TVMsgRewriter.getXid(tvMessage);
+		Transaction t = transactions.get(key(dataplaneId, xid));
+		if (t != null) {
+			return t.reply(tvMessage);
+		}
+		SwitchXids xids = switches.get(dataplaneId);
+		if (xids != null && tvMessage.getThisMsgType() == OFType.ERROR) {
+			long command = xids.commands.get((int) xid & (COMMAND_WINDOW - 1));
+			if ((command >>> 32) == xid) {
+				TVMsgRewriter.setReplyXid(tvMessage, command & 0xffffffffL);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of requests waiting for replies
+	 */
+	public int getOutstanding() {
+		return transactions.size();
+	}
+
+	/**
+	 * @return the latency of the answered requests per request type since the last call
+	 */
+	public Map<OFType, Latency> drainLatencies() {
+		Map<OFType, Latency> drained = new TreeMap<>();
+		latencies.forEach((type, l) -> {
+			Latency d = l.drain();
+			if (d.getCount() > 0) {
+				drained.put(type, d);
+			}
+		});
+		return drained;
+	}
+
+	private SwitchXids xidsOf(int dataplaneId) {
+		SwitchXids xids = switches.get(dataplaneId);
+		if (xids == null) {
+			xids = switches.computeIfAbsent(dataplaneId, k -> new SwitchXids());
+		}
+		return xids;
+	}
+
+	private static long key(int dataplaneId, long xid) {
+		return ((long) dataplaneId << 32) | (xid & 0xffffffffL);
+	}
+
+	/**
+	 * Logs the outstanding requests and latencies at INFO, at most once per logSummaryInterval.
+	 */
+	private void maybeLogSummary() {
+		if (summaryInterval <= 0) {
+			return;
+		}
+		long now = System.nanoTime();
+		long next = nextSummary.get();
+		if (now - next < 0 || !nextSummary.compareAndSet(next, now + summaryInterval)) {
+			return;
+		}
+		logger.info("[Transactions] outstanding {}, latencies {}", getOutstanding(), drainLatencies());
+	}
+
+	private static class SwitchXids {
+		private final AtomicInteger xid = new AtomicInteger();
+		// xid of the switch << 32 | xid of the controller, per command
+		private final AtomicLongArray commands = new AtomicLongArray(COMMAND_WINDOW);
+
+		private long next() {
+			long next;
+			do {
+				next = xid.incrementAndGet() & 0xffffffffL;
+			} while (next == 0);
+			return next;
+		}
+	}
+
+	private class Transaction {
+		private final int dataplaneId;
+		private final long xid;
+		// -1 for requests of TableVisor
+		private final long controllerXid;
+		private final OFType type;
+		private final CompletableFuture<List<OFMessage>> future;
+		private final List<OFMessage> replies = new ArrayList<>();
+		private final AtomicBoolean finished = new AtomicBoolean();
+		// the request of TableVisor
+		private TVMessage message;
+		// the command a barrier of TableVisor completes
+		private Transaction command;
+		private volatile long sent;
+		private Timeout timeout;
+		private volatile boolean expired = false;
+
+		private Transaction(int dataplaneId, long xid, long controllerXid, OFType type, CompletableFuture<List<OFMessage>> future) {
+			this.dataplaneId = dataplaneId;
+			this.xid = xid;
+			this.controllerXid = controllerXid;
+			this.type = type;
+			this.future = future;
+		}
+
+		private void start() {
+			sent = System.nanoTime();
+			OFType replyType = REPLY_TYPES.get(type);
+			long millis = timeouts.applyAsLong(replyType != null ? replyType : OFType.BARRIER_REPLY);
+			long retention = millis > 0 ? millis : MAX_RETENTION_MILLIS;
+			timeout = TIMER.newTimeout(t -> expire(retention), retention, TimeUnit.MILLISECONDS);
+		}
+
+		/**
+		 * @return true if the reply is passed on
+		 */
+		private boolean reply(TVMessage tvMessage) {
+			boolean last = tvMessage.getThisMsgType() == OFType.ERROR || !TVMsgRewriter.hasReplyMore(tvMessage);
+			if (future == null && command == null) {
+				TVMsgRewriter.setReplyXid(tvMessage, controllerXid);
+				if (last) {
+					finish();
+				}
+				return true;
+			}
+			if (command != null) {
+				command.finish();
+			}
+			else {
+				synchronized (replies) {
+					replies.add(tvMessage.getOFMessage());
+				}
+			}
+			if (last) {
+				finish();
+			}
+			return false;
+		}
+
+		private void finish() {
+			if (!finished.compareAndSet(false, true)) {
+				return;
+			}
+			transactions.remove(key(dataplaneId, xid), this);
+			if (timeout != null) {
+				timeout.cancel();
+			}
+			if (!expired) {
+				latencies.computeIfAbsent(type, k -> new Latency()).add(System.nanoTime() - sent);
+			}
+			if (future != null) {
+				synchronized (replies) {
+					future.complete(new ArrayList<>(replies));
+				}
+			}
+		}
+
+		/**
+		 * Fails a request of TableVisor and the command its barrier completes.
+		 */
+		private void fail(Throwable cause) {
+			if (command != null) {
+				command.fail(cause);
+			}
+			if (!finished.compareAndSet(false, true)) {
+				return;
+			}
+			transactions.remove(key(dataplaneId, xid), this);
+			if (timeout != null) {
+				timeout.cancel();
+			}
+			if (future != null) {
+				future.completeExceptionally(cause);
+			}
+		}
+
+		/**
+		 * Requests of the controller are kept for another timeout (at least a second), so that late replies still get
+		 * their xid back.
+		 */
+		private void expire(long millis) {
+			if (finished.get()) {
+				return;
+			}
+			if (message != null) {
+				unsent.remove(message);
+			}
+			if (future != null || command != null) {
+				logger.debug("No reply of dataplane {} to {} (xid {}) within {} ms", dataplaneId, type, xid, millis);
+				fail(new TimeoutException("No reply of dataplane " + dataplaneId + " to " + type + " within " + millis + " ms"));
+				return;
+			}
+			expired = true;
+			TIMER.newTimeout(t -> {
+				if (finished.compareAndSet(false, true)) {
+					transactions.remove(key(dataplaneId, xid), this);
+				}
+			}, Math.max(millis, TOMBSTONE_MILLIS), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * The latency between a request and its last reply.
+	 */
+	public static class Latency {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder total = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		private void add(long nanos) {
+			count.increment();
+			total.add(nanos);
+			long m = max.get();
+			while (nanos > m && !max.compareAndSet(m, nanos)) {
+				m = max.get();
+			}
+		}
+
+		private Latency drain() {
+			Latency d = new Latency();
+			d.count.add(count.sumThenReset());
+			d.total.add(total.sumThenReset());
+			d.max.set(max.getAndSet(0));
+			return d;
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getMeanMicros() {
+			long n = count.sum();
+			return (n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(total.sum() / n));
+		}
+
+		public long getMaxMicros() {
+			return TimeUnit.NANOSECONDS.toMicros(max.get());
+		}
+
+		@Override
+		public String toString() {
+			return getCount() + " x " + getMeanMicros() + "/" + getMaxMicros() + " us (mean/max)";
+		}
+	}
+}
@@ -24,6 +24,9 @@ public class LowerLayerEndpointManager {
 				case P4_NETRONOME:
 					endpoint = new LowerP4Endpoint();
 					break;
+				case P4_MOCK_RPC:
+					endpoint = new LowerP4RpcEndpoint();
+					break;
 			}
 			allEndpoints.add(endpoint);
 			endpoint.initialize(this, endpointConfig);
@@ -2,5 +2,16 @@ package de.uniwue.info3.tablevisor.lowerlayer;
 
 public enum LowerLayerType {
 	OPENFLOW,
-	P4_NETRONOME
+	P4_NETRONOME,
+	/**
+	 * P4 switches emulated by P4RpcMockServer, for tests and benchmarks; not P4Runtime/gRPC
+	 */
+	P4_MOCK_RPC;
+
+	/**
+	 * @return whether switches of this type are programmed with P4 table operations (P4ControlApplication)
+	 */
+	public boolean isP4() {
+		return this == P4_NETRONOME || this == P4_MOCK_RPC;
+	}
 }
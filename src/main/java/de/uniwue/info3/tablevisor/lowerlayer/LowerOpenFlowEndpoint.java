@@ -1,8 +1,13 @@
 package de.uniwue.info3.tablevisor.lowerlayer;
 
+import de.uniwue.info3.tablevisor.capture.CaptureDirection;
+import de.uniwue.info3.tablevisor.capture.CaptureHandler;
+import de.uniwue.info3.tablevisor.capture.CaptureWriter;
 import de.uniwue.info3.tablevisor.config.LowerLayerEndpointConfig;
+import de.uniwue.info3.tablevisor.core.TableVisor;
 import de.uniwue.info3.tablevisor.message.TVMsgDecoder;
 import de.uniwue.info3.tablevisor.message.TVMsgEncoder;
+import de.uniwue.info3.tablevisor.message.TVMsgFlushCoalescer;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
@@ -41,10 +46,15 @@ public class LowerOpenFlowEndpoint implements ILowerLayerEndpoint {
 								logger.info("{} - Connection from {}", endpointConfig.name, channel.remoteAddress());
 								LowerOpenFlowMessageHandler socket = new LowerOpenFlowMessageHandler(endpoint, channel);
 								channel.pipeline().addLast(
+										new TVMsgFlushCoalescer(endpointConfig.maxFlushBytes, endpointConfig.maxFlushDelay),
 										new TVMsgEncoder(),
-										new TVMsgDecoder(OFFactories.getFactory(OFVersion.OF_13).getReader()),
-										socket
+										new TVMsgDecoder(OFFactories.getFactory(OFVersion.OF_13).getReader(), endpointConfig.recycleMessages)
 								);
+								CaptureWriter captureWriter = TableVisor.getInstance().getCaptureWriter();
+								if (captureWriter != null) {
+									channel.pipeline().addLast(new CaptureHandler(captureWriter, CaptureDirection.FROM_SWITCH, CaptureDirection.TO_SWITCH, socket::getDataplanId));
+								}
+								channel.pipeline().addLast(socket);
 								socket.sendHello();
 							}
 						});
@@ -30,9 +30,11 @@ public class LowerOpenFlowMessageHandler extends ChannelInboundHandlerAdapter im
 		TVMessage tvMessage = (TVMessage) msg;
 
 		if (tvMessage.isOpenFlow()) {
-			logger.trace("Received message from {}: {}", ctx.channel().remoteAddress(), tvMessage.getOFMessage().toString());
+			if (logger.isTraceEnabled()) {
+				logger.trace("Received message from {}: {}", ctx.channel().remoteAddress(), tvMessage.getOFMessage().toString());
+			}
 
-			switch (tvMessage.getOFMessage().getType()) {
+			switch (tvMessage.getThisMsgType()) {
 				case HELLO:
 					// use the receipt of hello from switch to initialize tablevisor socket
 					sendFeaturesRequest();
@@ -122,7 +124,7 @@ public class LowerOpenFlowMessageHandler extends ChannelInboundHandlerAdapter im
 			logger.error("Cannot send to switch, message is of type '{}'", tvMessage.getTypeAsString());
 			return;
 		}
-		logger.trace("Sent {} message to {}", tvMessage.getOFMessage().getType(), channel.remoteAddress());
+		logger.trace("Sent {} message to {}", tvMessage.getThisMsgType(), channel.remoteAddress());
 		channel.writeAndFlush(tvMessage);
 	}
 
@@ -5,16 +5,29 @@ import de.uniwue.info3.tablevisor.config.SwitchConfig;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class LowerP4Endpoint implements ILowerLayerEndpoint {
 	private static final Logger logger = LogManager.getLogger();
 	private LowerLayerEndpointConfig endpointConfig;
 	private LowerLayerEndpointManager endpointManager;
+	// executes the RTECLI calls of all switches of this endpoint
+	private ExecutorService dispatchPool;
 
 	@Override
 	public void initialize(LowerLayerEndpointManager endpointManager, LowerLayerEndpointConfig endpointConfig) {
 		this.endpointManager = endpointManager;
 		this.endpointConfig = endpointConfig;
 
+		AtomicInteger threads = new AtomicInteger();
+		dispatchPool = Executors.newFixedThreadPool(Math.max(1, endpointConfig.p4Concurrency), r -> {
+			Thread t = new Thread(r, "p4-dispatch-" + endpointConfig.name + "-" + threads.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+
 		for (SwitchConfig endp : endpointConfig.switches) {
 			endpointManager.getDataplaneToDatapathId().put(endp.dataplaneId, endp.datapathId);
 			endpointManager.getDatapathToDataplaneId().put(endp.datapathId, endp.dataplaneId);
@@ -22,6 +35,10 @@ public class LowerP4Endpoint implements ILowerLayerEndpoint {
 		}
 	}
 
+	public ExecutorService getDispatchPool() {
+		return dispatchPool;
+	}
+
 	@Override
 	public LowerLayerEndpointManager getLowerLayerEndpointManager() {
 		return endpointManager;
@@ -1,5 +1,6 @@
 package de.uniwue.info3.tablevisor.lowerlayer;
 
+import de.uniwue.info3.tablevisor.config.LowerLayerEndpointConfig;
 import de.uniwue.info3.tablevisor.config.SwitchConfig;
 import de.uniwue.info3.tablevisor.core.TableVisor;
 import de.uniwue.info3.tablevisor.message.TVMessage;
@@ -11,17 +12,42 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 
 public class LowerP4MessageHandler implements ILowerLayerMessageHandler {
 	private static final Logger logger = LogManager.getLogger();
 	private int dataplaneId;
 	private LowerP4Endpoint endpoint;
+	// long-lived RTECLI processes, null if rtecli is started for every command
+	private RtecliSession[] sessions;
+	// executes the commands in-process instead of rtecli, null if not simulated
+	private RtecliSimulator simulator;
+	private P4Dispatcher dispatcher;
 
 	public LowerP4MessageHandler(LowerP4Endpoint endpoint, int dataplaneId) {
 		this.endpoint = endpoint;
 		this.dataplaneId = dataplaneId;
 
+		LowerLayerEndpointConfig config = endpoint.getLowerLayerEndpointConfig();
+		if (config.rtecliSimulator) {
+			simulator = new RtecliSimulator(config.rtecliSimLatency, config.rtecliSimJitter, config.rtecliSimFailureRate);
+		}
+		boolean useSessions = simulator == null && config.rtecliSession != null && config.rtecliSessions > 0;
+		// sessions do not block the dispatcher, their reads are spread over the sessions by table
+		dispatcher = new P4Dispatcher(this, endpoint.getDispatchPool(), config.p4QueueSize, useSessions ? 1 : config.p4ReadConcurrency);
+		if (useSessions) {
+			List<String> processCommand = Arrays.asList(config.rtecliPython,
+					TableVisor.getInstance().getConfigFile().getParent().resolve(config.rtecliSession).toAbsolutePath().toString(),
+					config.rtecliPath);
+			sessions = new RtecliSession[config.rtecliSessions];
+			for (int i = 0; i < sessions.length; i++) {
+				sessions[i] = new RtecliSession(this, processCommand, config.rtecliBatchSize, "rtecli-" + dataplaneId + "-" + i);
+			}
+		}
+
 		logger.info("Switch ID '{}' of type '{}' registered", dataplaneId, endpoint.getLowerLayerEndpointConfig().type);
 
 		synchronized (TableVisor.getInstance()) {
@@ -40,25 +66,48 @@ public class LowerP4MessageHandler implements ILowerLayerMessageHandler {
 			logger.error("Cannot send to switch, message is of type '{}'", tvMessage.getTypeAsString());
 			return;
 		}
+		dispatcher.submit(tvMessage);
+	}
 
+	/**
+	 * Executes the RTECLI command of the message; called by the dispatcher in the order of {@link #send(TVMessage)}.
+	 * {@link #completed()} is called once the command has been executed, for sessions possibly later on their thread.
+	 */
+	void execute(TVMessage tvMessage) {
 		LinkedList<String> cliParams = tvMessage.getCmdLine();
 
 		SwitchConfig swc = TableVisor.getInstance().getConfig().getSwitchConfigById(tvMessage.getDataplaneId());
 		cliParams.addFirst("--rte-host " + swc.rteIp);
 		cliParams.addFirst("--rte-port " + swc.rtePort);
 
-		CommandLine commandline = new CommandLine(endpoint.getLowerLayerEndpointConfig().rtecliPath);
-		for (String p : tvMessage.getCmdLine()) {
-			if (p.startsWith("--")) {
-				// Split argument into 2 to comply with what RTECLI expects
-				String[] parts = p.split(" ", 2);
-				for (String s : parts) {
-					commandline.addArgument(s, false);
-				}
+		List<String> arguments = toArguments(cliParams);
+		if (simulator != null) {
+			try {
+				reply(tvMessage, simulator.execute(arguments).trim());
 			}
-			else {
-				commandline.addArgument(p, false);
+			catch (IOException e) {
+				logger.warn("Error during simulated RTECLI execution: {}", e.getMessage());
+				failed(tvMessage, e.getMessage());
 			}
+			completed();
+			return;
+		}
+		if (sessions != null) {
+			// commands for the same table always use the same session, so they are executed in order
+			String table = "";
+			for (String p : cliParams) {
+				if (p.startsWith("--table-name ")) {
+					table = p;
+					break;
+				}
+			}
+			sessions[Math.floorMod(table.hashCode(), sessions.length)].submit(tvMessage, arguments, table);
+			return;
+		}
+
+		CommandLine commandline = new CommandLine(endpoint.getLowerLayerEndpointConfig().rtecliPath);
+		for (String a : arguments) {
+			commandline.addArgument(a, false);
 		}
 
 		DefaultExecutor exec = new DefaultExecutor();
@@ -68,7 +117,7 @@ public class LowerP4MessageHandler implements ILowerLayerMessageHandler {
 
 		try {
 			exec.execute(commandline);
-			logger.trace(commandline.toString().trim());
+			logger.trace(() -> commandline.toString().trim());
 		}
 		catch (IOException e) {
 			logger.warn("Error during RTECLI execution: {}", e.getMessage(), e);
@@ -76,16 +125,70 @@ public class LowerP4MessageHandler implements ILowerLayerMessageHandler {
 			if (!cmdLine.isEmpty()) logger.debug(cmdLine);
 			String outStr = outputStream.toString().trim();
 			if (!outStr.isEmpty()) logger.debug(outStr);
+			failed(tvMessage, e.getMessage());
+			completed();
 			return;
 		}
 
-		String reply = outputStream.toString().trim();
+		reply(tvMessage, outputStream.toString().trim());
+		completed();
+	}
+
+	/**
+	 * @return the simulator of this switch, or null if rtecli is executed
+	 */
+	public RtecliSimulator getSimulator() {
+		return simulator;
+	}
+
+	void completed() {
+		dispatcher.completed();
+	}
+
+	/**
+	 * Passes the output of RTECLI for the given request on to the applications.
+	 * Replies of the sessions arrive on their own threads, so they are delivered one at a time per switch.
+	 */
+	synchronized void reply(TVMessage request, String reply) {
 		logger.debug("RTECLI - {}", reply);
 
-		TVMessage replyMsg = new TVMessage(reply, tvMessage.getOriginalRequest(), getDataplanId());
+		TVMessage replyMsg = new TVMessage(reply, request.getOriginalRequest(), getDataplanId());
 		TableVisor.getInstance().getTvToDataLayer().allToControlPlane(replyMsg);
 	}
 
+	/**
+	 * Reports that the given request was not executed, if its original request waits for replies.
+	 */
+	synchronized void failed(TVMessage request, String reason) {
+		TVMessage replyMsg = request.failedReply(reason);
+		if (replyMsg != null) {
+			TableVisor.getInstance().getTvToDataLayer().allToControlPlane(replyMsg);
+		}
+	}
+
+	/**
+	 * Answers a barrier; called by the dispatcher once all commands before it have completed.
+	 */
+	synchronized void barrierReached(TVMessage barrier) {
+		logger.trace("Switch ID '{}' - Barrier reached", dataplaneId);
+		TVMessage replyMsg = new TVMessage("", barrier.getOriginalRequest(), getDataplanId());
+		TableVisor.getInstance().getTvToDataLayer().allToControlPlane(replyMsg);
+	}
+
+	private static List<String> toArguments(List<String> cliParams) {
+		List<String> arguments = new ArrayList<>();
+		for (String p : cliParams) {
+			if (p.startsWith("--")) {
+				// Split argument into 2 to comply with what RTECLI expects
+				arguments.addAll(Arrays.asList(p.split(" ", 2)));
+			}
+			else {
+				arguments.add(p);
+			}
+		}
+		return arguments;
+	}
+
 	@Override
 	public boolean isInitialized() {
 		return true;
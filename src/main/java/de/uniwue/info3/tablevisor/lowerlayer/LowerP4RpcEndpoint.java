@@ -0,0 +1,67 @@
+package de.uniwue.info3.tablevisor.lowerlayer;
+
+import de.uniwue.info3.tablevisor.config.LowerLayerEndpointConfig;
+import de.uniwue.info3.tablevisor.config.SwitchConfig;
+import de.uniwue.info3.tablevisor.p4rpc.P4RpcMockServer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * P4 switches that are programmed through the P4 RPC protocol (see P4RpcMessage) at rteIp:rtePort.
+ * Only P4RpcMockServer speaks this protocol, so the endpoint is meant for tests and benchmarks, not for devices.
+ * With p4RpcMock, an in-memory P4RpcMockServer per switch is started in-process instead.
+ */
+public class LowerP4RpcEndpoint implements ILowerLayerEndpoint {
+	private static final Logger logger = LogManager.getLogger();
+	private LowerLayerEndpointConfig endpointConfig;
+	private LowerLayerEndpointManager endpointManager;
+	private EventLoopGroup group;
+
+	@Override
+	public void initialize(LowerLayerEndpointManager endpointManager, LowerLayerEndpointConfig endpointConfig) {
+		this.endpointManager = endpointManager;
+		this.endpointConfig = endpointConfig;
+		int threads = Math.max(1, endpointConfig.p4Concurrency);
+		// in-process connections need event loops that are not bound to NIO
+		this.group = (endpointConfig.p4RpcMock ? new DefaultEventLoopGroup(threads) : new NioEventLoopGroup(threads));
+
+		for (SwitchConfig endp : endpointConfig.switches) {
+			SocketAddress address;
+			if (endpointConfig.p4RpcMock) {
+				address = new LocalAddress("p4rpc-" + endp.dataplaneId);
+				new P4RpcMockServer().bind(group, address).syncUninterruptibly();
+				logger.info("Switch ID '{}' - P4 RPC mock server started", endp.dataplaneId);
+			}
+			else {
+				address = new InetSocketAddress(endp.rteIp, endp.rtePort);
+			}
+
+			endpointManager.getDataplaneToDatapathId().put(endp.dataplaneId, endp.datapathId);
+			endpointManager.getDatapathToDataplaneId().put(endp.datapathId, endp.dataplaneId);
+			LowerP4RpcMessageHandler handler = new LowerP4RpcMessageHandler(this, endp.dataplaneId, address);
+			endpointManager.getSockets().put(endp.dataplaneId, handler);
+			handler.connect();
+		}
+	}
+
+	EventLoopGroup getEventLoopGroup() {
+		return group;
+	}
+
+	@Override
+	public LowerLayerEndpointManager getLowerLayerEndpointManager() {
+		return endpointManager;
+	}
+
+	@Override
+	public LowerLayerEndpointConfig getLowerLayerEndpointConfig() {
+		return endpointConfig;
+	}
+}
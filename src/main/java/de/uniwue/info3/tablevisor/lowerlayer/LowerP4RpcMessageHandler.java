@@ -0,0 +1,283 @@
+package de.uniwue.info3.tablevisor.lowerlayer;
+
+import de.uniwue.info3.tablevisor.core.TableVisor;
+import de.uniwue.info3.tablevisor.message.P4Operation;
+import de.uniwue.info3.tablevisor.message.P4TableEntry;
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import de.uniwue.info3.tablevisor.p4rpc.P4RpcCodec;
+import de.uniwue.info3.tablevisor.p4rpc.P4RpcMessage;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.net.SocketAddress;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection to one P4RpcMockServer with the P4 RPC protocol.
+ * Table updates are collected on the event loop of the connection and sent as one write request
+ * (up to p4RpcBatchSize updates); reads are sent after the updates submitted before them.
+ * The server handles the requests of a connection in order, so a barrier is answered as soon as the responses
+ * to all requests sent before it have arrived, without holding back later requests.
+ */
+@ChannelHandler.Sharable
+public class LowerP4RpcMessageHandler extends SimpleChannelInboundHandler<P4RpcMessage> implements ILowerLayerMessageHandler {
+	private static final Logger logger = LogManager.getLogger();
+	private static final long RECONNECT_INTERVAL = 1000;
+
+	private final LowerP4RpcEndpoint endpoint;
+	private final int dataplaneId;
+	private final SocketAddress address;
+	private final int batchSize;
+	private volatile Channel channel;
+
+	// all following fields are only accessed on the event loop of the channel
+	private int nextRequestId = 1;
+	private List<TVMessage> writeBatch = new ArrayList<>();
+	private boolean flushScheduled;
+	private final Map<Integer, List<TVMessage>> pendingWrites = new HashMap<>();
+	private final Map<Integer, PendingRead> pendingReads = new HashMap<>();
+	private final Deque<PendingBarrier> pendingBarriers = new ArrayDeque<>();
+
+	private static class PendingRead {
+		private final TVMessage request;
+		private final List<P4TableEntry> entries = new ArrayList<>();
+
+		private PendingRead(TVMessage request) {
+			this.request = request;
+		}
+	}
+
+	private static class PendingBarrier {
+		private final TVMessage request;
+		// the last request sent before the barrier
+		private final int lastRequestId;
+
+		private PendingBarrier(TVMessage request, int lastRequestId) {
+			this.request = request;
+			this.lastRequestId = lastRequestId;
+		}
+	}
+
+	public LowerP4RpcMessageHandler(LowerP4RpcEndpoint endpoint, int dataplaneId, SocketAddress address) {
+		this.endpoint = endpoint;
+		this.dataplaneId = dataplaneId;
+		this.address = address;
+		this.batchSize = Math.max(1, endpoint.getLowerLayerEndpointConfig().p4RpcBatchSize);
+	}
+
+	void connect() {
+		new Bootstrap()
+				.group(endpoint.getEventLoopGroup())
+				.channel(address instanceof LocalAddress ? LocalChannel.class : NioSocketChannel.class)
+				.handler(new ChannelInitializer<Channel>() {
+					@Override
+					protected void initChannel(Channel ch) {
+						P4RpcCodec.initPipeline(ch.pipeline());
+						ch.pipeline().addLast(LowerP4RpcMessageHandler.this);
+					}
+				})
+				.connect(address)
+				.addListener((ChannelFutureListener) f -> {
+					if (!f.isSuccess()) {
+						logger.warn("Switch ID '{}' - Connection to P4 RPC server {} failed: {}", dataplaneId, address, f.cause().getMessage());
+						scheduleReconnect(f.channel().eventLoop());
+					}
+				});
+	}
+
+	private void scheduleReconnect(EventLoop loop) {
+		if (!TableVisor.getInstance().isShutdown()) {
+			loop.schedule(this::connect, RECONNECT_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) {
+		channel = ctx.channel();
+		logger.info("Switch ID '{}' of type '{}' connected to {}", dataplaneId, endpoint.getLowerLayerEndpointConfig().type, address);
+
+		synchronized (TableVisor.getInstance()) {
+			TableVisor.getInstance().notify();
+		}
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) {
+		int lost = writeBatch.size() + pendingReads.size() + pendingBarriers.size();
+		for (List<TVMessage> w : pendingWrites.values()) {
+			lost += w.size();
+		}
+		logger.warn("Switch ID '{}' - Connection to P4 RPC server {} closed, {} request(s) discarded", dataplaneId, address, lost);
+		for (List<TVMessage> w : pendingWrites.values()) {
+			failed(w, "connection closed");
+		}
+		failed(writeBatch, "connection closed");
+		writeBatch.clear();
+		pendingWrites.clear();
+		pendingReads.clear();
+		pendingBarriers.clear();
+		channel = null;
+		scheduleReconnect(ctx.channel().eventLoop());
+	}
+
+	@Override
+	public int getDataplanId() {
+		return dataplaneId;
+	}
+
+	@Override
+	public void send(TVMessage tvMessage) {
+		if (!tvMessage.isP4() || tvMessage.getP4Operation() == null) {
+			logger.error("Cannot send to switch, message is not a P4 table operation but '{}'", tvMessage.getTypeAsString());
+			return;
+		}
+		Channel ch = channel;
+		if (ch == null) {
+			logger.error("Switch ID '{}' - Cannot send, not connected to {}", dataplaneId, address);
+			failed(Collections.singletonList(tvMessage), "not connected");
+			return;
+		}
+		ch.eventLoop().execute(() -> enqueue(ch, tvMessage));
+	}
+
+	private void enqueue(Channel ch, TVMessage tvMessage) {
+		if (ch != channel) {
+			logger.error("Switch ID '{}' - Connection closed, {} discarded", dataplaneId, tvMessage.getTypeAsString());
+			failed(Collections.singletonList(tvMessage), "connection closed");
+			return;
+		}
+		if (tvMessage.getP4Operation() == P4Operation.BARRIER) {
+			flushWrites();
+			pendingBarriers.add(new PendingBarrier(tvMessage, nextRequestId - 1));
+			releaseBarriers();
+			return;
+		}
+		if (tvMessage.getP4Operation() == P4Operation.LIST) {
+			flushWrites();
+			int requestId = nextRequestId++;
+			pendingReads.put(requestId, new PendingRead(tvMessage));
+			ch.writeAndFlush(P4RpcMessage.readRequest(requestId, tvMessage.getP4Entry().getTable()), ch.voidPromise());
+			return;
+		}
+
+		writeBatch.add(tvMessage);
+		if (writeBatch.size() >= batchSize) {
+			flushWrites();
+		}
+		else if (!flushScheduled) {
+			// runs after all tasks that are already queued, so that their updates are part of the batch
+			flushScheduled = true;
+			ch.eventLoop().execute(this::flushWrites);
+		}
+	}
+
+	private void flushWrites() {
+		flushScheduled = false;
+		Channel ch = channel;
+		if (writeBatch.isEmpty() || ch == null) {
+			return;
+		}
+		List<P4Operation> operations = new ArrayList<>(writeBatch.size());
+		List<P4TableEntry> entries = new ArrayList<>(writeBatch.size());
+		for (TVMessage m : writeBatch) {
+			operations.add(m.getP4Operation());
+			entries.add(m.getP4Entry());
+		}
+		int requestId = nextRequestId++;
+		pendingWrites.put(requestId, writeBatch);
+		writeBatch = new ArrayList<>();
+		ch.writeAndFlush(P4RpcMessage.writeRequest(requestId, operations, entries), ch.voidPromise());
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, P4RpcMessage msg) {
+		switch (msg.getType()) {
+			case WRITE_RESPONSE:
+				List<TVMessage> requests = pendingWrites.remove(msg.getRequestId());
+				if (requests == null) {
+					logger.warn("Switch ID '{}' - Unexpected write response {}", dataplaneId, msg.getRequestId());
+					return;
+				}
+				for (int i = 0; i < requests.size(); i++) {
+					TVMessage request = requests.get(i);
+					P4RpcMessage.Status status = (i < msg.getStatuses().size() ? msg.getStatuses().get(i) : null);
+					if (status != P4RpcMessage.Status.OK) {
+						logger.warn("Switch ID '{}' - {} of {} failed: {}", dataplaneId, request.getP4Operation(), request.getP4Entry(), status);
+						failed(Collections.singletonList(request), String.valueOf(status));
+						continue;
+					}
+					logger.trace("Switch ID '{}' - {} of {}", dataplaneId, request.getP4Operation(), request.getP4Entry());
+					reply(new TVMessage(status.name(), request.getOriginalRequest(), dataplaneId));
+				}
+				releaseBarriers();
+				break;
+
+			case READ_RESPONSE:
+				PendingRead read = pendingReads.get(msg.getRequestId());
+				if (read == null) {
+					logger.warn("Switch ID '{}' - Unexpected read response {}", dataplaneId, msg.getRequestId());
+					return;
+				}
+				read.entries.addAll(msg.getEntries());
+				if (!msg.isMore()) {
+					pendingReads.remove(msg.getRequestId());
+					logger.debug("Switch ID '{}' - {} entries read from {}", dataplaneId, read.entries.size(), read.request.getP4Entry().getTable());
+					reply(new TVMessage(read.entries, read.request.getOriginalRequest(), dataplaneId));
+					releaseBarriers();
+				}
+				break;
+
+			default:
+				logger.warn("Switch ID '{}' - Unexpected P4 RPC message {}", dataplaneId, msg.getType());
+				break;
+		}
+	}
+
+	/**
+	 * Answers the barriers whose previous requests have all been answered.
+	 */
+	private void releaseBarriers() {
+		int firstPending = Integer.MAX_VALUE;
+		for (int id : pendingWrites.keySet()) firstPending = Math.min(firstPending, id);
+		for (int id : pendingReads.keySet()) firstPending = Math.min(firstPending, id);
+
+		while (!pendingBarriers.isEmpty() && pendingBarriers.peek().lastRequestId < firstPending) {
+			PendingBarrier barrier = pendingBarriers.poll();
+			logger.trace("Switch ID '{}' - Barrier reached", dataplaneId);
+			reply(new TVMessage("", barrier.request.getOriginalRequest(), dataplaneId));
+		}
+	}
+
+	private void reply(TVMessage replyMsg) {
+		TableVisor.getInstance().getTvToDataLayer().allToControlPlane(replyMsg);
+	}
+
+	/**
+	 * Reports that the given writes were not executed, for those whose original request waits for replies.
+	 */
+	private void failed(List<TVMessage> requests, String reason) {
+		for (TVMessage request : requests) {
+			TVMessage replyMsg = request.failedReply(reason);
+			if (replyMsg != null) {
+				reply(replyMsg);
+			}
+		}
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+		logger.error("Switch ID '{}' - Exception caught by socket", dataplaneId, cause);
+		ctx.close();
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return channel != null;
+	}
+}
@@ -0,0 +1,181 @@
+package de.uniwue.info3.tablevisor.lowerlayer;
+
+import de.uniwue.info3.tablevisor.core.TableVisor;
+import de.uniwue.info3.tablevisor.message.P4Operation;
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import de.uniwue.info3.tablevisor.upperlayer.UpperLayerEndpointManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the messages for one P4 switch over to the dispatch pool of its endpoint, so that RTECLI calls
+ * do not block the thread of the sender. The messages of a switch are executed one after another in their order.
+ * <p>
+ * A {@link P4Operation#BARRIER} is answered once all messages executed before it have completed, which may be later
+ * than their execution with RTECLI sessions. Messages after the barrier are executed only then.
+ * <p>
+ * With a {@code readConcurrency} greater than 1, consecutive {@link P4Operation#LIST} messages are executed in parallel
+ * on the pool (up to that many per switch); the next other message is executed once they have completed.
+ * <p>
+ * If {@code capacity} messages are outstanding (queued, executing or waiting for their reply), reading from the
+ * controller is paused until half of them are done.
+ */
+public class P4Dispatcher implements Runnable {
+	private static final Logger logger = LogManager.getLogger();
+
+	private final LowerP4MessageHandler handler;
+	private final Executor executor;
+	private final int capacity;
+	private final int readConcurrency;
+
+	private final Queue<TVMessage> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final AtomicInteger outstanding = new AtomicInteger();
+	// executed, but not yet completed
+	private final AtomicInteger inFlight = new AtomicInteger();
+	// LIST messages executed in parallel that have not returned yet
+	private final AtomicInteger readsInFlight = new AtomicInteger();
+	// the endpoint manager whose reading has been paused by this dispatcher
+	private UpperLayerEndpointManager paused;
+
+	/**
+	 * @param readConcurrency maximum number of LIST messages executed in parallel; 1 to execute them in order
+	 */
+	public P4Dispatcher(LowerP4MessageHandler handler, Executor executor, int capacity, int readConcurrency) {
+		this.handler = handler;
+		this.executor = executor;
+		this.capacity = Math.max(1, capacity);
+		this.readConcurrency = Math.max(1, readConcurrency);
+	}
+
+	public void submit(TVMessage msg) {
+		if (outstanding.incrementAndGet() >= capacity) {
+			updateBackpressure();
+		}
+		queue.add(msg);
+		schedule();
+	}
+
+	/**
+	 * Called once for every submitted message after it has been executed or discarded.
+	 */
+	public void completed() {
+		if (inFlight.decrementAndGet() == 0 && isRunnable()) {
+			// a barrier waits for this message
+			schedule();
+		}
+		release();
+	}
+
+	private void release() {
+		if (outstanding.decrementAndGet() <= capacity / 2) {
+			updateBackpressure();
+		}
+	}
+
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			executor.execute(this);
+		}
+	}
+
+	/**
+	 * @return whether there is a message that can be executed now
+	 */
+	private boolean isRunnable() {
+		TVMessage head = queue.peek();
+		return head != null && canExecute(head);
+	}
+
+	private boolean canExecute(TVMessage msg) {
+		if (msg.getP4Operation() == P4Operation.BARRIER) {
+			return inFlight.get() == 0;
+		}
+		if (isParallelRead(msg)) {
+			return readsInFlight.get() < readConcurrency;
+		}
+		return readsInFlight.get() == 0;
+	}
+
+	private boolean isParallelRead(TVMessage msg) {
+		return readConcurrency > 1 && msg.getP4Operation() == P4Operation.LIST;
+	}
+
+	@Override
+	public void run() {
+		TVMessage msg;
+		while ((msg = queue.peek()) != null) {
+			if (!canExecute(msg)) {
+				// continued by completed() or by the end of a read
+				break;
+			}
+			if (msg.getP4Operation() == P4Operation.BARRIER) {
+				queue.poll();
+				try {
+					handler.barrierReached(msg);
+				}
+				catch (RuntimeException e) {
+					logger.error("Switch ID '{}' - Could not reply to barrier", handler.getDataplanId(), e);
+				}
+				release();
+				continue;
+			}
+			queue.poll();
+			inFlight.incrementAndGet();
+			if (isParallelRead(msg)) {
+				readsInFlight.incrementAndGet();
+				TVMessage read = msg;
+				executor.execute(() -> {
+					execute(read);
+					readsInFlight.decrementAndGet();
+					if (isRunnable()) {
+						schedule();
+					}
+				});
+				continue;
+			}
+			execute(msg);
+		}
+		scheduled.set(false);
+		// a message may have been added or completed after the last check, but before the flag was reset
+		if (isRunnable()) {
+			schedule();
+		}
+	}
+
+	private void execute(TVMessage msg) {
+		try {
+			handler.execute(msg);
+		}
+		catch (RuntimeException e) {
+			logger.error("Switch ID '{}' - Could not execute {}", handler.getDataplanId(), msg.getTypeAsString(), e);
+			completed();
+		}
+	}
+
+	private synchronized void updateBackpressure() {
+		int n = outstanding.get();
+		if (paused == null && n >= capacity) {
+			paused = TableVisor.getInstance().getUpperEndpointManager();
+			if (paused != null) {
+				logger.debug("Switch ID '{}' - {} messages outstanding, pausing the controller connection", handler.getDataplanId(), n);
+				paused.pauseReading();
+			}
+		}
+		else if (paused != null && n <= capacity / 2) {
+			logger.debug("Switch ID '{}' - {} messages outstanding, resuming the controller connection", handler.getDataplanId(), n);
+			paused.resumeReading();
+			paused = null;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package de.uniwue.info3.tablevisor.lowerlayer;
+
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A long-lived RTECLI process (tools/rtecli-session.py) and the thread feeding it.
+ * Consecutive commands for the same table are sent as one batch; the replies are passed
+ * to the message handler in the order of the commands.
+ */
+public class RtecliSession implements Runnable {
+	private static final Logger logger = LogManager.getLogger();
+
+	private final LowerP4MessageHandler handler;
+	private final List<String> processCommand;
+	private final int batchSize;
+	private final BlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+
+	private Process process;
+	private Writer toProcess;
+	private DataInputStream fromProcess;
+
+	private static class Command {
+		private final TVMessage request;
+		private final List<String> arguments;
+		private final String table;
+
+		private Command(TVMessage request, List<String> arguments, String table) {
+			this.request = request;
+			this.arguments = arguments;
+			this.table = table;
+		}
+	}
+
+	/**
+	 * @param processCommand interpreter, session script and rtecli path
+	 */
+	public RtecliSession(LowerP4MessageHandler handler, List<String> processCommand, int batchSize, String name) {
+		this.handler = handler;
+		this.processCommand = processCommand;
+		this.batchSize = Math.max(1, batchSize);
+
+		Thread thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void submit(TVMessage request, List<String> arguments, String table) {
+		queue.add(new Command(request, arguments, table));
+	}
+
+	@Override
+	public void run() {
+		List<Command> batch = new ArrayList<>(batchSize);
+		while (true) {
+			try {
+				Command first = queue.take();
+				batch.add(first);
+				Command next;
+				while (batch.size() < batchSize && (next = queue.peek()) != null && next.table.equals(first.table)) {
+					batch.add(queue.poll());
+				}
+				execute(batch);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void execute(List<Command> batch) {
+		String[] replies = new String[batch.size()];
+		int[] status = new int[batch.size()];
+		try {
+			if (process == null || !process.isAlive()) {
+				start();
+			}
+			for (Command c : batch) {
+				StringBuilder line = new StringBuilder();
+				for (String a : c.arguments) {
+					if (line.length() > 0) line.append('\t');
+					// tabs and line breaks separate the arguments and commands
+					line.append(a.replace('\t', ' ').replace('\n', ' '));
+				}
+				toProcess.write(line.append('\n').toString());
+			}
+			toProcess.write('\n');
+			toProcess.flush();
+
+			for (int i = 0; i < batch.size(); i++) {
+				String[] header = readLine().split(" ");
+				status[i] = Integer.parseInt(header[0]);
+				byte[] output = new byte[Integer.parseInt(header[1])];
+				fromProcess.readFully(output);
+				replies[i] = new String(output, StandardCharsets.UTF_8).trim();
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			logger.warn("Error in RTECLI session, {} command(s) discarded: {}", batch.size(), e.getMessage(), e);
+			stop();
+			for (Command c : batch) {
+				handler.failed(c.request, "RTECLI session failed");
+				handler.completed();
+			}
+			return;
+		}
+
+		for (int i = 0; i < batch.size(); i++) {
+			Command c = batch.get(i);
+			if (status[i] != 0) {
+				logger.warn("Error during RTECLI execution: exit status {}", status[i]);
+				logger.debug(() -> String.join(" ", c.arguments));
+				if (!replies[i].isEmpty()) logger.debug(replies[i]);
+				handler.failed(c.request, "RTECLI exit status " + status[i]);
+			}
+			else {
+				logger.trace(() -> String.join(" ", c.arguments));
+				try {
+					handler.reply(c.request, replies[i]);
+				}
+				catch (RuntimeException e) {
+					logger.error("Could not handle RTECLI reply", e);
+				}
+			}
+			handler.completed();
+		}
+	}
+
+	private void start() throws IOException {
+		stop();
+		logger.debug("Starting RTECLI session {}", processCommand);
+		process = new ProcessBuilder(processCommand).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		toProcess = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+		fromProcess = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+	}
+
+	private void stop() {
+		if (process != null) {
+			process.destroy();
+			process = null;
+		}
+	}
+
+	private String readLine() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int b;
+		while ((b = fromProcess.read()) != '\n') {
+			if (b < 0) {
+				throw new EOFException("RTECLI session terminated");
+			}
+			sb.append((char) b);
+		}
+		return sb.toString();
+	}
+}
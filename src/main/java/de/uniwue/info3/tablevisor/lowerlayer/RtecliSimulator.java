@@ -0,0 +1,211 @@
+package de.uniwue.info3.tablevisor.lowerlayer;
+
+import de.uniwue.info3.tablevisor.message.P4TableEntry;
+import de.uniwue.info3.tablevisor.message.RtecliCodec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Executes the tables commands of RTECLI on tables in memory instead of a SmartNIC, and prints list-rules
+ * in the TableEntry format of RTECLI. Each command can be delayed by a fixed latency plus a random jitter,
+ * and fail with a given probability.
+ * <p>
+ * It is used in-process by endpoints with {@code rtecliSimulator: true}, one instance per switch, or stand-alone
+ * as {@code rtecliPath} via tools/rtecli-sim; the tables of the stand-alone simulator are kept in files,
+ * one directory per {@code --rte-host} and {@code --rte-port}.
+ */
+public class RtecliSimulator {
+	private final long latencyMicros;
+	private final long jitterMicros;
+	private final double failureRate;
+	// null if the tables are only kept in memory
+	private final Path stateDir;
+
+	// table name -> rule name -> entry
+	private final Map<String, LinkedHashMap<String, P4TableEntry>> tables = new HashMap<>();
+
+	/**
+	 * Usage: rtecli-sim [--rte-host h] [--rte-port p] tables --table-name t (add|edit|delete|list-rules) ...
+	 * <p>
+	 * Environment: RTECLI_SIM_DIR (directory of the tables), RTECLI_SIM_LATENCY, RTECLI_SIM_JITTER (in microseconds),
+	 * RTECLI_SIM_FAILURE_RATE (0 to 1).
+	 */
+	public static void main(String[] args) {
+		Map<String, String> env = System.getenv();
+		Path dir = Paths.get(env.getOrDefault("RTECLI_SIM_DIR", Paths.get(System.getProperty("java.io.tmpdir"), "rtecli-sim").toString()));
+		String host = "localhost";
+		String port = "20206";
+		for (int i = 0; i + 1 < args.length; i++) {
+			if (args[i].equals("--rte-host")) host = args[i + 1];
+			if (args[i].equals("--rte-port")) port = args[i + 1];
+		}
+		RtecliSimulator sim = new RtecliSimulator(
+				Long.parseLong(env.getOrDefault("RTECLI_SIM_LATENCY", "0")),
+				Long.parseLong(env.getOrDefault("RTECLI_SIM_JITTER", "0")),
+				Double.parseDouble(env.getOrDefault("RTECLI_SIM_FAILURE_RATE", "0")),
+				dir.resolve(host + "_" + port));
+		try {
+			String out = sim.execute(Arrays.asList(args));
+			if (!out.isEmpty()) {
+				System.out.println(out);
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	public RtecliSimulator(long latencyMicros, long jitterMicros, double failureRate) {
+		this(latencyMicros, jitterMicros, failureRate, null);
+	}
+
+	private RtecliSimulator(long latencyMicros, long jitterMicros, double failureRate, Path stateDir) {
+		this.latencyMicros = Math.max(0, latencyMicros);
+		this.jitterMicros = Math.max(0, jitterMicros);
+		this.failureRate = failureRate;
+		this.stateDir = stateDir;
+	}
+
+	/**
+	 * Executes one RTECLI call.
+	 *
+	 * @param arguments the arguments of rtecli, e.g. [--rte-host, h, tables, --table-name, t, list-rules]
+	 * @return the output of the call
+	 * @throws IOException for an injected failure or a command that RTECLI would reject, e.g. adding an existing rule
+	 */
+	public String execute(List<String> arguments) throws IOException {
+		Map<String, String> options = new HashMap<>();
+		List<String> positional = new ArrayList<>();
+		for (int i = 0; i < arguments.size(); i++) {
+			String a = arguments.get(i);
+			if (a.equals("--default")) {
+				options.put(a, "");
+			}
+			else if (a.startsWith("--")) {
+				if (i + 1 >= arguments.size()) {
+					throw new IOException("Missing value of " + a);
+				}
+				options.put(a, arguments.get(++i));
+			}
+			else {
+				positional.add(a);
+			}
+		}
+		if (positional.size() != 2 || !positional.get(0).equals("tables")) {
+			throw new IOException("Unsupported command " + positional);
+		}
+		String table = options.get("--table-name");
+		if (table == null) {
+			throw new IOException("No --table-name");
+		}
+
+		delay();
+		if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+			throw new IOException("Injected failure of " + positional.get(1) + " on " + table);
+		}
+
+		String command = positional.get(1);
+		if (command.equals("list-rules")) {
+			synchronized (this) {
+				return RtecliCodec.appendTableEntries(new StringBuilder(), load(table).values()).toString();
+			}
+		}
+
+		P4TableEntry entry = new P4TableEntry(table);
+		try {
+			entry.setRuleName(options.get("--rule"))
+					.setPriority(Integer.parseInt(options.getOrDefault("--priority", "0")))
+					.setDefaultRule(options.containsKey("--default"));
+			RtecliCodec.parseMatchArgument(options.getOrDefault("--match", "{ }"), entry);
+			RtecliCodec.parseActionArgument(options.getOrDefault("--action", "{ }"), entry);
+		}
+		catch (IllegalArgumentException e) {
+			throw new IOException("Invalid arguments: " + e.getMessage(), e);
+		}
+		if (entry.getRuleName() == null) {
+			throw new IOException("No --rule");
+		}
+
+		synchronized (this) {
+			LinkedHashMap<String, P4TableEntry> rules = load(table);
+			boolean exists = rules.containsKey(entry.getRuleName());
+			switch (command) {
+				case "add":
+					if (exists) throw new IOException("Rule " + entry.getRuleName() + " already exists in " + table);
+					rules.put(entry.getRuleName(), entry);
+					break;
+				case "edit":
+					if (!exists) throw new IOException("Rule " + entry.getRuleName() + " does not exist in " + table);
+					rules.put(entry.getRuleName(), entry);
+					break;
+				case "delete":
+					if (!exists) throw new IOException("Rule " + entry.getRuleName() + " does not exist in " + table);
+					rules.remove(entry.getRuleName());
+					break;
+				default:
+					throw new IOException("Unsupported command " + command);
+			}
+			store(table, rules);
+		}
+		return "";
+	}
+
+	public synchronized int getEntryCount() {
+		int n = 0;
+		for (Map<String, P4TableEntry> t : tables.values()) {
+			n += t.size();
+		}
+		return n;
+	}
+
+	private void delay() {
+		long micros = latencyMicros + (jitterMicros > 0 ? ThreadLocalRandom.current().nextLong(jitterMicros + 1) : 0);
+		if (micros > 0) {
+			try {
+				Thread.sleep(micros / 1000, (int) (micros % 1000) * 1000);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private LinkedHashMap<String, P4TableEntry> load(String table) throws IOException {
+		LinkedHashMap<String, P4TableEntry> rules = tables.get(table);
+		if (rules != null) {
+			return rules;
+		}
+		rules = new LinkedHashMap<>();
+		tables.put(table, rules);
+		if (stateDir != null && Files.exists(stateFile(table))) {
+			String content = new String(Files.readAllBytes(stateFile(table)), StandardCharsets.UTF_8);
+			for (P4TableEntry e : RtecliCodec.parseTableEntries(content, table)) {
+				rules.put(e.getRuleName(), e);
+			}
+		}
+		return rules;
+	}
+
+	private void store(String table, LinkedHashMap<String, P4TableEntry> rules) throws IOException {
+		if (stateDir == null) {
+			return;
+		}
+		Path file = stateFile(table);
+		Files.createDirectories(file.getParent());
+		Path tmp = Files.createTempFile(file.getParent(), table, ".tmp");
+		Files.write(tmp, RtecliCodec.appendTableEntries(new StringBuilder(), rules.values()).toString().getBytes(StandardCharsets.UTF_8));
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private Path stateFile(String table) {
+		return stateDir.resolve(table);
+	}
+}
@@ -0,0 +1,19 @@
+package de.uniwue.info3.tablevisor.message;
+
+/**
+ * Table operations of P4 requests, with the corresponding RTECLI command.
+ * {@link #BARRIER} is answered by the lower layer once all operations sent to the switch before it have completed.
+ */
+public enum P4Operation {
+	ADD("add"),
+	EDIT("edit"),
+	DELETE("delete"),
+	LIST("list-rules"),
+	BARRIER(null);
+
+	public final String rtecliCommand;
+
+	P4Operation(String rtecliCommand) {
+		this.rtecliCommand = rtecliCommand;
+	}
+}
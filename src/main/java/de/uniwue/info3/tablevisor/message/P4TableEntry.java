@@ -0,0 +1,96 @@
+package de.uniwue.info3.tablevisor.message;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A rule of a P4 table with the names and values of the P4 program (see P4Dict for the translation to OpenFlow).
+ * Requests only need the table name for {@link P4Operation#LIST}.
+ */
+public class P4TableEntry {
+	private final String table;
+	private String ruleName;
+	private int priority;
+	private boolean defaultRule;
+	private final Map<String, String> match = new LinkedHashMap<>();
+	private String actionType;
+	private final Map<String, String> actionData = new LinkedHashMap<>();
+
+	public P4TableEntry(String table) {
+		this.table = table;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public String getRuleName() {
+		return ruleName;
+	}
+
+	public P4TableEntry setRuleName(String ruleName) {
+		this.ruleName = ruleName;
+		return this;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	public P4TableEntry setPriority(int priority) {
+		this.priority = priority;
+		return this;
+	}
+
+	public boolean isDefaultRule() {
+		return defaultRule;
+	}
+
+	public P4TableEntry setDefaultRule(boolean defaultRule) {
+		this.defaultRule = defaultRule;
+		return this;
+	}
+
+	/**
+	 * @return P4 field name -> value, in the order of insertion
+	 */
+	public Map<String, String> getMatch() {
+		return match;
+	}
+
+	public String getActionType() {
+		return actionType;
+	}
+
+	public P4TableEntry setActionType(String actionType) {
+		this.actionType = actionType;
+		return this;
+	}
+
+	/**
+	 * @return P4 action parameter name -> value, in the order of insertion
+	 */
+	public Map<String, String> getActionData() {
+		return actionData;
+	}
+
+	/**
+	 * @return the match as RTECLI expects it, e.g. { "eth_type": { "value": "0x0800" } }
+	 */
+	public String toMatchString() {
+		return RtecliCodec.encodeMatch(this);
+	}
+
+	/**
+	 * @return the action as RTECLI expects it, e.g. { "type": "fwd", "data": { "port": { "value": "p1" } } }
+	 */
+	public String toActionString() {
+		return RtecliCodec.encodeAction(this);
+	}
+
+	@Override
+	public String toString() {
+		return "P4TableEntry(table=" + table + ", rule=" + ruleName + ", priority=" + priority + (defaultRule ? ", default" : "")
+				+ ", match=" + match + ", action=" + actionType + actionData + ")";
+	}
+}
@@ -0,0 +1,516 @@
+package de.uniwue.info3.tablevisor.message;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Text format of RTECLI: the arguments of the tables commands for a {@link P4TableEntry} and the
+ * TableEntry output of list-rules, e.g.
+ * <pre>
+ * [TableEntry(priority=15, rule_name='r1', default_rule=False, actions='{  "type" : "fwd",  "data" : { "port" : { "value" : "p1" } } }', match='{ "eth.etype" : {  "value" : "0x800" } }')]
+ * </pre>
+ * The output is read in a single pass without regular expressions; the quoted actions and match are parsed in place
+ * unless they contain escape sequences.
+ */
+public class RtecliCodec {
+	private static final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+	private RtecliCodec() {
+	}
+
+	/**
+	 * @return the arguments of the tables command for the operation, e.g. [tables, --table-name t, add, --rule r1, ...]
+	 */
+	public static LinkedList<String> toCmdLine(P4Operation operation, P4TableEntry entry) {
+		LinkedList<String> cliParams = new LinkedList<>();
+		cliParams.add("tables");
+		StringBuilder sb = buffer();
+		cliParams.add(sb.append("--table-name ").append(entry.getTable()).toString());
+		cliParams.add(operation.rtecliCommand);
+		if (operation != P4Operation.LIST) {
+			sb.setLength(0);
+			cliParams.add(sb.append("--rule ").append(entry.getRuleName()).toString());
+			sb.setLength(0);
+			cliParams.add(appendMatch(sb.append("--match "), entry).toString());
+			sb.setLength(0);
+			cliParams.add(appendAction(sb.append("--action "), entry).toString());
+			sb.setLength(0);
+			cliParams.add(sb.append("--priority ").append(entry.getPriority()).toString());
+			if (entry.isDefaultRule()) {
+				cliParams.add("--default");
+			}
+		}
+		return cliParams;
+	}
+
+	public static String encodeMatch(P4TableEntry entry) {
+		return appendMatch(buffer(), entry).toString();
+	}
+
+	public static String encodeAction(P4TableEntry entry) {
+		return appendAction(buffer(), entry).toString();
+	}
+
+	/**
+	 * Appends the match, e.g. { "eth_type": { "value": "0x0800" } }
+	 */
+	public static StringBuilder appendMatch(StringBuilder sb, P4TableEntry entry) {
+		sb.append("{ ");
+		appendValues(sb, entry.getMatch());
+		return sb.append(" }");
+	}
+
+	/**
+	 * Appends the action, e.g. { "type": "fwd", "data": { "port": { "value": "p1" } } }
+	 */
+	public static StringBuilder appendAction(StringBuilder sb, P4TableEntry entry) {
+		sb.append("{ \"type\": \"").append(entry.getActionType()).append("\", \"data\": { ");
+		appendValues(sb, entry.getActionData());
+		return sb.append(" } }");
+	}
+
+	private static void appendValues(StringBuilder sb, Map<String, String> values) {
+		boolean first = true;
+		for (Map.Entry<String, String> e : values.entrySet()) {
+			if (!first) sb.append(", ");
+			first = false;
+			sb.append('"').append(e.getKey()).append("\": { \"value\": \"").append(e.getValue()).append("\" }");
+		}
+	}
+
+	/**
+	 * Appends the entries as list-rules prints them, see the example above.
+	 */
+	public static StringBuilder appendTableEntries(StringBuilder sb, Iterable<P4TableEntry> entries) {
+		sb.append('[');
+		boolean first = true;
+		for (P4TableEntry e : entries) {
+			if (!first) sb.append(", ");
+			first = false;
+			sb.append("TableEntry(priority=").append(e.getPriority())
+					.append(", rule_name='").append(e.getRuleName())
+					.append("', default_rule=").append(e.isDefaultRule() ? "True" : "False")
+					.append(", actions='{  \"type\" : \"").append(e.getActionType()).append("\",  \"data\" : ");
+			appendOutputValues(sb, e.getActionData(), "\" : { \"value\" : \"");
+			sb.append(" }', match='");
+			appendOutputValues(sb, e.getMatch(), "\" : {  \"value\" : \"");
+			sb.append("')");
+		}
+		return sb.append(']');
+	}
+
+	// the values of the actions and of the match differ in their spacing
+	private static void appendOutputValues(StringBuilder sb, Map<String, String> values, String separator) {
+		sb.append("{ ");
+		boolean first = true;
+		for (Map.Entry<String, String> e : values.entrySet()) {
+			if (!first) sb.append(", ");
+			first = false;
+			sb.append('"').append(e.getKey()).append(separator).append(e.getValue()).append("\" }");
+		}
+		sb.append(" }");
+	}
+
+	private static StringBuilder buffer() {
+		StringBuilder sb = buffer.get();
+		sb.setLength(0);
+		return sb;
+	}
+
+	/**
+	 * Parses the output of list-rules. Unknown attributes of a TableEntry are skipped.
+	 *
+	 * @param table name of the table, set on each entry
+	 * @throws IllegalArgumentException if the output is malformed
+	 */
+	public static List<P4TableEntry> parseTableEntries(CharSequence reply, String table) {
+		Reader r = new Reader(reply, 0, reply.length());
+		List<P4TableEntry> entries = new ArrayList<>();
+		r.skipWhitespace();
+		r.expect('[');
+		r.skipWhitespace();
+		if (!r.accept(']')) {
+			do {
+				r.skipWhitespace();
+				entries.add(parseTableEntry(r, table));
+				r.skipWhitespace();
+			} while (r.accept(','));
+			r.expect(']');
+		}
+		r.expectEnd();
+		return entries;
+	}
+
+	/**
+	 * Parses the match argument of a tables command into the match of the entry.
+	 *
+	 * @throws IllegalArgumentException if the argument is malformed
+	 */
+	public static void parseMatchArgument(CharSequence match, P4TableEntry entry) {
+		Reader r = new Reader(match, 0, match.length());
+		parseValues(r, entry.getMatch());
+		r.expectEnd();
+	}
+
+	/**
+	 * Parses the action argument of a tables command into the action type and data of the entry.
+	 *
+	 * @throws IllegalArgumentException if the argument is malformed
+	 */
+	public static void parseActionArgument(CharSequence action, P4TableEntry entry) {
+		Reader r = new Reader(action, 0, action.length());
+		parseAction(r, entry);
+		r.expectEnd();
+	}
+
+	private static P4TableEntry parseTableEntry(Reader r, String table) {
+		P4TableEntry entry = new P4TableEntry(table);
+		if (!r.identifier().equals("TableEntry")) {
+			throw r.error("TableEntry expected");
+		}
+		r.expect('(');
+		r.skipWhitespace();
+		if (r.accept(')')) {
+			return entry;
+		}
+		do {
+			r.skipWhitespace();
+			String name = r.identifier();
+			r.skipWhitespace();
+			r.expect('=');
+			r.skipWhitespace();
+			switch (name) {
+				case "priority":
+					entry.setPriority(r.integer());
+					break;
+				case "rule_name":
+					entry.setRuleName(r.pyString().text());
+					break;
+				case "default_rule":
+					String b = r.identifier();
+					if (!b.equals("True") && !b.equals("False")) {
+						throw r.error("True or False expected");
+					}
+					entry.setDefaultRule(b.equals("True"));
+					break;
+				case "actions":
+					Reader actions = r.pyString();
+					parseAction(actions, entry);
+					actions.expectEnd();
+					break;
+				case "match":
+					Reader match = r.pyString();
+					parseValues(match, entry.getMatch());
+					match.expectEnd();
+					break;
+				default:
+					r.skipPyValue();
+					break;
+			}
+			r.skipWhitespace();
+		} while (r.accept(','));
+		r.expect(')');
+		return entry;
+	}
+
+	/**
+	 * { "type" : "...", "data" : { ... } }
+	 */
+	private static void parseAction(Reader r, P4TableEntry entry) {
+		r.skipWhitespace();
+		r.expect('{');
+		r.skipWhitespace();
+		if (r.accept('}')) {
+			return;
+		}
+		do {
+			r.skipWhitespace();
+			String key = r.jsonString();
+			r.skipWhitespace();
+			r.expect(':');
+			r.skipWhitespace();
+			if (key.equals("type")) {
+				entry.setActionType(r.jsonString());
+			}
+			else if (key.equals("data")) {
+				parseValues(r, entry.getActionData());
+			}
+			else {
+				r.skipJson();
+			}
+			r.skipWhitespace();
+		} while (r.accept(','));
+		r.expect('}');
+	}
+
+	/**
+	 * { "name" : { "value" : "..." }, ... }
+	 */
+	private static void parseValues(Reader r, Map<String, String> values) {
+		r.skipWhitespace();
+		r.expect('{');
+		r.skipWhitespace();
+		if (r.accept('}')) {
+			return;
+		}
+		do {
+			r.skipWhitespace();
+			String name = r.jsonString();
+			r.skipWhitespace();
+			r.expect(':');
+			r.skipWhitespace();
+			r.expect('{');
+			String value = null;
+			r.skipWhitespace();
+			if (!r.accept('}')) {
+				do {
+					r.skipWhitespace();
+					String key = r.jsonString();
+					r.skipWhitespace();
+					r.expect(':');
+					r.skipWhitespace();
+					if (key.equals("value")) {
+						value = r.jsonScalar();
+					}
+					else {
+						r.skipJson();
+					}
+					r.skipWhitespace();
+				} while (r.accept(','));
+				r.expect('}');
+			}
+			if (value == null) {
+				throw r.error("No value for " + name);
+			}
+			values.put(name, value);
+			r.skipWhitespace();
+		} while (r.accept(','));
+		r.expect('}');
+	}
+
+	/**
+	 * Position in a range of the output.
+	 */
+	private static class Reader {
+		private final CharSequence s;
+		private final int end;
+		private int pos;
+
+		private Reader(CharSequence s, int pos, int end) {
+			this.s = s;
+			this.pos = pos;
+			this.end = end;
+		}
+
+		private void skipWhitespace() {
+			while (pos < end && Character.isWhitespace(s.charAt(pos))) pos++;
+		}
+
+		private boolean accept(char c) {
+			if (pos < end && s.charAt(pos) == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) {
+			if (!accept(c)) {
+				throw error("'" + c + "' expected");
+			}
+		}
+
+		private void expectEnd() {
+			skipWhitespace();
+			if (pos < end) {
+				throw error("End expected");
+			}
+		}
+
+		private String identifier() {
+			int start = pos;
+			while (pos < end && (Character.isLetterOrDigit(s.charAt(pos)) || s.charAt(pos) == '_')) pos++;
+			if (pos == start) {
+				throw error("Name expected");
+			}
+			return s.subSequence(start, pos).toString();
+		}
+
+		private int integer() {
+			int start = pos;
+			if (pos < end && s.charAt(pos) == '-') pos++;
+			while (pos < end && s.charAt(pos) >= '0' && s.charAt(pos) <= '9') pos++;
+			try {
+				return Integer.parseInt(s.subSequence(start, pos).toString());
+			}
+			catch (NumberFormatException e) {
+				throw error("Integer expected");
+			}
+		}
+
+		/**
+		 * Reads a Python string literal ('...' or "...").
+		 *
+		 * @return a reader of its content
+		 */
+		private Reader pyString() {
+			char quote = pos < end ? s.charAt(pos) : 0;
+			if (quote != '\'' && quote != '"') {
+				throw error("String expected");
+			}
+			int start = ++pos;
+			boolean escaped = false;
+			while (pos < end && s.charAt(pos) != quote) {
+				if (s.charAt(pos) == '\\') {
+					escaped = true;
+					pos++;
+				}
+				pos++;
+			}
+			if (pos >= end) {
+				throw error("Unterminated string");
+			}
+			int stop = pos++;
+			if (!escaped) {
+				return new Reader(s, start, stop);
+			}
+			String content = unescape(start, stop);
+			return new Reader(content, 0, content.length());
+		}
+
+		/**
+		 * @return the rest of the range
+		 */
+		private String text() {
+			return s.subSequence(pos, end).toString();
+		}
+
+		private String jsonString() {
+			if (!accept('"')) {
+				throw error("String expected");
+			}
+			int start = pos;
+			boolean escaped = false;
+			while (pos < end && s.charAt(pos) != '"') {
+				if (s.charAt(pos) == '\\') {
+					escaped = true;
+					pos++;
+				}
+				pos++;
+			}
+			if (pos >= end) {
+				throw error("Unterminated string");
+			}
+			int stop = pos++;
+			return escaped ? unescape(start, stop) : s.subSequence(start, stop).toString();
+		}
+
+		/**
+		 * @return a string, or the text of a number or literal
+		 */
+		private String jsonScalar() {
+			if (pos < end && s.charAt(pos) == '"') {
+				return jsonString();
+			}
+			int start = pos;
+			while (pos < end && ",}] \t\r\n".indexOf(s.charAt(pos)) < 0) pos++;
+			if (pos == start) {
+				throw error("Value expected");
+			}
+			return s.subSequence(start, pos).toString();
+		}
+
+		private void skipJson() {
+			char c = pos < end ? s.charAt(pos) : 0;
+			if (c != '{' && c != '[') {
+				jsonScalar();
+				return;
+			}
+			char close = c == '{' ? '}' : ']';
+			pos++;
+			while (true) {
+				skipWhitespace();
+				if (accept(close)) {
+					return;
+				}
+				if (c == '{') {
+					jsonString();
+					skipWhitespace();
+					expect(':');
+					skipWhitespace();
+				}
+				skipJson();
+				skipWhitespace();
+				if (!accept(',')) {
+					expect(close);
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Skips a string, number, name or a nested value in parentheses or brackets.
+		 */
+		private void skipPyValue() {
+			char c = pos < end ? s.charAt(pos) : 0;
+			if (c == '\'' || c == '"') {
+				pyString();
+				return;
+			}
+			int depth = 0;
+			while (pos < end) {
+				c = s.charAt(pos);
+				if (c == '\'' || c == '"') {
+					pyString();
+					continue;
+				}
+				if (c == '(' || c == '[' || c == '{') depth++;
+				else if (c == ')' || c == ']' || c == '}') {
+					if (depth == 0) return;
+					depth--;
+				}
+				else if (c == ',' && depth == 0) return;
+				pos++;
+			}
+		}
+
+		private String unescape(int start, int stop) {
+			StringBuilder sb = new StringBuilder(stop - start);
+			for (int i = start; i < stop; i++) {
+				char c = s.charAt(i);
+				if (c != '\\' || i + 1 >= stop) {
+					sb.append(c);
+					continue;
+				}
+				c = s.charAt(++i);
+				switch (c) {
+					case 'n': sb.append('\n'); break;
+					case 't': sb.append('\t'); break;
+					case 'r': sb.append('\r'); break;
+					case 'u':
+						if (i + 4 >= stop) {
+							throw new IllegalArgumentException("Invalid escape sequence at " + i);
+						}
+						try {
+							sb.append((char) Integer.parseInt(s.subSequence(i + 1, i + 5).toString(), 16));
+						}
+						catch (NumberFormatException e) {
+							throw new IllegalArgumentException("Invalid escape sequence at " + i);
+						}
+						i += 4;
+						break;
+					default: sb.append(c); break;
+				}
+			}
+			return sb.toString();
+		}
+
+		private IllegalArgumentException error(String message) {
+			int from = Math.max(0, pos - 20);
+			int to = Math.min(end, pos + 20);
+			return new IllegalArgumentException(message + " at position " + pos + ": ..." + s.subSequence(from, to) + "...");
+		}
+	}
+}
@@ -1,44 +1,120 @@
 package de.uniwue.info3.tablevisor.message;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.Recycler;
 import org.projectfloodlight.openflow.exceptions.OFParseError;
+import org.projectfloodlight.openflow.protocol.OFFactories;
 import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFMessageReader;
 import org.projectfloodlight.openflow.protocol.OFType;
 
 import java.util.LinkedList;
+import java.util.List;
 
 public class TVMessage {
+	private static final OFType[] TYPES = OFType.values();
+	private static final byte NO_TYPE = -1;
+	private static final OFMessageReader<OFMessage> reader = OFFactories.getGenericReader();
+
+	private static final Recycler<TVMessage> RECYCLER = new Recycler<TVMessage>() {
+		@Override
+		protected TVMessage newObject(Handle<TVMessage> handle) {
+			return new TVMessage(handle);
+		}
+	};
+
 	// used by all types
 	private TVMsgProtocol protocol;
-	private String errorMsg;
-	private OFParseError e;
 	private int dataplaneId = -1;
+	// ordinal of the OFType, cached so that dispatching does not need to parse the message
+	private byte msgType = NO_TYPE;
+	// the type has been set explicitly (P4 replies) and does not follow the OFMessage
+	private boolean msgTypeFixed;
 
 	// used by openflow types
 	private OFMessage ofMessage;
+	// received frames are kept as they are and only parsed on demand
+	private byte[] rawFrame;
+	// the frame may be referenced by copies of this message and must not be written to
+	private boolean rawShared;
+	// transaction ID that replaces the one of the OFMessage when it is encoded (-1: none), see TVMsgRewriter#setXid
+	private long xid = -1;
+
+	// used by p4 and error types
+	private P4Payload p4;
+	private ErrorPayload error;
+
+	// set if this message has been taken from the pool
+	private final Recycler.Handle<TVMessage> handle;
+
+	/**
+	 * Payload of P4 requests and replies
+	 */
+	private static final class P4Payload {
+		private LinkedList<String> cmdLine;
+		// structured form of the request; the command line is derived from it on demand
+		private P4Operation operation;
+		private P4TableEntry entry;
+		private TVMessage originalRequest;
+		private String reply;
+		// structured form of the reply, if the switch does not answer with text
+		private List<P4TableEntry> entries;
+		// the reply reports that the request was not executed
+		private boolean failed;
+	}
 
-	// used by p4 types
-	private LinkedList<String> cmdLine;
-	private OFType thisMsgType;
-	private TVMessage originalRequest;
-	private String reply;
+	/**
+	 * Payload of messages that could not be decoded
+	 */
+	private static final class ErrorPayload {
+		private final OFParseError e;
+		private final String errorMsg;
+
+		private ErrorPayload(OFParseError e, String errorMsg) {
+			this.e = e;
+			this.errorMsg = errorMsg;
+		}
+	}
+
+	private TVMessage(Recycler.Handle<TVMessage> handle) {
+		this.handle = handle;
+	}
 
 	public TVMessage(TVMessage copy) {
+		this.handle = null;
 		this.protocol = copy.protocol;
-		this.errorMsg = copy.errorMsg;
-		this.e = copy.e;
 		this.dataplaneId = copy.dataplaneId;
-		this.ofMessage = copy.ofMessage.createBuilder().build();
-		if (cmdLine != null) this.cmdLine = new LinkedList<>(copy.cmdLine);
-		this.thisMsgType = copy.thisMsgType;
-		this.originalRequest = copy.originalRequest;
-		this.reply = copy.reply;
+		this.msgType = copy.msgType;
+		this.msgTypeFixed = copy.msgTypeFixed;
+		// OFMessages are immutable and the frame is only cloned before it is written to
+		this.ofMessage = copy.ofMessage;
+		this.rawFrame = copy.rawFrame;
+		this.xid = copy.xid;
+		if (rawFrame != null) {
+			this.rawShared = true;
+			copy.rawShared = true;
+		}
+		if (copy.p4 != null) {
+			this.p4 = new P4Payload();
+			this.p4.cmdLine = (copy.p4.cmdLine != null ? new LinkedList<>(copy.p4.cmdLine) : null);
+			this.p4.operation = copy.p4.operation;
+			this.p4.entry = copy.p4.entry;
+			this.p4.originalRequest = copy.p4.originalRequest;
+			this.p4.reply = copy.p4.reply;
+			this.p4.entries = copy.p4.entries;
+			this.p4.failed = copy.p4.failed;
+		}
+		this.error = copy.error;
 	}
 
 	/**
 	 * OpenFlow-type constructor
 	 */
 	public TVMessage(OFMessage ofMessage) {
+		this.handle = null;
 		this.ofMessage = ofMessage;
+		this.msgType = (byte) ofMessage.getType().ordinal();
 		this.protocol = TVMsgProtocol.OPENFLOW;
 	}
 
@@ -50,12 +126,24 @@ public class TVMessage {
 		this.dataplaneId = dataplaneId;
 	}
 
+	/**
+	 * OpenFlow-type constructor for received frames.
+	 * The frame is only parsed once {@link #getOFMessage()} is called,
+	 * and it is written back unchanged unless the message is replaced.
+	 */
+	public TVMessage(byte[] rawFrame, OFType rawType) {
+		this.handle = null;
+		initRawFrame(rawFrame, rawType);
+	}
+
 	/**
 	 * P4-type request constructor
 	 */
 	public TVMessage(LinkedList<String> cmdLine, TVMessage originalRequest) {
-		this.cmdLine = cmdLine;
-		this.originalRequest = originalRequest;
+		this.handle = null;
+		this.p4 = new P4Payload();
+		this.p4.cmdLine = cmdLine;
+		this.p4.originalRequest = originalRequest;
 		this.protocol = TVMsgProtocol.P4_NETRONOME;
 	}
 
@@ -67,12 +155,23 @@ public class TVMessage {
 		this.dataplaneId = dataplaneId;
 	}
 
+	/**
+	 * P4-type request constructor for a table operation
+	 */
+	public TVMessage(P4Operation operation, P4TableEntry entry, int dataplaneId, TVMessage originalRequest) {
+		this((LinkedList<String>) null, dataplaneId, originalRequest);
+		this.p4.operation = operation;
+		this.p4.entry = entry;
+	}
+
 	/**
 	 * P4-type reply constructor
 	 */
 	public TVMessage(String reply, TVMessage originalRequest) {
-		this.reply = reply;
-		this.originalRequest = originalRequest;
+		this.handle = null;
+		this.p4 = new P4Payload();
+		this.p4.reply = reply;
+		this.p4.originalRequest = originalRequest;
 		this.protocol = TVMsgProtocol.P4_NETRONOME;
 	}
 
@@ -84,19 +183,66 @@ public class TVMessage {
 		this.dataplaneId = dataplaneId;
 	}
 
+	/**
+	 * P4-type reply constructor for table entries
+	 */
+	public TVMessage(List<P4TableEntry> entries, TVMessage originalRequest, int dataplaneId) {
+		this((String) null, originalRequest, dataplaneId);
+		this.p4.entries = entries;
+	}
+
 	/**
 	 * Error-type constructor
 	 */
 	public TVMessage(OFParseError e, String errorMsg) {
-		this.e = e;
-		this.errorMsg = errorMsg;
+		this.handle = null;
+		this.error = new ErrorPayload(e, errorMsg);
 		this.protocol = TVMsgProtocol.ERROR;
 	}
 
+	/**
+	 * Takes a message for a received frame from the pool; it is returned by {@link #recycle()} once it has been written.
+	 * Applications must not keep references to such messages after forwarding them.
+	 */
+	static TVMessage pooled(byte[] rawFrame, OFType rawType) {
+		TVMessage msg = RECYCLER.get();
+		msg.initRawFrame(rawFrame, rawType);
+		return msg;
+	}
+
+	private void initRawFrame(byte[] rawFrame, OFType rawType) {
+		this.rawFrame = rawFrame;
+		this.msgType = (byte) rawType.ordinal();
+		this.protocol = TVMsgProtocol.OPENFLOW;
+	}
+
+	/**
+	 * Returns a pooled message; does nothing for all other messages.
+	 */
+	void recycle() {
+		if (handle == null) {
+			return;
+		}
+		protocol = null;
+		dataplaneId = -1;
+		msgType = NO_TYPE;
+		msgTypeFixed = false;
+		ofMessage = null;
+		rawFrame = null;
+		rawShared = false;
+		xid = -1;
+		p4 = null;
+		error = null;
+		handle.recycle(this);
+	}
+
 	public <T extends OFMessage> T getOFMessage() {
 		if (!isOpenFlow()) {
 			throw new IllegalStateException("This TVMessage object does not represent an OFMessage; protocol="+protocol);
 		}
+		if (ofMessage == null && rawFrame != null) {
+			decodeRawFrame();
+		}
 		return (T) ofMessage;
 	}
 
@@ -105,20 +251,146 @@ public class TVMessage {
 			throw new IllegalStateException("This TVMessage object does not represent an OFMessage; protocol="+protocol);
 		}
 		this.ofMessage = ofMessage;
+		this.rawFrame = null;
+		this.rawShared = false;
+		if (!msgTypeFixed) {
+			this.msgType = (ofMessage != null ? (byte) ofMessage.getType().ordinal() : NO_TYPE);
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException caused by an OFParseError if the received frame is malformed, see {@link #parseError(RuntimeException)}
+	 */
+	private void decodeRawFrame() {
+		try {
+			ofMessage = reader.readFrom(Unpooled.wrappedBuffer(rawFrame));
+		}
+		catch (OFParseError e) {
+			throw new IllegalStateException("Error reading OFMessage of type " + getThisMsgType() + ": " + e.getMessage(), e);
+		}
+		if (ofMessage == null) {
+			throw new IllegalStateException("Error reading OFMessage of type " + getThisMsgType(),
+					new OFParseError("Incomplete frame of " + rawFrame.length + " bytes"));
+		}
+	}
+
+	/**
+	 * Turns the failure to parse a received frame on demand into the error message the decoder creates for frames
+	 * it cannot parse, so that it reaches the error handlers of the applications.
+	 *
+	 * @return the error message, or null if the exception was not thrown by {@link #getOFMessage()} for this message
+	 */
+	public TVMessage parseError(RuntimeException e) {
+		if (!(e.getCause() instanceof OFParseError) || rawFrame == null || ofMessage != null) {
+			return null;
+		}
+		TVMessage error = new TVMessage((OFParseError) e.getCause(), e.getMessage());
+		error.setDataplaneId(dataplaneId);
+		return error;
+	}
+
+	/**
+	 * @return the received frame, or null if the message has been created or replaced locally
+	 */
+	byte[] getRawFrame() {
+		return rawFrame;
+	}
+
+	/**
+	 * @return the transaction ID to be written instead of that of the OFMessage, or -1
+	 */
+	long getXid() {
+		return xid;
+	}
+
+	void setXid(long xid) {
+		this.xid = xid;
+	}
+
+	/**
+	 * Grants write access to the received frame; a previously parsed OFMessage is discarded and parsed again on demand.
+	 */
+	byte[] getWritableRawFrame() {
+		if (rawShared) {
+			rawFrame = rawFrame.clone();
+			rawShared = false;
+		}
+		ofMessage = null;
+		return rawFrame;
+	}
+
+	/**
+	 * Serializes a locally created OFMessage once, so that all copies of this message
+	 * (e.g., one per switch) are written to their channels without being serialized again.
+	 */
+	public void encodeRawFrame() {
+		if (!isOpenFlow() || (rawFrame == null && ofMessage == null)) {
+			return;
+		}
+		if (rawFrame == null) {
+			ByteBuf buf = Unpooled.buffer();
+			ofMessage.writeTo(buf);
+			rawFrame = new byte[buf.readableBytes()];
+			buf.readBytes(rawFrame);
+		}
+		if (xid >= 0) {
+			TVMsgRewriter.patchXid(getWritableRawFrame(), xid);
+			xid = -1;
+		}
+	}
+
+	/**
+	 * Hands out the frame for read-only use outside of this message (e.g., capturing);
+	 * later in-place rewrites of this message work on a copy.
+	 */
+	public byte[] shareRawFrame() {
+		if (rawFrame != null) {
+			rawShared = true;
+		}
+		return rawFrame;
+	}
+
+	public boolean hasRawFrame() {
+		return rawFrame != null;
+	}
+
+	/**
+	 * @return true if the OFMessage has been created or parsed already
+	 */
+	boolean isParsed() {
+		return ofMessage != null;
 	}
 
 	public LinkedList<String> getCmdLine() {
 		if (!isP4()) {
 			throw new IllegalStateException("This TVMessage object does not represent a P4 message; protocol="+protocol);
 		}
-		return cmdLine;
+		if (p4.cmdLine == null && p4.operation != null) {
+			p4.cmdLine = RtecliCodec.toCmdLine(p4.operation, p4.entry);
+		}
+		return p4.cmdLine;
+	}
+
+	public P4Operation getP4Operation() {
+		return (p4 != null ? p4.operation : null);
+	}
+
+	public P4TableEntry getP4Entry() {
+		return (p4 != null ? p4.entry : null);
+	}
+
+	/**
+	 * @return the entries of a reply, or null if the reply is text (see {@link #getReply()})
+	 */
+	public List<P4TableEntry> getP4Entries() {
+		return (p4 != null ? p4.entries : null);
 	}
 
 	public void setCmdLine(LinkedList<String> cmdLine) {
 		if (!isP4()) {
 			throw new IllegalStateException("This TVMessage object does not represent a P4 message; protocol="+protocol);
 		}
-		this.cmdLine = cmdLine;
+		p4.cmdLine = cmdLine;
 	}
 
 	public TVMsgProtocol getProtocol() {
@@ -127,6 +399,9 @@ public class TVMessage {
 
 	public void setProtocol(TVMsgProtocol protocol) {
 		this.protocol = protocol;
+		if (protocol == TVMsgProtocol.P4_NETRONOME && p4 == null) {
+			p4 = new P4Payload();
+		}
 	}
 
 	public boolean isOpenFlow() {
@@ -150,27 +425,62 @@ public class TVMessage {
 	}
 
 	public TVMessage getOriginalRequest() {
-		return originalRequest;
+		return (p4 != null ? p4.originalRequest : null);
 	}
 
 	public void setOriginalRequest(TVMessage originalRequest) {
-		this.originalRequest = originalRequest;
+		if (p4 == null) {
+			p4 = new P4Payload();
+		}
+		p4.originalRequest = originalRequest;
 	}
 
 	public OFType getThisMsgType() {
-		return (thisMsgType != null ? thisMsgType : (isOpenFlow() ? ofMessage.getType() : null));
+		return (msgType != NO_TYPE ? TYPES[msgType] : null);
 	}
 
 	public void setThisMsgType(OFType thisMsgType) {
-		this.thisMsgType = thisMsgType;
+		this.msgType = (thisMsgType != null ? (byte) thisMsgType.ordinal() : NO_TYPE);
+		this.msgTypeFixed = (thisMsgType != null);
 	}
 
 	public String getReply() {
-		return reply;
+		return (p4 != null ? p4.reply : null);
 	}
 
 	public void setReply(String reply) {
-		this.reply = reply;
+		if (p4 == null) {
+			p4 = new P4Payload();
+		}
+		p4.reply = reply;
+	}
+
+	/**
+	 * @return the reply reporting that the switch has not executed this P4 request, or null if the request has no
+	 * original request that waits for replies
+	 */
+	public TVMessage failedReply(String reason) {
+		if (p4 == null || p4.originalRequest == null) {
+			return null;
+		}
+		TVMessage reply = new TVMessage(reason, p4.originalRequest, dataplaneId);
+		reply.p4.failed = true;
+		return reply;
+	}
+
+	/**
+	 * @return true if this P4 reply reports that the request was not executed, see {@link #failedReply(String)}
+	 */
+	public boolean isFailed() {
+		return p4 != null && p4.failed;
+	}
+
+	public OFParseError getParseError() {
+		return (error != null ? error.e : null);
+	}
+
+	public String getErrorMsg() {
+		return (error != null ? error.errorMsg : null);
 	}
 
 	public TVMessage copy() {
@@ -185,16 +495,21 @@ public class TVMessage {
 
 	public String getTypeAsString() {
 		if (isOpenFlow()) {
-			return ofMessage.getType().toString();
+			return String.valueOf(getThisMsgType());
 		}
 		else if (isP4()) {
 			String type = "unknown";
-			if (thisMsgType != null) {
-				return "P4_NETRONOME RTECLI ("+thisMsgType+")";
+			if (msgTypeFixed) {
+				return "P4_NETRONOME RTECLI ("+getThisMsgType()+")";
 			}
-			if (reply != null && reply.contains("TableEntry")) {
+			String reply = getReply();
+			if (p4.entries != null || (reply != null && reply.contains("TableEntry"))) {
 				return "P4_NETRONOME RTECLI (TableEntry)";
 			}
+			if (p4.operation != null) {
+				return "P4_NETRONOME RTECLI ("+(p4.operation.rtecliCommand != null ? p4.operation.rtecliCommand : p4.operation.name())+")";
+			}
+			LinkedList<String> cmdLine = p4.cmdLine;
 			if (cmdLine != null) for (String s : cmdLine) {
 				switch (s) {
 					case "add":
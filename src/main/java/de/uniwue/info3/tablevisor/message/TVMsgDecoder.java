@@ -8,32 +8,42 @@ import org.apache.logging.log4j.Logger;
 import org.projectfloodlight.openflow.exceptions.OFParseError;
 import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFMessageReader;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.ver13.OFTypeSerializerVer13;
 
 public class TVMsgDecoder extends LengthFieldBasedFrameDecoder {
 	private static final Logger logger = LogManager.getLogger();
 
 	private final OFMessageReader<OFMessage> reader;
+	private final boolean recycleMessages;
 
 	public TVMsgDecoder(OFMessageReader<OFMessage> reader) {
+		this(reader, false);
+	}
+
+	/**
+	 * @param recycleMessages take the messages of received frames from a pool; they are returned once they have been written by a {@link TVMsgEncoder}
+	 */
+	public TVMsgDecoder(OFMessageReader<OFMessage> reader, boolean recycleMessages) {
 		super(65536, 2, 2, -4, 0);
 		this.reader = reader;
+		this.recycleMessages = recycleMessages;
 	}
 
 	@Override
 	protected Object decode(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf) throws Exception {
-		logger.trace("Received data from {}, buffer status: {} Bytes", channelHandlerContext.name(), byteBuf.readableBytes());
+		if (logger.isTraceEnabled()) {
+			logger.trace("Received data from {}, buffer status: {} Bytes", channelHandlerContext.name(), byteBuf.readableBytes());
+		}
 
+		ByteBuf frame = null;
 		try {
-			ByteBuf frame = (ByteBuf) super.decode(channelHandlerContext, byteBuf);
+			frame = (ByteBuf) super.decode(channelHandlerContext, byteBuf);
 			if (frame == null) {
 				return null;
 			}
-			OFMessage ofMsg = reader.readFrom(frame);
-			if (ofMsg == null) {
-				return null;
-			}
-
-			return new TVMessage(ofMsg);
+			return decodeFrame(frame);
 		}
 		catch (OFParseError e) {
 			logger.warn("{} - Error reading OFMessage: '{}'", "TVMsgDecoder", e.getMessage());
@@ -42,6 +52,43 @@ public class TVMsgDecoder extends LengthFieldBasedFrameDecoder {
 		catch (RuntimeException e) {
 			logger.error("{} - Error reading OFMessage", "TVMsgDecoder", e);
 		}
+		finally {
+			if (frame != null) {
+				frame.release();
+			}
+		}
 		return null;
 	}
+
+	/**
+	 * OF 1.3 frames of known type are not parsed here, only the header is inspected; they are parsed on demand, and
+	 * TVtoControllerLayer and TVtoDataLayer turn parse errors into error messages then (see {@link TVMessage#parseError(RuntimeException)}).
+	 * All other frames are parsed right away.
+	 */
+	private TVMessage decodeFrame(ByteBuf frame) throws OFParseError {
+		int start = frame.readerIndex();
+		if (frame.getUnsignedByte(start) == OFVersion.OF_13.getWireVersion()) {
+			OFType type = rawType(frame.getByte(start + 1));
+			if (type != null) {
+				byte[] rawFrame = new byte[frame.readableBytes()];
+				frame.readBytes(rawFrame);
+				return (recycleMessages ? TVMessage.pooled(rawFrame, type) : new TVMessage(rawFrame, type));
+			}
+		}
+
+		OFMessage ofMsg = reader.readFrom(frame);
+		if (ofMsg == null) {
+			return null;
+		}
+		return new TVMessage(ofMsg);
+	}
+
+	private static OFType rawType(byte wireType) {
+		try {
+			return OFTypeSerializerVer13.ofWireValue(wireType);
+		}
+		catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
 }
@@ -9,9 +9,35 @@ import org.apache.logging.log4j.Logger;
 public class TVMsgEncoder extends MessageToByteEncoder<TVMessage> {
 	private static final Logger logger = LogManager.getLogger();
 
+	@Override
+	protected ByteBuf allocateBuffer(ChannelHandlerContext channelHandlerContext, TVMessage tvMessage, boolean preferDirect) throws Exception {
+		byte[] rawFrame = tvMessage.getRawFrame();
+		if (rawFrame != null) {
+			return channelHandlerContext.alloc().ioBuffer(rawFrame.length);
+		}
+		return super.allocateBuffer(channelHandlerContext, tvMessage, preferDirect);
+	}
+
 	@Override
 	protected void encode(ChannelHandlerContext channelHandlerContext, TVMessage tvMessage, ByteBuf byteBuf) {
-		logger.trace("Sent data to {}, message: {}", channelHandlerContext.name(), tvMessage.getOFMessage());
-		tvMessage.getOFMessage().writeTo(byteBuf);
+		if (logger.isTraceEnabled()) {
+			logger.trace("Sent data to {}, message: {}", channelHandlerContext.name(), tvMessage.getOFMessage());
+		}
+
+		// Frames that were received and not replaced are passed on as they are
+		int start = byteBuf.writerIndex();
+		byte[] rawFrame = tvMessage.getRawFrame();
+		if (rawFrame != null) {
+			byteBuf.writeBytes(rawFrame);
+		}
+		else {
+			tvMessage.getOFMessage().writeTo(byteBuf);
+		}
+		// a transaction ID set without rebuilding the message
+		long xid = tvMessage.getXid();
+		if (xid >= 0) {
+			byteBuf.setInt(start + TVMsgRewriter.OFFSET_XID, (int) xid);
+		}
+		tvMessage.recycle();
 	}
 }
@@ -0,0 +1,95 @@
+package de.uniwue.info3.tablevisor.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the flushes of an OpenFlow channel, so that a burst of messages is written with few syscalls.
+ * Flushes requested while an inbound read batch is handled are deferred to channelReadComplete,
+ * all others are deferred by at most maxFlushDelay microseconds (0 = until the pending tasks of the event loop have run).
+ * As soon as maxFlushBytes are pending, the channel is flushed right away; with maxFlushBytes <= 0, every flush is passed on.
+ * Must be the first handler of the pipeline, i.e., behind the encoder.
+ */
+public class TVMsgFlushCoalescer extends ChannelDuplexHandler {
+	private final int maxFlushBytes;
+	private final long maxFlushDelay;
+
+	// only accessed from the event loop of the channel
+	private boolean readInProgress;
+	private boolean flushPending;
+	private boolean flushScheduled;
+	private long pendingBytes;
+
+	public TVMsgFlushCoalescer(int maxFlushBytes, long maxFlushDelay) {
+		this.maxFlushBytes = maxFlushBytes;
+		this.maxFlushDelay = maxFlushDelay;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		readInProgress = true;
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+		readInProgress = false;
+		if (flushPending) {
+			flushNow(ctx);
+		}
+		ctx.fireChannelReadComplete();
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (msg instanceof ByteBuf) {
+			pendingBytes += ((ByteBuf) msg).readableBytes();
+		}
+		ctx.write(msg, promise);
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx) throws Exception {
+		if (maxFlushBytes <= 0 || pendingBytes >= maxFlushBytes) {
+			flushNow(ctx);
+			return;
+		}
+
+		flushPending = true;
+		if (readInProgress || flushScheduled) {
+			return;
+		}
+
+		flushScheduled = true;
+		Runnable task = () -> {
+			flushScheduled = false;
+			if (flushPending) {
+				flushNow(ctx);
+			}
+		};
+		if (maxFlushDelay > 0) {
+			ctx.executor().schedule(task, maxFlushDelay, TimeUnit.MICROSECONDS);
+		}
+		else {
+			ctx.executor().execute(task);
+		}
+	}
+
+	@Override
+	public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+		if (flushPending) {
+			flushNow(ctx);
+		}
+		ctx.close(promise);
+	}
+
+	private void flushNow(ChannelHandlerContext ctx) {
+		flushPending = false;
+		pendingBytes = 0;
+		ctx.flush();
+	}
+}
@@ -0,0 +1,170 @@
+package de.uniwue.info3.tablevisor.message;
+
+import org.projectfloodlight.openflow.protocol.*;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+
+/**
+ * Rewrites single header fields of received OF 1.3 frames in place.
+ * Only fields at a fixed offset are patched on the wire. If the message has no raw frame,
+ * or the field is part of a variable-length structure (e.g., IN_PORT of PACKET_IN within the match),
+ * the rewrite is not done and the caller has to fall back to the OFMessage builders.
+ * The transaction ID is the exception: without a raw frame to patch, it is written when the message is encoded.
+ */
+public class TVMsgRewriter {
+	static final int OFFSET_XID = 4;
+	private static final int OFFSET_TABLE_ID_TABLE_MOD = 8;
+	private static final int OFFSET_TABLE_ID_PACKET_IN = 15;
+	private static final int OFFSET_TABLE_ID_FLOW_REMOVED = 19;
+	private static final int OFFSET_TABLE_ID_FLOW_MOD = 24;
+	private static final int OFFSET_IN_PORT_PACKET_OUT = 12;
+	private static final int OFFSET_FLAGS_STATS_REPLY = 10;
+
+	private TVMsgRewriter() {
+	}
+
+	/**
+	 * @return the table ID of a PACKET_IN, FLOW_REMOVED, FLOW_MOD or TABLE_MOD, preferably read from the raw frame
+	 */
+	public static TableId getTableId(TVMessage tvMessage) {
+		int offset = tableIdOffset(tvMessage.getThisMsgType());
+		byte[] rawFrame = tvMessage.getRawFrame();
+		if (offset >= 0 && rawFrame != null && rawFrame.length > offset) {
+			return TableId.of(rawFrame[offset] & 0xff);
+		}
+
+		OFMessage ofMessage = tvMessage.getOFMessage();
+		switch (ofMessage.getType()) {
+			case PACKET_IN:
+				return ((OFPacketIn) ofMessage).getTableId();
+			case FLOW_REMOVED:
+				return ((OFFlowRemoved) ofMessage).getTableId();
+			case FLOW_MOD:
+				return ((OFFlowMod) ofMessage).getTableId();
+			case TABLE_MOD:
+				return ((OFTableMod) ofMessage).getTableId();
+			default:
+				throw new IllegalArgumentException("Message of type " + ofMessage.getType() + " has no table ID");
+		}
+	}
+
+	/**
+	 * @return true if the table ID was patched in the raw frame
+	 */
+	public static boolean setTableId(TVMessage tvMessage, TableId tableId) {
+		return patchByte(tvMessage, tableIdOffset(tvMessage.getThisMsgType()), (byte) tableId.getValue());
+	}
+
+	/**
+	 * @return the transaction ID set by {@link #setXid(TVMessage, long)}, or read from the raw frame or the OFMessage
+	 */
+	public static long getXid(TVMessage tvMessage) {
+		if (tvMessage.getXid() >= 0) {
+			return tvMessage.getXid();
+		}
+		byte[] rawFrame = tvMessage.getRawFrame();
+		if (rawFrame != null && rawFrame.length >= OFFSET_XID + 4) {
+			return getInt(rawFrame, OFFSET_XID) & 0xffffffffL;
+		}
+		return tvMessage.getOFMessage().getXid() & 0xffffffffL;
+	}
+
+	/**
+	 * @return true if the message is a STATS_REPLY with the REPLY_MORE flag, preferably read from the raw frame
+	 */
+	public static boolean hasReplyMore(TVMessage tvMessage) {
+		if (tvMessage.getThisMsgType() != OFType.STATS_REPLY) {
+			return false;
+		}
+		byte[] rawFrame = tvMessage.getRawFrame();
+		if (rawFrame != null && rawFrame.length > OFFSET_FLAGS_STATS_REPLY + 1) {
+			return ((rawFrame[OFFSET_FLAGS_STATS_REPLY + 1] & 0x01) != 0);
+		}
+		return ((OFStatsReply) tvMessage.getOFMessage()).getFlags().contains(OFStatsReplyFlags.REPLY_MORE);
+	}
+
+	/**
+	 * Sets the transaction ID without rebuilding the message: a raw frame that has not been parsed yet is patched,
+	 * otherwise the ID is written when the message is encoded. The OFMessage keeps its own ID then, so the ID must be
+	 * read with {@link #getXid(TVMessage)}.
+	 */
+	public static void setXid(TVMessage tvMessage, long xid) {
+		if (tvMessage.hasRawFrame() && !tvMessage.isParsed()) {
+			patchXid(tvMessage.getWritableRawFrame(), xid);
+			tvMessage.setXid(-1);
+		}
+		else {
+			tvMessage.setXid(xid);
+		}
+	}
+
+	/**
+	 * Sets the transaction ID of a message towards the applications, which read it from the OFMessage:
+	 * the raw frame is patched, or the message is rebuilt.
+	 */
+	public static void setReplyXid(TVMessage tvMessage, long xid) {
+		if (tvMessage.hasRawFrame()) {
+			patchXid(tvMessage.getWritableRawFrame(), xid);
+			tvMessage.setXid(-1);
+		}
+		else {
+			tvMessage.setOFMessage(tvMessage.getOFMessage().createBuilder().setXid(xid).build());
+		}
+	}
+
+	static void patchXid(byte[] rawFrame, long xid) {
+		putInt(rawFrame, OFFSET_XID, (int) xid);
+	}
+
+	/**
+	 * Only PACKET_OUT carries the ingress port at a fixed offset; PACKET_IN holds it within the match.
+	 *
+	 * @return true if the ingress port was patched in the raw frame
+	 */
+	public static boolean setInPort(TVMessage tvMessage, OFPort inPort) {
+		if (!tvMessage.hasRawFrame() || tvMessage.getThisMsgType() != OFType.PACKET_OUT) {
+			return false;
+		}
+		byte[] rawFrame = tvMessage.getWritableRawFrame();
+		putInt(rawFrame, OFFSET_IN_PORT_PACKET_OUT, inPort.getPortNumber());
+		return true;
+	}
+
+	private static boolean patchByte(TVMessage tvMessage, int offset, byte value) {
+		if (offset < 0 || !tvMessage.hasRawFrame() || tvMessage.getRawFrame().length <= offset) {
+			return false;
+		}
+		byte[] rawFrame = tvMessage.getWritableRawFrame();
+		rawFrame[offset] = value;
+		return true;
+	}
+
+	private static int tableIdOffset(OFType type) {
+		if (type == null) {
+			return -1;
+		}
+		switch (type) {
+			case PACKET_IN:
+				return OFFSET_TABLE_ID_PACKET_IN;
+			case FLOW_REMOVED:
+				return OFFSET_TABLE_ID_FLOW_REMOVED;
+			case FLOW_MOD:
+				return OFFSET_TABLE_ID_FLOW_MOD;
+			case TABLE_MOD:
+				return OFFSET_TABLE_ID_TABLE_MOD;
+			default:
+				return -1;
+		}
+	}
+
+	private static int getInt(byte[] b, int offset) {
+		return ((b[offset] & 0xff) << 24) | ((b[offset + 1] & 0xff) << 16) | ((b[offset + 2] & 0xff) << 8) | (b[offset + 3] & 0xff);
+	}
+
+	private static void putInt(byte[] b, int offset, int value) {
+		b[offset] = (byte) (value >>> 24);
+		b[offset + 1] = (byte) (value >>> 16);
+		b[offset + 2] = (byte) (value >>> 8);
+		b[offset + 3] = (byte) value;
+	}
+}
@@ -0,0 +1,194 @@
+package de.uniwue.info3.tablevisor.p4rpc;
+
+import de.uniwue.info3.tablevisor.message.P4Operation;
+import de.uniwue.info3.tablevisor.message.P4TableEntry;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of {@link P4RpcMessage}s. Each frame starts with its length (4 bytes), the type (1 byte) and the request ID (4 bytes).
+ * Strings are encoded as their UTF-8 length (2 bytes, 0xffff for null) and bytes.
+ * This framing is specific to TableVisor and P4RpcMockServer; it is not compatible with P4Runtime/gRPC.
+ */
+@ChannelHandler.Sharable
+public class P4RpcCodec extends MessageToMessageCodec<ByteBuf, P4RpcMessage> {
+	private static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+	private static final P4RpcMessage.Type[] TYPES = P4RpcMessage.Type.values();
+	private static final P4RpcMessage.Status[] STATUSES = P4RpcMessage.Status.values();
+	private static final P4Operation[] OPERATIONS = P4Operation.values();
+	private static final P4RpcCodec INSTANCE = new P4RpcCodec();
+
+	/**
+	 * Adds the framing and the codec to the pipeline of a client or server channel.
+	 */
+	public static void initPipeline(ChannelPipeline pipeline) {
+		pipeline.addLast(
+				new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4),
+				new LengthFieldPrepender(4),
+				INSTANCE
+		);
+	}
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, P4RpcMessage msg, List<Object> out) {
+		ByteBuf buf = ctx.alloc().buffer();
+		buf.writeByte(msg.getType().ordinal());
+		buf.writeInt(msg.getRequestId());
+		switch (msg.getType()) {
+			case WRITE_REQUEST:
+				buf.writeInt(msg.getEntries().size());
+				for (int i = 0; i < msg.getEntries().size(); i++) {
+					buf.writeByte(msg.getOperations().get(i).ordinal());
+					writeEntry(buf, msg.getEntries().get(i));
+				}
+				break;
+			case WRITE_RESPONSE:
+				buf.writeInt(msg.getStatuses().size());
+				for (P4RpcMessage.Status s : msg.getStatuses()) {
+					buf.writeByte(s.ordinal());
+				}
+				break;
+			case READ_REQUEST:
+				writeString(buf, msg.getTable());
+				break;
+			case READ_RESPONSE:
+				buf.writeBoolean(msg.isMore());
+				buf.writeInt(msg.getEntries().size());
+				for (P4TableEntry e : msg.getEntries()) {
+					writeEntry(buf, e);
+				}
+				break;
+		}
+		out.add(buf);
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) {
+		P4RpcMessage.Type type = read(buf, TYPES, "message type");
+		int requestId = buf.readInt();
+		int n;
+		switch (type) {
+			case WRITE_REQUEST:
+				n = readCount(buf);
+				List<P4Operation> operations = new ArrayList<>(n);
+				List<P4TableEntry> entries = new ArrayList<>(n);
+				for (int i = 0; i < n; i++) {
+					operations.add(read(buf, OPERATIONS, "operation"));
+					entries.add(readEntry(buf));
+				}
+				out.add(P4RpcMessage.writeRequest(requestId, operations, entries));
+				break;
+			case WRITE_RESPONSE:
+				n = readCount(buf);
+				List<P4RpcMessage.Status> statuses = new ArrayList<>(n);
+				for (int i = 0; i < n; i++) {
+					statuses.add(read(buf, STATUSES, "status"));
+				}
+				out.add(P4RpcMessage.writeResponse(requestId, statuses));
+				break;
+			case READ_REQUEST:
+				out.add(P4RpcMessage.readRequest(requestId, readString(buf)));
+				break;
+			case READ_RESPONSE:
+				boolean more = buf.readBoolean();
+				n = readCount(buf);
+				List<P4TableEntry> read = new ArrayList<>(n);
+				for (int i = 0; i < n; i++) {
+					read.add(readEntry(buf));
+				}
+				out.add(P4RpcMessage.readResponse(requestId, read, more));
+				break;
+		}
+	}
+
+	/**
+	 * @return the constant whose ordinal is the next byte
+	 */
+	private static <E extends Enum<E>> E read(ByteBuf buf, E[] values, String what) {
+		int ordinal = buf.readUnsignedByte();
+		if (ordinal >= values.length) {
+			throw new DecoderException("Unknown P4 RPC " + what + " " + ordinal);
+		}
+		return values[ordinal];
+	}
+
+	/**
+	 * @return the number of the following elements, each of which takes at least one byte
+	 */
+	private static int readCount(ByteBuf buf) {
+		int n = buf.readInt();
+		if (n < 0 || n > buf.readableBytes()) {
+			throw new DecoderException("Invalid P4 RPC element count " + n + " for " + buf.readableBytes() + " bytes");
+		}
+		return n;
+	}
+
+	private static void writeEntry(ByteBuf buf, P4TableEntry e) {
+		writeString(buf, e.getTable());
+		writeString(buf, e.getRuleName());
+		buf.writeInt(e.getPriority());
+		buf.writeBoolean(e.isDefaultRule());
+		writeValues(buf, e.getMatch());
+		writeString(buf, e.getActionType());
+		writeValues(buf, e.getActionData());
+	}
+
+	private static P4TableEntry readEntry(ByteBuf buf) {
+		P4TableEntry e = new P4TableEntry(readString(buf))
+				.setRuleName(readString(buf))
+				.setPriority(buf.readInt())
+				.setDefaultRule(buf.readBoolean());
+		readValues(buf, e.getMatch());
+		e.setActionType(readString(buf));
+		readValues(buf, e.getActionData());
+		return e;
+	}
+
+	private static void writeValues(ByteBuf buf, Map<String, String> values) {
+		buf.writeShort(values.size());
+		for (Map.Entry<String, String> v : values.entrySet()) {
+			writeString(buf, v.getKey());
+			writeString(buf, v.getValue());
+		}
+	}
+
+	private static void readValues(ByteBuf buf, Map<String, String> values) {
+		int n = buf.readUnsignedShort();
+		for (int i = 0; i < n; i++) {
+			values.put(readString(buf), readString(buf));
+		}
+	}
+
+	private static void writeString(ByteBuf buf, String s) {
+		if (s == null) {
+			buf.writeShort(0xffff);
+			return;
+		}
+		int lengthIndex = buf.writerIndex();
+		buf.writeShort(0);
+		int length = buf.writeCharSequence(s, StandardCharsets.UTF_8);
+		if (length >= 0xffff) {
+			throw new IllegalArgumentException("String too long: " + length + " bytes");
+		}
+		buf.setShort(lengthIndex, length);
+	}
+
+	private static String readString(ByteBuf buf) {
+		int length = buf.readUnsignedShort();
+		if (length == 0xffff) {
+			return null;
+		}
+		return buf.readCharSequence(length, StandardCharsets.UTF_8).toString();
+	}
+}
@@ -0,0 +1,104 @@
+package de.uniwue.info3.tablevisor.p4rpc;
+
+import de.uniwue.info3.tablevisor.message.P4Operation;
+import de.uniwue.info3.tablevisor.message.P4TableEntry;
+
+import java.util.List;
+
+/**
+ * Messages of the P4 RPC protocol, a TableVisor-specific binary protocol between LowerP4RpcMessageHandler and
+ * P4RpcMockServer for tests and benchmarks. It is not P4Runtime and not gRPC, but its calls are modelled after the
+ * Write and Read calls of P4Runtime:
+ * a write request carries a batch of table updates and is answered with one status per update,
+ * a read request for a table (or all tables if empty) is answered by a stream of responses, the last one without {@code more}.
+ */
+public class P4RpcMessage {
+	public enum Type {
+		WRITE_REQUEST,
+		WRITE_RESPONSE,
+		READ_REQUEST,
+		READ_RESPONSE
+	}
+
+	public enum Status {
+		OK,
+		ALREADY_EXISTS,
+		NOT_FOUND,
+		INVALID_ARGUMENT
+	}
+
+	private final Type type;
+	private final int requestId;
+	// WRITE_REQUEST: one operation per entry
+	private List<P4Operation> operations;
+	// WRITE_REQUEST and READ_RESPONSE
+	private List<P4TableEntry> entries;
+	// WRITE_RESPONSE
+	private List<Status> statuses;
+	// READ_REQUEST
+	private String table;
+	// READ_RESPONSE
+	private boolean more;
+
+	private P4RpcMessage(Type type, int requestId) {
+		this.type = type;
+		this.requestId = requestId;
+	}
+
+	public static P4RpcMessage writeRequest(int requestId, List<P4Operation> operations, List<P4TableEntry> entries) {
+		if (operations.size() != entries.size()) {
+			throw new IllegalArgumentException("One operation per entry required");
+		}
+		P4RpcMessage msg = new P4RpcMessage(Type.WRITE_REQUEST, requestId);
+		msg.operations = operations;
+		msg.entries = entries;
+		return msg;
+	}
+
+	public static P4RpcMessage writeResponse(int requestId, List<Status> statuses) {
+		P4RpcMessage msg = new P4RpcMessage(Type.WRITE_RESPONSE, requestId);
+		msg.statuses = statuses;
+		return msg;
+	}
+
+	public static P4RpcMessage readRequest(int requestId, String table) {
+		P4RpcMessage msg = new P4RpcMessage(Type.READ_REQUEST, requestId);
+		msg.table = (table != null ? table : "");
+		return msg;
+	}
+
+	public static P4RpcMessage readResponse(int requestId, List<P4TableEntry> entries, boolean more) {
+		P4RpcMessage msg = new P4RpcMessage(Type.READ_RESPONSE, requestId);
+		msg.entries = entries;
+		msg.more = more;
+		return msg;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public int getRequestId() {
+		return requestId;
+	}
+
+	public List<P4Operation> getOperations() {
+		return operations;
+	}
+
+	public List<P4TableEntry> getEntries() {
+		return entries;
+	}
+
+	public List<Status> getStatuses() {
+		return statuses;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public boolean isMore() {
+		return more;
+	}
+}
@@ -0,0 +1,141 @@
+package de.uniwue.info3.tablevisor.p4rpc;
+
+import de.uniwue.info3.tablevisor.message.P4TableEntry;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.*;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.*;
+
+/**
+ * P4 RPC server that keeps the tables in memory instead of programming a device.
+ * It is the only implementation of the P4 RPC protocol and serves tests and benchmarks of TableVisor.
+ * It is started in-process by endpoints with {@code p4RpcMock: true}, or stand-alone:
+ * <pre>java -cp tablevisor.jar de.uniwue.info3.tablevisor.p4rpc.P4RpcMockServer [port]</pre>
+ */
+@ChannelHandler.Sharable
+public class P4RpcMockServer extends SimpleChannelInboundHandler<P4RpcMessage> {
+	private static final Logger logger = LogManager.getLogger();
+	// entries per READ_RESPONSE
+	private static final int READ_CHUNK = 512;
+
+	// table name -> rule name -> entry
+	private final Map<String, LinkedHashMap<String, P4TableEntry>> tables = new HashMap<>();
+
+	public static void main(String[] args) throws InterruptedException {
+		int port = (args.length > 0 ? Integer.parseInt(args[0]) : 20206);
+		Channel ch = new P4RpcMockServer().bind(new NioEventLoopGroup(1), new InetSocketAddress(port)).sync().channel();
+		logger.info("P4 RPC mock server listening on {}", ch.localAddress());
+		ch.closeFuture().sync();
+	}
+
+	/**
+	 * @param address a LocalAddress for in-process connections, or an InetSocketAddress
+	 */
+	public ChannelFuture bind(EventLoopGroup group, SocketAddress address) {
+		return new ServerBootstrap()
+				.group(group)
+				.channel(address instanceof LocalAddress ? LocalServerChannel.class : NioServerSocketChannel.class)
+				.childHandler(new ChannelInitializer<Channel>() {
+					@Override
+					protected void initChannel(Channel ch) {
+						P4RpcCodec.initPipeline(ch.pipeline());
+						ch.pipeline().addLast(P4RpcMockServer.this);
+					}
+				})
+				.bind(address);
+	}
+
+	public synchronized int getEntryCount() {
+		int n = 0;
+		for (Map<String, P4TableEntry> t : tables.values()) {
+			n += t.size();
+		}
+		return n;
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, P4RpcMessage msg) {
+		switch (msg.getType()) {
+			case WRITE_REQUEST:
+				ctx.writeAndFlush(P4RpcMessage.writeResponse(msg.getRequestId(), write(msg)), ctx.voidPromise());
+				break;
+			case READ_REQUEST:
+				List<P4TableEntry> entries = read(msg.getTable());
+				for (int i = 0; i < entries.size() || i == 0; i += READ_CHUNK) {
+					List<P4TableEntry> chunk = entries.subList(i, Math.min(entries.size(), i + READ_CHUNK));
+					boolean more = i + READ_CHUNK < entries.size();
+					ctx.write(P4RpcMessage.readResponse(msg.getRequestId(), chunk, more), ctx.voidPromise());
+				}
+				ctx.flush();
+				break;
+			default:
+				logger.warn("Unexpected P4 RPC message {}", msg.getType());
+				break;
+		}
+	}
+
+	private synchronized List<P4RpcMessage.Status> write(P4RpcMessage msg) {
+		List<P4RpcMessage.Status> statuses = new ArrayList<>(msg.getEntries().size());
+		for (int i = 0; i < msg.getEntries().size(); i++) {
+			P4TableEntry e = msg.getEntries().get(i);
+			if (e.getTable() == null || e.getRuleName() == null) {
+				statuses.add(P4RpcMessage.Status.INVALID_ARGUMENT);
+				continue;
+			}
+			LinkedHashMap<String, P4TableEntry> table = tables.computeIfAbsent(e.getTable(), t -> new LinkedHashMap<>());
+			boolean exists = table.containsKey(e.getRuleName());
+			switch (msg.getOperations().get(i)) {
+				case ADD:
+					if (exists) {
+						statuses.add(P4RpcMessage.Status.ALREADY_EXISTS);
+						continue;
+					}
+					table.put(e.getRuleName(), e);
+					break;
+				case EDIT:
+					if (!exists) {
+						statuses.add(P4RpcMessage.Status.NOT_FOUND);
+						continue;
+					}
+					table.put(e.getRuleName(), e);
+					break;
+				case DELETE:
+					if (!exists) {
+						statuses.add(P4RpcMessage.Status.NOT_FOUND);
+						continue;
+					}
+					table.remove(e.getRuleName());
+					break;
+				default:
+					statuses.add(P4RpcMessage.Status.INVALID_ARGUMENT);
+					continue;
+			}
+			statuses.add(P4RpcMessage.Status.OK);
+		}
+		return statuses;
+	}
+
+	private synchronized List<P4TableEntry> read(String table) {
+		List<P4TableEntry> entries = new ArrayList<>();
+		for (Map.Entry<String, LinkedHashMap<String, P4TableEntry>> t : tables.entrySet()) {
+			if (table.isEmpty() || t.getKey().equalsIgnoreCase(table)) {
+				entries.addAll(t.getValue().values());
+			}
+		}
+		return entries;
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+		logger.error("P4 RPC mock server - Exception caught by socket", cause);
+		ctx.close();
+	}
+}
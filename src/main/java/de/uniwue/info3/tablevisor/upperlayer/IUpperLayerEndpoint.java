@@ -6,6 +6,7 @@ import de.uniwue.info3.tablevisor.message.TVMessage;
 public interface IUpperLayerEndpoint {
 	void initialize(UpperLayerEndpointManager endpointManager, UpperLayerEndpointConfig endpointConfig);
 	void send(TVMessage msg);
+	void setAutoRead(boolean autoRead);
 	UpperLayerEndpointManager getUpperLayerEndpointManager();
 	UpperLayerEndpointConfig getUpperLayerEndpointConfig();
 }
@@ -12,6 +12,7 @@ import java.util.List;
 public class UpperLayerEndpointManager {
 	private static final Logger logger = LogManager.getLogger();
 	private Collection<IUpperLayerEndpoint> endpoints = new LinkedList<>();
+	private int pausedReading = 0;
 
 	public void initialize(List<UpperLayerEndpointConfig> endpoints) {
 		if (endpoints == null || endpoints.isEmpty()) {
@@ -32,6 +33,33 @@ public class UpperLayerEndpointManager {
 		}
 	}
 
+	public void addEndpoint(IUpperLayerEndpoint endpoint) {
+		endpoints.add(endpoint);
+	}
+
+	/**
+	 * Stops reading from the controller until {@link #resumeReading()} has been called as often as this method.
+	 */
+	public synchronized void pauseReading() {
+		if (pausedReading++ == 0) {
+			for (IUpperLayerEndpoint endpoint : endpoints) {
+				endpoint.setAutoRead(false);
+			}
+		}
+	}
+
+	public synchronized void resumeReading() {
+		if (--pausedReading == 0) {
+			for (IUpperLayerEndpoint endpoint : endpoints) {
+				endpoint.setAutoRead(true);
+			}
+		}
+	}
+
+	public synchronized boolean isReadingPaused() {
+		return pausedReading > 0;
+	}
+
 	public Collection<IUpperLayerEndpoint> getEndpoints() {
 		return Collections.unmodifiableCollection(endpoints);
 	}
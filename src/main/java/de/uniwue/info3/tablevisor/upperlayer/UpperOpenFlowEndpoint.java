@@ -1,10 +1,14 @@
 package de.uniwue.info3.tablevisor.upperlayer;
 
+import de.uniwue.info3.tablevisor.capture.CaptureDirection;
+import de.uniwue.info3.tablevisor.capture.CaptureHandler;
+import de.uniwue.info3.tablevisor.capture.CaptureWriter;
 import de.uniwue.info3.tablevisor.config.UpperLayerEndpointConfig;
 import de.uniwue.info3.tablevisor.core.TableVisor;
 import de.uniwue.info3.tablevisor.message.TVMessage;
 import de.uniwue.info3.tablevisor.message.TVMsgDecoder;
 import de.uniwue.info3.tablevisor.message.TVMsgEncoder;
+import de.uniwue.info3.tablevisor.message.TVMsgFlushCoalescer;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
@@ -22,7 +26,7 @@ public class UpperOpenFlowEndpoint implements IUpperLayerEndpoint {
 	private IUpperLayerMessageHandler openFlowHandler = null;
 	private UpperLayerEndpointConfig cfg = null;
 	private UpperLayerEndpointManager manager = null;
-	private Channel ch = null;
+	private volatile Channel ch = null;
 
 	private long lastReconnect = -1;
 
@@ -51,10 +55,16 @@ public class UpperOpenFlowEndpoint implements IUpperLayerEndpoint {
 					@Override
 					public void initChannel(SocketChannel ch) throws Exception {
 						ch.pipeline().addLast(
+								new TVMsgFlushCoalescer(cfg.maxFlushBytes, cfg.maxFlushDelay),
 								new TVMsgEncoder(),
-								new TVMsgDecoder(OFFactories.getFactory(OFVersion.OF_13).getReader()),
-								openFlowHandler
+								new TVMsgDecoder(OFFactories.getFactory(OFVersion.OF_13).getReader(), cfg.recycleMessages)
 						);
+						CaptureWriter captureWriter = TableVisor.getInstance().getCaptureWriter();
+						if (captureWriter != null) {
+							ch.pipeline().addLast(new CaptureHandler(captureWriter, CaptureDirection.FROM_CONTROLLER, CaptureDirection.TO_CONTROLLER, () -> -1));
+						}
+						ch.pipeline().addLast(openFlowHandler);
+						ch.config().setAutoRead(!manager.isReadingPaused());
 					}
 				});
 
@@ -120,6 +130,14 @@ public class UpperOpenFlowEndpoint implements IUpperLayerEndpoint {
 		}
 	}
 
+	@Override
+	public void setAutoRead(boolean autoRead) {
+		Channel c = ch;
+		if (c != null) {
+			c.config().setAutoRead(autoRead);
+		}
+	}
+
 	@Override
 	public UpperLayerEndpointManager getUpperLayerEndpointManager() {
 		return manager;
@@ -27,15 +27,17 @@ public class UpperOpenFlowMessageHandler extends ChannelInboundHandlerAdapter im
 		TVMessage tvMsg = (TVMessage) msg;
 
 		// Directly handle HELLO and ECHO reqeusts
-		if (tvMsg.getOFMessage().getType() == OFType.HELLO) {
+		if (tvMsg.getThisMsgType() == OFType.HELLO) {
 			return;
 		}
-		if (tvMsg.getOFMessage().getType() == OFType.ECHO_REQUEST) {
+		if (tvMsg.getThisMsgType() == OFType.ECHO_REQUEST) {
 			sendEchoReply(tvMsg);
 			return;
 		}
 
-		logger.trace("OFMessage read from control channel: {}", tvMsg.getOFMessage().toString());
+		if (logger.isTraceEnabled()) {
+			logger.trace("OFMessage read from control channel: {}", tvMsg.getOFMessage().toString());
+		}
 
 		TableVisor.getInstance().getTvToControllerLayer().allToDataPlane(tvMsg);
 	}
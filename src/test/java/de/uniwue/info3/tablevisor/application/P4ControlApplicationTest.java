@@ -0,0 +1,170 @@
+package de.uniwue.info3.tablevisor.application;
+
+import de.uniwue.info3.tablevisor.capture.CaptureReplay;
+import de.uniwue.info3.tablevisor.capture.ReplaySwitchSink;
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.*;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.errormsg.OFBadActionErrorMsg;
+import org.projectfloodlight.openflow.protocol.errormsg.OFBadRequestErrorMsg;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.*;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * P4ControlApplication with the configuration of example2 (one P4 switch with four tables) and sinks instead of
+ * the switch and the controller.
+ */
+public class P4ControlApplicationTest {
+	private static final OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
+	private static CaptureReplay replay;
+	private static P4ControlApplication app;
+	private static ReplaySwitchSink sink;
+
+	private final List<TVMessage> calls = new ArrayList<>();
+	private final List<OFMessage> toController = new ArrayList<>();
+
+	@BeforeClass
+	public static void setUpTableVisor() throws Exception {
+		// there is only one TableVisor per JVM
+		replay = new CaptureReplay(Paths.get("example2", "TVconfig.yml"));
+		for (IApplication a = replay.getTableVisor().getTvToControllerLayer(); a != null; a = a.getSuccessingDataPlaneConnector()) {
+			if (a instanceof P4ControlApplication) {
+				app = (P4ControlApplication) a;
+			}
+		}
+		assertNotNull(app);
+		sink = replay.getSwitchSinks().values().iterator().next();
+	}
+
+	@Before
+	public void setUp() {
+		sink.setListener(calls::add);
+		replay.getControllerSink().setListener(m -> toController.add(m.getOFMessage()));
+	}
+
+	private TVMessage flowStatsRequest(long xid) {
+		return new TVMessage(fac.buildFlowStatsRequest().setXid(xid).setTableId(TableId.ALL).build(), sink.getDataplanId());
+	}
+
+	/**
+	 * Checks the fragments of a flow stats reply: tables without entries do not send a fragment of their own, but the
+	 * last table always completes the reply.
+	 */
+	private void assertFlowStatsReply(long xid, int entries) {
+		assertFalse(toController.isEmpty());
+		int n = 0;
+		for (int i = 0; i < toController.size(); i++) {
+			OFFlowStatsReply rep = (OFFlowStatsReply) toController.get(i);
+			assertEquals(xid, rep.getXid());
+			assertEquals(i < toController.size() - 1, rep.getFlags().contains(OFStatsReplyFlags.REPLY_MORE));
+			n += rep.getEntries().size();
+		}
+		assertEquals(entries, n);
+	}
+
+	@Test
+	public void failedTableReadCompletesFlowStats() {
+		app.switchStatsToDataPlane(flowStatsRequest(7));
+		assertEquals(4, calls.size());
+
+		String entry = "[TableEntry(priority=15, rule_name='r1', default_rule=False, "
+				+ "actions='{  \"type\" : \"drop_act\",  \"data\" : { } }', match='{ }')]";
+		app.allToControlPlane(new TVMessage(entry, calls.get(0).getOriginalRequest(), sink.getDataplanId()));
+		app.allToControlPlane(calls.get(1).failedReply("Connection closed"));
+		app.allToControlPlane(new TVMessage("[]", calls.get(2).getOriginalRequest(), sink.getDataplanId()));
+		app.allToControlPlane(calls.get(3).failedReply("Connection closed"));
+		assertFlowStatsReply(7, 1);
+
+		// the request is completed, a late reply is not passed on
+		int sent = toController.size();
+		app.allToControlPlane(new TVMessage("[]", calls.get(1).getOriginalRequest(), sink.getDataplanId()));
+		assertEquals(sent, toController.size());
+	}
+
+	@Test
+	public void allTableReadsFailed() {
+		app.switchStatsToDataPlane(flowStatsRequest(8));
+		for (TVMessage call : calls) {
+			app.allToControlPlane(call.failedReply("Connection closed"));
+		}
+		assertFlowStatsReply(8, 0);
+	}
+
+	@Test
+	public void barrier() {
+		app.allToDataPlane(new TVMessage(fac.buildBarrierRequest().setXid(9).build(), sink.getDataplanId()));
+		assertEquals(1, calls.size());
+		app.allToControlPlane(new TVMessage("", calls.get(0).getOriginalRequest(), sink.getDataplanId()));
+		assertEquals(1, toController.size());
+		assertEquals(OFType.BARRIER_REPLY, toController.get(0).getType());
+		assertEquals(9, toController.get(0).getXid());
+	}
+
+	@Test
+	public void failedBarrierAnsweredWithError() {
+		app.allToDataPlane(new TVMessage(fac.buildBarrierRequest().setXid(10).build(), sink.getDataplanId()));
+		assertEquals(1, calls.size());
+		app.allToControlPlane(calls.get(0).failedReply("Connection closed"));
+		assertEquals(1, toController.size());
+		OFBadRequestErrorMsg error = (OFBadRequestErrorMsg) toController.get(0);
+		assertEquals(10, error.getXid());
+		assertEquals(OFBadRequestCode.EPERM, error.getCode());
+		assertEquals(OFType.BARRIER_REQUEST, error.getData().getParsedMessage().get().getType());
+	}
+
+	private OFFlowMod.Builder withActions(OFFlowMod.Builder fm, OFAction... actions) {
+		return fm.setXid(11).setTableId(TableId.of(0)).setPriority(5)
+				.setInstructions(Collections.singletonList(fac.instructions().applyActions(Arrays.asList(actions))));
+	}
+
+	private void assertActionError(long xid) {
+		assertEquals(1, toController.size());
+		OFBadActionErrorMsg error = (OFBadActionErrorMsg) toController.get(0);
+		assertEquals(xid, error.getXid());
+		assertEquals(OFType.FLOW_MOD, error.getData().getParsedMessage().get().getType());
+	}
+
+	@Test
+	public void untranslatableModifyRejected() {
+		app.allToDataPlane(new TVMessage(withActions(fac.buildFlowAdd().setCookie(U64.of(0x100))
+				.setMatch(fac.buildMatch().setExact(MatchField.ETH_TYPE, EthType.IPv4).build()),
+				fac.actions().output(OFPort.of(1), 0)).build(), sink.getDataplanId()));
+		assertEquals(1, calls.size());
+		assertTrue(toController.isEmpty());
+
+		// no action of the P4 program outputs and sets the destination MAC address
+		app.allToDataPlane(new TVMessage(withActions(fac.buildFlowModify(),
+				fac.actions().setField(fac.oxms().ethDst(MacAddress.of(2))), fac.actions().output(OFPort.of(1), 0))
+				.setXid(12).build(), sink.getDataplanId()));
+		assertEquals(1, calls.size());
+		assertActionError(12);
+	}
+
+	@Test
+	public void unknownSetFieldRejected() {
+		// the P4 program has no parameter for the source IP address
+		app.allToDataPlane(new TVMessage(withActions(fac.buildFlowAdd().setCookie(U64.of(0x101)),
+				fac.actions().setField(fac.oxms().ipv4Src(IPv4Address.of(1)))).build(), sink.getDataplanId()));
+		assertTrue(calls.isEmpty());
+		assertActionError(11);
+	}
+
+	@Test
+	public void deleteStrictIgnoresActions() {
+		app.allToDataPlane(new TVMessage(withActions(fac.buildFlowDeleteStrict().setCookie(U64.of(0x102)),
+				fac.actions().setField(fac.oxms().ipv4Src(IPv4Address.of(1)))).build(), sink.getDataplanId()));
+		assertEquals(1, calls.size());
+		assertTrue(toController.isEmpty());
+	}
+}
@@ -0,0 +1,57 @@
+package de.uniwue.info3.tablevisor.application;
+
+import de.uniwue.info3.tablevisor.message.TVMessage;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ReplyAggregationsTest {
+	private static final OFFactory fac = OFFactories.getFactory(OFVersion.OF_13);
+	private static final Set<Integer> SWITCHES = new HashSet<>(Arrays.asList(1, 2));
+
+	private final List<ReplyAggregations.Aggregation> expired = new ArrayList<>();
+	private final ReplyAggregations aggregations = new ReplyAggregations(() -> SWITCHES, type -> 0, expired::add);
+
+	private static TVMessage barrierReply(long xid, int dataplaneId) {
+		return new TVMessage(fac.buildBarrierReply().setXid(xid).build(), dataplaneId);
+	}
+
+	@Test
+	public void barrier() {
+		aggregations.register(new TVMessage(fac.buildBarrierRequest().setXid(1).build()), SWITCHES);
+		assertFalse(aggregations.get(barrierReply(1, 1)).add(barrierReply(1, 1)));
+		assertTrue(aggregations.get(barrierReply(1, 2)).add(barrierReply(1, 2)));
+		assertEquals(0, aggregations.size());
+	}
+
+	@Test
+	public void failedBarrier() {
+		aggregations.register(new TVMessage(fac.buildBarrierRequest().setXid(2).build()), SWITCHES);
+		ReplyAggregations.Aggregation agg = aggregations.find(OFType.BARRIER_REPLY, 2);
+		assertNotNull(agg);
+		assertTrue(agg.fail(1));
+		assertFalse(agg.fail(1));
+
+		// the reply of the other switch neither completes the aggregation nor starts a new one
+		assertFalse(aggregations.get(barrierReply(2, 2)).add(barrierReply(2, 2)));
+		assertEquals(0, aggregations.size());
+		assertTrue(expired.isEmpty());
+	}
+
+	@Test
+	public void findOtherType() {
+		aggregations.register(new TVMessage(fac.buildBarrierRequest().setXid(3).build()), SWITCHES);
+		assertNull(aggregations.find(OFType.BARRIER_REPLY, 4));
+		assertNull(aggregations.find(OFType.ROLE_REPLY, 3));
+	}
+}
@@ -0,0 +1,141 @@
+package de.uniwue.info3.tablevisor.message;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RtecliCodecTest {
+	private static final String TABLE = "ingress::dmac";
+	// list-rules output of example2/README.md
+	private static final String CAPTURED = "[TableEntry(priority=15, rule_name='r008500002447597e', default_rule=False, "
+			+ "actions='{  \"type\" : \"set_dst_mac\",  \"data\" : { \"mac\" : { \"value\" : \"00:00:00:00:00:02\" } } }', "
+			+ "match='{ \"eth.etype\" : {  \"value\" : \"0x800\" }, \"ipv4.dstAddr\" : {  \"value\" : \"10.100.100.10\" } }')]";
+
+	@Test
+	public void parseCapturedOutput() {
+		List<P4TableEntry> entries = RtecliCodec.parseTableEntries(CAPTURED, TABLE);
+		assertEquals(1, entries.size());
+		P4TableEntry e = entries.get(0);
+		assertEquals(TABLE, e.getTable());
+		assertEquals(15, e.getPriority());
+		assertEquals("r008500002447597e", e.getRuleName());
+		assertFalse(e.isDefaultRule());
+		assertEquals("set_dst_mac", e.getActionType());
+		assertEquals("00:00:00:00:00:02", e.getActionData().get("mac"));
+		assertEquals(Arrays.asList("eth.etype", "ipv4.dstAddr"), Arrays.asList(e.getMatch().keySet().toArray()));
+		assertEquals("0x800", e.getMatch().get("eth.etype"));
+		assertEquals("10.100.100.10", e.getMatch().get("ipv4.dstAddr"));
+	}
+
+	@Test
+	public void parseEmptyTable() {
+		assertTrue(RtecliCodec.parseTableEntries("[]", TABLE).isEmpty());
+		assertTrue(RtecliCodec.parseTableEntries(" [ ]\n", TABLE).isEmpty());
+	}
+
+	@Test
+	public void parseEscapes() {
+		// Python escapes the backslashes of the JSON strings and the quote in the rule name
+		String output = "[TableEntry(priority=1, rule_name='r\\'1', default_rule=True, "
+				+ "actions='{ \"type\" : \"fwd\", \"data\" : { \"name\" : { \"value\" : \"a\\\\\"b\\\\\\\\c\" } } }', "
+				+ "match='{ \"f\" : { \"value\" : \"\\\\u0041\" } }')]";
+		P4TableEntry e = RtecliCodec.parseTableEntries(output, TABLE).get(0);
+		assertEquals("r'1", e.getRuleName());
+		assertTrue(e.isDefaultRule());
+		assertEquals("fwd", e.getActionType());
+		assertEquals("a\"b\\c", e.getActionData().get("name"));
+		assertEquals("A", e.getMatch().get("f"));
+	}
+
+	@Test
+	public void skipUnknownAttributes() {
+		String output = "[TableEntry(priority=2, timeout=(1, [2, 3]), rule_name='r2', comment=\"x, y)\", default_rule=False, "
+				+ "actions='{ \"type\" : \"drop\", \"data\" : { } }', match='{ }')]";
+		P4TableEntry e = RtecliCodec.parseTableEntries(output, TABLE).get(0);
+		assertEquals("r2", e.getRuleName());
+		assertEquals("drop", e.getActionType());
+		assertTrue(e.getActionData().isEmpty());
+		assertTrue(e.getMatch().isEmpty());
+	}
+
+	@Test
+	public void roundTrip() {
+		P4TableEntry a = new P4TableEntry(TABLE).setRuleName("r1").setPriority(7).setActionType("fwd");
+		a.getActionData().put("port", "p1");
+		a.getMatch().put("eth.etype", "0x800");
+		P4TableEntry b = new P4TableEntry(TABLE).setRuleName("r2").setDefaultRule(true).setActionType("drop");
+		String output = RtecliCodec.appendTableEntries(new StringBuilder(), Arrays.asList(a, b)).toString();
+		List<P4TableEntry> entries = RtecliCodec.parseTableEntries(output, TABLE);
+		assertEquals(2, entries.size());
+		assertEquals(a.toString(), entries.get(0).toString());
+		assertEquals(b.toString(), entries.get(1).toString());
+	}
+
+	@Test
+	public void parseArguments() {
+		P4TableEntry e = new P4TableEntry(TABLE);
+		RtecliCodec.parseMatchArgument("{ \"eth_type\": { \"value\": \"0x0800\" } }", e);
+		RtecliCodec.parseActionArgument("{ \"type\": \"fwd\", \"data\": { \"port\": { \"value\": \"p1\" } } }", e);
+		assertEquals("0x0800", e.getMatch().get("eth_type"));
+		assertEquals("fwd", e.getActionType());
+		assertEquals("p1", e.getActionData().get("port"));
+	}
+
+	@Test
+	public void rejectMalformedOutput() {
+		String[] malformed = {
+				"",
+				"[",
+				"TableEntry()",
+				"[]]",
+				"[Entry(priority=1)]",
+				"[TableEntry(priority=x)]",
+				"[TableEntry(priority=",
+				"[TableEntry(priority=-",
+				"[TableEntry(default_rule=Maybe)]",
+				"[TableEntry(rule_name='r1)]",
+				"[TableEntry(rule_name='r1\\",
+				"[TableEntry(rule_name='r1'",
+				"[TableEntry(rule_name='r1',",
+				"[TableEntry(match='{ \"f\" : { } }')]",
+				"[TableEntry(match='{ \"f\" : { \"value\" : \"1\" }')]",
+				"[TableEntry(match='{ \"f\" : { \"value\" : \"\\\\u00')]",
+				"[TableEntry(match='{ \"f\" : { \"value\" : \"\\\\uxyz1\" } }')]",
+				"[TableEntry(actions='{ \"type\" : \"fwd\", \"data\" : { \"p\" : ')]",
+				"[TableEntry(actions='{ \"type\" : \"fwd\" } x')]",
+				CAPTURED.substring(0, CAPTURED.length() - 1),
+				CAPTURED.substring(0, CAPTURED.length() / 2),
+		};
+		for (String output : malformed) {
+			try {
+				RtecliCodec.parseTableEntries(output, TABLE);
+				fail("No exception for " + output);
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void rejectTruncatedCapturedOutput() {
+		// every prefix of the output, none may fail with another exception than IllegalArgumentException
+		for (int i = 0; i < CAPTURED.length(); i++) {
+			try {
+				RtecliCodec.parseTableEntries(CAPTURED.substring(0, i), TABLE);
+				fail("No exception for " + CAPTURED.substring(0, i));
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectMalformedArgument() {
+		RtecliCodec.parseActionArgument("{ \"type\": \"fwd\", \"data\": { \"port\": { \"value\": \"p1\" } }", new P4TableEntry(TABLE));
+	}
+}
@@ -0,0 +1,75 @@
+#!/usr/bin/env python
+"""
+Long-lived RTECLI session of TableVisor, see doc/CONFIG.md (RTECLI Sessions).
+
+Usage: rtecli-session.py <path to rtecli>
+
+The rtecli script is loaded once and every command is run in this interpreter,
+which saves the start of a Python process per command.
+
+Commands are read from stdin, one per line with the arguments separated by tabs.
+An empty line ends a batch. For every command, a line "<exit status> <length>"
+followed by <length> bytes of output is written to stdout; the output is flushed
+at the end of each batch.
+"""
+import runpy
+import sys
+
+try:
+	from StringIO import StringIO
+except ImportError:
+	from io import StringIO
+
+
+def run(path, main, args):
+	buf = StringIO()
+	saved = sys.stdout, sys.stderr, sys.argv
+	sys.stdout = sys.stderr = buf
+	sys.argv = [path] + args
+	status = 0
+	try:
+		if main is not None:
+			main()
+		else:
+			runpy.run_path(path, run_name="__main__")
+	except SystemExit as e:
+		if e.code is None or isinstance(e.code, int):
+			status = e.code or 0
+		else:
+			buf.write(str(e.code))
+			status = 1
+	except Exception as e:
+		buf.write("%s: %s" % (type(e).__name__, e))
+		status = 1
+	finally:
+		sys.stdout, sys.stderr, sys.argv = saved
+	out = buf.getvalue()
+	if not isinstance(out, bytes):
+		out = out.encode("utf-8")
+	return status, out
+
+
+def main():
+	if len(sys.argv) != 2:
+		sys.stderr.write(__doc__)
+		sys.exit(2)
+	path = sys.argv[1]
+	# the __main__ block of rtecli is not executed here, only its definitions
+	rtecli_main = runpy.run_path(path, run_name="rtecli_session").get("main")
+	out = getattr(sys.stdout, "buffer", sys.stdout)
+
+	while True:
+		line = sys.stdin.readline()
+		if not line:
+			break
+		line = line.rstrip("\r\n")
+		if not line:
+			out.flush()
+			continue
+		status, output = run(path, rtecli_main, line.split("\t"))
+		out.write(("%d %d\n" % (status, len(output))).encode("ascii"))
+		out.write(output)
+
+
+if __name__ == "__main__":
+	main()